@@ -0,0 +1,36 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.core;
+
+/**
+ * State of an alarm raised by a rule for a single resource
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public enum AlarmState {
+	/**
+	 * The rule matches values of the resource
+	 */
+	FIRING,
+
+	/**
+	 * The rule stopped matching values of the resource
+	 */
+	RESOLVED
+}
@@ -0,0 +1,108 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.core;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * State of the circuit breaker of a single transport adapter endpoint and
+ * the number of its transitions since it was created (see
+ * {@link ICoreInstrumentation#getCircuitBreakerStates()}).
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class CircuitBreakerSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 8302914417785931245L;
+
+	private final String endpointKey;
+	private final String state;
+	private final int consecutiveFailures;
+	private final long openedCount;
+	private final long halfOpenedCount;
+	private final long closedCount;
+	private final long rejectedCount;
+
+	@ConstructorProperties({ "endpointKey", "state", "consecutiveFailures",
+			"openedCount", "halfOpenedCount", "closedCount", "rejectedCount" })
+	public CircuitBreakerSnapshot(String endpointKey, String state,
+			int consecutiveFailures, long openedCount, long halfOpenedCount,
+			long closedCount, long rejectedCount) {
+		this.endpointKey = endpointKey;
+		this.state = state;
+		this.consecutiveFailures = consecutiveFailures;
+		this.openedCount = openedCount;
+		this.halfOpenedCount = halfOpenedCount;
+		this.closedCount = closedCount;
+		this.rejectedCount = rejectedCount;
+	}
+
+	public String getEndpointKey() {
+		return endpointKey;
+	}
+
+	/**
+	 * @return CLOSED, OPEN or HALF_OPEN
+	 */
+	public String getState() {
+		return state;
+	}
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * @return Number of times the breaker opened (paused the endpoint)
+	 */
+	public long getOpenedCount() {
+		return openedCount;
+	}
+
+	/**
+	 * @return Number of probes of the endpoint
+	 */
+	public long getHalfOpenedCount() {
+		return halfOpenedCount;
+	}
+
+	/**
+	 * @return Number of times the endpoint recovered
+	 */
+	public long getClosedCount() {
+		return closedCount;
+	}
+
+	/**
+	 * @return Number of reads skipped because the breaker wasn't closed
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s: %s failures=%d opened=%d halfOpened=%d closed=%d rejected=%d",
+				endpointKey, state, consecutiveFailures, openedCount,
+				halfOpenedCount, closedCount, rejectedCount);
+	}
+
+}
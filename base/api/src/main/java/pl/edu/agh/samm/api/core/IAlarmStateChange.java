@@ -0,0 +1,37 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.core;
+
+/**
+ * Alarm reported by the alarm state tracking - besides the rule matches it
+ * tells when an alarm stopped firing. Delivered to {@link IAlarmBatchListener}s
+ * only, other listeners get just the firing alarms.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public interface IAlarmStateChange extends IAlarm {
+
+	AlarmState getState();
+
+	/**
+	 * @return Time (in milliseconds since the epoch) at which the alarm was
+	 *         raised or resolved
+	 */
+	long getTimestamp();
+}
@@ -0,0 +1,110 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.core;
+
+import java.util.Map;
+
+/**
+ * Statistics of the core itself: how long polling metrics, reading from
+ * transport adapters, notifying metric listeners and processing rules takes,
+ * how late the scheduler fires metrics, how many reads fail on every
+ * endpoint, which endpoints are paused by their circuit breakers, how far
+ * behind the metric listeners are and how expensive every rule is. Latencies are recorded only while the instrumentation is enabled.
+ * Polls of a metric, listener notifications and scheduler lag are sampled -
+ * only every {@link #getSampleInterval()}-th of them is timed, so the counts
+ * of these snapshots are the numbers of samples.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public interface ICoreInstrumentation {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	int getSampleInterval();
+
+	/**
+	 * @param sampleInterval
+	 *            Time every n-th poll of a metric; 1 times all of them
+	 */
+	void setSampleInterval(int sampleInterval);
+
+	/**
+	 * Clears all recorded statistics
+	 */
+	void reset();
+
+	/**
+	 * @return Duration of a single metric poll (reading capabilities of one
+	 *         metric, computing its value and notifying its listeners)
+	 */
+	LatencySnapshot getTaskPollLatency();
+
+	/**
+	 * @return Duration of a poll of a group of metrics reading from the same
+	 *         endpoint
+	 */
+	LatencySnapshot getGroupPollLatency();
+
+	/**
+	 * @return Difference between the actual and the intended fire time of
+	 *         metric polls
+	 */
+	LatencySnapshot getSchedulerLag();
+
+	/**
+	 * @return Time of delivering a metric value to all listeners of the
+	 *         metric
+	 */
+	LatencySnapshot getListenerFanOutLatency();
+
+	/**
+	 * @return Time of processing a single event by the rule processor
+	 */
+	LatencySnapshot getRuleProcessingLatency();
+
+	/**
+	 * @return Duration of transport adapter calls, per adapter class
+	 */
+	Map<String, LatencySnapshot> getAdapterCallLatencies();
+
+	/**
+	 * @return Number of failed reads, per endpoint
+	 */
+	Map<String, Long> getFailedReadsPerEndpoint();
+
+	/**
+	 * @return Cost and activity of every rule, per rule name
+	 */
+	Map<String, RuleProfile> getRuleProfiles();
+
+	/**
+	 * @return State and transitions of the circuit breakers, per endpoint;
+	 *         not cleared by {@link #reset()}
+	 */
+	Map<String, CircuitBreakerSnapshot> getCircuitBreakerStates();
+
+	/**
+	 * @return Depth, drops and delivery latency of the queues of metric
+	 *         listeners, per listener class; not cleared by {@link #reset()}
+	 */
+	Map<String, ListenerQueueSnapshot> getListenerQueues();
+
+}
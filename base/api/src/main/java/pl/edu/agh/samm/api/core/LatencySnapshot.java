@@ -0,0 +1,93 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.core;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * Summary of latencies recorded by the core instrumentation (see
+ * {@link ICoreInstrumentation}). All times are in microseconds; percentiles
+ * are upper bounds of the histogram buckets (relative error below 7%).
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class LatencySnapshot implements Serializable {
+
+	private static final long serialVersionUID = 5471905262817339620L;
+
+	private final long count;
+	private final double meanMicros;
+	private final double p50Micros;
+	private final double p90Micros;
+	private final double p99Micros;
+	private final double p999Micros;
+	private final double maxMicros;
+
+	@ConstructorProperties({ "count", "meanMicros", "p50Micros", "p90Micros",
+			"p99Micros", "p999Micros", "maxMicros" })
+	public LatencySnapshot(long count, double meanMicros, double p50Micros,
+			double p90Micros, double p99Micros, double p999Micros,
+			double maxMicros) {
+		this.count = count;
+		this.meanMicros = meanMicros;
+		this.p50Micros = p50Micros;
+		this.p90Micros = p90Micros;
+		this.p99Micros = p99Micros;
+		this.p999Micros = p999Micros;
+		this.maxMicros = maxMicros;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanMicros() {
+		return meanMicros;
+	}
+
+	public double getP50Micros() {
+		return p50Micros;
+	}
+
+	public double getP90Micros() {
+		return p90Micros;
+	}
+
+	public double getP99Micros() {
+		return p99Micros;
+	}
+
+	public double getP999Micros() {
+		return p999Micros;
+	}
+
+	public double getMaxMicros() {
+		return maxMicros;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+				count, meanMicros, p50Micros, p90Micros, p99Micros,
+				p999Micros, maxMicros);
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.core;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * Statistics of the delivery queues of all metric listeners of one class (see
+ * {@link ICoreInstrumentation#getListenerQueues()}). Counts are summed over
+ * the queues registered at the moment; a queue closed when its listener was
+ * removed isn't included.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ListenerQueueSnapshot implements Serializable {
+
+	private static final long serialVersionUID = -6518047238813950017L;
+
+	private final String listenerClass;
+	private final String overflowPolicy;
+	private final int queues;
+	private final int depth;
+	private final long queuedCount;
+	private final long deliveredCount;
+	private final long droppedCount;
+	private final long coalescedCount;
+	private final double averageLatencyMillis;
+	private final double maxLatencyMillis;
+
+	@ConstructorProperties({ "listenerClass", "overflowPolicy", "queues",
+			"depth", "queuedCount", "deliveredCount", "droppedCount",
+			"coalescedCount", "averageLatencyMillis", "maxLatencyMillis" })
+	public ListenerQueueSnapshot(String listenerClass, String overflowPolicy,
+			int queues, int depth, long queuedCount, long deliveredCount,
+			long droppedCount, long coalescedCount,
+			double averageLatencyMillis, double maxLatencyMillis) {
+		this.listenerClass = listenerClass;
+		this.overflowPolicy = overflowPolicy;
+		this.queues = queues;
+		this.depth = depth;
+		this.queuedCount = queuedCount;
+		this.deliveredCount = deliveredCount;
+		this.droppedCount = droppedCount;
+		this.coalescedCount = coalescedCount;
+		this.averageLatencyMillis = averageLatencyMillis;
+		this.maxLatencyMillis = maxLatencyMillis;
+	}
+
+	public String getListenerClass() {
+		return listenerClass;
+	}
+
+	public String getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * @return Number of listeners of the class, each with its own queue
+	 */
+	public int getQueues() {
+		return queues;
+	}
+
+	/**
+	 * @return Number of events waiting for delivery
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getQueuedCount() {
+		return queuedCount;
+	}
+
+	public long getDeliveredCount() {
+		return deliveredCount;
+	}
+
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * @return Number of queued events replaced with a newer value of their
+	 *         metric
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * @return Average time from queueing an event to its delivery
+	 */
+	public double getAverageLatencyMillis() {
+		return averageLatencyMillis;
+	}
+
+	public double getMaxLatencyMillis() {
+		return maxLatencyMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s (%s): queues=%d depth=%d queued=%d delivered=%d dropped=%d coalesced=%d latency avg=%.1fms max=%.1fms",
+				listenerClass, overflowPolicy, queues, depth, queuedCount,
+				deliveredCount, droppedCount, coalescedCount,
+				averageLatencyMillis, maxLatencyMillis);
+	}
+
+}
@@ -0,0 +1,98 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.core;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * Cost and activity of a single rule since the instrumentation was reset (see
+ * {@link ICoreInstrumentation#getRuleProfiles()}). CPU and wall time spent
+ * by the rule engine evaluating the rule's statement are reported by Esper's
+ * statement metrics, so they are updated once per reporting interval.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class RuleProfile implements Serializable {
+
+	private static final long serialVersionUID = -2304471360947265133L;
+
+	private final String ruleName;
+	private final long cpuTimeMicros;
+	private final long wallTimeMicros;
+	private final long eventsIn;
+	private final long eventsMatched;
+	private final long actionsTriggered;
+
+	@ConstructorProperties({ "ruleName", "cpuTimeMicros", "wallTimeMicros",
+			"eventsIn", "eventsMatched", "actionsTriggered" })
+	public RuleProfile(String ruleName, long cpuTimeMicros,
+			long wallTimeMicros, long eventsIn, long eventsMatched,
+			long actionsTriggered) {
+		this.ruleName = ruleName;
+		this.cpuTimeMicros = cpuTimeMicros;
+		this.wallTimeMicros = wallTimeMicros;
+		this.eventsIn = eventsIn;
+		this.eventsMatched = eventsMatched;
+		this.actionsTriggered = actionsTriggered;
+	}
+
+	public String getRuleName() {
+		return ruleName;
+	}
+
+	public long getCpuTimeMicros() {
+		return cpuTimeMicros;
+	}
+
+	public long getWallTimeMicros() {
+		return wallTimeMicros;
+	}
+
+	/**
+	 * @return Number of events evaluated by the rule's statement
+	 */
+	public long getEventsIn() {
+		return eventsIn;
+	}
+
+	/**
+	 * @return Number of events for which the rule's condition was met
+	 */
+	public long getEventsMatched() {
+		return eventsMatched;
+	}
+
+	/**
+	 * @return Number of times the rule requested its action; requests
+	 *         skipped because of the grace period aren't counted
+	 */
+	public long getActionsTriggered() {
+		return actionsTriggered;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s: cpu=%dus wall=%dus in=%d matched=%d actions=%d",
+				ruleName, cpuTimeMicros, wallTimeMicros, eventsIn,
+				eventsMatched, actionsTriggered);
+	}
+
+}
@@ -0,0 +1,49 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.api.db;
+
+import java.util.Date;
+
+/**
+ * Receives the stored history streamed by
+ * {@link IStorageService#streamHistory(Date, Date, IHistoryRecordHandler)},
+ * one record at a time, in timestamp order.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public interface IHistoryRecordHandler {
+
+	/**
+	 * @param timestamp
+	 *            Time (in milliseconds since the epoch) at which the value was
+	 *            stored
+	 */
+	void handleMetricValue(String metricURI, String resourceURI,
+			long timestamp, double value);
+
+	/**
+	 * @param timestamp
+	 *            Time (in milliseconds since the epoch) at which the value was
+	 *            measured
+	 */
+	void handleMeasurement(String instanceURI, String capabilityURI,
+			long timestamp, double value);
+
+}
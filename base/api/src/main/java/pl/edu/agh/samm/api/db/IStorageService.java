@@ -61,4 +61,11 @@ public interface IStorageService {
 	List<IMetric> getAllKnownMetrics();
 
 	List<Number> getHistoricalMetricValues(String metricURI, String resourceURI);
+
+	/**
+	 * Streams stored metric values and measurements from the given period to
+	 * the handler, ordered by their timestamps. Records aren't collected in
+	 * memory, so the period may span days of history.
+	 */
+	void streamHistory(Date startTime, Date endTime, IHistoryRecordHandler handler);
 }
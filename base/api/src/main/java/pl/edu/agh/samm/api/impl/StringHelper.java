@@ -97,4 +97,54 @@ public class StringHelper {
 		}
         return uri.substring(0, indexOfSlash);
 	}
+
+	/**
+	 * Returns the literal text every string matching the given regular
+	 * expression has to start with, e.g. <code>/Amazon/EC2/</code> for
+	 * <code>/Amazon/EC2/.*Thread_.*</code>. The prefix is conservative -
+	 * regular expressions with alternatives, groups or flags at the beginning
+	 * give an empty prefix.
+	 * 
+	 * @param regex
+	 *            Regular expression (in {@link java.util.regex.Pattern}
+	 *            syntax)
+	 * @return Literal prefix, possibly empty
+	 */
+	public static String getRegexLiteralPrefix(String regex) {
+		if (regex.indexOf('|') != -1) {
+			// alternatives may start with anything
+			return "";
+		}
+		StringBuilder prefix = new StringBuilder();
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			char literal;
+			int next;
+			if (c == '\\') {
+				if (i + 1 >= regex.length()
+						|| Character.isLetterOrDigit(regex.charAt(i + 1))) {
+					// character classes, \Q, back references...
+					break;
+				}
+				literal = regex.charAt(i + 1);
+				next = i + 2;
+			} else if ("^$.[]()*+?{}".indexOf(c) != -1) {
+				break;
+			} else {
+				literal = c;
+				next = i + 1;
+			}
+			if (next < regex.length() && "*+?{".indexOf(regex.charAt(next)) != -1) {
+				// quantified - may not be there (or repeated)
+				break;
+			}
+			prefix.append(literal);
+			i = next;
+		}
+		if (prefix.length() == 0 && regex.startsWith("^")) {
+			return getRegexLiteralPrefix(regex.substring(1));
+		}
+		return prefix.toString();
+	}
 }
@@ -20,6 +20,17 @@ package pl.edu.agh.samm.api.metrics;
 public interface IMetricEvent {
 	IMetric getMetric();
 
+	/**
+	 * Same as <code>getMetric().getMetricURI()</code> - a property of the
+	 * event itself, so rule filters on it can be indexed by the rule engine
+	 */
+	String getMetricURI();
+
+	/**
+	 * Same as <code>getMetric().getResourceURI()</code>
+	 */
+	String getResourceURI();
+
 	String getResourceType();
 
 	Number getValue();
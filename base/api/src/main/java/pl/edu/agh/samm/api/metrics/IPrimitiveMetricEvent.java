@@ -0,0 +1,39 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.metrics;
+
+/**
+ * Metric event carrying the value as a primitive <code>double</code>. Events
+ * fired by the metrics manager implement this interface - listeners which
+ * know about it can read the value without unboxing, while the ones using
+ * {@link IMetricEvent#getValue()} keep working unchanged.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public interface IPrimitiveMetricEvent extends IMetricEvent {
+
+	double getDoubleValue();
+
+	/**
+	 * @return Time (in milliseconds since the epoch) at which the value was
+	 *         computed
+	 */
+	long getTimestamp();
+
+}
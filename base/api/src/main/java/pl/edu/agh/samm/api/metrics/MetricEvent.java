@@ -41,4 +41,12 @@ public class MetricEvent implements IMetricEvent {
 		return metric;
 	}
 
+	public String getMetricURI() {
+		return metric.getMetricURI();
+	}
+
+	public String getResourceURI() {
+		return metric.getResourceURI();
+	}
+
 }
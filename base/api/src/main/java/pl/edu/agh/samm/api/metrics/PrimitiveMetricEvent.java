@@ -0,0 +1,84 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.metrics;
+
+/**
+ * Immutable {@link IPrimitiveMetricEvent}. A single instance is shared by all
+ * listeners of a metric, so it must never be modified after it is fired. The
+ * value is boxed only if a listener asks for it with {@link #getValue()}.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public final class PrimitiveMetricEvent implements IPrimitiveMetricEvent {
+
+	private final IMetric metric;
+	private final String resourceType;
+	private final double value;
+	private final long timestamp;
+
+	public PrimitiveMetricEvent(IMetric metric, double value,
+			String resourceType, long timestamp) {
+		this.metric = metric;
+		this.value = value;
+		this.resourceType = resourceType;
+		this.timestamp = timestamp;
+	}
+
+	@Override
+	public IMetric getMetric() {
+		return metric;
+	}
+
+	@Override
+	public String getMetricURI() {
+		return metric.getMetricURI();
+	}
+
+	@Override
+	public String getResourceURI() {
+		return metric.getResourceURI();
+	}
+
+	@Override
+	public String getResourceType() {
+		return resourceType;
+	}
+
+	@Override
+	public Number getValue() {
+		return Double.valueOf(value);
+	}
+
+	@Override
+	public double getDoubleValue() {
+		return value;
+	}
+
+	@Override
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return "PrimitiveMetricEvent [metric=" + metric + ", value=" + value
+				+ ", timestamp=" + timestamp + "]";
+	}
+
+}
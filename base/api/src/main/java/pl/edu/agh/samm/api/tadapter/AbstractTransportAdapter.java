@@ -17,6 +17,8 @@
 
 package pl.edu.agh.samm.api.tadapter;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -24,6 +26,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pl.edu.agh.samm.api.core.Resource;
+
 /**
  * @author Pawel Koperek <pkoperek@gmail.com>
  * @author Mateusz Kupisz <mkupisz@gmail.com>
@@ -36,6 +40,50 @@ public abstract class AbstractTransportAdapter implements ITransportAdapter {
 	private static final Logger logger = LoggerFactory
 			.getLogger(AbstractTransportAdapter.class);
 
+	/**
+	 * Reads capabilities one by one with
+	 * {@link #getCapabilityValue(Resource, String)}. Adapters which can fetch
+	 * several values in one request should override it.
+	 */
+	@Override
+	public Map<String, Object> getCapabilityValues(Resource resource,
+			Collection<String> capabilityTypes) throws Exception {
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (String capabilityType : capabilityTypes) {
+			values.put(capabilityType,
+					getCapabilityValue(resource, capabilityType));
+		}
+		return values;
+	}
+
+	/**
+	 * Reads resources one by one with
+	 * {@link #getCapabilityValues(Resource, Collection)}.
+	 */
+	@Override
+	public CapabilityReadResults getCapabilityValues(
+			Map<Resource, Collection<String>> capabilityTypes) {
+		CapabilityReadResults results = new CapabilityReadResults();
+		for (Map.Entry<Resource, Collection<String>> reads : capabilityTypes
+				.entrySet()) {
+			try {
+				results.addValues(reads.getKey(),
+						getCapabilityValues(reads.getKey(), reads.getValue()));
+			} catch (Exception e) {
+				results.setFailure(reads.getKey(), e);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * By default every resource is treated as a separate endpoint.
+	 */
+	@Override
+	public String getEndpointKey(Resource resource) {
+		return resource.getUri();
+	}
+
 	@Override
 	public void addTransportAdapterListener(
 			final IResourceDiscoveryListener listener) {
@@ -0,0 +1,85 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.api.tadapter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import pl.edu.agh.samm.api.core.Resource;
+
+/**
+ * Results of reading capabilities of several resources at once (see
+ * {@link ITransportAdapter#getCapabilityValues(Map)}). Each resource either
+ * has its values or the reason why they couldn't be read.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class CapabilityReadResults {
+
+	private final Map<Resource, Map<String, Object>> values = new IdentityHashMap<Resource, Map<String, Object>>();
+	private final Map<Resource, Exception> failures = new IdentityHashMap<Resource, Exception>();
+
+	public void addValue(Resource resource, String capabilityType, Object value) {
+		if (failures.containsKey(resource)) {
+			return;
+		}
+		Map<String, Object> resourceValues = values.get(resource);
+		if (resourceValues == null) {
+			resourceValues = new HashMap<String, Object>();
+			values.put(resource, resourceValues);
+		}
+		resourceValues.put(capabilityType, value);
+	}
+
+	public void addValues(Resource resource, Map<String, Object> capabilityValues) {
+		for (Map.Entry<String, Object> value : capabilityValues.entrySet()) {
+			addValue(resource, value.getKey(), value.getValue());
+		}
+	}
+
+	/**
+	 * Marks all reads of the resource as failed. Values read so far are
+	 * discarded.
+	 */
+	public void setFailure(Resource resource, Exception e) {
+		values.remove(resource);
+		if (!failures.containsKey(resource)) {
+			failures.put(resource, e);
+		}
+	}
+
+	public Exception getFailure(Resource resource) {
+		return failures.get(resource);
+	}
+
+	public boolean isFailed(Resource resource) {
+		return failures.containsKey(resource);
+	}
+
+	public Map<String, Object> getValues(Resource resource) {
+		Map<String, Object> resourceValues = values.get(resource);
+		if (resourceValues == null) {
+			return Collections.emptyMap();
+		}
+		return resourceValues;
+	}
+
+}
@@ -17,7 +17,9 @@
 
 package pl.edu.agh.samm.api.tadapter;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import pl.edu.agh.samm.api.action.Action;
 import pl.edu.agh.samm.api.core.Resource;
@@ -35,6 +37,41 @@ public interface ITransportAdapter {
 	Object getCapabilityValue(Resource resource, String capabilityType)
 			throws Exception;
 
+	/**
+	 * Reads values of several capabilities of a resource at once. Adapters
+	 * should use it to fetch all values in as few requests to the monitored
+	 * system as possible.
+	 * 
+	 * @param resource
+	 *            Resource to read capabilities of
+	 * @param capabilityTypes
+	 *            URIs of capabilities to read
+	 * @return Map from capability URI to its value
+	 * @throws Exception
+	 *             if any of the values couldn't be read
+	 */
+	Map<String, Object> getCapabilityValues(Resource resource,
+			Collection<String> capabilityTypes) throws Exception;
+
+	/**
+	 * Reads capabilities of several resources (usually sharing the same
+	 * endpoint) at once. Failure of one resource doesn't affect the others -
+	 * it is reported in the returned results.
+	 * 
+	 * @param capabilityTypes
+	 *            URIs of capabilities to read for each resource
+	 * @return Values or failures of all given resources
+	 */
+	CapabilityReadResults getCapabilityValues(
+			Map<Resource, Collection<String>> capabilityTypes);
+
+	/**
+	 * Returns a key of the endpoint (e.g. connection) used to communicate with
+	 * the resource. Resources with equal keys can be efficiently read together
+	 * with {@link #getCapabilityValues(Map)}.
+	 */
+	String getEndpointKey(Resource resource);
+
 	boolean hasCapability(Resource resource, String capabilityType)
 			throws Exception;
 
@@ -0,0 +1,60 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of the benchmarks jar. Accepts the usual JMH command line
+ * (benchmark name regexps, <code>-p</code>, <code>-prof</code> etc.) and
+ * always writes the results as JSON, so runs of different releases can be
+ * compared. The results go to <code>benchmarks-&lt;version&gt;.json</code>
+ * or to the file given with <code>-Dsamm.benchmarks.result=...</code>.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public final class BenchmarkRunner {
+
+	public static final String RESULT_PROPERTY = "samm.benchmarks.result";
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		String version = BenchmarkRunner.class.getPackage()
+				.getImplementationVersion();
+		String result = System.getProperty(RESULT_PROPERTY, "benchmarks-"
+				+ (version == null ? "dev" : version) + ".json");
+
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.resultFormat(ResultFormatType.JSON).result(result)
+				.shouldFailOnError(true).build();
+		new Runner(options).run();
+		System.out.println("Results written to "
+				+ new File(result).getAbsolutePath());
+	}
+
+}
@@ -0,0 +1,94 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.edu.agh.samm.api.action.Action;
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.tadapter.AbstractTransportAdapter;
+
+/**
+ * In-memory transport adapter returning fixed capability values. Reads do not
+ * allocate, so benchmarks using it measure only the metrics pipeline.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ConstantTransportAdapter extends AbstractTransportAdapter {
+
+	private final Map<String, Object> values = new HashMap<String, Object>();
+
+	public ConstantTransportAdapter withValue(String capability, Object value) {
+		values.put(capability, value);
+		return this;
+	}
+
+	@Override
+	public Object getCapabilityValue(Resource resource, String capabilityType)
+			throws Exception {
+		return values.get(capabilityType);
+	}
+
+	@Override
+	public Map<String, Object> getCapabilityValues(Resource resource,
+			Collection<String> capabilityTypes) throws Exception {
+		return values;
+	}
+
+	@Override
+	public boolean hasCapability(Resource resource, String capabilityType)
+			throws Exception {
+		return values.containsKey(capabilityType);
+	}
+
+	@Override
+	public void registerResource(Resource resource) throws Exception {
+	}
+
+	@Override
+	public void unregisterResource(Resource resource) {
+	}
+
+	@Override
+	public boolean isURISupported(Resource resource) {
+		return true;
+	}
+
+	@Override
+	public void discoverChildren(Resource resource, List<String> types)
+			throws Exception {
+	}
+
+	@Override
+	public boolean isActionSupported(String actionUri) {
+		return false;
+	}
+
+	@Override
+	public boolean isResourceRegistered(Resource resource) {
+		return true;
+	}
+
+	@Override
+	public void executeAction(Action actionToExecute) throws Exception {
+	}
+
+}
@@ -0,0 +1,259 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import pl.edu.agh.samm.tsstore.GorillaDecoder;
+import pl.edu.agh.samm.tsstore.GorillaEncoder;
+import pl.edu.agh.samm.tsstore.TimeSeriesStorageService;
+
+/**
+ * Compression ratio and encode/decode throughput of the Gorilla encoding used
+ * for the closed segments of the time series store, per series and in the
+ * store itself (size on disk and full-history scans through the storage
+ * service, with and without compression).<br>
+ * The series are read from a CSV file with <code>series,timestamp,value</code>
+ * lines (timestamps in milliseconds), e.g. exported from a running SAMM
+ * instance. Without the file a week of gauges typical for SAMM is generated,
+ * polled every 10 s with a few milliseconds of jitter: a queue length, an
+ * instance count, a CPU usage, a heap size and a constant.<br>
+ * Usage: <code>GorillaCompressionHarness [csv file]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class GorillaCompressionHarness {
+
+	private static final int BLOCK = 1024;
+	private static final int ROUNDS = 20;
+	private static final long INTERVAL = 10000L;
+	private static final int VALUES = 7 * 24 * 360;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, Series> series = args.length > 0 ? read(new File(args[0]))
+				: generate();
+		// warm-up
+		for (Series s : series.values()) {
+			int[] offsets = new int[(s.size + BLOCK - 1) / BLOCK];
+			decode(toDirectBuffer(encode(s, offsets)), offsets, s.size);
+		}
+		long totalValues = 0;
+		long totalBytes = 0;
+		for (Map.Entry<String, Series> entry : series.entrySet()) {
+			Series s = entry.getValue();
+			byte[] encoded = null;
+			int[] offsets = new int[(s.size + BLOCK - 1) / BLOCK];
+			long encodeStart = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++) {
+				encoded = encode(s, offsets);
+			}
+			long encodeNanos = System.nanoTime() - encodeStart;
+			// as a mapped segment file
+			ByteBuffer buffer = toDirectBuffer(encoded);
+			double checksum = 0.0;
+			long decodeStart = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++) {
+				checksum += decode(buffer, offsets, s.size);
+			}
+			long decodeNanos = System.nanoTime() - decodeStart;
+			totalValues += s.size;
+			totalBytes += encoded.length;
+			System.out.println(String.format(
+					"%-12s values=%d bytes/value=%.2f ratio=%.1f"
+							+ " encode Mvalues/s=%.1f decode Mvalues/s=%.1f"
+							+ " (checksum %.0f)", entry.getKey(), s.size,
+					(double) encoded.length / s.size, 16.0 * s.size
+							/ encoded.length, (double) s.size * ROUNDS
+							/ (encodeNanos / 1e3), (double) s.size * ROUNDS
+							/ (decodeNanos / 1e3), checksum));
+		}
+		System.out.println(String.format(
+				"all          values=%d bytes/value=%.2f ratio=%.1f",
+				totalValues, (double) totalBytes / totalValues, 16.0
+						* totalValues / totalBytes));
+		store(series, false);
+		store(series, true);
+	}
+
+	private static byte[] encode(Series s, int[] offsets) {
+		GorillaEncoder encoder = new GorillaEncoder();
+		for (int block = 0; block < offsets.length; block++) {
+			offsets[block] = encoder.getSize();
+			for (int i = block * BLOCK; i < Math.min(s.size, (block + 1)
+					* BLOCK); i++) {
+				encoder.add(s.times[i], s.values[i]);
+			}
+			encoder.finishBlock();
+		}
+		return encoder.toByteArray();
+	}
+
+	private static ByteBuffer toDirectBuffer(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		return buffer;
+	}
+
+	private static double decode(ByteBuffer buffer, int[] offsets, int size) {
+		double sum = 0.0;
+		for (int block = 0; block < offsets.length; block++) {
+			GorillaDecoder decoder = new GorillaDecoder(buffer, offsets[block]);
+			for (int i = block * BLOCK; i < Math.min(size, (block + 1) * BLOCK); i++) {
+				decoder.next();
+				sum += decoder.getValue();
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Stores the series in the time series store and scans their whole
+	 * history after a restart, i.e. with all segments closed.
+	 */
+	private static void store(Map<String, Series> series, boolean compress)
+			throws Exception {
+		File directory = File.createTempFile("tsstore", "");
+		directory.delete();
+		TimeSeriesStorageService storageService = new TimeSeriesStorageService();
+		storageService.setDataDirectory(directory.getPath());
+		storageService.setCompressClosedSegments(compress);
+		storageService.init();
+		for (Map.Entry<String, Series> entry : series.entrySet()) {
+			Series s = entry.getValue();
+			for (int i = 0; i < s.size; i++) {
+				storageService.storeMeasurement("/bench/JVM_1",
+						entry.getKey(), new Date(s.times[i]), s.values[i]);
+			}
+		}
+		storageService.destroy();
+		storageService.init();
+
+		long values = 0;
+		long scanStart = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			for (String name : series.keySet()) {
+				values += storageService.getHistoricalMeasurementValues(
+						"/bench/JVM_1", name).size();
+			}
+		}
+		long scanNanos = System.nanoTime() - scanStart;
+		System.out.println(String.format(
+				"store %-12s size KB=%.1f bytes/value=%.2f"
+						+ " scan Mvalues/s=%.1f",
+				compress ? "compressed" : "raw",
+				storageService.getSizeOnDisk() / 1024.0,
+				(double) storageService.getSizeOnDisk() * ROUNDS / values,
+				values / (scanNanos / 1e3)));
+		storageService.destroy();
+		delete(directory);
+	}
+
+	private static Map<String, Series> read(File file) throws Exception {
+		Map<String, Series> series = new LinkedHashMap<String, Series>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(",");
+				if (fields.length != 3) {
+					continue;
+				}
+				Series s = series.get(fields[0]);
+				if (s == null) {
+					s = new Series();
+					series.put(fields[0], s);
+				}
+				s.add(Long.parseLong(fields[1].trim()),
+						Double.parseDouble(fields[2].trim()));
+			}
+		} finally {
+			reader.close();
+		}
+		return series;
+	}
+
+	private static Map<String, Series> generate() {
+		Random random = new Random(0);
+		Map<String, Series> series = new LinkedHashMap<String, Series>();
+		String[] names = { "queueLength", "instances", "cpuUsage",
+				"heapUsed", "constant" };
+		for (String name : names) {
+			series.put(name, new Series());
+		}
+		long time = System.currentTimeMillis() - VALUES * INTERVAL;
+		int queue = 0;
+		int instances = 2;
+		double heap = 64 * 1024 * 1024;
+		for (int i = 0; i < VALUES; i++) {
+			time += INTERVAL + random.nextInt(5);
+			queue = Math.max(0, queue + random.nextInt(3) - 1);
+			if (random.nextInt(500) == 0) {
+				instances = Math.max(1, instances + random.nextInt(3) - 1);
+			}
+			// heap grows until a collection frees most of it
+			heap += random.nextInt(1024 * 1024);
+			if (heap > 512 * 1024 * 1024) {
+				heap = 64 * 1024 * 1024;
+			}
+			series.get("queueLength").add(time, queue);
+			series.get("instances").add(time, instances);
+			series.get("cpuUsage").add(time,
+					Math.round((30 + random.nextGaussian() * 5) * 10) / 10.0);
+			series.get("heapUsed").add(time, heap);
+			series.get("constant").add(time, 1.0);
+		}
+		return series;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static class Series {
+
+		private long[] times = new long[1024];
+		private double[] values = new double[1024];
+		private int size = 0;
+
+		void add(long time, double value) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			times[size] = time;
+			values[size] = value;
+			size++;
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.metrics.CoreInstrumentation;
+import pl.edu.agh.samm.metrics.IMetricProblemObserver;
+import pl.edu.agh.samm.metrics.MetricTask;
+import pl.edu.agh.samm.metrics.SingleCapabilityMetricTask;
+import pl.edu.agh.samm.tadapter.jmx.JMXTransportAdapterImpl;
+
+/**
+ * Cost of the core instrumentation on the polling hot path: a single poll of
+ * a metric (adapter call, value computation, fan-out to the listeners) with
+ * instrumentation <code>off</code> (not set), <code>disabled</code> (set but
+ * switched off over JMX) and <code>enabled</code>. The <code>constant</code>
+ * adapter makes a poll almost free, so it shows the worst case; the
+ * <code>jmx</code> one reads over RMI from an in-process MBean server.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class InstrumentationOverheadBenchmark {
+
+	private static final String CAPABILITY = JmxTargets.NS
+			+ "HeapUsageTypeCapability";
+	private static final String METRIC = JmxTargets.NS + "HeapUsageMetric";
+
+	@Param({ "off", "disabled", "enabled" })
+	public String instrumentation;
+
+	@Param({ "1", "4" })
+	public int listeners;
+
+	@Param({ "constant", "jmx" })
+	public String adapter;
+
+	private MetricTask task;
+	private LocalJmxServer server;
+	private JMXTransportAdapterImpl jmxAdapter;
+
+	@Setup
+	public void setUp() throws Exception {
+		Resource resource;
+		if ("jmx".equals(adapter)) {
+			server = new LocalJmxServer();
+			server.start();
+			jmxAdapter = JmxTargets.createAdapter();
+			resource = JmxTargets.createJvmResource(jmxAdapter,
+					server.getServiceUrl(), "/bench/JVM_1");
+		} else {
+			resource = new Resource("/bench/JVM_1", JmxTargets.JVM_TYPE,
+					new HashMap<String, Object>());
+			resource.addTransportAdapter(new ConstantTransportAdapter()
+					.withValue(CAPABILITY, Long.valueOf(123456789L)));
+		}
+		IMetric metric = new Metric(METRIC, resource.getUri(), 1000L);
+
+		task = new SingleCapabilityMetricTask(metric,
+				Arrays.asList(CAPABILITY), resource);
+		task.init();
+		task.setProblemObserver(new IMetricProblemObserver() {
+			@Override
+			public void problemOcurred(IMetric metric, Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		for (int i = 0; i < listeners; i++) {
+			task.addMetricListener(new MetricPollAllocationBenchmark.PrimitiveListener());
+		}
+		if (!"off".equals(instrumentation)) {
+			CoreInstrumentation coreInstrumentation = new CoreInstrumentation();
+			coreInstrumentation.setEnabled("enabled".equals(instrumentation));
+			task.setInstrumentation(coreInstrumentation);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		if (jmxAdapter != null) {
+			jmxAdapter.destroy();
+			server.stop();
+		}
+	}
+
+	@Benchmark
+	public void poll() {
+		task.run();
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.tadapter.jmx.JMXTransportAdapterImpl;
+
+/**
+ * Reading a single attribute through
+ * {@link JMXTransportAdapterImpl#getCapabilityValue(Resource, String)} from an
+ * in-process MBean server (over RMI, see {@link LocalJmxServer}): a plain
+ * attribute (<code>Uptime</code>) and a field of a composite one
+ * (<code>HeapMemoryUsage.used</code>).
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JmxAttributeReadBenchmark {
+
+	@Param({ "UptimeTypeCapability", "HeapUsageTypeCapability" })
+	public String capability;
+
+	private LocalJmxServer server;
+	private JMXTransportAdapterImpl adapter;
+	private Resource resource;
+	private String capabilityType;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = new LocalJmxServer();
+		server.start();
+		adapter = JmxTargets.createAdapter();
+		resource = JmxTargets.createJvmResource(adapter,
+				server.getServiceUrl(), "/bench/JVM_1");
+		capabilityType = JmxTargets.NS + capability;
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		adapter.destroy();
+		server.stop();
+	}
+
+	@Benchmark
+	public Object getCapabilityValue() throws Exception {
+		return adapter.getCapabilityValue(resource, capabilityType);
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.tadapter.jmx.JMXTransportAdapterImpl;
+
+/**
+ * Reading N JVM capabilities over RMI from an in-process MBean server: one
+ * getCapabilityValue() per capability versus a single getCapabilityValues().
+ * Round-trips per operation are printed at the end of every iteration.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JmxBatchReadBenchmark {
+
+	@Param({ "2", "5", "10" })
+	public int capabilities;
+
+	private LocalJmxServer server;
+	private JMXTransportAdapterImpl adapter;
+	private Resource resource;
+	private long operations;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = new LocalJmxServer();
+		server.start();
+		adapter = JmxTargets.createAdapter();
+		resource = JmxTargets.createJvmResource(adapter,
+				server.getServiceUrl(), "/bench/JVM_1");
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		adapter.destroy();
+		server.stop();
+	}
+
+	@Setup(Level.Iteration)
+	public void resetCounters() {
+		server.resetRoundTrips();
+		operations = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void reportRoundTrips() {
+		System.out.println(String.format(" round-trips/op: %.2f",
+				(double) server.getRoundTrips() / Math.max(1, operations)));
+	}
+
+	@Benchmark
+	public Map<String, Object> perCapability() throws Exception {
+		operations++;
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (String capability : JmxTargets.JVM_CAPABILITIES.subList(0,
+				capabilities)) {
+			values.put(capability,
+					adapter.getCapabilityValue(resource, capability));
+		}
+		return values;
+	}
+
+	@Benchmark
+	public Map<String, Object> batched() throws Exception {
+		operations++;
+		return adapter.getCapabilityValues(resource,
+				JmxTargets.JVM_CAPABILITIES.subList(0, capabilities));
+	}
+
+}
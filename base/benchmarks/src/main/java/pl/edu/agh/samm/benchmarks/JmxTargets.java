@@ -0,0 +1,87 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.tadapter.jmx.JMXAdapterConfigurator;
+import pl.edu.agh.samm.tadapter.jmx.JMXTransportAdapterImpl;
+
+/**
+ * JMX adapter and JVM resources used by the JMX benchmarks. Capabilities are
+ * the JVM capabilities from the default adapter mappings which are available
+ * on every HotSpot JVM.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public final class JmxTargets {
+
+	public static final String NS = "http://www.icsr.agh.edu.pl/samm_1.owl#";
+	public static final String JVM_TYPE = NS + "JVM";
+
+	public static final List<String> JVM_CAPABILITIES = Arrays.asList(NS
+			+ "UptimeTypeCapability", NS + "JVMTotalCPUTimeTypeCapability", NS
+			+ "HeapUsageTypeCapability", NS + "NonHeapUsageTypeCapability", NS
+			+ "LiveThreadsCountTypeCapability", NS
+			+ "TotalStartedThreadsCountTypeCapability", NS
+			+ "CurrentLoadedClassesTypeCapability", NS
+			+ "TotalLoadedClassesTypeCapability", NS
+			+ "TotalUnloadedClassesTypeCapability", NS
+			+ "TotalCompilationTimeTypeCapability");
+
+	private JmxTargets() {
+	}
+
+	public static JMXTransportAdapterImpl createAdapter() throws Exception {
+		Properties mappings = new Properties();
+		InputStream inputStream = JMXTransportAdapterImpl.class
+				.getResourceAsStream("/jmxadapter.mappings.properties");
+		try {
+			mappings.load(inputStream);
+		} finally {
+			inputStream.close();
+		}
+		JMXAdapterConfigurator configurator = new JMXAdapterConfigurator();
+		configurator.setDefaultMappings(mappings);
+		configurator.init();
+
+		JMXTransportAdapterImpl adapter = new JMXTransportAdapterImpl();
+		adapter.setJmxAdapterConfigurator(configurator);
+		adapter.init();
+		return adapter;
+	}
+
+	public static Resource createJvmResource(JMXTransportAdapterImpl adapter,
+			String serviceUrl, String uri) throws Exception {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(JMXTransportAdapterImpl.JMX_TRANSPORT_PROPERTY_KEY,
+				serviceUrl);
+		Resource resource = new Resource(uri, JVM_TYPE, properties);
+		resource.addTransportAdapter(adapter);
+		adapter.registerResource(resource);
+		return resource;
+	}
+
+}
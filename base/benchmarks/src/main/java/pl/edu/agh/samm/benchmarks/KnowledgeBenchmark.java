@@ -0,0 +1,73 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.knowledge.impl.KnowledgeImpl;
+import pl.edu.agh.samm.knowledge.impl.OntModelProviderImpl;
+
+/**
+ * {@link KnowledgeImpl#getUsedCapabilities(String)} - called for every
+ * started metric - over the bundled ontology, for all metrics defined in it
+ * in turn.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KnowledgeBenchmark {
+
+	private KnowledgeImpl knowledge;
+	private List<String> metrics;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		OntModelProviderImpl ontModelProvider = new OntModelProviderImpl();
+		ontModelProvider.init();
+		knowledge = new KnowledgeImpl();
+		knowledge.setOntModelProvider(ontModelProvider);
+		metrics = knowledge.getAllAvailableMetrics();
+	}
+
+	@Benchmark
+	public List<String> getUsedCapabilities() {
+		String metric = metrics.get(next);
+		next = (next + 1) % metrics.size();
+		return knowledge.getUsedCapabilities(metric);
+	}
+
+}
@@ -0,0 +1,84 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe, fixed resolution histogram used by the benchmark harnesses to
+ * report latency percentiles. Values are kept in buckets of
+ * <code>resolutionMicros</code>; anything above the range ends up in the last
+ * bucket.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class LatencyRecorder {
+
+	private final long resolutionNanos;
+	private final AtomicLongArray buckets;
+
+	public LatencyRecorder(long resolutionMicros, long maxMillis) {
+		this.resolutionNanos = TimeUnit.MICROSECONDS.toNanos(resolutionMicros);
+		this.buckets = new AtomicLongArray((int) (TimeUnit.MILLISECONDS
+				.toNanos(maxMillis) / resolutionNanos) + 1);
+	}
+
+	public void recordNanos(long nanos) {
+		int bucket = (int) Math.min(buckets.length() - 1,
+				Math.max(0L, nanos) / resolutionNanos);
+		buckets.incrementAndGet(bucket);
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @param percentile
+	 *            Percentile (0-100)
+	 * @return Upper bound of the bucket containing given percentile (in
+	 *         milliseconds)
+	 */
+	public double getPercentileMillis(double percentile) {
+		long count = getCount();
+		long threshold = (long) Math.ceil(count * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= threshold && seen > 0) {
+				return (i + 1) * resolutionNanos / 1e6;
+			}
+		}
+		return 0.0;
+	}
+
+	public String summary() {
+		return String.format(
+				"count=%d p50=%.1fms p90=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms",
+				getCount(), getPercentileMillis(50), getPercentileMillis(90),
+				getPercentileMillis(99), getPercentileMillis(99.9),
+				getPercentileMillis(100));
+	}
+
+}
@@ -0,0 +1,117 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.MBeanServerForwarder;
+
+/**
+ * Exposes the platform MBean server through an RMI connector on a free local
+ * port, so the JMX transport adapter talks to it exactly like to a remote JVM
+ * (every call is a real RMI round-trip). Calls reaching the MBean server are
+ * counted.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class LocalJmxServer {
+
+	private final AtomicLong roundTrips = new AtomicLong();
+	private Registry registry;
+	private JMXConnectorServer connectorServer;
+	private String serviceUrl;
+
+	public void start() throws Exception {
+		int port = findFreePort();
+		registry = LocateRegistry.createRegistry(port);
+		serviceUrl = "service:jmx:rmi:///jndi/rmi://localhost:" + port
+				+ "/jmxrmi";
+		connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(
+				new JMXServiceURL(serviceUrl), null,
+				ManagementFactory.getPlatformMBeanServer());
+		connectorServer.setMBeanServerForwarder(createCountingForwarder());
+		connectorServer.start();
+	}
+
+	public void stop() throws Exception {
+		connectorServer.stop();
+		UnicastRemoteObject.unexportObject(registry, true);
+	}
+
+	public String getServiceUrl() {
+		return serviceUrl;
+	}
+
+	public long getRoundTrips() {
+		return roundTrips.get();
+	}
+
+	public void resetRoundTrips() {
+		roundTrips.set(0L);
+	}
+
+	private MBeanServerForwarder createCountingForwarder() {
+		InvocationHandler handler = new InvocationHandler() {
+			private MBeanServer target;
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+					throws Throwable {
+				if (method.getName().equals("setMBeanServer")) {
+					target = (MBeanServer) args[0];
+					return null;
+				} else if (method.getName().equals("getMBeanServer")) {
+					return target;
+				}
+				roundTrips.incrementAndGet();
+				try {
+					return method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		};
+		return (MBeanServerForwarder) Proxy.newProxyInstance(
+				MBeanServerForwarder.class.getClassLoader(),
+				new Class<?>[] { MBeanServerForwarder.class }, handler);
+	}
+
+	private int findFreePort() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+
+}
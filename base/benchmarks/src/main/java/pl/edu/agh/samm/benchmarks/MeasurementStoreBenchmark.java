@@ -0,0 +1,121 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+import pl.edu.agh.samm.db.impl.MeasurementValueDAO;
+import pl.edu.agh.samm.db.impl.SchemaMigration;
+import pl.edu.agh.samm.db.impl.UriDictionaryDAO;
+
+/**
+ * {@link MeasurementValueDAO#store(MeasurementValue)} against a file-backed
+ * HSQLDB database created in a temporary directory with the schema of the
+ * DB listener. Like in the DB listener bundle, a single connection is used.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MeasurementStoreBenchmark {
+
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+	private static final int RESOURCES = 100;
+
+	private File directory;
+	private SingleConnectionDataSource dataSource;
+	private MeasurementValueDAO dao;
+	private MeasurementValue[] values;
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws Exception {
+		directory = File.createTempFile("sammdb", "");
+		directory.delete();
+		directory.mkdirs();
+		Class.forName(DRIVER);
+		String url = "jdbc:hsqldb:file:"
+				+ new File(directory, "sammdb").getAbsolutePath();
+		Connection connection = DriverManager.getConnection(url, "sa", "");
+
+		dataSource = new SingleConnectionDataSource(connection, true);
+		SchemaMigration schemaMigration = new SchemaMigration();
+		schemaMigration.setDataSource(dataSource);
+		schemaMigration.migrate();
+		UriDictionaryDAO uriDictionary = new UriDictionaryDAO();
+		uriDictionary.setDataSource(dataSource);
+		dao = new MeasurementValueDAO();
+		dao.setDataSource(dataSource);
+		dao.setUriDictionary(uriDictionary);
+
+		values = new MeasurementValue[RESOURCES];
+		for (int i = 0; i < RESOURCES; i++) {
+			values[i] = new MeasurementValue();
+			values[i].setCapabilityUri(JmxTargets.NS
+					+ "HeapUsageTypeCapability");
+			values[i].setInstanceUri("/bench/JVM_" + i);
+			values[i].setValue(Double.valueOf(i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		Connection connection = dataSource.getConnection();
+		Statement statement = connection.createStatement();
+		statement.execute("SHUTDOWN");
+		statement.close();
+		dataSource.destroy();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public void store() {
+		MeasurementValue value = values[next];
+		next = (next + 1) % RESOURCES;
+		value.setTimestamp(new Date());
+		dao.store(value);
+	}
+
+}
@@ -0,0 +1,178 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.IPrimitiveMetricEvent;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.metrics.MetricEvent;
+import pl.edu.agh.samm.metrics.IMetricProblemObserver;
+import pl.edu.agh.samm.metrics.MetricTask;
+import pl.edu.agh.samm.metrics.SingleCapabilityMetricTask;
+
+/**
+ * Single poll of a metric with several listeners, from the transport adapter
+ * result to the listeners. <code>legacyPipeline</code> repeats what
+ * MetricTask did before values were kept as primitives (HashMap put per
+ * capability, a MetricEvent per listener, context classloader set per
+ * listener), <code>poll</code> runs the current MetricTask. Run with
+ * <code>-prof gc</code> and compare <code>gc.alloc.rate.norm</code> (bytes
+ * allocated per poll).
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MetricPollAllocationBenchmark {
+
+	private static final String CAPABILITY = JmxTargets.NS
+			+ "HeapUsageTypeCapability";
+	private static final String METRIC = JmxTargets.NS + "HeapUsageMetric";
+
+	@Param({ "1", "4" })
+	public int listeners;
+
+	/**
+	 * <code>primitive</code> listeners read
+	 * {@link IPrimitiveMetricEvent#getDoubleValue()}, <code>boxed</code> ones
+	 * use {@link IMetricEvent#getValue()} like the listeners written before
+	 * the primitive events.
+	 */
+	@Param({ "primitive", "boxed" })
+	public String listenerType;
+
+	private ConstantTransportAdapter adapter;
+	private Resource resource;
+	private IMetric metric;
+	private MetricTask task;
+	private List<IMetricListener> legacyListeners;
+	private List<ClassLoader> legacyClassLoaders;
+	private Map<String, Number> legacyValues;
+
+	@Setup
+	public void setUp() {
+		adapter = new ConstantTransportAdapter().withValue(CAPABILITY,
+				Long.valueOf(123456789L));
+		resource = new Resource("/bench/JVM_1", JmxTargets.JVM_TYPE,
+				new HashMap<String, Object>());
+		resource.addTransportAdapter(adapter);
+		metric = new Metric(METRIC, resource.getUri(), 1000L);
+
+		task = new SingleCapabilityMetricTask(metric,
+				Arrays.asList(CAPABILITY), resource);
+		task.init();
+		task.setProblemObserver(new IMetricProblemObserver() {
+			@Override
+			public void problemOcurred(IMetric metric, Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		legacyListeners = new ArrayList<IMetricListener>();
+		legacyClassLoaders = new ArrayList<ClassLoader>();
+		legacyValues = new HashMap<String, Number>();
+		for (int i = 0; i < listeners; i++) {
+			IMetricListener listener = "boxed".equals(listenerType) ? new BoxedListener()
+					: new PrimitiveListener();
+			task.addMetricListener(listener);
+			legacyListeners.add(listener);
+			legacyClassLoaders.add(Thread.currentThread()
+					.getContextClassLoader());
+		}
+	}
+
+	@Benchmark
+	public void poll() {
+		task.run();
+	}
+
+	@Benchmark
+	public void legacyPipeline() throws Exception {
+		Map<String, Object> capabilityValues = adapter.getCapabilityValues(
+				resource, Arrays.asList(CAPABILITY));
+		legacyValues.put(CAPABILITY, (Number) capabilityValues.get(CAPABILITY));
+		Number value = legacyValues.get(CAPABILITY);
+		for (int i = 0; i < legacyListeners.size(); i++) {
+			Thread.currentThread().setContextClassLoader(
+					legacyClassLoaders.get(i));
+			legacyListeners.get(i).processMetricEvent(
+					new MetricEvent(metric, value, resource.getType()));
+		}
+	}
+
+	/**
+	 * Keeps the last event like the rule engine windows do, so the events
+	 * can't be scalar-replaced.
+	 */
+	public static class PrimitiveListener implements IMetricListener {
+
+		public double sum;
+		public IMetricEvent last;
+
+		@Override
+		public void processMetricEvent(IMetricEvent metricEvent)
+				throws Exception {
+			last = metricEvent;
+			if (metricEvent instanceof IPrimitiveMetricEvent) {
+				sum += ((IPrimitiveMetricEvent) metricEvent).getDoubleValue();
+			} else {
+				sum += metricEvent.getValue().doubleValue();
+			}
+		}
+	}
+
+	public static class BoxedListener implements IMetricListener {
+
+		public double sum;
+		public IMetricEvent last;
+
+		@Override
+		public void processMetricEvent(IMetricEvent metricEvent)
+				throws Exception {
+			last = metricEvent;
+			sum += metricEvent.getValue().doubleValue();
+		}
+	}
+
+}
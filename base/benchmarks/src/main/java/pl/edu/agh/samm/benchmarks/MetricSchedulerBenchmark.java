@@ -0,0 +1,125 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.metrics.IMetricSchedule;
+import pl.edu.agh.samm.metrics.IMetricScheduler;
+
+/**
+ * Cost of scheduling a large number of metrics. Only
+ * {@link #scheduleFireCancel()} compares the schedulers like for like: it
+ * measures both end to end - every task is scheduled, fired and run on a
+ * worker thread (both schedulers have pools of the same size) and cancelled.
+ * {@link #startUpdateStop()} measures only the cost for the calling thread,
+ * which is not comparable - the timing wheel just enqueues the changes for its
+ * tick thread, while the executor updates its delay queue and runs the first
+ * executions at once.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MetricSchedulerBenchmark {
+
+	private static final long PERIOD = TimeUnit.HOURS.toMillis(1);
+
+	@Param({ MetricSchedulers.EXECUTOR, MetricSchedulers.TIMING_WHEEL })
+	public String scheduler;
+
+	@Param({ "100000" })
+	public int metrics;
+
+	@Param({ "10" })
+	public long tickMillis;
+
+	private IMetricScheduler metricScheduler;
+	private IMetricSchedule[] schedules;
+	private final Runnable task = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	@Setup
+	public void setUp() {
+		// without the jitter every first execution is due in the next tick
+		metricScheduler = MetricSchedulers.create(scheduler, tickMillis, false);
+		schedules = new IMetricSchedule[metrics];
+	}
+
+	@TearDown
+	public void tearDown() {
+		MetricSchedulers.destroy(metricScheduler);
+	}
+
+	@Benchmark
+	public IMetricSchedule[] startUpdateStop() {
+		for (int i = 0; i < metrics; i++) {
+			schedules[i] = metricScheduler.schedule(task, PERIOD);
+		}
+		for (int i = 0; i < metrics; i++) {
+			schedules[i].setPeriod(PERIOD / 2);
+		}
+		for (int i = 0; i < metrics; i++) {
+			schedules[i].cancel();
+		}
+		return schedules;
+	}
+
+	@Benchmark
+	public IMetricSchedule[] scheduleFireCancel() throws InterruptedException {
+		final CountDownLatch fired = new CountDownLatch(metrics);
+		// the period is long enough for every task to run only once
+		Runnable firstRun = new Runnable() {
+			@Override
+			public void run() {
+				fired.countDown();
+			}
+		};
+		for (int i = 0; i < metrics; i++) {
+			schedules[i] = metricScheduler.schedule(firstRun, PERIOD);
+		}
+		fired.await();
+		for (int i = 0; i < metrics; i++) {
+			schedules[i].cancel();
+		}
+		return schedules;
+	}
+
+}
@@ -0,0 +1,69 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import pl.edu.agh.samm.metrics.ExecutorMetricScheduler;
+import pl.edu.agh.samm.metrics.IMetricScheduler;
+import pl.edu.agh.samm.metrics.TimingWheelMetricScheduler;
+
+/**
+ * Creates and disposes schedulers compared by the benchmarks.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public final class MetricSchedulers {
+
+	public static final String EXECUTOR = "executor";
+	public static final String TIMING_WHEEL = "timingWheel";
+
+	private MetricSchedulers() {
+	}
+
+	public static IMetricScheduler create(String type, long tickMillis) {
+		return create(type, tickMillis, true);
+	}
+
+	/**
+	 * @param phaseJitter
+	 *            Whether the timing wheel delays first executions by a random
+	 *            number of ticks; the executor always runs them at once
+	 */
+	public static IMetricScheduler create(String type, long tickMillis,
+			boolean phaseJitter) {
+		if (EXECUTOR.equals(type)) {
+			return new ExecutorMetricScheduler();
+		} else if (TIMING_WHEEL.equals(type)) {
+			TimingWheelMetricScheduler scheduler = new TimingWheelMetricScheduler();
+			scheduler.setTickMillis(tickMillis);
+			scheduler.setPhaseJitter(phaseJitter);
+			scheduler.init();
+			return scheduler;
+		}
+		throw new IllegalArgumentException("Unknown scheduler: " + type);
+	}
+
+	public static void destroy(IMetricScheduler scheduler) {
+		if (scheduler instanceof ExecutorMetricScheduler) {
+			((ExecutorMetricScheduler) scheduler).destroy();
+		} else if (scheduler instanceof TimingWheelMetricScheduler) {
+			((TimingWheelMetricScheduler) scheduler).destroy();
+		}
+	}
+
+}
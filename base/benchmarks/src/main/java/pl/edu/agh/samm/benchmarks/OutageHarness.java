@@ -0,0 +1,263 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.impl.StringHelper;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
+import pl.edu.agh.samm.metrics.CircuitBreakerRegistry;
+import pl.edu.agh.samm.metrics.EndpointCircuitBreaker;
+import pl.edu.agh.samm.metrics.ExecutorMetricScheduler;
+import pl.edu.agh.samm.metrics.IMetricProblemObserver;
+import pl.edu.agh.samm.metrics.IMetricSchedule;
+import pl.edu.agh.samm.metrics.MetricPollGroups;
+import pl.edu.agh.samm.metrics.MetricTask;
+import pl.edu.agh.samm.metrics.RunningMetricsManagerImpl;
+import pl.edu.agh.samm.metrics.SingleCapabilityMetricTask;
+
+/**
+ * Simulates an outage of part of the monitored endpoints: while an endpoint
+ * is down every remote call waits for the (simulated) RMI timeout and fails.
+ * Compares three failure policies:
+ * <ul>
+ * <li>retry-stop - metrics are stopped after
+ * {@link RunningMetricsManagerImpl#NUMBER_OF_RETRIES_THRESHOLD} failures (the
+ * previous behaviour)</li>
+ * <li>keep-polling - failing metrics are polled at full rate</li>
+ * <li>circuit-breaker - metrics of failing endpoints are paused by their
+ * {@link EndpointCircuitBreaker}s</li>
+ * </ul>
+ * Reports remote calls made to the failing endpoints during the outage, time
+ * wasted in timed-out calls, metrics lost and the time from the recovery to
+ * the first value of the slowest metric.<br>
+ * Usage: <code>OutageHarness [endpoints] [outageSeconds] [timeoutMillis]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class OutageHarness {
+
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#HeapUsageTypeCapability";
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#HarnessMetric";
+	private static final int RESOURCES_PER_ENDPOINT = 20;
+	private static final long PERIOD = 200L;
+
+	public static void main(String[] args) throws Exception {
+		int endpoints = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		long outage = args.length > 1 ? Long.parseLong(args[1]) : 10L;
+		long timeout = args.length > 2 ? Long.parseLong(args[2]) : 100L;
+
+		System.out.println("endpoints=" + endpoints + " (half of them failing)"
+				+ " metrics=" + endpoints * RESOURCES_PER_ENDPOINT
+				+ " period=" + PERIOD + "ms outage=" + outage + "s timeout="
+				+ timeout + "ms");
+		for (String policy : Arrays.asList("retry-stop", "keep-polling",
+				"circuit-breaker")) {
+			run(policy, endpoints, outage, timeout);
+		}
+	}
+
+	private static void run(String policy, int endpoints, long outage,
+			long timeout) throws Exception {
+		FlakyTransportAdapter adapter = new FlakyTransportAdapter(timeout);
+		adapter.withValue(CAPABILITY, 1L);
+		CircuitBreakerRegistry circuitBreakers = null;
+		if (policy.equals("circuit-breaker")) {
+			circuitBreakers = new CircuitBreakerRegistry();
+			circuitBreakers.setMaxBackoffMillis(2000L);
+		}
+		ExecutorMetricScheduler scheduler = new ExecutorMetricScheduler(16);
+		MetricPollGroups pollGroups = new MetricPollGroups(scheduler, null,
+				circuitBreakers);
+
+		// time of the first value of every metric after the recovery
+		final Map<IMetric, Long> firstValues = new ConcurrentHashMap<IMetric, Long>();
+		final AtomicLong recovered = new AtomicLong(Long.MAX_VALUE);
+		final Map<IMetric, IMetricSchedule> schedules = new ConcurrentHashMap<IMetric, IMetricSchedule>();
+		final Map<IMetric, MetricTask> tasks = new HashMap<IMetric, MetricTask>();
+		final boolean stopAfterRetries = policy.equals("retry-stop");
+		final AtomicLong lost = new AtomicLong();
+		for (int e = 0; e < endpoints; e++) {
+			for (int r = 0; r < RESOURCES_PER_ENDPOINT; r++) {
+				Resource resource = new Resource("/endpoint" + e + "/jvm" + r,
+						"JVM", new HashMap<String, Object>());
+				resource.addTransportAdapter(adapter);
+				IMetric metric = new Metric(METRIC, resource.getUri(), PERIOD);
+				final MetricTask task = new SingleCapabilityMetricTask(metric,
+						Arrays.asList(CAPABILITY), resource);
+				task.init();
+				task.setCircuitBreakers(circuitBreakers);
+				task.setProblemObserver(new IMetricProblemObserver() {
+					@Override
+					public void problemOcurred(IMetric metric, Exception e) {
+						if (stopAfterRetries
+								&& task.getNumberOfRetries() >= RunningMetricsManagerImpl.NUMBER_OF_RETRIES_THRESHOLD) {
+							IMetricSchedule schedule = schedules.remove(metric);
+							if (schedule != null) {
+								schedule.cancel();
+								lost.incrementAndGet();
+							}
+						}
+					}
+				});
+				task.addMetricListener(new IMetricListener() {
+					@Override
+					public void processMetricEvent(IMetricEvent metricEvent)
+							throws Exception {
+						long now = System.nanoTime();
+						if (now >= recovered.get()) {
+							firstValues.putIfAbsent(metricEvent.getMetric(),
+									now);
+						}
+					}
+				});
+				tasks.put(metric, task);
+			}
+		}
+		for (Map.Entry<IMetric, MetricTask> task : tasks.entrySet()) {
+			schedules.put(task.getKey(),
+					pollGroups.schedule(task.getValue(), PERIOD));
+		}
+
+		Thread.sleep(1000L);
+		for (int e = 0; e < endpoints / 2; e++) {
+			adapter.down("/endpoint" + e);
+		}
+		Thread.sleep(TimeUnit.SECONDS.toMillis(outage));
+		long outageCalls = adapter.getFailedCalls();
+		long wasted = adapter.getWastedMillis();
+		recovered.set(System.nanoTime());
+		adapter.recover();
+
+		Thread.sleep(3000L);
+		long maxRecovery = 0L;
+		int notRecovered = 0;
+		for (IMetric metric : tasks.keySet()) {
+			Long first = firstValues.get(metric);
+			if (first == null) {
+				notRecovered++;
+			} else {
+				maxRecovery = Math.max(maxRecovery, first - recovered.get());
+			}
+		}
+		for (IMetricSchedule schedule : schedules.values()) {
+			schedule.cancel();
+		}
+		scheduler.destroy();
+
+		String breakers = "";
+		if (circuitBreakers != null) {
+			long opened = 0, halfOpened = 0, closed = 0;
+			for (EndpointCircuitBreaker breaker : circuitBreakers
+					.getBreakers()) {
+				opened += breaker.getOpenedCount();
+				halfOpened += breaker.getHalfOpenedCount();
+				closed += breaker.getClosedCount();
+			}
+			breakers = String.format(
+					", transitions: %d opened, %d half-opened, %d closed",
+					opened, halfOpened, closed);
+		}
+		System.out.println(String.format(
+				"%s: %d calls to failing endpoints (%.1f s in timeouts), %d metrics lost, %d not recovered%s",
+				policy, outageCalls, wasted / 1000.0, lost.get(), notRecovered,
+				breakers));
+		System.out.println(String.format(
+				"%s: all recovered metrics resumed within %.0f ms", policy,
+				TimeUnit.NANOSECONDS.toMicros(maxRecovery) / 1000.0));
+	}
+
+	/**
+	 * Adapter whose endpoints (parent URIs of resources) can be taken down -
+	 * reads from them wait for the timeout and fail.
+	 */
+	private static class FlakyTransportAdapter extends
+			ConstantTransportAdapter {
+
+		private final long timeoutMillis;
+		private final Set<String> downEndpoints = Collections
+				.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		private final AtomicLong failedCalls = new AtomicLong();
+		private final AtomicLong wastedMillis = new AtomicLong();
+
+		public FlakyTransportAdapter(long timeoutMillis) {
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		public void down(String endpoint) {
+			downEndpoints.add(endpoint);
+		}
+
+		public void recover() {
+			downEndpoints.clear();
+		}
+
+		public long getFailedCalls() {
+			return failedCalls.get();
+		}
+
+		public long getWastedMillis() {
+			return wastedMillis.get();
+		}
+
+		@Override
+		public String getEndpointKey(Resource resource) {
+			return StringHelper.getParentURI(resource.getUri());
+		}
+
+		@Override
+		public CapabilityReadResults getCapabilityValues(
+				Map<Resource, Collection<String>> capabilityTypes) {
+			// all resources of a poll group are behind the same endpoint
+			Resource first = capabilityTypes.keySet().iterator().next();
+			if (downEndpoints.contains(getEndpointKey(first))) {
+				failedCalls.incrementAndGet();
+				try {
+					Thread.sleep(timeoutMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				wastedMillis.addAndGet(timeoutMillis);
+				CapabilityReadResults results = new CapabilityReadResults();
+				for (Resource resource : capabilityTypes.keySet()) {
+					results.setFailure(resource, new IllegalStateException(
+							"Read timed out"));
+				}
+				return results;
+			}
+			return super.getCapabilityValues(capabilityTypes);
+		}
+	}
+
+}
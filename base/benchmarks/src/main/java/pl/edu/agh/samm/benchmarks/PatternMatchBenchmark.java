@@ -0,0 +1,162 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.core.ResourceInstancesManagerImpl;
+import pl.edu.agh.samm.metrics.PatternMetricIndex;
+
+/**
+ * Matching of resources against pattern metrics: a newly discovered resource
+ * against all pattern metrics (<code>matchNewResource</code>, one resource
+ * per operation) and a new pattern metric against all registered resources (
+ * <code>resourcesForPattern</code>, one pattern per operation). Compares the
+ * previous full scan with {@link Pattern#matches(String, CharSequence)} with
+ * the {@link PatternMetricIndex} and the prefix lookup of
+ * {@link ResourceInstancesManagerImpl}.<br>
+ * Resources look like threads discovered on EC2 instances:
+ * <code>/Amazon/EC2/i-&lt;n&gt;/jvm/Thread_&lt;k&gt;</code>. Most patterns
+ * select threads of one instance, a few select threads of all instances.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PatternMatchBenchmark {
+
+	public static final String SCAN = "scan";
+	public static final String INDEX = "index";
+
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#ThreadCPUTimeMetric";
+	private static final int INSTANCES = 1000;
+	// patterns matching threads of every instance
+	private static final int GLOBAL_PATTERNS = 10;
+
+	@Param({ SCAN, INDEX })
+	public String mode;
+
+	@Param({ "1000" })
+	public int patterns;
+
+	@Param({ "100000" })
+	public int resources;
+
+	private List<IMetric> patternMetrics;
+	private PatternMetricIndex index;
+	private String[] resourceURIs;
+	private ResourceInstancesManagerImpl resourceInstancesManager;
+	private int nextResource = 0;
+	private int nextPattern = 0;
+
+	@Setup
+	public void setUp() throws Exception {
+		patternMetrics = createPatternMetrics(patterns);
+		index = new PatternMetricIndex();
+		for (IMetric metric : patternMetrics) {
+			index.add(metric);
+		}
+		resourceURIs = createResourceURIs(resources);
+		resourceInstancesManager = new ResourceInstancesManagerImpl();
+		for (String uri : resourceURIs) {
+			resourceInstancesManager.addResource(new Resource(uri, "Thread",
+					new HashMap<String, Object>()));
+		}
+	}
+
+	public static List<IMetric> createPatternMetrics(int patterns) {
+		List<IMetric> metrics = new ArrayList<IMetric>(patterns);
+		for (int i = 0; i < patterns; i++) {
+			String pattern;
+			if (i < GLOBAL_PATTERNS) {
+				pattern = "/Amazon/EC2/i-[0-9]+/jvm/Thread_" + i + "[0-9]*";
+			} else {
+				pattern = "/Amazon/EC2/i-" + (i % INSTANCES)
+						+ "/jvm/Thread_.*";
+			}
+			metrics.add(new Metric(METRIC + i, pattern));
+		}
+		return metrics;
+	}
+
+	public static String[] createResourceURIs(int resources) {
+		String[] uris = new String[resources];
+		for (int i = 0; i < resources; i++) {
+			uris[i] = "/Amazon/EC2/i-" + (i % INSTANCES) + "/jvm/Thread_"
+					+ (i / INSTANCES);
+		}
+		return uris;
+	}
+
+	@Benchmark
+	public int matchNewResource() {
+		String uri = resourceURIs[nextResource];
+		nextResource = (nextResource + 1) % resourceURIs.length;
+		if (INDEX.equals(mode)) {
+			return index.getMatchingMetrics(uri).size();
+		}
+		int matching = 0;
+		for (IMetric metric : patternMetrics) {
+			if (Pattern.matches(metric.getResourceURI(), uri)) {
+				matching++;
+			}
+		}
+		return matching;
+	}
+
+	@Benchmark
+	public int resourcesForPattern() {
+		String regex = patternMetrics.get(nextPattern).getResourceURI();
+		nextPattern = (nextPattern + 1) % patternMetrics.size();
+		if (INDEX.equals(mode)) {
+			return resourceInstancesManager.getResourcesForRegex(regex).size();
+		}
+		int matching = 0;
+		for (String uri : resourceURIs) {
+			if (Pattern.matches(regex, uri)) {
+				matching++;
+			}
+		}
+		return matching;
+	}
+
+}
@@ -0,0 +1,144 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.metrics.ExecutorMetricScheduler;
+import pl.edu.agh.samm.metrics.IMetricProblemObserver;
+import pl.edu.agh.samm.metrics.IMetricSchedule;
+import pl.edu.agh.samm.metrics.MetricPollGroups;
+import pl.edu.agh.samm.metrics.MetricTask;
+import pl.edu.agh.samm.metrics.SingleCapabilityMetricTask;
+import pl.edu.agh.samm.tadapter.jmx.JMXTransportAdapterImpl;
+
+/**
+ * Polls a synthetic target - many JVM child resources discovered under one
+ * JMXURL, each with a heap usage and a live threads count metric - with every
+ * metric scheduled on its own and with metrics coalesced into poll groups.
+ * Reports the number of JMX round-trips per second seen by the target.<br>
+ * Usage: <code>PollGroupHarness [children] [periodMillis] [durationSeconds]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class PollGroupHarness {
+
+	private static final List<String> CAPABILITIES = Arrays.asList(
+			JmxTargets.NS + "HeapUsageTypeCapability", JmxTargets.NS
+					+ "LiveThreadsCountTypeCapability");
+	private static final String METRIC = JmxTargets.NS + "HarnessMetric";
+
+	public static void main(String[] args) throws Exception {
+		int children = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		long period = args.length > 1 ? Long.parseLong(args[1]) : 1000L;
+		long duration = args.length > 2 ? Long.parseLong(args[2]) : 10L;
+
+		LocalJmxServer server = new LocalJmxServer();
+		server.start();
+		try {
+			JMXTransportAdapterImpl adapter = JmxTargets.createAdapter();
+			List<Resource> resources = new ArrayList<Resource>();
+			for (int i = 0; i < children; i++) {
+				resources.add(JmxTargets.createJvmResource(adapter,
+						server.getServiceUrl(), "/jvm/child" + i));
+			}
+
+			System.out.println("children=" + children + " metrics="
+					+ children * CAPABILITIES.size() + " period=" + period
+					+ "ms duration=" + duration + "s");
+			run("per-metric", server, resources, period, duration, false);
+			run("grouped", server, resources, period, duration, true);
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static void run(String mode, LocalJmxServer server,
+			List<Resource> resources, long period, long duration,
+			boolean grouped) throws Exception {
+		ExecutorMetricScheduler scheduler = new ExecutorMetricScheduler();
+		MetricPollGroups pollGroups = new MetricPollGroups(scheduler, null);
+		AtomicLong events = new AtomicLong();
+		AtomicLong problems = new AtomicLong();
+		List<IMetricSchedule> schedules = new ArrayList<IMetricSchedule>();
+
+		List<MetricTask> tasks = new ArrayList<MetricTask>();
+		for (Resource resource : resources) {
+			for (String capability : CAPABILITIES) {
+				tasks.add(createTask(resource, capability, period, events,
+						problems));
+			}
+		}
+
+		// don't count the hasCapability() calls made by MetricTask.init()
+		server.resetRoundTrips();
+		for (MetricTask task : tasks) {
+			if (grouped) {
+				schedules.add(pollGroups.schedule(task, period));
+			} else {
+				schedules.add(scheduler.schedule(task, period));
+			}
+		}
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+		long roundTrips = server.getRoundTrips();
+
+		for (IMetricSchedule schedule : schedules) {
+			schedule.cancel();
+		}
+		scheduler.destroy();
+
+		System.out.println(String.format(
+				"%s: %.1f round-trips/s, %.1f values/s, %d problems", mode,
+				roundTrips / (double) duration, events.get()
+						/ (double) duration, problems.get()));
+	}
+
+	private static MetricTask createTask(Resource resource, String capability,
+			long period, final AtomicLong events, final AtomicLong problems) {
+		IMetric metric = new Metric(METRIC, resource.getUri(), period);
+		MetricTask task = new SingleCapabilityMetricTask(metric,
+				Arrays.asList(capability), resource);
+		task.init();
+		task.setProblemObserver(new IMetricProblemObserver() {
+			@Override
+			public void problemOcurred(IMetric metric, Exception e) {
+				problems.incrementAndGet();
+			}
+		});
+		task.addMetricListener(new IMetricListener() {
+			@Override
+			public void processMetricEvent(IMetricEvent metricEvent)
+					throws Exception {
+				events.incrementAndGet();
+			}
+		});
+		return task;
+	}
+
+}
@@ -0,0 +1,166 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.metrics.CapabilityReadCache;
+import pl.edu.agh.samm.metrics.ExecutorMetricScheduler;
+import pl.edu.agh.samm.metrics.IMetricProblemObserver;
+import pl.edu.agh.samm.metrics.IMetricSchedule;
+import pl.edu.agh.samm.metrics.MetricPollGroups;
+import pl.edu.agh.samm.metrics.MetricTask;
+import pl.edu.agh.samm.metrics.SingleCapabilityMetricTask;
+import pl.edu.agh.samm.tadapter.jmx.JMXTransportAdapterImpl;
+
+/**
+ * Polls a synthetic target - JVM child resources discovered under one JMXURL -
+ * with overlapping metrics: every capability is read by one metric for each of
+ * the configured periods (like the same value being watched by a rule, stored
+ * by the DB listener and shown in the UI). Metrics are coalesced into poll
+ * groups in both runs, the second run also reads through the
+ * {@link CapabilityReadCache}. Reports JMX round-trips (including the
+ * hasCapability() calls made when metrics are started) and cache hit ratio.<br>
+ * Usage: <code>ReadCacheHarness [children] [durationSeconds] [freshnessMillis]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ReadCacheHarness {
+
+	private static final List<String> CAPABILITIES = Arrays.asList(
+			JmxTargets.NS + "HeapUsageTypeCapability", JmxTargets.NS
+					+ "LiveThreadsCountTypeCapability");
+	private static final long[] PERIODS = { 1000L, 2000L, 5000L };
+	private static final String METRIC = JmxTargets.NS + "HarnessMetric";
+
+	public static void main(String[] args) throws Exception {
+		int children = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		long duration = args.length > 1 ? Long.parseLong(args[1]) : 10L;
+		long freshness = args.length > 2 ? Long.parseLong(args[2]) : 500L;
+
+		LocalJmxServer server = new LocalJmxServer();
+		server.start();
+		try {
+			JMXTransportAdapterImpl adapter = JmxTargets.createAdapter();
+			List<Resource> resources = new ArrayList<Resource>();
+			for (int i = 0; i < children; i++) {
+				resources.add(JmxTargets.createJvmResource(adapter,
+						server.getServiceUrl(), "/jvm/child" + i));
+			}
+
+			System.out.println("children=" + children + " metrics="
+					+ children * CAPABILITIES.size() * PERIODS.length
+					+ " periods=" + Arrays.toString(PERIODS) + "ms duration="
+					+ duration + "s freshness=" + freshness + "ms");
+			run("uncached", server, resources, duration, null);
+			CapabilityReadCache cache = new CapabilityReadCache();
+			cache.setFreshnessMillis(freshness);
+			run("cached", server, resources, duration, cache);
+			long reads = cache.getHits() + cache.getMisses()
+					+ cache.getSharedReads();
+			System.out.println(String.format(
+					"cache: %d hits, %d misses, %d shared reads, hit ratio %.1f%%",
+					cache.getHits(), cache.getMisses(), cache
+							.getSharedReads(),
+					100.0 * (cache.getHits() + cache.getSharedReads())
+							/ Math.max(1, reads)));
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static void run(String mode, LocalJmxServer server,
+			List<Resource> resources, long duration, CapabilityReadCache cache)
+			throws Exception {
+		ExecutorMetricScheduler scheduler = new ExecutorMetricScheduler();
+		MetricPollGroups pollGroups = new MetricPollGroups(scheduler, null);
+		AtomicLong events = new AtomicLong();
+		AtomicLong problems = new AtomicLong();
+		List<IMetricSchedule> schedules = new ArrayList<IMetricSchedule>();
+
+		server.resetRoundTrips();
+		List<MetricTask> tasks = new ArrayList<MetricTask>();
+		List<Long> periods = new ArrayList<Long>();
+		for (Resource resource : resources) {
+			for (String capability : CAPABILITIES) {
+				for (long period : PERIODS) {
+					tasks.add(createTask(resource, capability, period, cache,
+							events, problems));
+					periods.add(period);
+				}
+			}
+		}
+		long initRoundTrips = server.getRoundTrips();
+
+		server.resetRoundTrips();
+		for (int i = 0; i < tasks.size(); i++) {
+			schedules.add(pollGroups.schedule(tasks.get(i), periods.get(i)));
+		}
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+		long roundTrips = server.getRoundTrips();
+		// shutting the scheduler down interrupts tasks waiting for reads
+		long problemsCount = problems.get();
+
+		for (IMetricSchedule schedule : schedules) {
+			schedule.cancel();
+		}
+		scheduler.destroy();
+
+		System.out.println(String.format(
+				"%s: %d init round-trips, %.1f round-trips/s, %.1f values/s, %d problems",
+				mode, initRoundTrips, roundTrips / (double) duration, events
+						.get()
+						/ (double) duration, problemsCount));
+	}
+
+	private static MetricTask createTask(Resource resource, String capability,
+			long period, CapabilityReadCache cache, final AtomicLong events,
+			final AtomicLong problems) {
+		IMetric metric = new Metric(METRIC, resource.getUri(), period);
+		MetricTask task = new SingleCapabilityMetricTask(metric,
+				Arrays.asList(capability), resource);
+		task.setReadCache(cache);
+		task.init();
+		task.setProblemObserver(new IMetricProblemObserver() {
+			@Override
+			public void problemOcurred(IMetric metric, Exception e) {
+				problems.incrementAndGet();
+			}
+		});
+		task.addMetricListener(new IMetricListener() {
+			@Override
+			public void processMetricEvent(IMetricEvent metricEvent)
+					throws Exception {
+				events.incrementAndGet();
+			}
+		});
+		return task;
+	}
+
+}
@@ -0,0 +1,158 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.metrics.PrimitiveMetricEvent;
+import pl.edu.agh.samm.core.EsperRuleProcessor;
+import pl.edu.agh.samm.core.RuleEventIngestion;
+
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPServiceProviderManager;
+
+/**
+ * Sustained rate of metric events processed by {@link EsperRuleProcessor}
+ * with <code>rules</code> threshold rules loaded, fed by
+ * <code>producers</code> threads (standing in for the polling threads),
+ * each sending <code>rate</code> events per second or as fast as it can if
+ * the rate is 0. Events are first processed on the producer threads
+ * (<code>inline</code>), then through the ingestion stage with
+ * <code>ingestionThreads</code> lanes (<code>batched</code>). Reports the
+ * processed events per second (including draining the queues after the
+ * producers stop) and the time a producer spends per event.<br>
+ * Usage: <code>RuleIngestionHarness [rules] [producers] [durationSeconds]
+ * [ingestionThreads] [rate]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class RuleIngestionHarness {
+
+	private static final String METRIC = JmxTargets.NS + "HeapUsageMetric";
+	private static final int RESOURCES_PER_PRODUCER = 100;
+
+	public static void main(String[] args) throws Exception {
+		int rules = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int producers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		long duration = args.length > 2 ? Long.parseLong(args[2]) : 10L;
+		int ingestionThreads = args.length > 3 ? Integer.parseInt(args[3])
+				: 2;
+		int rate = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+		System.out.println("rules=" + rules + " producers=" + producers
+				+ " duration=" + duration + "s ingestionThreads="
+				+ ingestionThreads + " rate=" + rate);
+		run("inline", 0, rules, producers, duration, rate);
+		run("batched", ingestionThreads, rules, producers, duration, rate);
+	}
+
+	private static void run(String mode, int ingestionThreads, int rules,
+			int producers, long duration, int rate) throws Exception {
+		EPServiceProvider epService = EPServiceProviderManager.getProvider(
+				"RuleIngestionHarness-" + mode,
+				EsperRuleProcessor.getDefaultConfiguration());
+		final EsperRuleProcessor ruleProcessor = new EsperRuleProcessor();
+		ruleProcessor.setEpService(epService);
+		ruleProcessor.setIngestionThreads(ingestionThreads);
+		ruleProcessor.init();
+		int resources = producers * RESOURCES_PER_PRODUCER;
+		for (int i = 0; i < rules; i++) {
+			Rule rule = new Rule("Rule_" + i);
+			rule.setResourceUri(getResourceUri(i % resources));
+			rule.setMetricUri(METRIC);
+			rule.setCondition("value > 90.0");
+			ruleProcessor.addRule(rule);
+		}
+
+		final AtomicLong submitted = new AtomicLong();
+		final AtomicLong producerNanos = new AtomicLong();
+		final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+		final long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate
+				: 0L;
+		Thread[] threads = new Thread[producers];
+		long start = System.nanoTime();
+		for (int p = 0; p < producers; p++) {
+			final IMetric[] metrics = new IMetric[RESOURCES_PER_PRODUCER];
+			for (int r = 0; r < metrics.length; r++) {
+				metrics[r] = new Metric(METRIC, getResourceUri(p
+						* RESOURCES_PER_PRODUCER + r));
+			}
+			threads[p] = new Thread() {
+				@Override
+				public void run() {
+					long count = 0;
+					long busy = 0;
+					long next = System.nanoTime();
+					while (System.nanoTime() < end) {
+						if (interval > 0) {
+							next += interval;
+							long sleep = next - System.nanoTime();
+							if (sleep > 0) {
+								LockSupport.parkNanos(sleep);
+							}
+						}
+						IMetricEvent event = new PrimitiveMetricEvent(
+								metrics[(int) (count % metrics.length)],
+								count % 100 == 0 ? 95.0 : 50.0,
+								JmxTargets.JVM_TYPE, System.currentTimeMillis());
+						long before = System.nanoTime();
+						try {
+							ruleProcessor.processMetricEvent(event);
+						} catch (Exception e) {
+							throw new IllegalStateException(e);
+						}
+						busy += System.nanoTime() - before;
+						count++;
+					}
+					submitted.addAndGet(count);
+					producerNanos.addAndGet(busy);
+				}
+			};
+			threads[p].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		RuleEventIngestion ingestion = ruleProcessor.getIngestion();
+		int backlog = ingestion == null ? 0 : ingestion.getQueuedEvents();
+		// waits for the queued events
+		ruleProcessor.destroy();
+		long elapsed = System.nanoTime() - start;
+		double averageBatch = ingestion == null ? 1.0 : ingestion
+				.getAverageBatchSize();
+		epService.destroy();
+
+		System.out.println(String.format(
+				"%-8s events/s=%.0f producer ns/event=%.0f backlog at stop=%d"
+						+ " average batch=%.1f", mode, submitted.get() * 1e9
+						/ elapsed, (double) producerNanos.get()
+						/ Math.max(1, submitted.get()), backlog, averageBatch));
+	}
+
+	private static String getResourceUri(int i) {
+		return "/bench/JVM_" + i;
+	}
+
+}
@@ -0,0 +1,144 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.api.core.IAlarm;
+import pl.edu.agh.samm.api.core.IAlarmListener;
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.metrics.PrimitiveMetricEvent;
+import pl.edu.agh.samm.core.EsperRuleProcessor;
+
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPServiceProviderManager;
+
+/**
+ * {@link EsperRuleProcessor#processMetricEvent(IMetricEvent)} with
+ * <code>rules</code> generated threshold rules, one per resource, like the
+ * ones created for an SLA. Events go round-robin over the resources; every
+ * <code>alarmEvery</code>-th of them crosses the threshold.
+ * <code>statements</code> selects between the filters generated by
+ * {@link EsperRuleProcessor} (<code>indexed</code>) and the LIKE-based
+ * statements it used to generate (<code>like</code>), <code>condition</code>
+ * between comparing the primitive value directly and the
+ * <code>cast(value,double)</code> the rules needed while the value was a
+ * {@link Number}.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RuleProcessingBenchmark {
+
+	private static final String METRIC = JmxTargets.NS + "HeapUsageMetric";
+	private static final int EVENTS = 4096;
+
+	@Param({ "1", "100", "1000", "10000" })
+	public int rules;
+
+	@Param({ "100" })
+	public int alarmEvery;
+
+	@Param({ "indexed", "like" })
+	public String statements;
+
+	@Param({ "primitive", "cast" })
+	public String condition;
+
+	private EPServiceProvider epService;
+	private EsperRuleProcessor ruleProcessor;
+	private IMetricEvent[] events;
+	private int next = 0;
+	private long alarms = 0;
+
+	@Setup
+	public void setUp() {
+		epService = EPServiceProviderManager.getProvider(
+				"RuleProcessingBenchmark-" + rules + "-" + statements + "-"
+						+ condition,
+				EsperRuleProcessor.getDefaultConfiguration());
+		ruleProcessor = new EsperRuleProcessor();
+		ruleProcessor.setEpService(epService);
+		ruleProcessor.addAlarmListener(new IAlarmListener() {
+			@Override
+			public void handleAlarm(IAlarm alarm) {
+				alarms++;
+			}
+		});
+		String where = "primitive".equals(condition) ? "value > 90.0"
+				: "cast(value,double) > 90.0";
+		for (int i = 0; i < rules; i++) {
+			Rule rule = new Rule("Rule_" + i);
+			rule.setResourceUri(getResourceUri(i));
+			rule.setMetricUri(METRIC);
+			rule.setCondition(where);
+			if ("like".equals(statements)) {
+				rule.setCustomStatement("select metric, value from IMetricEvent("
+						+ "metric.resourceURI like '" + getResourceUri(i)
+						+ "' and metric.metricURI like '" + METRIC
+						+ "') where " + where);
+			}
+			ruleProcessor.addRule(rule);
+		}
+
+		events = new IMetricEvent[EVENTS];
+		for (int i = 0; i < EVENTS; i++) {
+			double value = i % alarmEvery == 0 ? 95.0 : 50.0;
+			events[i] = new PrimitiveMetricEvent(new Metric(METRIC,
+					getResourceUri(i % rules)), value, JmxTargets.JVM_TYPE,
+					System.currentTimeMillis());
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		epService.destroy();
+	}
+
+	@Benchmark
+	public void processMetricEvent() throws Exception {
+		ruleProcessor.processMetricEvent(events[next]);
+		next = (next + 1) % EVENTS;
+	}
+
+	private static String getResourceUri(int i) {
+		return "/bench/JVM_" + i;
+	}
+
+}
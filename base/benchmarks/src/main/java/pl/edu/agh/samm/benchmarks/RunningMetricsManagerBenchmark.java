@@ -0,0 +1,125 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.metrics.IMetricScheduler;
+import pl.edu.agh.samm.metrics.MetricTask;
+import pl.edu.agh.samm.metrics.RunningMetricsManagerImpl;
+import pl.edu.agh.samm.metrics.SingleCapabilityMetricTask;
+
+/**
+ * Starting and stopping a metric in {@link RunningMetricsManagerImpl} while
+ * <code>running</code> other metrics are already registered. Tasks read
+ * from a {@link ConstantTransportAdapter} and are polled once an hour, so
+ * only the bookkeeping of the manager and the scheduler is measured.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RunningMetricsManagerBenchmark {
+
+	private static final String CAPABILITY = JmxTargets.NS
+			+ "HeapUsageTypeCapability";
+	private static final String METRIC = JmxTargets.NS + "HeapUsageMetric";
+	private static final long PERIOD = TimeUnit.HOURS.toMillis(1);
+	private static final int STARTED_METRICS = 1024;
+
+	@Param({ MetricSchedulers.EXECUTOR, MetricSchedulers.TIMING_WHEEL })
+	public String scheduler;
+
+	@Param({ "0", "10000" })
+	public int running;
+
+	@Param({ "true", "false" })
+	public boolean pollGrouping;
+
+	private IMetricScheduler metricScheduler;
+	private RunningMetricsManagerImpl manager;
+	private IMetric[] metrics;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		final ConstantTransportAdapter adapter = new ConstantTransportAdapter()
+				.withValue(CAPABILITY, Long.valueOf(123456789L));
+		metricScheduler = MetricSchedulers.create(scheduler, 100L);
+		manager = new RunningMetricsManagerImpl() {
+			@Override
+			protected MetricTask createMetricTask(IMetric metric) {
+				Resource resource = new Resource(metric.getResourceURI(),
+						JmxTargets.JVM_TYPE, new HashMap<String, Object>());
+				resource.addTransportAdapter(adapter);
+				MetricTask task = new SingleCapabilityMetricTask(metric,
+						Arrays.asList(CAPABILITY), resource);
+				task.init();
+				return task;
+			}
+		};
+		manager.setMetricScheduler(metricScheduler);
+		manager.setPollGrouping(pollGrouping);
+
+		for (int i = 0; i < running; i++) {
+			manager.startMetric(new Metric(METRIC, "/bench/Running_" + i,
+					PERIOD));
+		}
+		metrics = new IMetric[STARTED_METRICS];
+		for (int i = 0; i < metrics.length; i++) {
+			metrics[i] = new Metric(METRIC, "/bench/JVM_" + i, PERIOD);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		MetricSchedulers.destroy(metricScheduler);
+	}
+
+	@Benchmark
+	public void startAndStop() {
+		IMetric metric = metrics[next];
+		next = (next + 1) % metrics.length;
+		manager.startMetric(metric);
+		manager.stopMetric(metric);
+	}
+
+}
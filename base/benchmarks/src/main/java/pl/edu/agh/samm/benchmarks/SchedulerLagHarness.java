@@ -0,0 +1,94 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import pl.edu.agh.samm.metrics.IMetricSchedule;
+import pl.edu.agh.samm.metrics.IMetricScheduler;
+
+/**
+ * Starts a large number of periodic tasks and reports how late their
+ * executions are compared to the ideal schedule (first execution + n *
+ * period), together with the time needed to start and stop all of them.<br>
+ * Usage: <code>SchedulerLagHarness [executor|timingWheel] [metrics]
+ * [periodMillis] [durationSeconds] [tickMillis]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class SchedulerLagHarness {
+
+	public static void main(String[] args) throws Exception {
+		String type = args.length > 0 ? args[0] : MetricSchedulers.TIMING_WHEEL;
+		int metrics = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		long period = args.length > 2 ? Long.parseLong(args[2]) : 1000L;
+		long duration = args.length > 3 ? Long.parseLong(args[3]) : 30L;
+		long tick = args.length > 4 ? Long.parseLong(args[4]) : 100L;
+
+		LatencyRecorder lag = new LatencyRecorder(100, 10000);
+		IMetricScheduler scheduler = MetricSchedulers.create(type, tick);
+		IMetricSchedule[] schedules = new IMetricSchedule[metrics];
+
+		long start = System.nanoTime();
+		for (int i = 0; i < metrics; i++) {
+			schedules[i] = scheduler.schedule(new LagProbe(period, lag), period);
+		}
+		long startedIn = System.nanoTime() - start;
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+
+		start = System.nanoTime();
+		for (int i = 0; i < metrics; i++) {
+			schedules[i].cancel();
+		}
+		long stoppedIn = System.nanoTime() - start;
+		MetricSchedulers.destroy(scheduler);
+
+		System.out.println("scheduler=" + type + " metrics=" + metrics
+				+ " period=" + period + "ms duration=" + duration + "s");
+		System.out.println(String.format("start all: %.1fms, stop all: %.1fms",
+				startedIn / 1e6, stoppedIn / 1e6));
+		System.out.println("lag: " + lag.summary());
+	}
+
+	private static class LagProbe implements Runnable {
+
+		private final long periodNanos;
+		private final LatencyRecorder lag;
+		private long firstRun = -1L;
+		private long executions = 0L;
+
+		public LagProbe(long periodMillis, LatencyRecorder lag) {
+			this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+			this.lag = lag;
+		}
+
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			if (firstRun < 0) {
+				firstRun = now;
+			} else {
+				lag.recordNanos(now - (firstRun + executions * periodNanos));
+			}
+			executions++;
+		}
+	}
+
+}
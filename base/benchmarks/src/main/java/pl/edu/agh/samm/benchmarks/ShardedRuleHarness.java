@@ -0,0 +1,122 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.metrics.PrimitiveMetricEvent;
+import pl.edu.agh.samm.core.ShardedRuleProcessor;
+
+/**
+ * Sustained rate of metric events processed by {@link ShardedRuleProcessor}
+ * with <code>rules</code> threshold rules (one per resource) spread over 1,
+ * 2, 4 and 8 shards, fed as fast as possible by <code>producers</code>
+ * threads. Reports the processed events per second, including draining the
+ * queues after the producers stop. Scaling needs as many cores as shards plus
+ * producers.<br>
+ * Usage: <code>ShardedRuleHarness [rules] [producers] [durationSeconds]
+ * [maxShards]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ShardedRuleHarness {
+
+	private static final String METRIC = JmxTargets.NS + "HeapUsageMetric";
+
+	public static void main(String[] args) throws Exception {
+		int rules = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int producers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		long duration = args.length > 2 ? Long.parseLong(args[2]) : 10L;
+		int maxShards = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+		System.out.println("rules=" + rules + " producers=" + producers
+				+ " duration=" + duration + "s");
+		for (int shards = 1; shards <= maxShards; shards *= 2) {
+			run(shards, rules, producers, duration);
+		}
+	}
+
+	private static void run(int shards, int rules, int producers,
+			long duration) throws Exception {
+		final ShardedRuleProcessor ruleProcessor = new ShardedRuleProcessor();
+		ruleProcessor.setShardCount(shards);
+		ruleProcessor.init();
+		for (int i = 0; i < rules; i++) {
+			Rule rule = new Rule("Rule_" + i);
+			rule.setResourceUri(getResourceUri(i));
+			rule.setMetricUri(METRIC);
+			rule.setCondition("value > 90.0");
+			ruleProcessor.addRule(rule);
+		}
+
+		final int resourcesPerProducer = Math.max(1, rules / producers);
+		final AtomicLong submitted = new AtomicLong();
+		final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+		Thread[] threads = new Thread[producers];
+		long start = System.nanoTime();
+		for (int p = 0; p < producers; p++) {
+			final IMetric[] metrics = new IMetric[resourcesPerProducer];
+			for (int r = 0; r < metrics.length; r++) {
+				metrics[r] = new Metric(METRIC, getResourceUri(p
+						* resourcesPerProducer + r));
+			}
+			threads[p] = new Thread() {
+				@Override
+				public void run() {
+					long count = 0;
+					while (System.nanoTime() < end) {
+						IMetricEvent event = new PrimitiveMetricEvent(
+								metrics[(int) (count % metrics.length)],
+								count % 100 == 0 ? 95.0 : 50.0,
+								JmxTargets.JVM_TYPE, System.currentTimeMillis());
+						try {
+							ruleProcessor.processMetricEvent(event);
+						} catch (Exception e) {
+							throw new IllegalStateException(e);
+						}
+						count++;
+					}
+					submitted.addAndGet(count);
+				}
+			};
+			threads[p].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		int backlog = ruleProcessor.getQueuedEvents();
+		// waits for the queued events
+		ruleProcessor.destroy();
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println(String.format(
+				"shards=%d events/s=%.0f backlog at stop=%d", shards,
+				submitted.get() * 1e9 / elapsed, backlog));
+	}
+
+	private static String getResourceUri(int i) {
+		return "/bench/JVM_" + i;
+	}
+
+}
@@ -0,0 +1,183 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.metrics.ExecutorMetricScheduler;
+import pl.edu.agh.samm.metrics.IMetricProblemObserver;
+import pl.edu.agh.samm.metrics.IMetricSchedule;
+import pl.edu.agh.samm.metrics.ListenerDeliveryQueue;
+import pl.edu.agh.samm.metrics.MetricEventDispatcher;
+import pl.edu.agh.samm.metrics.MetricTask;
+import pl.edu.agh.samm.metrics.OverflowPolicy;
+import pl.edu.agh.samm.metrics.SingleCapabilityMetricTask;
+
+/**
+ * Polls metrics which have a fast listener and a listener taking
+ * <code>writeMillis</code> per event (like the DB listener on a slow
+ * database), first notifying the listeners inline and then through the
+ * delivery queues. Reports how late the polls are compared to their ideal
+ * schedule and the statistics of the slow listener's queue.<br>
+ * Usage: <code>SlowListenerHarness [metrics] [periodMillis] [durationSeconds]
+ * [writeMillis] [policy]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class SlowListenerHarness {
+
+	private static final String CAPABILITY = JmxTargets.NS
+			+ "HeapUsageTypeCapability";
+	private static final String METRIC = JmxTargets.NS + "HeapUsageMetric";
+
+	public static void main(String[] args) throws Exception {
+		int metrics = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		long period = args.length > 1 ? Long.parseLong(args[1]) : 1000L;
+		long duration = args.length > 2 ? Long.parseLong(args[2]) : 10L;
+		long writeMillis = args.length > 3 ? Long.parseLong(args[3]) : 50L;
+		OverflowPolicy policy = args.length > 4 ? OverflowPolicy
+				.valueOf(args[4]) : OverflowPolicy.COALESCE_LATEST_PER_METRIC;
+
+		System.out.println("metrics=" + metrics + " period=" + period
+				+ "ms duration=" + duration + "s write=" + writeMillis
+				+ "ms policy=" + policy);
+		run("inline", null, metrics, period, duration, writeMillis);
+
+		MetricEventDispatcher dispatcher = new MetricEventDispatcher();
+		dispatcher.setOverflowPolicy(policy);
+		dispatcher.init();
+		try {
+			run("queued", dispatcher, metrics, period, duration, writeMillis);
+		} finally {
+			dispatcher.destroy();
+		}
+	}
+
+	private static void run(String mode, MetricEventDispatcher dispatcher,
+			int metrics, long period, long duration, long writeMillis)
+			throws Exception {
+		ExecutorMetricScheduler scheduler = new ExecutorMetricScheduler();
+		ConstantTransportAdapter adapter = new ConstantTransportAdapter()
+				.withValue(CAPABILITY, Long.valueOf(1L));
+		IMetricListener slowListener = new SlowListener(writeMillis);
+		IMetricListener fastListener = new IMetricListener() {
+			@Override
+			public void processMetricEvent(IMetricEvent metricEvent)
+					throws Exception {
+			}
+		};
+		LatencyRecorder lag = new LatencyRecorder(100, 60000);
+		List<IMetricSchedule> schedules = new ArrayList<IMetricSchedule>();
+
+		for (int i = 0; i < metrics; i++) {
+			Resource resource = new Resource("/bench/JVM_" + i,
+					JmxTargets.JVM_TYPE, new HashMap<String, Object>());
+			resource.addTransportAdapter(adapter);
+			MetricTask task = new SingleCapabilityMetricTask(new Metric(
+					METRIC, resource.getUri(), period),
+					Arrays.asList(CAPABILITY), resource);
+			task.init();
+			task.setProblemObserver(new IMetricProblemObserver() {
+				@Override
+				public void problemOcurred(IMetric metric, Exception e) {
+				}
+			});
+			task.setEventDispatcher(dispatcher);
+			task.addMetricListener(slowListener);
+			task.addMetricListener(fastListener);
+			schedules.add(scheduler.schedule(new LaggingPoll(task, period,
+					lag), period));
+		}
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+		for (IMetricSchedule schedule : schedules) {
+			schedule.cancel();
+		}
+		scheduler.destroy();
+
+		System.out.println(mode + " poll lag: " + lag.summary());
+		if (dispatcher != null) {
+			for (ListenerDeliveryQueue queue : dispatcher.getQueues()) {
+				if (queue.getListener() == slowListener) {
+					System.out.println(String.format(
+							"%s slow listener queue: depth=%d delivered=%d dropped=%d coalesced=%d latency avg=%.1fms max=%.1fms",
+							mode, queue.getDepth(), queue.getDeliveredCount(),
+							queue.getDroppedCount(), queue.getCoalescedCount(),
+							queue.getAverageDeliveryLatencyMillis(),
+							queue.getMaxDeliveryLatencyMillis()));
+				}
+			}
+		}
+	}
+
+	private static class SlowListener implements IMetricListener {
+
+		private final long writeMillis;
+
+		public SlowListener(long writeMillis) {
+			this.writeMillis = writeMillis;
+		}
+
+		@Override
+		public void processMetricEvent(IMetricEvent metricEvent)
+				throws Exception {
+			Thread.sleep(writeMillis);
+		}
+	}
+
+	/**
+	 * Runs the poll and records how late it started.
+	 */
+	private static class LaggingPoll implements Runnable {
+
+		private final Runnable task;
+		private final long periodNanos;
+		private final LatencyRecorder lag;
+		private long firstRun = -1L;
+		private long executions = 0L;
+
+		public LaggingPoll(Runnable task, long periodMillis, LatencyRecorder lag) {
+			this.task = task;
+			this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+			this.lag = lag;
+		}
+
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			if (firstRun < 0) {
+				firstRun = now;
+			} else {
+				lag.recordNanos(now - (firstRun + executions * periodNanos));
+			}
+			executions++;
+			task.run();
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+import pl.edu.agh.samm.db.impl.IRollupDAO;
+import pl.edu.agh.samm.db.impl.MeasurementValueDAO;
+import pl.edu.agh.samm.db.impl.RetentionPolicy;
+import pl.edu.agh.samm.db.impl.RollupDAO;
+import pl.edu.agh.samm.db.impl.SchemaMigration;
+import pl.edu.agh.samm.db.impl.StorageMaintenance;
+import pl.edu.agh.samm.db.impl.UriDictionaryDAO;
+
+/**
+ * Latency of reading 30 days of a series from a file-backed HSQLDB database
+ * holding 30 days of measurements of <code>resources</code> resources with
+ * <code>capabilities</code> capabilities each, for every sampling interval
+ * given. The raw values are kept, so their volume grows as the interval
+ * shrinks; the query is answered from the raw values and from the one-hour
+ * rollups computed by {@link StorageMaintenance}, as routed by
+ * {@link RetentionPolicy}; so is the average of the resource over 30 days.
+ * The current hour isn't rolled up yet, so the routed queries also read its
+ * raw values. Each query is averaged over <code>QUERIES</code> runs.<br>
+ * Usage: <code>StorageRollupHarness [resources] [capabilities]
+ * [intervalSeconds,...]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class StorageRollupHarness {
+
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+	private static final int BATCH = 10000;
+	private static final int QUERIES = 20;
+	private static final long DAYS = TimeUnit.DAYS.toMillis(30);
+
+	public static void main(String[] args) throws Exception {
+		int resources = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int capabilities = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		String intervals = args.length > 2 ? args[2] : "300,60,15";
+
+		System.out.println("resources=" + resources + " capabilities="
+				+ capabilities);
+		Class.forName(DRIVER);
+		for (String interval : intervals.split(",")) {
+			run(resources, capabilities, Integer.parseInt(interval.trim()));
+		}
+	}
+
+	private static void run(int resources, int capabilities, int interval)
+			throws Exception {
+		File directory = File.createTempFile("sammdb", "");
+		directory.delete();
+		directory.mkdirs();
+		String url = "jdbc:hsqldb:file:"
+				+ new File(directory, "sammdb").getAbsolutePath();
+		Connection connection = DriverManager.getConnection(url, "sa", "");
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+				connection, true);
+		SchemaMigration schemaMigration = new SchemaMigration();
+		schemaMigration.setDataSource(dataSource);
+		schemaMigration.migrate();
+		UriDictionaryDAO uriDictionary = new UriDictionaryDAO();
+		uriDictionary.setDataSource(dataSource);
+		RollupDAO rollupDAO = new RollupDAO();
+		rollupDAO.setDataSource(dataSource);
+		// raw values are kept to compare the queries
+		RetentionPolicy retentionPolicy = new RetentionPolicy();
+		retentionPolicy.setRawRetentionMillis(0L);
+		retentionPolicy.setMinuteRetentionMillis(0L);
+
+		MeasurementValueDAO rawDAO = new MeasurementValueDAO();
+		rawDAO.setDataSource(dataSource);
+		rawDAO.setUriDictionary(uriDictionary);
+		MeasurementValueDAO routedDAO = new MeasurementValueDAO();
+		routedDAO.setDataSource(dataSource);
+		routedDAO.setUriDictionary(uriDictionary);
+		routedDAO.setRollupDAO(rollupDAO);
+		routedDAO.setRetentionPolicy(retentionPolicy);
+
+		long end = System.currentTimeMillis();
+		long start = end - DAYS;
+		long rows = 0;
+		List<MeasurementValue> batch = new ArrayList<MeasurementValue>(BATCH);
+		double value = 50.0;
+		for (long time = start; time < end; time += interval * 1000L) {
+			for (int r = 0; r < resources; r++) {
+				for (int c = 0; c < capabilities; c++) {
+					value = Math.max(0.0, value + Math.random() - 0.5);
+					MeasurementValue measurement = new MeasurementValue();
+					measurement.setCapabilityUri(getCapabilityUri(c));
+					measurement.setInstanceUri(getResourceUri(r));
+					measurement.setTimestamp(new Date(time));
+					measurement.setValue(value);
+					batch.add(measurement);
+					if (batch.size() == BATCH) {
+						rows += batch.size();
+						rawDAO.storeAll(batch);
+						batch.clear();
+					}
+				}
+			}
+		}
+		rows += batch.size();
+		rawDAO.storeAll(batch);
+
+		StorageMaintenance storageMaintenance = new StorageMaintenance();
+		storageMaintenance.setRollupDAOs(Collections
+				.<IRollupDAO> singletonList(rollupDAO));
+		storageMaintenance.setRetentionPolicy(retentionPolicy);
+		long rollupStart = System.nanoTime();
+		storageMaintenance.maintain(end);
+		long rollupNanos = System.nanoTime() - rollupStart;
+
+		Date queryStart = new Date(start);
+		Date queryEnd = new Date(end);
+		long rawNanos = 0;
+		long routedNanos = 0;
+		int rawValues = 0;
+		int routedValues = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			String resource = getResourceUri(i % resources);
+			String capability = getCapabilityUri(i % capabilities);
+			long before = System.nanoTime();
+			rawValues += rawDAO.getHistoricalMeasurementValues(resource,
+					capability, queryStart, queryEnd).size();
+			long middle = System.nanoTime();
+			routedValues += routedDAO.getHistoricalMeasurementValues(
+					resource, capability, queryStart, queryEnd).size();
+			rawNanos += middle - before;
+			routedNanos += System.nanoTime() - middle;
+		}
+
+		System.out.println(String.format(
+				"interval=%ds rows=%d rollup s=%.1f 30 days raw ms=%.2f"
+						+ " (%d values) rollups ms=%.2f (%d values)",
+				interval, rows, rollupNanos / 1e9, rawNanos / 1e6 / QUERIES,
+				rawValues / QUERIES, routedNanos / 1e6 / QUERIES,
+				routedValues / QUERIES));
+
+		long rawAverageNanos = 0;
+		long routedAverageNanos = 0;
+		double maxDifference = 0.0;
+		for (int i = 0; i < QUERIES; i++) {
+			String resource = getResourceUri(i % resources);
+			long before = System.nanoTime();
+			Map<String, Number> rawAverages = rawDAO
+					.getAverageMeasurementValue(resource, queryStart, queryEnd);
+			long middle = System.nanoTime();
+			Map<String, Number> routedAverages = routedDAO
+					.getAverageMeasurementValue(resource, queryStart, queryEnd);
+			rawAverageNanos += middle - before;
+			routedAverageNanos += System.nanoTime() - middle;
+			for (Map.Entry<String, Number> entry : rawAverages.entrySet()) {
+				Number routed = routedAverages.get(entry.getKey());
+				maxDifference = Math.max(maxDifference, routed == null ? 1.0
+						: Math.abs(routed.doubleValue()
+								/ entry.getValue().doubleValue() - 1.0));
+			}
+		}
+		System.out.println(String.format(
+				"interval=%ds 30 days average raw ms=%.2f rollups ms=%.2f"
+						+ " max relative difference=%.2e", interval,
+				rawAverageNanos / 1e6 / QUERIES, routedAverageNanos / 1e6
+						/ QUERIES, maxDifference));
+
+		Statement statement = connection.createStatement();
+		statement.execute("SHUTDOWN");
+		statement.close();
+		dataSource.destroy();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static String getCapabilityUri(int i) {
+		return JmxTargets.NS + "Capability_" + i;
+	}
+
+	private static String getResourceUri(int i) {
+		return "/bench/JVM_" + i;
+	}
+
+}
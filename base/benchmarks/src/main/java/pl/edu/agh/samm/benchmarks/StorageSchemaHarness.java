@@ -0,0 +1,232 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+import pl.edu.agh.samm.db.impl.MeasurementValueDAO;
+import pl.edu.agh.samm.db.impl.SchemaMigration;
+import pl.edu.agh.samm.db.impl.UriDictionaryDAO;
+
+/**
+ * On-disk size and query latency of a month of measurements -
+ * <code>resources</code> resources with <code>capabilities</code>
+ * capabilities each, measured every <code>intervalSeconds</code> - stored in
+ * a file-backed HSQLDB database with full URIs in every row
+ * (<code>uris</code>, the schema used before the dictionary) and with the
+ * dictionary-encoded schema of the DB listener (<code>dictionary</code>).
+ * Queries are the values of a series from its last day and the capabilities
+ * of a resource, each averaged over <code>QUERIES</code> runs.<br>
+ * Usage: <code>StorageSchemaHarness [resources] [capabilities]
+ * [intervalSeconds]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class StorageSchemaHarness {
+
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+	private static final String CREATE_URIS_TABLE = "CREATE TABLE MEASUREMENT_VALUE(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,CAPABILITY_URI VARCHAR(255) NOT NULL,INSTANCE_URI VARCHAR(255) NOT NULL,TIMESTAMP TIMESTAMP NOT NULL,VALUE FLOAT NOT NULL,CONSTRAINT MEASUREMENT_VALUE_PK PRIMARY KEY(ID))";
+	private static final String INSERT_URIS = "INSERT INTO measurement_value(capability_uri,instance_uri,timestamp,value) values (?,?,?,?)";
+	private static final String QUERY_URIS_SERIES = "SELECT id, capability_uri, instance_uri, timestamp, value FROM measurement_value WHERE instance_uri=? AND capability_uri=? AND timestamp BETWEEN ? AND ?";
+	private static final String QUERY_URIS_CAPABILITIES = "SELECT DISTINCT capability_uri FROM measurement_value WHERE instance_uri=?";
+	private static final int BATCH = 10000;
+	private static final int QUERIES = 20;
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	public static void main(String[] args) throws Exception {
+		int resources = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int capabilities = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int interval = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+		long end = System.currentTimeMillis();
+		long start = end - 30 * DAY;
+		long rows = (long) resources * capabilities
+				* ((end - start) / 1000 / interval);
+		System.out.println("resources=" + resources + " capabilities="
+				+ capabilities + " interval=" + interval + "s rows=" + rows);
+		Class.forName(DRIVER);
+		run(true, resources, capabilities, interval, start, end);
+		run(false, resources, capabilities, interval, start, end);
+	}
+
+	private static void run(boolean uris, int resources, int capabilities,
+			int interval, long start, long end) throws Exception {
+		File directory = File.createTempFile("sammdb", "");
+		directory.delete();
+		directory.mkdirs();
+		String url = "jdbc:hsqldb:file:"
+				+ new File(directory, "sammdb").getAbsolutePath();
+		Connection connection = DriverManager.getConnection(url, "sa", "");
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+				connection, true);
+		MeasurementValueDAO dao = null;
+		PreparedStatement insert = null;
+		if (uris) {
+			Statement statement = connection.createStatement();
+			statement.execute(CREATE_URIS_TABLE);
+			statement.close();
+			insert = connection.prepareStatement(INSERT_URIS);
+		} else {
+			SchemaMigration schemaMigration = new SchemaMigration();
+			schemaMigration.setDataSource(dataSource);
+			schemaMigration.migrate();
+			UriDictionaryDAO uriDictionary = new UriDictionaryDAO();
+			uriDictionary.setDataSource(dataSource);
+			dao = new MeasurementValueDAO();
+			dao.setDataSource(dataSource);
+			dao.setUriDictionary(uriDictionary);
+		}
+
+		long loadStart = System.nanoTime();
+		List<MeasurementValue> batch = new ArrayList<MeasurementValue>(BATCH);
+		double value = 50.0;
+		for (long time = start; time < end; time += interval * 1000L) {
+			for (int r = 0; r < resources; r++) {
+				for (int c = 0; c < capabilities; c++) {
+					// slowly changing gauge
+					value = Math.max(0.0, value + Math.random() - 0.5);
+					MeasurementValue measurement = new MeasurementValue();
+					measurement.setCapabilityUri(getCapabilityUri(c));
+					measurement.setInstanceUri(getResourceUri(r));
+					measurement.setTimestamp(new Date(time));
+					measurement.setValue(value);
+					batch.add(measurement);
+					if (batch.size() == BATCH) {
+						store(batch, insert, dao);
+					}
+				}
+			}
+		}
+		store(batch, insert, dao);
+		long loadNanos = System.nanoTime() - loadStart;
+
+		Statement statement = connection.createStatement();
+		statement.execute("CHECKPOINT");
+		statement.close();
+		long size = 0;
+		for (File file : directory.listFiles()) {
+			size += file.length();
+		}
+
+		Date dayStart = new Date(end - DAY);
+		Date dayEnd = new Date(end);
+		long seriesNanos = 0;
+		long capabilitiesNanos = 0;
+		int found = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			String resource = getResourceUri(i % resources);
+			String capability = getCapabilityUri(i % capabilities);
+			long before = System.nanoTime();
+			if (uris) {
+				PreparedStatement query = connection
+						.prepareStatement(QUERY_URIS_SERIES);
+				query.setString(1, resource);
+				query.setString(2, capability);
+				query.setTimestamp(3, new Timestamp(dayStart.getTime()));
+				query.setTimestamp(4, new Timestamp(dayEnd.getTime()));
+				found += count(query);
+			} else {
+				found += dao.getHistoricalMeasurementValues(resource,
+						capability, dayStart, dayEnd).size();
+			}
+			long middle = System.nanoTime();
+			if (uris) {
+				PreparedStatement query = connection
+						.prepareStatement(QUERY_URIS_CAPABILITIES);
+				query.setString(1, resource);
+				count(query);
+			} else {
+				dao.getResourceCapabilities(resource);
+			}
+			seriesNanos += middle - before;
+			capabilitiesNanos += System.nanoTime() - middle;
+		}
+
+		System.out.println(String.format(
+				"%-10s load s=%.1f size MB=%.1f day of series ms=%.2f"
+						+ " (%d values) capabilities ms=%.2f",
+				uris ? "uris" : "dictionary", loadNanos / 1e9,
+				size / 1024.0 / 1024.0, seriesNanos / 1e6 / QUERIES, found
+						/ QUERIES, capabilitiesNanos / 1e6 / QUERIES));
+
+		if (insert != null) {
+			insert.close();
+		}
+		statement = connection.createStatement();
+		statement.execute("SHUTDOWN");
+		statement.close();
+		dataSource.destroy();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static void store(List<MeasurementValue> batch,
+			PreparedStatement insert, MeasurementValueDAO dao)
+			throws Exception {
+		if (dao != null) {
+			dao.storeAll(batch);
+		} else {
+			for (MeasurementValue measurement : batch) {
+				insert.setString(1, measurement.getCapabilityUri());
+				insert.setString(2, measurement.getInstanceUri());
+				insert.setTimestamp(3, new Timestamp(measurement
+						.getTimestamp().getTime()));
+				insert.setDouble(4, (Double) measurement.getValue());
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+		batch.clear();
+	}
+
+	private static int count(PreparedStatement query) throws Exception {
+		ResultSet rs = query.executeQuery();
+		int rows = 0;
+		while (rs.next()) {
+			rows++;
+		}
+		rs.close();
+		query.close();
+		return rows;
+	}
+
+	private static String getCapabilityUri(int i) {
+		return JmxTargets.NS + "Capability_" + i;
+	}
+
+	private static String getResourceUri(int i) {
+		return "/bench/JVM_" + i;
+	}
+
+}
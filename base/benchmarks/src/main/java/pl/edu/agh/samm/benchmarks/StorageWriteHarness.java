@@ -0,0 +1,160 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import pl.edu.agh.samm.db.impl.MeasurementValueDAO;
+import pl.edu.agh.samm.db.impl.MetricValueDAO;
+import pl.edu.agh.samm.db.impl.SchemaMigration;
+import pl.edu.agh.samm.db.impl.StorageServiceImpl;
+import pl.edu.agh.samm.db.impl.UriDictionaryDAO;
+import pl.edu.agh.samm.db.impl.WriteBehindStorageService;
+
+/**
+ * Measurements stored per second in a file-backed HSQLDB database (created in
+ * a temporary directory, with a single connection like in the DB listener
+ * bundle) by <code>producers</code> threads, each storing
+ * <code>values</code> measurements. {@link StorageServiceImpl} inserts every
+ * value on the producer thread (<code>sync</code>),
+ * {@link WriteBehindStorageService} queues them for batched inserts
+ * (<code>write-behind</code>, configured like in the DB listener bundle). The
+ * rate includes flushing the queue at the end; the time a producer spends
+ * per value and the values it had to insert itself because the queue stayed
+ * full are reported separately.<br>
+ * Usage: <code>StorageWriteHarness [values] [producers] [batchSize]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class StorageWriteHarness {
+
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+	private static final String CAPABILITY = JmxTargets.NS + "HeapUsageTypeCapability";
+	private static final int RESOURCES = 100;
+
+	public static void main(String[] args) throws Exception {
+		int values = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int producers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+		System.out.println("values=" + values + " producers=" + producers
+				+ " batchSize=" + batchSize);
+		Class.forName(DRIVER);
+		run("sync", new StorageServiceImpl(), values, producers);
+		WriteBehindStorageService writeBehind = new WriteBehindStorageService();
+		writeBehind.setBatchSize(batchSize);
+		writeBehind.setQueueCapacity(100000);
+		writeBehind.setOfferTimeoutMillis(100L);
+		run("write-behind", writeBehind, values, producers);
+	}
+
+	private static void run(String mode,
+			final StorageServiceImpl storageService, final int values,
+			int producers) throws Exception {
+		File directory = File.createTempFile("sammdb", "");
+		directory.delete();
+		directory.mkdirs();
+		String url = "jdbc:hsqldb:file:"
+				+ new File(directory, "sammdb").getAbsolutePath();
+		Connection connection = DriverManager.getConnection(url, "sa", "");
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+				connection, true);
+		SchemaMigration schemaMigration = new SchemaMigration();
+		schemaMigration.setDataSource(dataSource);
+		schemaMigration.migrate();
+		UriDictionaryDAO uriDictionary = new UriDictionaryDAO();
+		uriDictionary.setDataSource(dataSource);
+
+		MeasurementValueDAO measurementValueDAO = new MeasurementValueDAO();
+		measurementValueDAO.setDataSource(dataSource);
+		measurementValueDAO.setUriDictionary(uriDictionary);
+		MetricValueDAO metricValueDAO = new MetricValueDAO();
+		metricValueDAO.setDataSource(dataSource);
+		metricValueDAO.setUriDictionary(uriDictionary);
+		storageService.setMeasurementValueDAO(measurementValueDAO);
+		storageService.setMetricValueDAO(metricValueDAO);
+		WriteBehindStorageService writeBehind = null;
+		if (storageService instanceof WriteBehindStorageService) {
+			writeBehind = (WriteBehindStorageService) storageService;
+		}
+		if (writeBehind != null) {
+			writeBehind.init();
+		}
+
+		final AtomicLong producerNanos = new AtomicLong();
+		Thread[] threads = new Thread[producers];
+		long start = System.nanoTime();
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			threads[p] = new Thread() {
+				@Override
+				public void run() {
+					long before = System.nanoTime();
+					for (int i = 0; i < values; i++) {
+						storageService.storeMeasurement("/bench/JVM_"
+								+ (producer * RESOURCES + i % RESOURCES),
+								CAPABILITY, new Date(), Double.valueOf(i));
+					}
+					producerNanos.addAndGet(System.nanoTime() - before);
+				}
+			};
+			threads[p].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (writeBehind != null) {
+			// waits for the queued values
+			writeBehind.destroy();
+		}
+		long elapsed = System.nanoTime() - start;
+		long stored = (long) values * producers;
+
+		String flushes = "";
+		if (writeBehind != null) {
+			flushes = String.format(
+					" flushes=%d average flush ms=%.2f max flush ms=%.2f synchronous=%d",
+					writeBehind.getFlushCount(),
+					writeBehind.getAverageFlushMillis(),
+					writeBehind.getMaxFlushMillis(),
+					writeBehind.getSynchronousCount());
+		}
+		System.out.println(String.format(
+				"%-12s inserts/s=%.0f producer ns/value=%.0f%s", mode, stored
+						* 1e9 / elapsed, (double) producerNanos.get() / stored,
+				flushes));
+
+		Statement statement = connection.createStatement();
+		statement.execute("SHUTDOWN");
+		statement.close();
+		dataSource.destroy();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+}
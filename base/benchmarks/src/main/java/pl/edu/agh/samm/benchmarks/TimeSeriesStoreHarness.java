@@ -0,0 +1,223 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+import pl.edu.agh.samm.db.impl.MeasurementValueDAO;
+import pl.edu.agh.samm.db.impl.SchemaMigration;
+import pl.edu.agh.samm.db.impl.UriDictionaryDAO;
+import pl.edu.agh.samm.tsstore.TimeSeriesStorageService;
+
+/**
+ * Ingest rate, on-disk size and range scan latency of
+ * <code>days</code> days of measurements - <code>resources</code> resources
+ * with <code>capabilities</code> capabilities each, measured every
+ * <code>intervalSeconds</code> - stored in the memory-mapped time series
+ * store (<code>tsstore</code>, one value at a time, as the polling threads
+ * store them) and by the JDBC DAOs in a file-backed HSQLDB database
+ * (<code>jdbc</code>, in batches of <code>BATCH</code> values, as the
+ * write-behind storage does). Scans read an hour and a day of one series,
+ * each averaged over <code>QUERIES</code> runs.<br>
+ * Usage: <code>TimeSeriesStoreHarness [resources] [capabilities]
+ * [intervalSeconds] [days]</code>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class TimeSeriesStoreHarness {
+
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+	private static final int BATCH = 1000;
+	private static final int QUERIES = 20;
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	public static void main(String[] args) throws Exception {
+		int resources = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int capabilities = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int interval = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+		int days = args.length > 3 ? Integer.parseInt(args[3]) : 7;
+
+		long end = System.currentTimeMillis();
+		long start = end - days * DAY;
+		long values = (long) resources * capabilities
+				* ((end - start) / 1000 / interval);
+		System.out.println("resources=" + resources + " capabilities="
+				+ capabilities + " interval=" + interval + "s values="
+				+ values);
+		run(false, resources, capabilities, interval, start, end);
+		Class.forName(DRIVER);
+		run(true, resources, capabilities, interval, start, end);
+	}
+
+	private static void run(boolean jdbc, int resources, int capabilities,
+			int interval, long start, long end) throws Exception {
+		File directory = File.createTempFile("tsstore", "");
+		directory.delete();
+		directory.mkdirs();
+
+		Connection connection = null;
+		SingleConnectionDataSource dataSource = null;
+		MeasurementValueDAO dao = null;
+		TimeSeriesStorageService storageService = null;
+		if (jdbc) {
+			String url = "jdbc:hsqldb:file:"
+					+ new File(directory, "sammdb").getAbsolutePath();
+			connection = DriverManager.getConnection(url, "sa", "");
+			dataSource = new SingleConnectionDataSource(connection, true);
+			SchemaMigration schemaMigration = new SchemaMigration();
+			schemaMigration.setDataSource(dataSource);
+			schemaMigration.migrate();
+			UriDictionaryDAO uriDictionary = new UriDictionaryDAO();
+			uriDictionary.setDataSource(dataSource);
+			dao = new MeasurementValueDAO();
+			dao.setDataSource(dataSource);
+			dao.setUriDictionary(uriDictionary);
+		} else {
+			storageService = new TimeSeriesStorageService();
+			storageService.setDataDirectory(directory.getPath());
+			storageService.init();
+		}
+
+		long loadStart = System.nanoTime();
+		long count = 0;
+		List<MeasurementValue> batch = new ArrayList<MeasurementValue>(BATCH);
+		double value = 50.0;
+		for (long time = start; time < end; time += interval * 1000L) {
+			for (int r = 0; r < resources; r++) {
+				for (int c = 0; c < capabilities; c++) {
+					// slowly changing gauge
+					value = Math.max(0.0, value + Math.random() - 0.5);
+					count++;
+					if (jdbc) {
+						MeasurementValue measurement = new MeasurementValue();
+						measurement.setCapabilityUri(getCapabilityUri(c));
+						measurement.setInstanceUri(getResourceUri(r));
+						measurement.setTimestamp(new Date(time));
+						measurement.setValue(value);
+						batch.add(measurement);
+						if (batch.size() == BATCH) {
+							dao.storeAll(batch);
+							batch.clear();
+						}
+					} else {
+						storageService.storeMeasurement(getResourceUri(r),
+								getCapabilityUri(c), new Date(time), value);
+					}
+				}
+			}
+		}
+		if (jdbc) {
+			dao.storeAll(batch);
+			batch.clear();
+		}
+		long loadNanos = System.nanoTime() - loadStart;
+
+		long hourNanos = 0;
+		long dayNanos = 0;
+		int hourValues = 0;
+		int dayValues = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			String resource = getResourceUri(i % resources);
+			String capability = getCapabilityUri(i % capabilities);
+			long before = System.nanoTime();
+			hourValues += query(jdbc, dao, storageService, resource,
+					capability, end - HOUR, end);
+			long middle = System.nanoTime();
+			dayValues += query(jdbc, dao, storageService, resource,
+					capability, end - DAY, end);
+			hourNanos += middle - before;
+			dayNanos += System.nanoTime() - middle;
+		}
+
+		long size = 0;
+		if (jdbc) {
+			Statement statement = connection.createStatement();
+			statement.execute("CHECKPOINT");
+			statement.close();
+			for (File file : directory.listFiles()) {
+				size += file.length();
+			}
+		} else {
+			// compacts the partially filled segments
+			storageService.destroy();
+			storageService.init();
+			size = storageService.getSizeOnDisk();
+		}
+
+		System.out.println(String.format(
+				"%-8s ingest values/s=%.0f size MB=%.1f bytes/value=%.1f"
+						+ " hour scan ms=%.3f (%d values)"
+						+ " day scan ms=%.3f (%d values)",
+				jdbc ? "jdbc" : "tsstore", count / (loadNanos / 1e9),
+				size / 1024.0 / 1024.0, (double) size / count,
+				hourNanos / 1e6 / QUERIES, hourValues / QUERIES,
+				dayNanos / 1e6 / QUERIES, dayValues / QUERIES));
+
+		if (jdbc) {
+			Statement statement = connection.createStatement();
+			statement.execute("SHUTDOWN");
+			statement.close();
+			dataSource.destroy();
+		} else {
+			storageService.destroy();
+		}
+		delete(directory);
+	}
+
+	private static int query(boolean jdbc, MeasurementValueDAO dao,
+			TimeSeriesStorageService storageService, String resource,
+			String capability, long start, long end) {
+		if (jdbc) {
+			return dao.getHistoricalMeasurementValues(resource, capability,
+					new Date(start), new Date(end)).size();
+		}
+		return storageService.getHistoricalMeasurementValues(resource,
+				capability, new Date(start), new Date(end)).size();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static String getCapabilityUri(int i) {
+		return JmxTargets.NS + "Capability_" + i;
+	}
+
+	private static String getResourceUri(int i) {
+		return "/bench/JVM_" + i;
+	}
+
+}
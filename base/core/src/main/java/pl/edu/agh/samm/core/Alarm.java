@@ -19,7 +19,8 @@ package pl.edu.agh.samm.core;
 
 import java.io.Serializable;
 
-import pl.edu.agh.samm.api.core.IAlarm;
+import pl.edu.agh.samm.api.core.AlarmState;
+import pl.edu.agh.samm.api.core.IAlarmStateChange;
 import pl.edu.agh.samm.api.metrics.IMetric;
 
 /**
@@ -27,17 +28,27 @@ import pl.edu.agh.samm.api.metrics.IMetric;
  * @author Mateusz Kupisz <mkupisz@gmail.com>
  * 
  */
-public class Alarm implements IAlarm, Serializable {
-	private static final long serialVersionUID = 3815913955406226979L;
+public class Alarm implements IAlarmStateChange, Serializable {
+	private static final long serialVersionUID = -2160425587302751642L;
 
 	private IMetric metric;
 	private String ruleName;
 	private Number value;
+	private AlarmState state;
+	private long timestamp;
 
 	public Alarm(IMetric metric, String ruleName, Number value) {
+		this(metric, ruleName, value, AlarmState.FIRING, System
+				.currentTimeMillis());
+	}
+
+	public Alarm(IMetric metric, String ruleName, Number value,
+			AlarmState state, long timestamp) {
 		this.metric = metric;
 		this.ruleName = ruleName;
 		this.value = value;
+		this.state = state;
+		this.timestamp = timestamp;
 	}
 
 	/**
@@ -58,4 +69,21 @@ public class Alarm implements IAlarm, Serializable {
 		return value;
 	}
 
+	@Override
+	public AlarmState getState() {
+		return state;
+	}
+
+	@Override
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return "Alarm [ruleName=" + ruleName + ", metric=" + metric
+				+ ", value=" + value + ", state=" + state + ", timestamp="
+				+ timestamp + "]";
+	}
+
 }
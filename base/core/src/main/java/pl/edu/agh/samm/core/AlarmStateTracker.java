@@ -0,0 +1,342 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.core.AlarmState;
+import pl.edu.agh.samm.api.core.IAlarmBatchListener;
+import pl.edu.agh.samm.api.core.IAlarmStateChange;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.metrics.NamedThreadFactory;
+
+/**
+ * Turns the stream of rule matches into alarm state changes, tracked for
+ * every (rule, resource) pair. An alarm starts firing after
+ * <code>fireAfterMatches</code> matches, each within
+ * <code>resolveAfterMillis</code> of the previous one, and is resolved when
+ * the rule hasn't matched for <code>resolveAfterMillis</code>. While firing,
+ * the alarm is repeated at most every <code>renotifyIntervalMillis</code>.
+ * Every other match is suppressed, so a flapping metric doesn't flood the
+ * listeners.
+ * <p>
+ * State changes are queued and delivered to the listener in batches every
+ * <code>batchIntervalMillis</code> by a separate thread, which also resolves
+ * the alarms.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class AlarmStateTracker {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(AlarmStateTracker.class);
+
+	private final ConcurrentMap<String, AlarmEntry> alarms = new ConcurrentHashMap<String, AlarmEntry>();
+	private final Queue<IAlarmStateChange> pending = new ConcurrentLinkedQueue<IAlarmStateChange>();
+	private final AtomicLong matches = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	private IAlarmBatchListener listener = null;
+	private int fireAfterMatches = 1;
+	private long resolveAfterMillis = 30000L;
+	private long renotifyIntervalMillis = 300000L;
+	private long batchIntervalMillis = 1000L;
+	private Thread deliveryThread = null;
+	private volatile boolean running = false;
+
+	/**
+	 * @param listener
+	 *            Gets the batches of alarm state changes
+	 */
+	public void setListener(IAlarmBatchListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @param fireAfterMatches
+	 *            Number of matches needed to start firing an alarm
+	 */
+	public void setFireAfterMatches(int fireAfterMatches) {
+		this.fireAfterMatches = fireAfterMatches;
+	}
+
+	public int getFireAfterMatches() {
+		return fireAfterMatches;
+	}
+
+	/**
+	 * @param resolveAfterMillis
+	 *            Time without a match after which an alarm is resolved (and
+	 *            the matches counted to start firing are forgotten); should be
+	 *            a few poll intervals of the metrics
+	 */
+	public void setResolveAfterMillis(long resolveAfterMillis) {
+		this.resolveAfterMillis = resolveAfterMillis;
+	}
+
+	public long getResolveAfterMillis() {
+		return resolveAfterMillis;
+	}
+
+	/**
+	 * @param renotifyIntervalMillis
+	 *            Minimal time between two notifications about a firing alarm
+	 */
+	public void setRenotifyIntervalMillis(long renotifyIntervalMillis) {
+		this.renotifyIntervalMillis = renotifyIntervalMillis;
+	}
+
+	public long getRenotifyIntervalMillis() {
+		return renotifyIntervalMillis;
+	}
+
+	public void setBatchIntervalMillis(long batchIntervalMillis) {
+		this.batchIntervalMillis = batchIntervalMillis;
+	}
+
+	public long getBatchIntervalMillis() {
+		return batchIntervalMillis;
+	}
+
+	public synchronized void init() {
+		if (running) {
+			return;
+		}
+		running = true;
+		deliveryThread = new NamedThreadFactory("SAMM-AlarmDelivery")
+				.newThread(new Runnable() {
+					@Override
+					public void run() {
+						deliveryLoop();
+					}
+				});
+		deliveryThread.start();
+	}
+
+	/**
+	 * Stops the delivery thread; alarms queued so far are delivered
+	 */
+	public void destroy() throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			running = false;
+			thread = deliveryThread;
+			deliveryThread = null;
+		}
+		if (thread != null) {
+			thread.interrupt();
+			thread.join(batchIntervalMillis + 5000L);
+		}
+		deliver();
+	}
+
+	private void deliveryLoop() {
+		while (running) {
+			try {
+				Thread.sleep(batchIntervalMillis);
+			} catch (InterruptedException e) {
+				// stopped - destroy() delivers the rest
+				return;
+			}
+			try {
+				resolveAlarms(System.currentTimeMillis());
+				deliver();
+			} catch (Exception e) {
+				logger.error("Error while delivering alarms", e);
+			}
+		}
+	}
+
+	/**
+	 * Records that the rule matched a value of the metric
+	 */
+	public void match(String ruleName, IMetric metric, Number value, long now) {
+		matches.incrementAndGet();
+		String key = ruleName + '\n'
+				+ (metric == null ? "" : metric.getResourceURI());
+		while (true) {
+			AlarmEntry entry = alarms.get(key);
+			if (entry == null) {
+				AlarmEntry newEntry = new AlarmEntry(ruleName);
+				entry = alarms.putIfAbsent(key, newEntry);
+				if (entry == null) {
+					entry = newEntry;
+				}
+			}
+			if (entry.match(metric, value, now)) {
+				return;
+			}
+			// the entry has just been removed as idle
+		}
+	}
+
+	/**
+	 * Resolves alarms which haven't matched for
+	 * <code>resolveAfterMillis</code>
+	 */
+	void resolveAlarms(long now) {
+		Iterator<AlarmEntry> iterator = alarms.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().resolveIfStale(now)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Hands the queued state changes to the listener
+	 */
+	void deliver() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		List<IAlarmStateChange> batch = new ArrayList<IAlarmStateChange>();
+		IAlarmStateChange alarm;
+		while ((alarm = pending.poll()) != null) {
+			batch.add(alarm);
+		}
+		delivered.addAndGet(batch.size());
+		batches.incrementAndGet();
+		if (listener != null) {
+			try {
+				listener.handleAlarms(batch);
+			} catch (Exception e) {
+				logger.error("Alarm listener: " + listener
+						+ " thrown an exception!", e);
+			}
+		}
+	}
+
+	/**
+	 * @return Number of rule matches reported to the tracker
+	 */
+	public long getMatchCount() {
+		return matches.get();
+	}
+
+	/**
+	 * @return Number of alarms handed to the listener
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	/**
+	 * @return Number of (rule, resource) pairs with a firing alarm
+	 */
+	public int getFiringCount() {
+		int firing = 0;
+		for (AlarmEntry entry : alarms.values()) {
+			if (entry.isFiring()) {
+				firing++;
+			}
+		}
+		return firing;
+	}
+
+	private class AlarmEntry {
+
+		private final String ruleName;
+		private IMetric metric = null;
+		private Number value = null;
+		private boolean firing = false;
+		private int matchCount = 0;
+		private long lastMatch = 0;
+		private long lastNotification = 0;
+		private boolean removed = false;
+
+		public AlarmEntry(String ruleName) {
+			this.ruleName = ruleName;
+		}
+
+		/**
+		 * @return <code>false</code> if the entry was removed and the match
+		 *         has to be recorded by a new one
+		 */
+		public synchronized boolean match(IMetric metric, Number value,
+				long now) {
+			if (removed) {
+				return false;
+			}
+			if (matchCount > 0 && now - lastMatch >= resolveAfterMillis
+					&& !firing) {
+				matchCount = 0;
+			}
+			this.metric = metric;
+			this.value = value;
+			this.lastMatch = now;
+			if (matchCount < Integer.MAX_VALUE) {
+				matchCount++;
+			}
+			if (!firing) {
+				if (matchCount < fireAfterMatches) {
+					return true;
+				}
+				firing = true;
+			} else if (now - lastNotification < renotifyIntervalMillis) {
+				return true;
+			}
+			lastNotification = now;
+			// queued while holding the lock, so the state changes of an
+			// alarm can't be reordered
+			pending.add(new Alarm(metric, ruleName, value, AlarmState.FIRING,
+					now));
+			return true;
+		}
+
+		/**
+		 * @return <code>true</code> if the entry has been idle for
+		 *         <code>resolveAfterMillis</code> and was removed
+		 */
+		public synchronized boolean resolveIfStale(long now) {
+			if (now - lastMatch < resolveAfterMillis) {
+				return false;
+			}
+			if (firing) {
+				firing = false;
+				pending.add(new Alarm(metric, ruleName, value,
+						AlarmState.RESOLVED, now));
+			}
+			matchCount = 0;
+			removed = true;
+			return true;
+		}
+
+		public synchronized boolean isFiring() {
+			return firing;
+		}
+	}
+
+}
@@ -22,7 +22,6 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -334,17 +333,14 @@ public class CoreManagementImpl implements IResourceDiscoveryListener, ICoreMana
 
     private void startMetricsForNewResource(String resourceURI) {
 
-        for (IMetric patternMetric : runningMetricsManager.getPatternMetrics()) {
-            String pattern = patternMetric.getResourceURI();
-            if (Pattern.matches(pattern, resourceURI)) {
-                IMetric configuredMetric = new Metric(
-                        patternMetric.getMetricURI(), resourceURI);
-                List<IMetricListener> listeners = new LinkedList<IMetricListener>();
-                listeners.add(currentCostEvaluator);
-                this.startMetricAndAddRunningMetricListener(configuredMetric,
-                        listeners);
-            }
-
+        for (IMetric patternMetric : runningMetricsManager
+                .getPatternMetricsMatching(resourceURI)) {
+            IMetric configuredMetric = new Metric(
+                    patternMetric.getMetricURI(), resourceURI);
+            List<IMetricListener> listeners = new LinkedList<IMetricListener>();
+            listeners.add(currentCostEvaluator);
+            this.startMetricAndAddRunningMetricListener(configuredMetric,
+                    listeners);
         }
 
     }
@@ -20,6 +20,7 @@ package pl.edu.agh.samm.core;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +46,8 @@ public class CostEvaluationMetricListener implements ICurrentCostEvaluator {
 	private Map<IMetric, Double> actualValues = Collections
 			.synchronizedMap(new HashMap<IMetric, Double>());
 	private IServiceLevelAgreement serviceLevelAgreement = null;
+	// SLA patterns compiled once instead of on every event
+	private Map<String, Pattern> compiledPatterns = new ConcurrentHashMap<String, Pattern>();
 
 	private ScheduledExecutorService executor = Executors
 			.newSingleThreadScheduledExecutor();
@@ -99,9 +102,19 @@ public class CostEvaluationMetricListener implements ICurrentCostEvaluator {
 	public synchronized void setupSLA(
 			IServiceLevelAgreement serviceLevelAgreement) {
 		actualValues.clear();
+		compiledPatterns.clear();
 		this.serviceLevelAgreement = serviceLevelAgreement;
 	}
 
+	private Pattern getCompiledPattern(String pattern) {
+		Pattern compiledPattern = compiledPatterns.get(pattern);
+		if (compiledPattern == null) {
+			compiledPattern = Pattern.compile(pattern);
+			compiledPatterns.put(pattern, compiledPattern);
+		}
+		return compiledPattern;
+	}
+
 	@Override
 	public void processMetricEvent(IMetricEvent metricEvent) throws Exception {
 		if (serviceLevelAgreement != null) {
@@ -109,7 +122,7 @@ public class CostEvaluationMetricListener implements ICurrentCostEvaluator {
 			String resourceURI = metricEvent.getMetric().getResourceURI();
 
 			for (String pattern : serviceLevelAgreement.getInvolvedPatterns()) {
-				if (Pattern.matches(pattern, resourceURI)) {
+				if (getCompiledPattern(pattern).matcher(resourceURI).matches()) {
 					Number multiplier = serviceLevelAgreement.getMetricCost(
 							pattern, metricURI);
 
@@ -18,21 +18,29 @@
 package pl.edu.agh.samm.core;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.espertech.esper.client.*;
+import com.espertech.esper.client.metric.StatementMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pl.edu.agh.samm.api.action.ActionExecution;
+import pl.edu.agh.samm.api.core.AlarmState;
 import pl.edu.agh.samm.api.core.IActionExecutionListener;
 import pl.edu.agh.samm.api.core.IAlarm;
+import pl.edu.agh.samm.api.core.IAlarmBatchListener;
 import pl.edu.agh.samm.api.core.IAlarmListener;
+import pl.edu.agh.samm.api.core.IAlarmStateChange;
 import pl.edu.agh.samm.api.core.Rule;
 import pl.edu.agh.samm.api.metrics.IMetric;
 import pl.edu.agh.samm.api.metrics.IMetricEvent;
 import pl.edu.agh.samm.api.sla.IServiceLevelAgreement;
 import pl.edu.agh.samm.api.tadapter.IMeasurementEvent;
+import pl.edu.agh.samm.metrics.CoreInstrumentation;
 
 /**
  * @author koperek
@@ -42,6 +50,16 @@ public class EsperRuleProcessor implements IRuleProcessor,
 
     private static final Logger logger = LoggerFactory.getLogger(EsperRuleProcessor.class);
 
+    /**
+     * Name of the {@link FlatMetricEvent} type in rule statements
+     */
+    public static final String METRIC_EVENT_TYPE = "IMetricEvent";
+
+    /**
+     * Name of the statement collecting Esper's statement metrics
+     */
+    public static final String PROFILER_STATEMENT_NAME = "SAMM-RuleProfiler";
+
     private EPServiceProvider epService = null;
     private List<IAlarmListener> alarmListeners = new CopyOnWriteArrayList<IAlarmListener>();
     private EPRuntime runtime = null;
@@ -49,18 +67,173 @@ public class EsperRuleProcessor implements IRuleProcessor,
     private IActionExecutor actionExecutor = null;
     private int gracePeriod = -1;
     private long lastActionExecutionEndTime = -1;
+    private CoreInstrumentation instrumentation = null;
+    private int ingestionThreads = 0;
+    private int ingestionQueueCapacity = 10000;
+    private int ingestionBatchSize = 256;
+    private RuleEventIngestion ingestion = null;
+    private boolean useEngineTime = false;
+    private AlarmStateTracker alarmStateTracker = null;
+    // events sent to the engine while instrumented and the count at the
+    // previous statement metric of every rule - Esper 4.1 doesn't report the
+    // number of events a statement received
+    private final AtomicLong instrumentedEvents = new AtomicLong();
+    private final Map<String, Long> ruleEventMarks = new ConcurrentHashMap<String, Long>();
 
     public static Configuration getDefaultConfiguration() {
         Configuration configuration = new Configuration();
         configuration.addEventType(IMeasurementEvent.class);
-        configuration.addEventType(IMetricEvent.class);
+        configuration.addEventType(METRIC_EVENT_TYPE, FlatMetricEvent.class);
+        configuration.addPlugInSingleRowFunction(LikeMatcher.FUNCTION_NAME, LikeMatcher.class.getName(), "matches");
+        return configuration;
+    }
+
+    /**
+     * Default configuration with Esper's statement metrics reporting enabled -
+     * a processor with instrumentation records the CPU and wall time of every
+     * rule reported by Esper and the number of events offered to the rule
+     *
+     * @param statementIntervalMillis
+     *            How often the metrics are reported
+     */
+    public static Configuration getProfilingConfiguration(long statementIntervalMillis) {
+        Configuration configuration = getDefaultConfiguration();
+        ConfigurationMetricsReporting metricsReporting = configuration.getEngineDefaults().getMetricsReporting();
+        metricsReporting.setEnableMetricsReporting(true);
+        metricsReporting.setStatementInterval(statementIntervalMillis);
+        return configuration;
+    }
+
+    /**
+     * Default configuration with Esper's inbound thread pool enabled -
+     * sendEvent() only queues the event and returns. The pool doesn't keep
+     * the order of events, not even of a single resource; use the
+     * ingestion threads of the processor if the order matters.
+     */
+    public static Configuration getInboundThreadingConfiguration(int threads) {
+        Configuration configuration = getDefaultConfiguration();
+        ConfigurationEngineDefaults.Threading threading = configuration.getEngineDefaults().getThreading();
+        threading.setThreadPoolInbound(true);
+        threading.setThreadPoolInboundNumThreads(threads);
         return configuration;
     }
 
+    /**
+     * Starts the ingestion threads if configured
+     */
+    public void init() {
+        startProfiling();
+        if (ingestionThreads > 0) {
+            ingestion = new RuleEventIngestion(new RuntimeEventSink(), ingestionThreads, ingestionQueueCapacity,
+                    ingestionBatchSize);
+            ingestion.start();
+        }
+    }
+
+    public void destroy() throws InterruptedException {
+        if (ingestion != null) {
+            ingestion.stop(5000L);
+            ingestion = null;
+        }
+    }
+
+    /**
+     * @param ingestionThreads
+     *            Number of threads feeding events to the Esper runtime; events
+     *            of a resource are always handled by the same thread. 0 (the
+     *            default) processes events on the calling thread.
+     */
+    public void setIngestionThreads(int ingestionThreads) {
+        this.ingestionThreads = ingestionThreads;
+    }
+
+    public int getIngestionThreads() {
+        return ingestionThreads;
+    }
+
+    /**
+     * @param ingestionQueueCapacity
+     *            Number of events which can wait for each ingestion thread
+     */
+    public void setIngestionQueueCapacity(int ingestionQueueCapacity) {
+        this.ingestionQueueCapacity = ingestionQueueCapacity;
+    }
+
+    public int getIngestionQueueCapacity() {
+        return ingestionQueueCapacity;
+    }
+
+    /**
+     * @param ingestionBatchSize
+     *            Maximal number of events taken from the queue at once
+     */
+    public void setIngestionBatchSize(int ingestionBatchSize) {
+        this.ingestionBatchSize = ingestionBatchSize;
+    }
+
+    public int getIngestionBatchSize() {
+        return ingestionBatchSize;
+    }
+
+    /**
+     * @return The ingestion stage or <code>null</code> if events are
+     *         processed on the calling threads
+     */
+    public RuleEventIngestion getIngestion() {
+        return ingestion;
+    }
+
+    /**
+     * @param useEngineTime
+     *            Measure the action grace period with the time of the Esper
+     *            engine instead of the wall clock - needed when the engine is
+     *            driven by external timer events, e.g. while replaying history
+     */
+    public void setUseEngineTime(boolean useEngineTime) {
+        this.useEngineTime = useEngineTime;
+    }
+
+    public boolean isUseEngineTime() {
+        return useEngineTime;
+    }
+
+    /**
+     * @param alarmStateTracker
+     *            Listeners get the alarm state changes found by the tracker
+     *            instead of an alarm for every matching event; only
+     *            {@link IAlarmBatchListener}s are told about resolved alarms.
+     *            Not used by default.
+     */
+    public void setAlarmStateTracker(AlarmStateTracker alarmStateTracker) {
+        this.alarmStateTracker = alarmStateTracker;
+        if (alarmStateTracker != null) {
+            alarmStateTracker.setListener(new AlarmBatchDelivery());
+        }
+    }
+
+    /**
+     * Feeds the matches to the tracker, but leaves its listener alone - used
+     * by processors sharing one tracker, which deliver its alarms themselves.
+     */
+    void useAlarmStateTracker(AlarmStateTracker alarmStateTracker) {
+        this.alarmStateTracker = alarmStateTracker;
+    }
+
+    public AlarmStateTracker getAlarmStateTracker() {
+        return alarmStateTracker;
+    }
+
     public void setActionExecutor(IActionExecutor actionExecutor) {
         this.actionExecutor = actionExecutor;
     }
 
+    /**
+     * Makes the processor record the time of processing every event.
+     */
+    public void setInstrumentation(CoreInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
     public void setEpService(EPServiceProvider epService) {
         this.epService = epService;
         this.runtime = epService.getEPRuntime();
@@ -88,10 +261,12 @@ public class EsperRuleProcessor implements IRuleProcessor,
         logger.debug("Adding rule: " + statementString);
 
         // create the statement and add a listener
-        EPStatement statement = administrator.createEPL(statementString, rule.getName());
+        String ruleName = rule.getName();
+        EPStatement statement = administrator.createEPL(statementString, ruleName);
         UpdateListener updateListener = new ReactingUpdateListener(rule);
 
         statement.addListener(updateListener);
+        ruleEventMarks.put(ruleName, instrumentedEvents.get());
     }
 
     private String createStatement(Rule rule) {
@@ -100,32 +275,18 @@ public class EsperRuleProcessor implements IRuleProcessor,
         if (customStatement != null) {
             statementString = customStatement;
         } else {
-            statementString = "select metric, value from IMetricEvent";
+            statementString = "select metric, value from " + METRIC_EVENT_TYPE;
             String resourceURI = rule.getResourceUri();
             String resourceTypeURI = rule.getResourceTypeUri();
             String metricURI = rule.getMetricUri();
             String condition = rule.getCondition();
 
-            // create the filter
+            // create the filter - equality on the event's own properties, so
+            // Esper can look the matching rules up in its filter index
             String filter = "";
-
-            if (resourceURI != null) {
-                filter += "metric.resourceURI like '" + resourceURI + "'";
-            }
-
-            if (metricURI != null) {
-                if (!filter.equals("")) {
-                    filter += " and ";
-                }
-                filter += "metric.metricURI like '" + metricURI + "'";
-            }
-
-            if (resourceTypeURI != null) {
-                if (!filter.equals("")) {
-                    filter += " and ";
-                }
-                filter += "resourceType like '" + resourceTypeURI + "'";
-            }
+            filter = appendFilter(filter, "resourceURI", resourceURI);
+            filter = appendFilter(filter, "metricURI", metricURI);
+            filter = appendFilter(filter, "resourceType", resourceTypeURI);
 
             if (!filter.equals("")) {
                 statementString += "(" + filter + ")";
@@ -139,22 +300,90 @@ public class EsperRuleProcessor implements IRuleProcessor,
         return statementString;
     }
 
+    private static String appendFilter(String filter, String property, String pattern) {
+        if (pattern == null) {
+            return filter;
+        }
+        if (!filter.equals("")) {
+            filter += " and ";
+        }
+        if (pattern.matches("%+")) {
+            // matches anything - no need to evaluate the pattern at all
+            return filter + property + " is not null";
+        }
+        String literal = "'" + pattern.replace("\\", "\\\\").replace("'", "\\'") + "'";
+        if (LikeMatcher.hasWildcards(pattern)) {
+            // can't be indexed - use the precompiled matcher
+            return filter + LikeMatcher.FUNCTION_NAME + "(" + property + ", " + literal + ")";
+        }
+        return filter + property + " = " + literal;
+    }
+
     @Override
     public void clearRules() {
         administrator.destroyAllStatements();
+        ruleEventMarks.clear();
+        if (instrumentation != null) {
+            instrumentation.removeAllRules();
+            startProfiling();
+        }
     }
 
     @Override
     public void removeRule(String ruleName) {
         EPStatement statement = administrator.getStatement(ruleName);
         statement.destroy();
+        ruleEventMarks.remove(ruleName);
+        if (instrumentation != null) {
+            instrumentation.removeRule(ruleName);
+        }
+    }
+
+    /**
+     * Subscribes to the statement metrics reported by Esper, if the processor
+     * has instrumentation; the metrics are reported only if enabled in the
+     * configuration of the engine (see
+     * {@link #getProfilingConfiguration(long)})
+     */
+    private void startProfiling() {
+        if (instrumentation == null || administrator == null
+                || administrator.getStatement(PROFILER_STATEMENT_NAME) != null) {
+            return;
+        }
+        EPStatement statement = administrator.createEPL("select * from " + StatementMetric.class.getName(),
+                PROFILER_STATEMENT_NAME);
+        statement.addListener(new StatementMetricListener());
     }
 
     protected void processEvent(Object event) {
-        runtime.sendEvent(event);
+        RuleEventIngestion ingestion = this.ingestion;
+        if (ingestion != null) {
+            ingestion.submit(event);
+            return;
+        }
+        sendEvent(event);
+    }
+
+    private void sendEvent(Object event) {
+        CoreInstrumentation instrumentation = this.instrumentation;
+        if (instrumentation == null || !instrumentation.isEnabled()) {
+            runtime.sendEvent(event);
+            return;
+        }
+        instrumentedEvents.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            runtime.sendEvent(event);
+        } finally {
+            instrumentation.recordRuleProcessing(System.nanoTime() - start);
+        }
     }
 
     protected void fireAlarm(IAlarm alarm) {
+        fireAlarm(alarmListeners, alarm);
+    }
+
+    static void fireAlarm(List<IAlarmListener> alarmListeners, IAlarm alarm) {
         for (IAlarmListener alarmListener : alarmListeners) {
             try {
                 alarmListener.handleAlarm(alarm);
@@ -164,6 +393,32 @@ public class EsperRuleProcessor implements IRuleProcessor,
         }
     }
 
+    protected void fireAlarms(List<IAlarmStateChange> alarms) {
+        fireAlarms(alarmListeners, alarms);
+    }
+
+    /**
+     * Batch listeners get all state changes, other listeners only the firing
+     * alarms - they can't tell a resolved alarm from a raised one.
+     */
+    static void fireAlarms(List<IAlarmListener> alarmListeners, List<IAlarmStateChange> alarms) {
+        for (IAlarmListener alarmListener : alarmListeners) {
+            try {
+                if (alarmListener instanceof IAlarmBatchListener) {
+                    ((IAlarmBatchListener) alarmListener).handleAlarms(alarms);
+                } else {
+                    for (IAlarmStateChange alarm : alarms) {
+                        if (alarm.getState() == AlarmState.FIRING) {
+                            alarmListener.handleAlarm(alarm);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Alarm Listener: " + alarmListener + " thrown an exception!", e);
+            }
+        }
+    }
+
     @Override
     public void addAlarmListener(IAlarmListener alarmListener) {
         this.alarmListeners.add(alarmListener);
@@ -176,7 +431,7 @@ public class EsperRuleProcessor implements IRuleProcessor,
 
     @Override
     public void processMetricEvent(IMetricEvent event) throws Exception {
-        processEvent(event);
+        processEvent(FlatMetricEvent.fromMetricEvent(event));
     }
 
     @Override
@@ -192,7 +447,62 @@ public class EsperRuleProcessor implements IRuleProcessor,
     @Override
     public void notifyActionExecution(ActionExecution actionExecution)
             throws Exception {
-        this.lastActionExecutionEndTime = System.currentTimeMillis();
+        this.lastActionExecutionEndTime = currentTime();
+    }
+
+    private long currentTime() {
+        return useEngineTime ? runtime.getCurrentTime() : System.currentTimeMillis();
+    }
+
+    private class AlarmBatchDelivery implements IAlarmBatchListener {
+
+        @Override
+        public void handleAlarm(IAlarm alarm) {
+            fireAlarm(alarm);
+        }
+
+        @Override
+        public void handleAlarms(List<IAlarmStateChange> alarms) {
+            fireAlarms(alarms);
+        }
+    }
+
+    private class RuntimeEventSink implements IRuleEventSink {
+
+        @Override
+        public void sendEvents(Object[] events, int count) {
+            for (int i = 0; i < count; i++) {
+                try {
+                    sendEvent(events[i]);
+                } catch (Exception e) {
+                    logger.error("Error while processing event: " + events[i], e);
+                }
+            }
+        }
+    }
+
+    private class StatementMetricListener implements UpdateListener {
+
+        @Override
+        public void update(EventBean[] newEvents, EventBean[] oldEvents) {
+            CoreInstrumentation instrumentation = EsperRuleProcessor.this.instrumentation;
+            if (newEvents == null || instrumentation == null || !instrumentation.isEnabled()) {
+                return;
+            }
+            long events = instrumentedEvents.get();
+            for (EventBean event : newEvents) {
+                StatementMetric metric = (StatementMetric) event.getUnderlying();
+                String ruleName = metric.getStatementName();
+                // statement names are the names of rules
+                if (!PROFILER_STATEMENT_NAME.equals(ruleName) && administrator.getStatement(ruleName) != null) {
+                    // every rule is offered every event sent to the engine
+                    Long mark = ruleEventMarks.put(ruleName, events);
+                    long eventsIn = mark == null ? 0 : events - mark;
+                    instrumentation.recordRuleStatement(ruleName, metric.getCpuTime(), metric.getWallTime(),
+                            eventsIn);
+                }
+            }
+        }
     }
 
     private class ReactingUpdateListener implements UpdateListener {
@@ -222,6 +532,10 @@ public class EsperRuleProcessor implements IRuleProcessor,
                 fireAlarm(event);
                 executeAction();
             }
+            CoreInstrumentation instrumentation = EsperRuleProcessor.this.instrumentation;
+            if (instrumentation != null && instrumentation.isEnabled()) {
+                instrumentation.recordRuleMatches(rule.getName(), newEvents.length);
+            }
         }
 
         private void executeAction() {
@@ -231,9 +545,13 @@ public class EsperRuleProcessor implements IRuleProcessor,
                 // - lastActionExecutionEndTime should be always
                 // positive - so event if no values are provided it
                 // should work out of the box
-                long now = System.currentTimeMillis();
+                long now = currentTime();
                 if (gracePeriod < 0 || lastActionExecutionEndTime < 0 || now - lastActionExecutionEndTime >= gracePeriod * 1000) {
                     actionExecutor.executeRequest(rule.getActionToExecute());
+                    CoreInstrumentation instrumentation = EsperRuleProcessor.this.instrumentation;
+                    if (instrumentation != null && instrumentation.isEnabled()) {
+                        instrumentation.recordRuleAction(rule.getName());
+                    }
                 } else {
                     logger.info("Omitting action execution: gracePeriod: "
                             + gracePeriod
@@ -250,7 +568,12 @@ public class EsperRuleProcessor implements IRuleProcessor,
                 Number value = (Number) event.get("value");
                 IMetric metric = (IMetric) event.get("metric");
 
-                EsperRuleProcessor.this.fireAlarm(new Alarm(metric, rule.getName(), value));
+                AlarmStateTracker alarmStateTracker = EsperRuleProcessor.this.alarmStateTracker;
+                if (alarmStateTracker != null) {
+                    alarmStateTracker.match(rule.getName(), metric, value, currentTime());
+                } else {
+                    EsperRuleProcessor.this.fireAlarm(new Alarm(metric, rule.getName(), value));
+                }
             } catch (PropertyAccessException e) {
                 logger.info("Properties value, metric not found in statement result: can't fire alarm!");
             }
@@ -0,0 +1,111 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IPrimitiveMetricEvent;
+
+/**
+ * Representation of an {@link IMetricEvent} evaluated by the rule engine. All
+ * properties used by the rules are top-level, so Esper doesn't have to walk
+ * the nested {@link IMetric} bean, and the value is a primitive
+ * <code>double</code>, so conditions can compare it directly (
+ * <code>value > 90</code> instead of <code>cast(value,double) > 90</code>).
+ * <p>
+ * It is registered under the {@link EsperRuleProcessor#METRIC_EVENT_TYPE}
+ * name and still exposes the <code>metric</code> property, so statements
+ * written against {@link IMetricEvent} keep working.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public final class FlatMetricEvent {
+
+	private final IMetric metric;
+	private final String metricURI;
+	private final String resourceURI;
+	private final String resourceType;
+	private final long timestamp;
+	private final double value;
+
+	public FlatMetricEvent(IMetric metric, String resourceType,
+			long timestamp, double value) {
+		this.metric = metric;
+		this.metricURI = metric.getMetricURI();
+		this.resourceURI = metric.getResourceURI();
+		this.resourceType = resourceType;
+		this.timestamp = timestamp;
+		this.value = value;
+	}
+
+	/**
+	 * Creates the rule engine's view of the event. A missing value becomes
+	 * {@link Double#NaN}, which fails every comparison; events without a
+	 * timestamp get the current time.
+	 */
+	public static FlatMetricEvent fromMetricEvent(IMetricEvent event) {
+		if (event instanceof IPrimitiveMetricEvent) {
+			IPrimitiveMetricEvent primitiveEvent = (IPrimitiveMetricEvent) event;
+			return new FlatMetricEvent(event.getMetric(),
+					event.getResourceType(), primitiveEvent.getTimestamp(),
+					primitiveEvent.getDoubleValue());
+		}
+		Number value = event.getValue();
+		return new FlatMetricEvent(event.getMetric(), event.getResourceType(),
+				System.currentTimeMillis(), value == null ? Double.NaN
+						: value.doubleValue());
+	}
+
+	/**
+	 * @return The measured metric; kept for statements written against
+	 *         {@link IMetricEvent} and for the alarms
+	 */
+	public IMetric getMetric() {
+		return metric;
+	}
+
+	public String getMetricURI() {
+		return metricURI;
+	}
+
+	public String getResourceURI() {
+		return resourceURI;
+	}
+
+	public String getResourceType() {
+		return resourceType;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "FlatMetricEvent [metricURI=" + metricURI + ", resourceURI="
+				+ resourceURI + ", value=" + value + ", timestamp="
+				+ timestamp + "]";
+	}
+
+}
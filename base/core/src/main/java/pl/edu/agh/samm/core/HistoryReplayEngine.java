@@ -0,0 +1,268 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.action.Action;
+import pl.edu.agh.samm.api.action.ActionExecution;
+import pl.edu.agh.samm.api.core.IActionExecutionListener;
+import pl.edu.agh.samm.api.core.IAlarm;
+import pl.edu.agh.samm.api.core.IAlarmListener;
+import pl.edu.agh.samm.api.core.IResourceInstancesManager;
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+import pl.edu.agh.samm.api.db.IStorageService;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.metrics.PrimitiveMetricEvent;
+import pl.edu.agh.samm.api.tadapter.MeasurementEvent;
+
+import com.espertech.esper.client.Configuration;
+import com.espertech.esper.client.EPRuntime;
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPServiceProviderManager;
+import com.espertech.esper.client.time.CurrentTimeEvent;
+
+/**
+ * Feeds stored history through a set of rules, so they can be tuned without
+ * waiting for live data. Every replay gets its own Esper engine and
+ * {@link EsperRuleProcessor}; the engine's clock is driven by the timestamps
+ * of the replayed records, so time windows and the action grace period
+ * behave as they did live while days of history take seconds. Actions are
+ * only recorded in the {@link ReplayReport}.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class HistoryReplayEngine {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(HistoryReplayEngine.class);
+
+	private static final AtomicInteger replayCounter = new AtomicInteger();
+
+	private IStorageService storageService = null;
+	private IResourceInstancesManager resourceInstancesManager = null;
+
+	public void setStorageService(IStorageService storageService) {
+		this.storageService = storageService;
+	}
+
+	/**
+	 * @param resourceInstancesManager
+	 *            Used to find types of the replayed resources; without it (or
+	 *            for resources which are no longer registered) metric events
+	 *            have no resource type
+	 */
+	public void setResourceInstancesManager(
+			IResourceInstancesManager resourceInstancesManager) {
+		this.resourceInstancesManager = resourceInstancesManager;
+	}
+
+	/**
+	 * Replays the history stored between the given dates
+	 * 
+	 * @param actionGracePeriod
+	 *            Grace period (in seconds) between actions, as set with
+	 *            {@link IRuleProcessor#setActionGracePeriod(int)}; negative
+	 *            for none
+	 */
+	public ReplayReport replay(Collection<Rule> rules, final Date startTime,
+			final Date endTime, int actionGracePeriod) {
+		ReplayReport report = replay(rules, startTime.getTime(),
+				actionGracePeriod, new HistoryStream() {
+					@Override
+					void stream(IHistoryRecordHandler handler) {
+						storageService.streamHistory(startTime, endTime,
+								handler);
+					}
+				});
+		logger.info("Replayed history from " + startTime + " to " + endTime
+				+ ": " + report);
+		return report;
+	}
+
+	/**
+	 * Replays history loaded earlier; many replays of the same snapshot may
+	 * run at once
+	 * 
+	 * @see #replay(Collection, Date, Date, int)
+	 */
+	public ReplayReport replay(Collection<Rule> rules,
+			final HistorySnapshot history, int actionGracePeriod) {
+		return replay(rules, history.getStartTime(), actionGracePeriod,
+				new HistoryStream() {
+					@Override
+					void stream(IHistoryRecordHandler handler) {
+						history.replay(handler);
+					}
+				});
+	}
+
+	private ReplayReport replay(Collection<Rule> rules, long startTime,
+			int actionGracePeriod, HistoryStream history) {
+		EPServiceProvider epService = EPServiceProviderManager.getProvider(
+				"SAMM-Replay-" + replayCounter.incrementAndGet(),
+				getReplayConfiguration());
+		try {
+			ReplayReport report = new ReplayReport();
+			EsperRuleProcessor ruleProcessor = new EsperRuleProcessor();
+			ruleProcessor.setEpService(epService);
+			ruleProcessor.setUseEngineTime(true);
+			ruleProcessor.setActionGracePeriod(actionGracePeriod);
+
+			ReplayHandler handler = new ReplayHandler(epService.getEPRuntime(),
+					ruleProcessor, report);
+			ruleProcessor.setActionExecutor(handler);
+			ruleProcessor.addAlarmListener(handler);
+			// the engine's clock starts at the wall clock time - move it to
+			// the beginning of the history before any statement is created
+			handler.advanceTime(startTime);
+			for (Rule rule : rules) {
+				ruleProcessor.addRule(rule);
+			}
+
+			long start = System.nanoTime();
+			history.stream(handler);
+			report.setDurationNanos(System.nanoTime() - start);
+			return report;
+		} finally {
+			epService.destroy();
+		}
+	}
+
+	/**
+	 * Default configuration with the internal timer disabled - the time is
+	 * set by the replayed events
+	 */
+	public static Configuration getReplayConfiguration() {
+		Configuration configuration = EsperRuleProcessor
+				.getDefaultConfiguration();
+		configuration.getEngineDefaults().getThreading()
+				.setInternalTimerEnabled(false);
+		return configuration;
+	}
+
+	private static abstract class HistoryStream {
+		abstract void stream(IHistoryRecordHandler handler);
+	}
+
+	private class ReplayHandler implements IHistoryRecordHandler,
+			IAlarmListener, IActionExecutor {
+
+		private final EPRuntime runtime;
+		private final EsperRuleProcessor ruleProcessor;
+		private final ReplayReport report;
+		private final Map<String, String> resourceTypes = new HashMap<String, String>();
+		private long currentTime = Long.MIN_VALUE;
+
+		public ReplayHandler(EPRuntime runtime,
+				EsperRuleProcessor ruleProcessor, ReplayReport report) {
+			this.runtime = runtime;
+			this.ruleProcessor = ruleProcessor;
+			this.report = report;
+		}
+
+		void advanceTime(long time) {
+			if (time > currentTime) {
+				currentTime = time;
+				runtime.sendEvent(new CurrentTimeEvent(time));
+			}
+		}
+
+		@Override
+		public void handleMetricValue(String metricURI, String resourceURI,
+				long timestamp, double value) {
+			advanceTime(timestamp);
+			report.eventReplayed(timestamp, true);
+			try {
+				ruleProcessor.processMetricEvent(new PrimitiveMetricEvent(
+						new Metric(metricURI, resourceURI), value,
+						getResourceType(resourceURI), timestamp));
+			} catch (Exception e) {
+				logger.error("Error while replaying value of " + metricURI
+						+ " for " + resourceURI, e);
+			}
+		}
+
+		@Override
+		public void handleMeasurement(String instanceURI,
+				String capabilityURI, long timestamp, double value) {
+			advanceTime(timestamp);
+			report.eventReplayed(timestamp, false);
+			ruleProcessor.processMeasurementEvent(new MeasurementEvent(
+					capabilityURI, instanceURI, getResourceType(instanceURI),
+					value));
+		}
+
+		private String getResourceType(String resourceURI) {
+			if (resourceInstancesManager == null) {
+				return null;
+			}
+			if (!resourceTypes.containsKey(resourceURI)) {
+				resourceTypes.put(resourceURI,
+						resourceInstancesManager.getResourceType(resourceURI));
+			}
+			return resourceTypes.get(resourceURI);
+		}
+
+		@Override
+		public void handleAlarm(IAlarm alarm) {
+			report.addAlarm(currentTime, alarm);
+		}
+
+		@Override
+		public void executeRequest(Action actionToExecute) {
+			ActionExecution execution = new ActionExecution(actionToExecute,
+					new Date(currentTime), new Date(currentTime));
+			report.addAction(execution);
+			try {
+				// starts the grace period, as a finished execution would
+				ruleProcessor.notifyActionExecution(execution);
+			} catch (Exception e) {
+				logger.error("Error while recording action " + actionToExecute,
+						e);
+			}
+		}
+
+		@Override
+		public void executeRequest(Action actionToExecute, boolean sync) {
+			executeRequest(actionToExecute);
+		}
+
+		@Override
+		public void addActionExecutorListener(
+				IActionExecutionListener listener) {
+			// actions are never executed
+		}
+
+		@Override
+		public void removeActionExecutorListener(
+				IActionExecutionListener listener) {
+		}
+	}
+
+}
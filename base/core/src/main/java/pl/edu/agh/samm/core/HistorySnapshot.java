@@ -0,0 +1,138 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+import pl.edu.agh.samm.api.db.IStorageService;
+
+/**
+ * Stored history loaded into memory once, so it can be replayed many times
+ * without querying the database again. Records are kept in primitive arrays
+ * with URIs replaced by indexes into a dictionary. After loading the
+ * snapshot is read-only and may be replayed by many threads at once.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class HistorySnapshot implements IHistoryRecordHandler {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final long startTime;
+	private final long endTime;
+	private final List<String> uris = new ArrayList<String>();
+	private final Map<String, Integer> uriIds = new HashMap<String, Integer>();
+	private long[] timestamps = new long[INITIAL_CAPACITY];
+	private double[] values = new double[INITIAL_CAPACITY];
+	private int[] valueUris = new int[INITIAL_CAPACITY];
+	private int[] resourceUris = new int[INITIAL_CAPACITY];
+	private boolean[] measurements = new boolean[INITIAL_CAPACITY];
+	private int size = 0;
+
+	public HistorySnapshot(long startTime, long endTime) {
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+
+	/**
+	 * Loads the history stored between the given dates
+	 */
+	public static HistorySnapshot load(IStorageService storageService,
+			Date startTime, Date endTime) {
+		HistorySnapshot snapshot = new HistorySnapshot(startTime.getTime(),
+				endTime.getTime());
+		storageService.streamHistory(startTime, endTime, snapshot);
+		return snapshot;
+	}
+
+	@Override
+	public void handleMetricValue(String metricURI, String resourceURI,
+			long timestamp, double value) {
+		add(false, metricURI, resourceURI, timestamp, value);
+	}
+
+	@Override
+	public void handleMeasurement(String instanceURI, String capabilityURI,
+			long timestamp, double value) {
+		add(true, capabilityURI, instanceURI, timestamp, value);
+	}
+
+	private void add(boolean measurement, String uri, String resourceURI,
+			long timestamp, double value) {
+		if (size == timestamps.length) {
+			int capacity = size * 2;
+			timestamps = Arrays.copyOf(timestamps, capacity);
+			values = Arrays.copyOf(values, capacity);
+			valueUris = Arrays.copyOf(valueUris, capacity);
+			resourceUris = Arrays.copyOf(resourceUris, capacity);
+			measurements = Arrays.copyOf(measurements, capacity);
+		}
+		timestamps[size] = timestamp;
+		values[size] = value;
+		valueUris[size] = getUriId(uri);
+		resourceUris[size] = getUriId(resourceURI);
+		measurements[size] = measurement;
+		size++;
+	}
+
+	private int getUriId(String uri) {
+		Integer id = uriIds.get(uri);
+		if (id == null) {
+			id = uris.size();
+			uris.add(uri);
+			uriIds.put(uri, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Passes all records to the handler, in the order they were loaded
+	 */
+	public void replay(IHistoryRecordHandler handler) {
+		for (int i = 0; i < size; i++) {
+			if (measurements[i]) {
+				handler.handleMeasurement(uris.get(resourceUris[i]),
+						uris.get(valueUris[i]), timestamps[i], values[i]);
+			} else {
+				handler.handleMetricValue(uris.get(valueUris[i]),
+						uris.get(resourceUris[i]), timestamps[i], values[i]);
+			}
+		}
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getEndTime() {
+		return endTime;
+	}
+
+	public int size() {
+		return size;
+	}
+
+}
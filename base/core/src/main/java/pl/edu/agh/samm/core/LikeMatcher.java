@@ -0,0 +1,146 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled SQL LIKE pattern (<code>%</code> matches any sequence,
+ * <code>\</code> escapes the next character). Unlike in SQL,
+ * <code>_</code> is an ordinary character - it's common in URIs, and
+ * patterns without wildcards are compared with equality, which the rule
+ * engine can index. Patterns which are a literal with a leading and/or trailing
+ * <code>%</code> are matched with plain string operations, other ones with a
+ * regular expression.<br>
+ * {@link #matches(String, String)} is registered in the rule engine as the
+ * <code>sammLike</code> function, used by rules with wildcards instead of the
+ * LIKE operator - patterns are compiled once and cached.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public final class LikeMatcher {
+
+	public static final String FUNCTION_NAME = "sammLike";
+
+	private static final int MAX_CACHED_PATTERNS = 10000;
+	private static final ConcurrentMap<String, LikeMatcher> matchers = new ConcurrentHashMap<String, LikeMatcher>();
+
+	private enum Kind {
+		EXACT, PREFIX, SUFFIX, CONTAINS, REGEX
+	}
+
+	private final Kind kind;
+	private final String literal;
+	private final Pattern regex;
+
+	private LikeMatcher(Kind kind, String literal, Pattern regex) {
+		this.kind = kind;
+		this.literal = literal;
+		this.regex = regex;
+	}
+
+	/**
+	 * @return <code>true</code> if the value matches the LIKE pattern
+	 */
+	public static boolean matches(String value, String pattern) {
+		if (value == null || pattern == null) {
+			return false;
+		}
+		LikeMatcher matcher = matchers.get(pattern);
+		if (matcher == null) {
+			matcher = compile(pattern);
+			if (matchers.size() < MAX_CACHED_PATTERNS) {
+				matchers.putIfAbsent(pattern, matcher);
+			}
+		}
+		return matcher.matches(value);
+	}
+
+	public boolean matches(String value) {
+		switch (kind) {
+		case EXACT:
+			return literal.equals(value);
+		case PREFIX:
+			return value.startsWith(literal);
+		case SUFFIX:
+			return value.endsWith(literal);
+		case CONTAINS:
+			return value.contains(literal);
+		default:
+			return regex.matcher(value).matches();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the pattern contains <code>%</code> or an
+	 *         escape character
+	 */
+	public static boolean hasWildcards(String pattern) {
+		return pattern.indexOf('%') >= 0 || pattern.indexOf('\\') >= 0;
+	}
+
+	public static LikeMatcher compile(String pattern) {
+		boolean leading = pattern.startsWith("%");
+		boolean trailing = pattern.length() > 1 && pattern.endsWith("%")
+				&& !pattern.endsWith("\\%");
+		String inner = pattern.substring(leading ? 1 : 0, pattern.length()
+				- (trailing ? 1 : 0));
+		if (!containsSpecialCharacters(inner)) {
+			if (leading && trailing) {
+				return new LikeMatcher(Kind.CONTAINS, inner, null);
+			} else if (leading) {
+				return new LikeMatcher(Kind.SUFFIX, inner, null);
+			} else if (trailing) {
+				return new LikeMatcher(Kind.PREFIX, inner, null);
+			}
+			return new LikeMatcher(Kind.EXACT, inner, null);
+		}
+		return new LikeMatcher(Kind.REGEX, null, toRegex(pattern));
+	}
+
+	private static boolean containsSpecialCharacters(String pattern) {
+		return pattern.indexOf('%') >= 0 || pattern.indexOf('\\') >= 0;
+	}
+
+	private static Pattern toRegex(String pattern) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '\\' && i + 1 < pattern.length()) {
+				literal.append(pattern.charAt(++i));
+			} else if (c == '%') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(".*");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+}
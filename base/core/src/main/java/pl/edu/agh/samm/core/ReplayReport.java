@@ -0,0 +1,161 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import pl.edu.agh.samm.api.action.ActionExecution;
+import pl.edu.agh.samm.api.core.IAlarm;
+
+/**
+ * Outcome of a {@link HistoryReplayEngine} run: alarms raised and actions
+ * which would have been executed, stamped with the time of the replayed
+ * history, and how fast the history was replayed.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ReplayReport {
+
+	private final List<ReplayedAlarm> alarms = new ArrayList<ReplayedAlarm>();
+	private final List<ActionExecution> actions = new ArrayList<ActionExecution>();
+	private long metricEvents = 0;
+	private long measurementEvents = 0;
+	private long firstEventTime = -1;
+	private long lastEventTime = -1;
+	private long durationNanos = 0;
+
+	void addAlarm(long time, IAlarm alarm) {
+		alarms.add(new ReplayedAlarm(time, alarm));
+	}
+
+	void addAction(ActionExecution action) {
+		actions.add(action);
+	}
+
+	void eventReplayed(long time, boolean metricEvent) {
+		if (metricEvent) {
+			metricEvents++;
+		} else {
+			measurementEvents++;
+		}
+		if (firstEventTime < 0) {
+			firstEventTime = time;
+		}
+		lastEventTime = time;
+	}
+
+	void setDurationNanos(long durationNanos) {
+		this.durationNanos = durationNanos;
+	}
+
+	public List<ReplayedAlarm> getAlarms() {
+		return Collections.unmodifiableList(alarms);
+	}
+
+	/**
+	 * @return Actions requested by the rules; none of them was executed
+	 */
+	public List<ActionExecution> getActions() {
+		return Collections.unmodifiableList(actions);
+	}
+
+	public long getMetricEvents() {
+		return metricEvents;
+	}
+
+	public long getMeasurementEvents() {
+		return measurementEvents;
+	}
+
+	public long getEvents() {
+		return metricEvents + measurementEvents;
+	}
+
+	/**
+	 * @return Timestamp of the first replayed event or -1 if there were none
+	 */
+	public long getFirstEventTime() {
+		return firstEventTime;
+	}
+
+	/**
+	 * @return Timestamp of the last replayed event or -1 if there were none
+	 */
+	public long getLastEventTime() {
+		return lastEventTime;
+	}
+
+	/**
+	 * @return Wall clock time the replay took
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	public double getEventsPerSecond() {
+		return durationNanos == 0 ? 0.0 : getEvents() * 1e9 / durationNanos;
+	}
+
+	/**
+	 * @return How many times faster than live the history was replayed
+	 */
+	public double getSpeedup() {
+		if (durationNanos == 0 || firstEventTime < 0) {
+			return 0.0;
+		}
+		return (lastEventTime - firstEventTime) * 1e6 / durationNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "ReplayReport [events=" + getEvents() + ", alarms="
+				+ alarms.size() + ", actions=" + actions.size()
+				+ ", eventsPerSecond=" + (long) getEventsPerSecond()
+				+ ", speedup=" + (long) getSpeedup() + "]";
+	}
+
+	/**
+	 * Alarm raised during the replay
+	 */
+	public static class ReplayedAlarm {
+
+		private final long time;
+		private final IAlarm alarm;
+
+		ReplayedAlarm(long time, IAlarm alarm) {
+			this.time = time;
+			this.alarm = alarm;
+		}
+
+		/**
+		 * @return Time of the replayed history at which the alarm was raised
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public IAlarm getAlarm() {
+			return alarm;
+		}
+	}
+
+}
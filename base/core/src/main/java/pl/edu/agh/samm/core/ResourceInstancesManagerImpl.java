@@ -27,6 +27,8 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -39,6 +41,7 @@ import pl.edu.agh.samm.api.core.IResourceListener;
 import pl.edu.agh.samm.api.core.Resource;
 import pl.edu.agh.samm.api.core.ResourceAlreadyRegisteredException;
 import pl.edu.agh.samm.api.core.ResourceNotRegisteredException;
+import pl.edu.agh.samm.api.impl.StringHelper;
 import pl.edu.agh.samm.api.metrics.ResourceEventType;
 
 /**
@@ -50,6 +53,9 @@ public class ResourceInstancesManagerImpl implements IResourceInstancesManager {
     private static final Logger logger = LoggerFactory.getLogger(ResourceInstancesManagerImpl.class);
     private Map<String, List<String>> resourcesTree = new HashMap<String, List<String>>();
     private Map<String, Resource> resources = new HashMap<String, Resource>();
+    // sorted URIs of resources - lets regex lookups skip resources which
+    // don't start with the literal prefix of the regex
+    private NavigableSet<String> sortedResourceUris = new TreeSet<String>();
     private List<IResourceListener> resourceListeners = new LinkedList<IResourceListener>();
     private Map<String, List<String>> resourceCapabilities = new HashMap<String, List<String>>();
     private Map<String, List<String>> resourcesOfType = new HashMap<String, List<String>>();
@@ -80,6 +86,7 @@ public class ResourceInstancesManagerImpl implements IResourceInstancesManager {
     @Override
     public void removeResource(String uri) {
         Resource removedResource = this.resources.remove(uri);
+        this.sortedResourceUris.remove(uri);
         List<String> children = this.resourcesTree.remove(uri);
         if (children != null) {
             for (String child : children) {
@@ -168,6 +175,7 @@ public class ResourceInstancesManagerImpl implements IResourceInstancesManager {
         if (!resourcesTree.containsKey(uri)) {
             this.resourcesTree.put(uri, null);
             resources.put(uri, resource);
+            sortedResourceUris.add(uri);
 
             List<String> resourcesOfTypeList = null;
             if (resourcesOfType.containsKey(type)) {
@@ -213,9 +221,15 @@ public class ResourceInstancesManagerImpl implements IResourceInstancesManager {
     @Override
     public List<Resource> getResourcesForRegex(String regex) {
         List<Resource> retVal = new ArrayList<Resource>();
-        for (Resource resource : resources.values()) {
-            if (Pattern.matches(regex, resource.getUri())) {
-                retVal.add(resource);
+        Pattern pattern = Pattern.compile(regex);
+        String prefix = StringHelper.getRegexLiteralPrefix(regex);
+        for (String uri : sortedResourceUris.tailSet(prefix, true)) {
+            if (!uri.startsWith(prefix)) {
+                // past the URIs starting with the prefix
+                break;
+            }
+            if (pattern.matcher(uri).matches()) {
+                retVal.add(resources.get(uri));
             }
         }
         return retVal;
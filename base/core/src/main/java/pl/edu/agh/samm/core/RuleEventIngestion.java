@@ -0,0 +1,293 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.tadapter.IMeasurementEvent;
+import pl.edu.agh.samm.metrics.NamedThreadFactory;
+
+/**
+ * Ingestion stage in front of the rule engine. Events submitted by any
+ * thread are put into one of several lanes - lock-free queues, each drained
+ * in batches by its own thread - so the cost of evaluating rules doesn't land
+ * on the polling threads. The lane is chosen by the URI of the resource the
+ * event is about, so events of one resource are processed in the order they
+ * were submitted.<br>
+ * Lanes are bounded: when a lane is full, the submitting thread waits until
+ * there is space (events are never dropped). Events submitted when the
+ * ingestion isn't running - e.g. by polling threads racing with the shutdown -
+ * are passed to the sink synchronously by the submitting thread.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class RuleEventIngestion {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(RuleEventIngestion.class);
+
+	private static final long FULL_LANE_WAIT_NANOS = TimeUnit.MICROSECONDS
+			.toNanos(50);
+	private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(10);
+
+	private final IRuleEventSink sink;
+	private final int laneCapacity;
+	private final int batchSize;
+	private final Lane[] lanes;
+	private volatile boolean running = false;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong throttled = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong synchronous = new AtomicLong();
+
+	public RuleEventIngestion(IRuleEventSink sink, int lanes, int laneCapacity,
+			int batchSize) {
+		if (lanes < 1 || laneCapacity < 1 || batchSize < 1) {
+			throw new IllegalArgumentException(
+					"Lanes, capacity and batch size must be positive");
+		}
+		this.sink = sink;
+		this.laneCapacity = laneCapacity;
+		this.batchSize = batchSize;
+		this.lanes = new Lane[lanes];
+		for (int i = 0; i < lanes; i++) {
+			this.lanes[i] = new Lane();
+		}
+	}
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		NamedThreadFactory threadFactory = new NamedThreadFactory(
+				"SAMM-RuleIngestion");
+		for (Lane lane : lanes) {
+			lane.thread = threadFactory.newThread(lane);
+			lane.thread.start();
+		}
+	}
+
+	/**
+	 * Stops the lanes after the queued events are processed (waiting at most
+	 * <code>timeoutMillis</code> for each lane). Events which reached a lane
+	 * after its thread finished are processed by the calling thread.
+	 */
+	public synchronized void stop(long timeoutMillis)
+			throws InterruptedException {
+		if (!running) {
+			return;
+		}
+		running = false;
+		for (Lane lane : lanes) {
+			LockSupport.unpark(lane.thread);
+			lane.thread.join(timeoutMillis);
+			if (!lane.thread.isAlive()) {
+				lane.drainLeftovers();
+			}
+		}
+	}
+
+	/**
+	 * Queues the event in the lane of its resource. If the ingestion isn't
+	 * running, the event is passed to the sink by the calling thread.
+	 */
+	public void submit(Object event) {
+		if (!running) {
+			synchronous.incrementAndGet();
+			sink.sendEvents(new Object[] { event }, 1);
+			return;
+		}
+		lanes[getLaneIndex(event)].offer(event);
+		submitted.incrementAndGet();
+	}
+
+	int getLaneIndex(Object event) {
+		return getLaneIndex(getRoutingKey(event), lanes.length);
+	}
+
+	/**
+	 * @return Index of the lane (out of <code>lanes</code>) handling events
+	 *         with the routing key
+	 */
+	static int getLaneIndex(String key, int lanes) {
+		return key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % lanes;
+	}
+
+	/**
+	 * @return URI of the resource the event is about
+	 */
+	static String getRoutingKey(Object event) {
+		if (event instanceof FlatMetricEvent) {
+			return ((FlatMetricEvent) event).getResourceURI();
+		} else if (event instanceof IMetricEvent) {
+			return ((IMetricEvent) event).getMetric().getResourceURI();
+		} else if (event instanceof IMeasurementEvent) {
+			return ((IMeasurementEvent) event).getInstanceUri();
+		}
+		return null;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public int getLanes() {
+		return lanes.length;
+	}
+
+	/**
+	 * @return Number of events waiting in all lanes
+	 */
+	public int getQueuedEvents() {
+		int queued = 0;
+		for (Lane lane : lanes) {
+			queued += lane.size.get();
+		}
+		return queued;
+	}
+
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	public long getProcessedCount() {
+		return processed.get();
+	}
+
+	/**
+	 * @return How many times a submitting thread had to wait for space in a
+	 *         full lane
+	 */
+	public long getThrottledCount() {
+		return throttled.get();
+	}
+
+	/**
+	 * @return Number of batches the sink failed to process
+	 */
+	public long getFailedBatchesCount() {
+		return failed.get();
+	}
+
+	/**
+	 * @return Number of events passed to the sink synchronously because the
+	 *         ingestion wasn't running
+	 */
+	public long getSynchronousCount() {
+		return synchronous.get();
+	}
+
+	public double getAverageBatchSize() {
+		long count = batches.get();
+		return count == 0 ? 0.0 : (double) processed.get() / count;
+	}
+
+	private class Lane implements Runnable {
+
+		private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<Object>();
+		private final AtomicInteger size = new AtomicInteger();
+		private volatile Thread thread;
+
+		public void offer(Object event) {
+			while (size.get() >= laneCapacity && running) {
+				throttled.incrementAndGet();
+				LockSupport.parkNanos(this, FULL_LANE_WAIT_NANOS);
+			}
+			queue.offer(event);
+			if (size.getAndIncrement() == 0) {
+				// the drainer may be waiting for events
+				LockSupport.unpark(thread);
+			}
+			if (!running && !thread.isAlive()) {
+				// stopped while the event was being queued
+				drainLeftovers();
+			}
+		}
+
+		/**
+		 * Processes the events left in the lane after its thread finished.
+		 */
+		void drainLeftovers() {
+			Object[] batch = new Object[batchSize];
+			int count;
+			do {
+				count = 0;
+				Object event;
+				while (count < batchSize && (event = queue.poll()) != null) {
+					batch[count++] = event;
+				}
+				if (count > 0) {
+					size.addAndGet(-count);
+					process(batch, count);
+				}
+			} while (count > 0);
+		}
+
+		@Override
+		public void run() {
+			Object[] batch = new Object[batchSize];
+			while (true) {
+				int count = 0;
+				Object event;
+				while (count < batchSize && (event = queue.poll()) != null) {
+					batch[count++] = event;
+				}
+				if (count == 0) {
+					if (!running) {
+						return;
+					}
+					LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+					continue;
+				}
+				size.addAndGet(-count);
+				process(batch, count);
+				for (int i = 0; i < count; i++) {
+					batch[i] = null;
+				}
+			}
+		}
+
+		private void process(Object[] batch, int count) {
+			try {
+				sink.sendEvents(batch, count);
+			} catch (Throwable e) {
+				// the lane must keep draining, otherwise producers would block
+				failed.incrementAndGet();
+				logger.error("Error while processing a batch of " + count
+						+ " events", e);
+			}
+			processed.addAndGet(count);
+			batches.incrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.core.ICoreInstrumentation;
+import pl.edu.agh.samm.api.core.RuleProfile;
+import pl.edu.agh.samm.metrics.NamedThreadFactory;
+
+/**
+ * Periodically logs the rules which took the most CPU time of the rule
+ * engine since the previous summary
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class RuleProfileLogger {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(RuleProfileLogger.class);
+
+	private ICoreInstrumentation instrumentation = null;
+	private long intervalMillis = 300000L;
+	private int topRules = 10;
+	private ScheduledExecutorService executor = null;
+	private Map<String, RuleProfile> previousProfiles = new HashMap<String, RuleProfile>();
+
+	public void setInstrumentation(ICoreInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	public void setIntervalMillis(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * @param topRules
+	 *            Number of rules listed in a summary
+	 */
+	public void setTopRules(int topRules) {
+		this.topRules = topRules;
+	}
+
+	public void init() {
+		executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+				"SAMM-RuleProfileLog"));
+		executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					logSummary();
+				} catch (Exception e) {
+					logger.error("Error while summarizing rule profiles", e);
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return Profiles of the rules with the costs and counts since the
+	 *         previous call, most expensive first
+	 */
+	List<RuleProfile> getIntervalProfiles() {
+		Map<String, RuleProfile> profiles = instrumentation.getRuleProfiles();
+		List<RuleProfile> interval = new ArrayList<RuleProfile>();
+		for (RuleProfile profile : profiles.values()) {
+			RuleProfile previous = previousProfiles.get(profile.getRuleName());
+			if (previous == null
+					|| previous.getCpuTimeMicros() > profile.getCpuTimeMicros()) {
+				// new rule or the statistics have been reset
+				interval.add(profile);
+			} else {
+				interval.add(new RuleProfile(profile.getRuleName(), profile
+						.getCpuTimeMicros() - previous.getCpuTimeMicros(),
+						profile.getWallTimeMicros()
+								- previous.getWallTimeMicros(), profile
+								.getEventsIn() - previous.getEventsIn(),
+						profile.getEventsMatched()
+								- previous.getEventsMatched(), profile
+								.getActionsTriggered()
+								- previous.getActionsTriggered()));
+			}
+		}
+		previousProfiles = profiles;
+		Collections.sort(interval, new Comparator<RuleProfile>() {
+			@Override
+			public int compare(RuleProfile o1, RuleProfile o2) {
+				long cpu1 = o1.getCpuTimeMicros();
+				long cpu2 = o2.getCpuTimeMicros();
+				return cpu1 > cpu2 ? -1 : (cpu1 == cpu2 ? 0 : 1);
+			}
+		});
+		return interval;
+	}
+
+	private void logSummary() {
+		List<RuleProfile> profiles = getIntervalProfiles();
+		if (profiles.isEmpty() || !logger.isInfoEnabled()) {
+			return;
+		}
+		StringBuilder summary = new StringBuilder("Most expensive rules in the last ")
+				.append(intervalMillis / 1000L).append(" s:");
+		for (int i = 0; i < profiles.size() && i < topRules; i++) {
+			summary.append("\n  ").append(profiles.get(i));
+		}
+		logger.info(summary.toString());
+	}
+
+}
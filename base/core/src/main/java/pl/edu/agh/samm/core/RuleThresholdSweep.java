@@ -0,0 +1,222 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.db.IStorageService;
+import pl.edu.agh.samm.api.impl.VariationGenerator;
+import pl.edu.agh.samm.metrics.NamedThreadFactory;
+
+/**
+ * Evaluates variants of a rule against stored history, to pick thresholds
+ * which would have fired the action when expected. The condition (or the
+ * custom statement) of the template rule refers to parameters as
+ * <code>${name}</code>, e.g. <code>value > ${threshold}</code>; a variant is
+ * created for every combination of the values given for the parameters.
+ * <p>
+ * The history is loaded once into a {@link HistorySnapshot}. Variants are
+ * replayed in parallel, each by the {@link HistoryReplayEngine} in its own
+ * Esper engine.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class RuleThresholdSweep {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(RuleThresholdSweep.class);
+
+	private IStorageService storageService = null;
+	private HistoryReplayEngine replayEngine = null;
+	private int threads = 0;
+
+	public void setStorageService(IStorageService storageService) {
+		this.storageService = storageService;
+	}
+
+	public void setReplayEngine(HistoryReplayEngine replayEngine) {
+		this.replayEngine = replayEngine;
+	}
+
+	/**
+	 * @param threads
+	 *            Number of variants replayed at once; 0 (the default) for
+	 *            the number of available processors
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param template
+	 *            Rule with <code>${name}</code> parameters
+	 * @param grid
+	 *            Values of every parameter used by the template
+	 * @param actionGracePeriod
+	 *            Grace period (in seconds) between actions; negative for none
+	 * @return Results of all variants, in the order of the grid (the last
+	 *         parameter changes the fastest)
+	 */
+	public List<ThresholdSweepVariant> sweep(Rule template,
+			Map<String, List<String>> grid, Date startTime, Date endTime,
+			int actionGracePeriod) throws InterruptedException {
+		List<Map<String, String>> parameters = getVariantParameters(grid);
+		List<Rule> rules = new ArrayList<Rule>(parameters.size());
+		for (Map<String, String> variantParameters : parameters) {
+			rules.add(createVariant(template, variantParameters));
+		}
+
+		long start = System.nanoTime();
+		HistorySnapshot history = HistorySnapshot.load(storageService,
+				startTime, endTime);
+		long loaded = System.nanoTime();
+
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime()
+				.availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(poolSize, rules.size())), new NamedThreadFactory(
+						"SAMM-ThresholdSweep"));
+		try {
+			List<Future<ReplayReport>> reports = new ArrayList<Future<ReplayReport>>();
+			for (Rule rule : rules) {
+				reports.add(executor.submit(new VariantReplay(rule, history,
+						actionGracePeriod)));
+			}
+			List<ThresholdSweepVariant> results = new ArrayList<ThresholdSweepVariant>();
+			for (int i = 0; i < rules.size(); i++) {
+				results.add(new ThresholdSweepVariant(parameters.get(i), rules
+						.get(i), getReport(reports.get(i))));
+			}
+			logger.info("Swept " + rules.size() + " variants of rule "
+					+ template.getName() + " over " + history.size()
+					+ " records: loading took "
+					+ (loaded - start) / 1000000L + " ms, replaying "
+					+ (System.nanoTime() - loaded) / 1000000L + " ms");
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static ReplayReport getReport(Future<ReplayReport> report)
+			throws InterruptedException {
+		try {
+			return report.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	static List<Map<String, String>> getVariantParameters(
+			Map<String, List<String>> grid) {
+		if (grid.isEmpty()) {
+			return Collections.singletonList(Collections
+					.<String, String> emptyMap());
+		}
+		List<String> names = new ArrayList<String>(grid.keySet());
+		int[] sizes = new int[names.size()];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = grid.get(names.get(i)).size();
+			if (sizes[i] == 0) {
+				return Collections.emptyList();
+			}
+		}
+
+		List<Map<String, String>> variants = new ArrayList<Map<String, String>>();
+		VariationGenerator generator = new VariationGenerator(sizes);
+		while (generator.hasNext()) {
+			int[] indexes = generator.getNext();
+			Map<String, String> variant = new LinkedHashMap<String, String>();
+			for (int i = 0; i < indexes.length; i++) {
+				variant.put(names.get(i), grid.get(names.get(i)).get(indexes[i]));
+			}
+			variants.add(variant);
+		}
+		return variants;
+	}
+
+	static Rule createVariant(Rule template, Map<String, String> parameters) {
+		Rule rule = new Rule(template.getName() + parameters);
+		rule.setResourceUri(template.getResourceUri());
+		rule.setResourceTypeUri(template.getResourceTypeUri());
+		rule.setMetricUri(template.getMetricUri());
+		rule.setActionToExecute(template.getActionToExecute());
+		rule.setCondition(substitute(template.getCondition(), parameters));
+		rule.setCustomStatement(substitute(template.getCustomStatement(),
+				parameters));
+		return rule;
+	}
+
+	private static String substitute(String text, Map<String, String> parameters) {
+		if (text == null) {
+			return null;
+		}
+		for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+			text = text.replace("${" + parameter.getKey() + "}",
+					parameter.getValue());
+		}
+		if (text.contains("${")) {
+			throw new IllegalArgumentException("No values given for a parameter of: " + text);
+		}
+		return text;
+	}
+
+	private class VariantReplay implements Callable<ReplayReport> {
+
+		private final Rule rule;
+		private final HistorySnapshot history;
+		private final int actionGracePeriod;
+
+		public VariantReplay(Rule rule, HistorySnapshot history,
+				int actionGracePeriod) {
+			this.rule = rule;
+			this.history = history;
+			this.actionGracePeriod = actionGracePeriod;
+		}
+
+		@Override
+		public ReplayReport call() throws Exception {
+			return replayEngine.replay(Collections.singletonList(rule),
+					history, actionGracePeriod);
+		}
+	}
+
+}
@@ -0,0 +1,403 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.action.ActionExecution;
+import pl.edu.agh.samm.api.core.IActionExecutionListener;
+import pl.edu.agh.samm.api.core.IAlarm;
+import pl.edu.agh.samm.api.core.IAlarmBatchListener;
+import pl.edu.agh.samm.api.core.IAlarmListener;
+import pl.edu.agh.samm.api.core.IAlarmStateChange;
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.sla.IServiceLevelAgreement;
+import pl.edu.agh.samm.api.tadapter.IMeasurementEvent;
+import pl.edu.agh.samm.metrics.CoreInstrumentation;
+
+import com.espertech.esper.client.Configuration;
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPServiceProviderManager;
+
+/**
+ * Rule processor spreading the rules over several independent Esper engines,
+ * each fed by its own thread. A rule watching a single resource (given
+ * without wildcards) goes to the shard of that resource; metric events go to
+ * the shard of their resource, so a rule sees the same events as it would in
+ * a single engine. Rules which may span resources - with a wildcard resource
+ * pattern, without a resource or with a custom statement - go to the global
+ * shard, which gets all events, but only while it has any rules.
+ * <p>
+ * All shards share the action executor and the instrumentation and deliver
+ * their alarms to the listeners of this processor, which can be added before
+ * {@link #init()}; action executions are reported to every shard, so the
+ * grace period applies to actions of all of them.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ShardedRuleProcessor implements IRuleProcessor,
+		IActionExecutionListener {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ShardedRuleProcessor.class);
+
+	private static final AtomicInteger processorCounter = new AtomicInteger();
+
+	private int shardCount = 4;
+	private int queueCapacity = 10000;
+	private int batchSize = 256;
+	private Configuration configuration = null;
+	private IActionExecutor actionExecutor = null;
+	private CoreInstrumentation instrumentation = null;
+	private AlarmStateTracker alarmStateTracker = null;
+	private int gracePeriod = -1;
+	private IServiceLevelAgreement serviceLevelAgreement = null;
+	private final List<IAlarmListener> alarmListeners = new CopyOnWriteArrayList<IAlarmListener>();
+	private final AlarmDelivery alarmDelivery = new AlarmDelivery();
+
+	private EsperRuleProcessor[] shards = null;
+	private EsperRuleProcessor globalShard = null;
+	private EPServiceProvider[] providers = null;
+	private RuleEventIngestion shardIngestion = null;
+	private RuleEventIngestion globalIngestion = null;
+	private final ConcurrentMap<String, EsperRuleProcessor> ruleShards = new ConcurrentHashMap<String, EsperRuleProcessor>();
+	private final AtomicInteger globalRules = new AtomicInteger();
+
+	/**
+	 * @param shardCount
+	 *            Number of engines evaluating rules of single resources; the
+	 *            global shard is an additional one
+	 */
+	public void setShardCount(int shardCount) {
+		this.shardCount = shardCount;
+	}
+
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * @param queueCapacity
+	 *            Number of events which can wait for every shard
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param configuration
+	 *            Configuration of every engine; defaults to
+	 *            {@link EsperRuleProcessor#getDefaultConfiguration()}
+	 */
+	public void setConfiguration(Configuration configuration) {
+		this.configuration = configuration;
+	}
+
+	public void setActionExecutor(IActionExecutor actionExecutor) {
+		this.actionExecutor = actionExecutor;
+	}
+
+	public void setInstrumentation(CoreInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	/**
+	 * @param alarmStateTracker
+	 *            Tracker shared by all shards, its alarms are delivered to the
+	 *            listeners of this processor
+	 */
+	public void setAlarmStateTracker(AlarmStateTracker alarmStateTracker) {
+		this.alarmStateTracker = alarmStateTracker;
+		if (alarmStateTracker != null) {
+			alarmStateTracker.setListener(alarmDelivery);
+		}
+	}
+
+	public void init() {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("Shard count must be positive: "
+					+ shardCount);
+		}
+		if (configuration == null) {
+			configuration = EsperRuleProcessor.getDefaultConfiguration();
+		}
+		String prefix = "SAMM-Shard-" + processorCounter.incrementAndGet()
+				+ "-";
+		providers = new EPServiceProvider[shardCount + 1];
+		shards = new EsperRuleProcessor[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			providers[i] = EPServiceProviderManager.getProvider(prefix + i,
+					configuration);
+			shards[i] = createShard(providers[i]);
+		}
+		providers[shardCount] = EPServiceProviderManager.getProvider(prefix
+				+ "global", configuration);
+		globalShard = createShard(providers[shardCount]);
+		if (serviceLevelAgreement != null) {
+			globalShard.setupSLA(serviceLevelAgreement);
+		}
+
+		shardIngestion = new RuleEventIngestion(new ShardSink(), shardCount,
+				queueCapacity, batchSize);
+		globalIngestion = new RuleEventIngestion(new GlobalSink(), 1,
+				queueCapacity, batchSize);
+		shardIngestion.start();
+		globalIngestion.start();
+	}
+
+	private EsperRuleProcessor createShard(EPServiceProvider epService) {
+		EsperRuleProcessor shard = new EsperRuleProcessor();
+		shard.setEpService(epService);
+		shard.setActionExecutor(actionExecutor);
+		shard.setInstrumentation(instrumentation);
+		// the listener of the tracker is set once, not by every shard
+		shard.useAlarmStateTracker(alarmStateTracker);
+		shard.addAlarmListener(alarmDelivery);
+		shard.setActionGracePeriod(gracePeriod);
+		shard.init();
+		return shard;
+	}
+
+	private void checkInitialized() {
+		if (shards == null) {
+			throw new IllegalStateException(
+					"Rule processor is not initialized");
+		}
+	}
+
+	/**
+	 * Processes the queued events and destroys the engines
+	 */
+	public void destroy() throws InterruptedException {
+		if (shards == null) {
+			return;
+		}
+		shardIngestion.stop(5000L);
+		globalIngestion.stop(5000L);
+		for (EPServiceProvider provider : providers) {
+			provider.destroy();
+		}
+		shards = null;
+	}
+
+	/**
+	 * @return The shard which evaluates the rule
+	 */
+	EsperRuleProcessor getShard(Rule rule) {
+		checkInitialized();
+		String resourceUri = rule.getResourceUri();
+		if (rule.getCustomStatement() != null || resourceUri == null
+				|| LikeMatcher.hasWildcards(resourceUri)) {
+			return globalShard;
+		}
+		return shards[RuleEventIngestion.getLaneIndex(resourceUri, shardCount)];
+	}
+
+	/**
+	 * @return Number of events waiting for any of the shards
+	 */
+	public int getQueuedEvents() {
+		return shardIngestion.getQueuedEvents()
+				+ globalIngestion.getQueuedEvents();
+	}
+
+	EsperRuleProcessor getGlobalShard() {
+		return globalShard;
+	}
+
+	@Override
+	public void addRule(Rule rule) {
+		EsperRuleProcessor shard = getShard(rule);
+		// a single engine rejects a second statement with the same name, a
+		// shard could have been a different one
+		if (ruleShards.putIfAbsent(rule.getName(), shard) != null) {
+			throw new IllegalArgumentException("Rule already exists: "
+					+ rule.getName());
+		}
+		try {
+			shard.addRule(rule);
+		} catch (RuntimeException e) {
+			ruleShards.remove(rule.getName());
+			throw e;
+		}
+		if (shard == globalShard) {
+			globalRules.incrementAndGet();
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Rule " + rule.getName() + " added to "
+					+ (shard == globalShard ? "global shard" : "shard "
+							+ RuleEventIngestion.getLaneIndex(
+									rule.getResourceUri(), shardCount)));
+		}
+	}
+
+	@Override
+	public void removeRule(String ruleName) {
+		checkInitialized();
+		EsperRuleProcessor shard = ruleShards.remove(ruleName);
+		if (shard == null) {
+			throw new IllegalArgumentException("Unknown rule: " + ruleName);
+		}
+		shard.removeRule(ruleName);
+		if (shard == globalShard) {
+			globalRules.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void clearRules() {
+		checkInitialized();
+		for (EsperRuleProcessor shard : shards) {
+			shard.clearRules();
+		}
+		globalShard.clearRules();
+		ruleShards.clear();
+		globalRules.set(0);
+	}
+
+	@Override
+	public void processMetricEvent(IMetricEvent event) throws Exception {
+		// converted once for all the shards
+		checkInitialized();
+		FlatMetricEvent flatEvent = FlatMetricEvent.fromMetricEvent(event);
+		shardIngestion.submit(flatEvent);
+		if (globalRules.get() > 0) {
+			globalIngestion.submit(flatEvent);
+		}
+	}
+
+	@Override
+	public void processMeasurementEvent(IMeasurementEvent event) {
+		checkInitialized();
+		// measurements are only used by custom statements
+		if (globalRules.get() > 0) {
+			globalIngestion.submit(event);
+		}
+	}
+
+	@Override
+	public void setActionGracePeriod(int gracePeriod) {
+		this.gracePeriod = gracePeriod;
+		if (shards != null) {
+			for (EsperRuleProcessor shard : shards) {
+				shard.setActionGracePeriod(gracePeriod);
+			}
+			globalShard.setActionGracePeriod(gracePeriod);
+		}
+	}
+
+	@Override
+	public void notifyActionExecution(ActionExecution actionExecution)
+			throws Exception {
+		EsperRuleProcessor[] shards = this.shards;
+		if (shards == null) {
+			// no rules which could raise alarms yet
+			return;
+		}
+		for (EsperRuleProcessor shard : shards) {
+			shard.notifyActionExecution(actionExecution);
+		}
+		globalShard.notifyActionExecution(actionExecution);
+	}
+
+	@Override
+	public void setupSLA(IServiceLevelAgreement serviceLevelAgreement) {
+		this.serviceLevelAgreement = serviceLevelAgreement;
+		if (shards != null) {
+			globalShard.setupSLA(serviceLevelAgreement);
+		}
+	}
+
+	@Override
+	public void addAlarmListener(IAlarmListener alarmListener) {
+		alarmListeners.add(alarmListener);
+	}
+
+	@Override
+	public void removeAlarmListener(IAlarmListener alarmListener) {
+		alarmListeners.remove(alarmListener);
+	}
+
+	/**
+	 * The single listener of every shard and of the alarm state tracker,
+	 * passing their alarms to the listeners of this processor
+	 */
+	private class AlarmDelivery implements IAlarmBatchListener {
+
+		@Override
+		public void handleAlarm(IAlarm alarm) {
+			EsperRuleProcessor.fireAlarm(alarmListeners, alarm);
+		}
+
+		@Override
+		public void handleAlarms(List<IAlarmStateChange> alarms) {
+			EsperRuleProcessor.fireAlarms(alarmListeners, alarms);
+		}
+	}
+
+	/**
+	 * Hands batches of a lane to the shard of the lane - lanes and shards use
+	 * the same routing, so every shard is used by a single thread
+	 */
+	private class ShardSink implements IRuleEventSink {
+
+		@Override
+		public void sendEvents(Object[] events, int count) {
+			for (int i = 0; i < count; i++) {
+				Object event = events[i];
+				try {
+					shards[RuleEventIngestion.getLaneIndex(
+							RuleEventIngestion.getRoutingKey(event),
+							shardCount)].processEvent(event);
+				} catch (Exception e) {
+					logger.error("Error while processing event: " + event, e);
+				}
+			}
+		}
+	}
+
+	private class GlobalSink implements IRuleEventSink {
+
+		@Override
+		public void sendEvents(Object[] events, int count) {
+			for (int i = 0; i < count; i++) {
+				try {
+					globalShard.processEvent(events[i]);
+				} catch (Exception e) {
+					logger.error("Error while processing event: " + events[i],
+							e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import pl.edu.agh.samm.api.action.ActionExecution;
+import pl.edu.agh.samm.api.core.Rule;
+
+/**
+ * One variant of a rule evaluated by {@link RuleThresholdSweep} and the
+ * outcome of replaying the history through it
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ThresholdSweepVariant {
+
+	private final Map<String, String> parameters;
+	private final Rule rule;
+	private final ReplayReport report;
+
+	public ThresholdSweepVariant(Map<String, String> parameters, Rule rule,
+			ReplayReport report) {
+		this.parameters = Collections.unmodifiableMap(parameters);
+		this.rule = rule;
+		this.report = report;
+	}
+
+	/**
+	 * @return Values of the template parameters used by this variant
+	 */
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	public Rule getRule() {
+		return rule;
+	}
+
+	public ReplayReport getReport() {
+		return report;
+	}
+
+	public int getAlarmCount() {
+		return report.getAlarms().size();
+	}
+
+	public int getActionCount() {
+		return report.getActions().size();
+	}
+
+	/**
+	 * @return Times of the history at which the action would have been
+	 *         executed
+	 */
+	public List<Long> getActionTimes() {
+		List<Long> times = new ArrayList<Long>();
+		for (ActionExecution execution : report.getActions()) {
+			times.add(execution.getStartTime().getTime());
+		}
+		return times;
+	}
+
+	@Override
+	public String toString() {
+		return "ThresholdSweepVariant [parameters=" + parameters + ", alarms="
+				+ getAlarmCount() + ", actions=" + getActionCount() + "]";
+	}
+
+}
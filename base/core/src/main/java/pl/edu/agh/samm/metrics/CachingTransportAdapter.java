@@ -0,0 +1,436 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pl.edu.agh.samm.api.action.Action;
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
+import pl.edu.agh.samm.api.tadapter.IMeasurementListener;
+import pl.edu.agh.samm.api.tadapter.IResourceDiscoveryListener;
+import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
+
+/**
+ * Transport adapter reading capability values through the
+ * {@link CapabilityReadCache}. Values are cached per (resource URI,
+ * capability). A value missing from the cache is read by the first task
+ * which needs it - other tasks asking for it in the meantime wait for that
+ * read instead of issuing their own. All missing values of one request are
+ * read with a single call of the wrapped adapter. Other methods are passed to
+ * the wrapped adapter.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+class CachingTransportAdapter implements ITransportAdapter {
+
+	// stale entries are removed every PURGE_INTERVAL misses
+	private static final int PURGE_INTERVAL = 4096;
+
+	private final ITransportAdapter adapter;
+	private final CapabilityReadCache cache;
+	private final ConcurrentMap<CacheKey, CachedValue> values = new ConcurrentHashMap<CacheKey, CachedValue>();
+	private final ConcurrentMap<CacheKey, Read> reads = new ConcurrentHashMap<CacheKey, Read>();
+	private final ConcurrentMap<CacheKey, CachedValue> capabilityChecks = new ConcurrentHashMap<CacheKey, CachedValue>();
+	private final AtomicInteger missesSincePurge = new AtomicInteger();
+
+	public CachingTransportAdapter(ITransportAdapter adapter,
+			CapabilityReadCache cache) {
+		this.adapter = adapter;
+		this.cache = cache;
+	}
+
+	public ITransportAdapter getAdapter() {
+		return adapter;
+	}
+
+	@Override
+	public Object getCapabilityValue(Resource resource, String capabilityType)
+			throws Exception {
+		return getCapabilityValues(resource,
+				Collections.singletonList(capabilityType)).get(capabilityType);
+	}
+
+	@Override
+	public Map<String, Object> getCapabilityValues(Resource resource,
+			Collection<String> capabilityTypes) throws Exception {
+		CapabilityReadResults results = getCapabilityValues(Collections
+				.<Resource, Collection<String>> singletonMap(resource,
+						capabilityTypes));
+		Exception failure = results.getFailure(resource);
+		if (failure != null) {
+			throw failure;
+		}
+		return results.getValues(resource);
+	}
+
+	@Override
+	public CapabilityReadResults getCapabilityValues(
+			Map<Resource, Collection<String>> capabilityTypes) {
+		CapabilityReadResults results = new CapabilityReadResults();
+		long now = System.nanoTime();
+		long freshness = cache.getFreshnessNanos();
+		Map<Resource, Collection<String>> toRead = new IdentityHashMap<Resource, Collection<String>>();
+		Map<CacheKey, Read> ownReads = new HashMap<CacheKey, Read>();
+		List<PendingValue> pendingValues = new ArrayList<PendingValue>();
+
+		for (Map.Entry<Resource, Collection<String>> resourceReads : capabilityTypes
+				.entrySet()) {
+			Resource resource = resourceReads.getKey();
+			for (String capabilityType : resourceReads.getValue()) {
+				CacheKey key = new CacheKey(resource.getUri(), capabilityType);
+				CachedValue cached = values.get(key);
+				if (cached != null && now - cached.time <= freshness) {
+					cache.hits.incrementAndGet();
+					results.addValue(resource, capabilityType, cached.value);
+					continue;
+				}
+				Read read = ownReads.get(key);
+				if (read == null) {
+					read = new Read();
+					Read running = reads.putIfAbsent(key, read);
+					if (running != null) {
+						cache.sharedReads.incrementAndGet();
+						read = running;
+					} else {
+						cache.misses.incrementAndGet();
+						ownReads.put(key, read);
+						Collection<String> resourceToRead = toRead.get(resource);
+						if (resourceToRead == null) {
+							resourceToRead = new LinkedHashSet<String>();
+							toRead.put(resource, resourceToRead);
+						}
+						resourceToRead.add(capabilityType);
+						continue;
+					}
+				}
+				pendingValues.add(new PendingValue(resource, capabilityType,
+						read));
+			}
+		}
+
+		if (!toRead.isEmpty()) {
+			readMissing(toRead, ownReads, results);
+			if (missesSincePurge.addAndGet(ownReads.size()) >= PURGE_INTERVAL) {
+				missesSincePurge.set(0);
+				purge();
+			}
+		}
+
+		// reads of other tasks (or duplicates of our own ones)
+		long deadline = System.nanoTime() + cache.getSharedReadTimeoutNanos();
+		for (PendingValue pendingValue : pendingValues) {
+			try {
+				if (!pendingValue.read.await(deadline - System.nanoTime())) {
+					results.setFailure(pendingValue.resource,
+							new TimeoutException("Shared read of "
+									+ pendingValue.capabilityType
+									+ " timed out"));
+					continue;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				results.setFailure(pendingValue.resource, e);
+				continue;
+			}
+			if (pendingValue.read.failure != null) {
+				results.setFailure(pendingValue.resource,
+						pendingValue.read.failure);
+			} else {
+				results.addValue(pendingValue.resource,
+						pendingValue.capabilityType, pendingValue.read.value);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Every own read is completed (and removed) even if the wrapped adapter
+	 * throws an {@link Error} - tasks waiting for them must not hang.
+	 */
+	private void readMissing(Map<Resource, Collection<String>> toRead,
+			Map<CacheKey, Read> ownReads, CapabilityReadResults results) {
+		try {
+			CapabilityReadResults readResults = null;
+			Exception readFailure = null;
+			try {
+				readResults = adapter.getCapabilityValues(toRead);
+				if (readResults == null) {
+					readFailure = new IllegalStateException("No results from "
+							+ adapter);
+				}
+			} catch (RuntimeException e) {
+				readFailure = e;
+			}
+			long readTime = System.nanoTime();
+			for (Map.Entry<Resource, Collection<String>> resourceReads : toRead
+					.entrySet()) {
+				Resource resource = resourceReads.getKey();
+				Exception failure = readFailure != null ? readFailure
+						: readResults.getFailure(resource);
+				Map<String, Object> readValues = null;
+				if (failure == null) {
+					readValues = readResults.getValues(resource);
+					for (String capabilityType : resourceReads.getValue()) {
+						if (!readValues.containsKey(capabilityType)) {
+							failure = new IllegalStateException(
+									"No value read for: " + capabilityType
+											+ " of " + resource.getUri());
+							break;
+						}
+					}
+				}
+				if (failure != null) {
+					results.setFailure(resource, failure);
+				}
+				for (String capabilityType : resourceReads.getValue()) {
+					CacheKey key = new CacheKey(resource.getUri(),
+							capabilityType);
+					Read read = ownReads.get(key);
+					if (failure == null) {
+						Object value = readValues.get(capabilityType);
+						values.put(key, new CachedValue(value, readTime));
+						results.addValue(resource, capabilityType, value);
+						read.complete(value, null);
+					} else {
+						read.complete(null, failure);
+					}
+					reads.remove(key, read);
+				}
+			}
+		} finally {
+			for (Map.Entry<CacheKey, Read> ownRead : ownReads.entrySet()) {
+				Read read = ownRead.getValue();
+				if (!read.isDone()) {
+					read.complete(null, new IllegalStateException(
+							"Read aborted"));
+					reads.remove(ownRead.getKey(), read);
+				}
+			}
+		}
+	}
+
+	private void purge() {
+		long now = System.nanoTime();
+		removeOlderThan(values, now - cache.getFreshnessNanos());
+		removeOlderThan(capabilityChecks,
+				now - cache.getCapabilityCheckTtlNanos());
+	}
+
+	private static void removeOlderThan(Map<CacheKey, CachedValue> entries,
+			long time) {
+		for (Iterator<CachedValue> iterator = entries.values().iterator(); iterator
+				.hasNext();) {
+			if (iterator.next().time < time) {
+				iterator.remove();
+			}
+		}
+	}
+
+	@Override
+	public boolean hasCapability(Resource resource, String capabilityType)
+			throws Exception {
+		CacheKey key = new CacheKey(resource.getUri(), capabilityType);
+		CachedValue cached = capabilityChecks.get(key);
+		if (cached != null
+				&& System.nanoTime() - cached.time <= cache
+						.getCapabilityCheckTtlNanos()) {
+			cache.capabilityCheckHits.incrementAndGet();
+			return ((Boolean) cached.value).booleanValue();
+		}
+		cache.capabilityCheckMisses.incrementAndGet();
+		boolean hasCapability = adapter.hasCapability(resource, capabilityType);
+		capabilityChecks.put(key, new CachedValue(
+				Boolean.valueOf(hasCapability), System.nanoTime()));
+		return hasCapability;
+	}
+
+	@Override
+	public String getEndpointKey(Resource resource) {
+		return adapter.getEndpointKey(resource);
+	}
+
+	@Override
+	public void addMeasurementListener(IMeasurementListener capabilityListener) {
+		adapter.addMeasurementListener(capabilityListener);
+	}
+
+	@Override
+	public void removeMeasurementListener(
+			IMeasurementListener capabilityListener) {
+		adapter.removeMeasurementListener(capabilityListener);
+	}
+
+	@Override
+	public void addTransportAdapterListener(IResourceDiscoveryListener listener) {
+		adapter.addTransportAdapterListener(listener);
+	}
+
+	@Override
+	public void removeTransportAdapterListener(
+			IResourceDiscoveryListener listener) {
+		adapter.removeTransportAdapterListener(listener);
+	}
+
+	@Override
+	public void registerResource(Resource resource) throws Exception {
+		adapter.registerResource(resource);
+	}
+
+	@Override
+	public void unregisterResource(Resource resource) {
+		adapter.unregisterResource(resource);
+		String uri = resource.getUri();
+		removeResource(values, uri);
+		removeResource(capabilityChecks, uri);
+	}
+
+	private static void removeResource(Map<CacheKey, CachedValue> entries,
+			String resourceUri) {
+		for (Iterator<CacheKey> iterator = entries.keySet().iterator(); iterator
+				.hasNext();) {
+			if (iterator.next().resourceUri.equals(resourceUri)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	@Override
+	public boolean isURISupported(Resource resource) {
+		return adapter.isURISupported(resource);
+	}
+
+	@Override
+	public void discoverChildren(Resource resource, List<String> types)
+			throws Exception {
+		adapter.discoverChildren(resource, types);
+	}
+
+	@Override
+	public boolean isActionSupported(String actionUri) {
+		return adapter.isActionSupported(actionUri);
+	}
+
+	@Override
+	public boolean isResourceRegistered(Resource resource) {
+		return adapter.isResourceRegistered(resource);
+	}
+
+	@Override
+	public void executeAction(Action actionToExecute) throws Exception {
+		adapter.executeAction(actionToExecute);
+	}
+
+	@Override
+	public String toString() {
+		return "Caching " + adapter;
+	}
+
+	private static class CacheKey {
+
+		private final String resourceUri;
+		private final String capabilityType;
+
+		public CacheKey(String resourceUri, String capabilityType) {
+			this.resourceUri = resourceUri;
+			this.capabilityType = capabilityType;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * resourceUri.hashCode() + capabilityType.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return resourceUri.equals(other.resourceUri)
+					&& capabilityType.equals(other.capabilityType);
+		}
+	}
+
+	private static class CachedValue {
+
+		private final Object value;
+		private final long time;
+
+		public CachedValue(Object value, long time) {
+			this.value = value;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Read in progress - other tasks wait for its result.
+	 */
+	private static class Read {
+
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Object value;
+		private volatile Exception failure;
+
+		public void complete(Object value, Exception failure) {
+			this.value = value;
+			this.failure = failure;
+			done.countDown();
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		/**
+		 * @return <code>false</code> if the read didn't complete in time
+		 */
+		public boolean await(long timeoutNanos) throws InterruptedException {
+			return done.await(timeoutNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private static class PendingValue {
+
+		private final Resource resource;
+		private final String capabilityType;
+		private final Read read;
+
+		public PendingValue(Resource resource, String capabilityType, Read read) {
+			this.resource = resource;
+			this.capabilityType = capabilityType;
+			this.read = read;
+		}
+	}
+
+}
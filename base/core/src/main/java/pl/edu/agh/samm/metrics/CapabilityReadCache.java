@@ -0,0 +1,141 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
+
+/**
+ * Short-lived cache of capability values shared by all metric tasks. Metrics
+ * reading the same capability of the same resource within
+ * <code>freshnessMillis</code> get the same value with a single read of the
+ * transport adapter, and concurrent reads of a value which isn't cached are
+ * merged into one (single-flight). Results of
+ * {@link ITransportAdapter#hasCapability(pl.edu.agh.samm.api.core.Resource, String)}
+ * are remembered for <code>capabilityCheckTtlMillis</code>.<br>
+ * Tasks use the cache through the adapters returned by
+ * {@link #forAdapter(ITransportAdapter)}.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class CapabilityReadCache {
+
+	private long freshnessMillis = 500L;
+	private long capabilityCheckTtlMillis = 60000L;
+	private long sharedReadTimeoutMillis = 10000L;
+
+	private final Map<ITransportAdapter, CachingTransportAdapter> adapters = new IdentityHashMap<ITransportAdapter, CachingTransportAdapter>();
+
+	final AtomicLong hits = new AtomicLong();
+	final AtomicLong misses = new AtomicLong();
+	final AtomicLong sharedReads = new AtomicLong();
+	final AtomicLong capabilityCheckHits = new AtomicLong();
+	final AtomicLong capabilityCheckMisses = new AtomicLong();
+
+	/**
+	 * Returns the caching view of the adapter. The same instance is returned
+	 * for every call with the same adapter, so tasks reading from one adapter
+	 * can still be grouped (see {@link MetricPollGroups}).
+	 */
+	public synchronized ITransportAdapter forAdapter(ITransportAdapter adapter) {
+		if (adapter instanceof CachingTransportAdapter) {
+			return adapter;
+		}
+		CachingTransportAdapter cachingAdapter = adapters.get(adapter);
+		if (cachingAdapter == null) {
+			cachingAdapter = new CachingTransportAdapter(adapter, this);
+			adapters.put(adapter, cachingAdapter);
+		}
+		return cachingAdapter;
+	}
+
+	long getFreshnessNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(freshnessMillis);
+	}
+
+	long getCapabilityCheckTtlNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(capabilityCheckTtlMillis);
+	}
+
+	long getSharedReadTimeoutNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(sharedReadTimeoutMillis);
+	}
+
+	public long getFreshnessMillis() {
+		return freshnessMillis;
+	}
+
+	public void setFreshnessMillis(long freshnessMillis) {
+		this.freshnessMillis = freshnessMillis;
+	}
+
+	public long getCapabilityCheckTtlMillis() {
+		return capabilityCheckTtlMillis;
+	}
+
+	public void setCapabilityCheckTtlMillis(long capabilityCheckTtlMillis) {
+		this.capabilityCheckTtlMillis = capabilityCheckTtlMillis;
+	}
+
+	public long getSharedReadTimeoutMillis() {
+		return sharedReadTimeoutMillis;
+	}
+
+	/**
+	 * Sets how long a task waits for a value read by another task before the
+	 * value is reported as failed.
+	 */
+	public void setSharedReadTimeoutMillis(long sharedReadTimeoutMillis) {
+		this.sharedReadTimeoutMillis = sharedReadTimeoutMillis;
+	}
+
+	/**
+	 * @return Number of values served from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Number of values read from the transport adapters
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Number of values taken from a read started by another task
+	 */
+	public long getSharedReads() {
+		return sharedReads.get();
+	}
+
+	public long getCapabilityCheckHits() {
+		return capabilityCheckHits.get();
+	}
+
+	public long getCapabilityCheckMisses() {
+		return capabilityCheckMisses.get();
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.Collection;
+
+import pl.edu.agh.samm.api.core.Resource;
+
+/**
+ * Thrown (reported to {@link IMetricProblemObserver}) when a value of a
+ * capability couldn't be read from a transport adapter - the adapter failed,
+ * the read timed out or there was no capacity to execute it. The failure is
+ * an endpoint failure if the whole call to the endpoint failed, not only the
+ * read of this resource.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class CapabilityReadException extends Exception {
+
+	private static final long serialVersionUID = -2740474521962873305L;
+
+	private final boolean endpointFailure;
+
+	public CapabilityReadException(Resource resource,
+			Collection<String> capabilities, Throwable cause) {
+		this(resource, capabilities, cause, false);
+	}
+
+	public CapabilityReadException(Resource resource,
+			Collection<String> capabilities, Throwable cause,
+			boolean endpointFailure) {
+		super("Couldn't read capabilities: " + capabilities + " of resource: "
+				+ (resource == null ? null : resource.getUri()), cause);
+		this.endpointFailure = endpointFailure;
+	}
+
+	/**
+	 * @return <code>true</code> if no resource could be read in the call
+	 *         which failed - the endpoint failed rather than the resource
+	 */
+	public boolean isEndpointFailure() {
+		return endpointFailure;
+	}
+
+}
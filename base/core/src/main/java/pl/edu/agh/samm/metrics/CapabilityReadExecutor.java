@@ -0,0 +1,278 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
+import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
+
+/**
+ * Executes capability reads outside of the scheduler threads. <br>
+ * Reads are run on virtual threads when the JVM provides them (and
+ * <code>useVirtualThreads</code> is set), otherwise on a bounded elastic pool:
+ * threads are created on demand up to <code>maxThreads</code> and die after a
+ * minute of inactivity, waiting reads are queued up to
+ * <code>queueCapacity</code>. A read which doesn't finish in
+ * <code>readTimeoutMillis</code> is reported as failed with a
+ * {@link TimeoutException} and the thread executing it is interrupted.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class CapabilityReadExecutor {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(CapabilityReadExecutor.class);
+
+	public static final long DEFAULT_READ_TIMEOUT_MILLIS = 5000L;
+	public static final int DEFAULT_MAX_THREADS = 64;
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+	private long readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+	private int maxThreads = DEFAULT_MAX_THREADS;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private boolean useVirtualThreads = true;
+
+	private ExecutorService ioExecutor;
+	private ScheduledThreadPoolExecutor timeoutScheduler;
+
+	private volatile CoreInstrumentation instrumentation = null;
+
+	private final AtomicLong timedOutReads = new AtomicLong();
+	private final AtomicLong rejectedReads = new AtomicLong();
+
+	public void init() {
+		if (useVirtualThreads) {
+			ioExecutor = createVirtualThreadExecutor();
+		}
+		if (ioExecutor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads,
+					maxThreads, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(queueCapacity),
+					new NamedThreadFactory("samm-capability-read"));
+			pool.allowCoreThreadTimeOut(true);
+			ioExecutor = pool;
+			logger.info("Capability reads executed on a pool of up to "
+					+ maxThreads + " threads");
+		} else {
+			logger.info("Capability reads executed on virtual threads");
+		}
+		timeoutScheduler = new ScheduledThreadPoolExecutor(1,
+				new NamedThreadFactory("samm-capability-read-timeout"));
+		timeoutScheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	public void destroy() {
+		if (ioExecutor != null) {
+			ioExecutor.shutdownNow();
+		}
+		if (timeoutScheduler != null) {
+			timeoutScheduler.shutdownNow();
+		}
+	}
+
+	private ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method factoryMethod = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factoryMethod.invoke(null);
+		} catch (NoSuchMethodException e) {
+			// JVM without virtual threads
+			return null;
+		} catch (Exception e) {
+			logger.warn("Couldn't create virtual thread executor!", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Starts reading the capability values (with
+	 * {@link ITransportAdapter#getCapabilityValues(Map)}) and returns
+	 * immediately. Result is passed to the callback on one of the executor's
+	 * threads.
+	 */
+	public void read(ITransportAdapter adapter,
+			Map<Resource, Collection<String>> capabilities,
+			ICapabilityReadCallback callback) {
+		new ReadOperation(adapter, capabilities, callback).start();
+	}
+
+	public CoreInstrumentation getInstrumentation() {
+		return instrumentation;
+	}
+
+	/**
+	 * Makes the executor record the duration of the adapter calls it makes.
+	 */
+	public void setInstrumentation(CoreInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	public long getTimedOutReads() {
+		return timedOutReads.get();
+	}
+
+	public long getRejectedReads() {
+		return rejectedReads.get();
+	}
+
+	public long getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	public void setReadTimeoutMillis(long readTimeoutMillis) {
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public boolean isUseVirtualThreads() {
+		return useVirtualThreads;
+	}
+
+	public void setUseVirtualThreads(boolean useVirtualThreads) {
+		this.useVirtualThreads = useVirtualThreads;
+	}
+
+	private class ReadOperation implements Runnable {
+
+		private final ITransportAdapter adapter;
+		private final Map<Resource, Collection<String>> capabilities;
+		private final ICapabilityReadCallback callback;
+
+		private final AtomicBoolean started = new AtomicBoolean(false);
+		private final AtomicBoolean completed = new AtomicBoolean(false);
+		private volatile Future<?> execution;
+		private volatile ScheduledFuture<?> timeout;
+
+		public ReadOperation(ITransportAdapter adapter,
+				Map<Resource, Collection<String>> capabilities,
+				ICapabilityReadCallback callback) {
+			this.adapter = adapter;
+			this.capabilities = capabilities;
+			this.callback = callback;
+		}
+
+		public void start() {
+			try {
+				execution = ioExecutor.submit(this);
+			} catch (RejectedExecutionException e) {
+				rejectedReads.incrementAndGet();
+				started.set(true);
+				completed.set(true);
+				callback.readFinished();
+				callback.readFailed(e);
+				return;
+			}
+			timeout = timeoutScheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					timedOut();
+				}
+			}, readTimeoutMillis, TimeUnit.MILLISECONDS);
+			if (completed.get()) {
+				timeout.cancel(false);
+			}
+		}
+
+		@Override
+		public void run() {
+			if (!started.compareAndSet(false, true)) {
+				// timed out while waiting for a thread
+				return;
+			}
+			CapabilityReadResults results = null;
+			Exception failure = null;
+			CoreInstrumentation instrumentation = CapabilityReadExecutor.this.instrumentation;
+			long start = instrumentation != null
+					&& instrumentation.isEnabled() ? System.nanoTime() : 0L;
+			try {
+				results = adapter.getCapabilityValues(capabilities);
+			} catch (Exception e) {
+				failure = e;
+			} finally {
+				if (start != 0L) {
+					instrumentation.recordAdapterCall(adapter,
+							System.nanoTime() - start);
+				}
+				callback.readFinished();
+			}
+			if (completed.compareAndSet(false, true)) {
+				ScheduledFuture<?> timeoutFuture = timeout;
+				if (timeoutFuture != null) {
+					timeoutFuture.cancel(false);
+				}
+				if (failure == null) {
+					callback.readCompleted(results);
+				} else {
+					callback.readFailed(failure);
+				}
+			}
+		}
+
+		private void timedOut() {
+			if (completed.compareAndSet(false, true)) {
+				timedOutReads.incrementAndGet();
+				boolean neverStarted = started.compareAndSet(false, true);
+				Future<?> executionFuture = execution;
+				if (executionFuture != null) {
+					executionFuture.cancel(true);
+				}
+				if (neverStarted) {
+					callback.readFinished();
+				}
+				callback.readFailed(new TimeoutException(
+						"Read timed out after " + readTimeoutMillis + "ms"));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
+
+/**
+ * Keeps an {@link EndpointCircuitBreaker} for every endpoint of a transport
+ * adapter (see {@link ITransportAdapter#getEndpointKey(pl.edu.agh.samm.api.core.Resource)})
+ * and holds the configuration shared by all breakers.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class CircuitBreakerRegistry {
+
+	private int failureThreshold = 5;
+	private long initialBackoffMillis = 1000L;
+	private long maxBackoffMillis = 60000L;
+	private double backoffMultiplier = 2.0;
+	private double jitter = 0.2;
+	private long probeTimeoutMillis = 30000L;
+
+	private final ConcurrentMap<BreakerKey, EndpointCircuitBreaker> breakers = new ConcurrentHashMap<BreakerKey, EndpointCircuitBreaker>();
+
+	public EndpointCircuitBreaker getBreaker(ITransportAdapter adapter,
+			String endpointKey) {
+		BreakerKey key = new BreakerKey(adapter, endpointKey);
+		EndpointCircuitBreaker breaker = breakers.get(key);
+		if (breaker == null) {
+			breaker = new EndpointCircuitBreaker(endpointKey, this);
+			EndpointCircuitBreaker existing = breakers.putIfAbsent(key,
+					breaker);
+			if (existing != null) {
+				breaker = existing;
+			}
+		}
+		return breaker;
+	}
+
+	public List<EndpointCircuitBreaker> getBreakers() {
+		return new ArrayList<EndpointCircuitBreaker>(breakers.values());
+	}
+
+	long getProbeTimeoutNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(probeTimeoutMillis);
+	}
+
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * @param failureThreshold
+	 *            Number of consecutive failed reads which opens the breaker
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	public long getInitialBackoffMillis() {
+		return initialBackoffMillis;
+	}
+
+	public void setInitialBackoffMillis(long initialBackoffMillis) {
+		this.initialBackoffMillis = initialBackoffMillis;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public double getBackoffMultiplier() {
+		return backoffMultiplier;
+	}
+
+	public void setBackoffMultiplier(double backoffMultiplier) {
+		this.backoffMultiplier = backoffMultiplier;
+	}
+
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * @param jitter
+	 *            Fraction of the backoff by which it is randomly lengthened
+	 *            or shortened, e.g. 0.2 gives 80%-120% of the backoff
+	 */
+	public void setJitter(double jitter) {
+		this.jitter = jitter;
+	}
+
+	public long getProbeTimeoutMillis() {
+		return probeTimeoutMillis;
+	}
+
+	/**
+	 * @param probeTimeoutMillis
+	 *            Time after which a probe without a result is considered lost
+	 *            and another one is let through
+	 */
+	public void setProbeTimeoutMillis(long probeTimeoutMillis) {
+		this.probeTimeoutMillis = probeTimeoutMillis;
+	}
+
+	private static class BreakerKey {
+
+		private final ITransportAdapter adapter;
+		private final String endpointKey;
+
+		public BreakerKey(ITransportAdapter adapter, String endpointKey) {
+			this.adapter = adapter;
+			this.endpointKey = endpointKey;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(adapter)
+					+ (endpointKey == null ? 0 : endpointKey.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof BreakerKey)) {
+				return false;
+			}
+			BreakerKey other = (BreakerKey) obj;
+			return adapter == other.adapter
+					&& (endpointKey == null ? other.endpointKey == null
+							: endpointKey.equals(other.endpointKey));
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+/**
+ * State of an {@link EndpointCircuitBreaker}.
+ * <ul>
+ * <li>CLOSED - the endpoint is polled normally</li>
+ * <li>OPEN - the endpoint keeps failing, metrics reading from it are paused
+ * until the backoff expires</li>
+ * <li>HALF_OPEN - a single probe read is let through, its result closes or
+ * opens the breaker again</li>
+ * </ul>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public enum CircuitState {
+	CLOSED, OPEN, HALF_OPEN
+}
@@ -0,0 +1,309 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.edu.agh.samm.api.core.CircuitBreakerSnapshot;
+import pl.edu.agh.samm.api.core.ICoreInstrumentation;
+import pl.edu.agh.samm.api.core.LatencySnapshot;
+import pl.edu.agh.samm.api.core.ListenerQueueSnapshot;
+import pl.edu.agh.samm.api.core.RuleProfile;
+import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
+
+/**
+ * Collects the statistics of the metrics polling loop and the rule processor
+ * in {@link LatencyHistogram}s and lock-free counters. Instrumented code
+ * checks {@link #isEnabled()} before taking any timestamps, so disabled
+ * instrumentation costs a single volatile read. Per-metric timings are
+ * sampled, as a timestamp alone costs as much as a poll of a fast adapter.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class CoreInstrumentation implements ICoreInstrumentation {
+
+	public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+	private volatile boolean enabled = true;
+	private volatile int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+	private final LatencyHistogram taskPolls = new LatencyHistogram();
+	private final LatencyHistogram groupPolls = new LatencyHistogram();
+	private final LatencyHistogram schedulerLag = new LatencyHistogram();
+	private final LatencyHistogram listenerFanOut = new LatencyHistogram();
+	private final LatencyHistogram ruleProcessing = new LatencyHistogram();
+	// adapter instance -> histogram of its class
+	private final ConcurrentMap<ITransportAdapter, LatencyHistogram> adapterCalls = new ConcurrentHashMap<ITransportAdapter, LatencyHistogram>();
+	private final ConcurrentMap<String, LatencyHistogram> adapterClassCalls = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, AtomicLong> failedReads = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, RuleCounters> rules = new ConcurrentHashMap<String, RuleCounters>();
+	private volatile CircuitBreakerRegistry circuitBreakerRegistry = null;
+	private volatile MetricEventDispatcher eventDispatcher = null;
+
+	/**
+	 * Publishes the state of the breakers of the given registry (see
+	 * {@link #getCircuitBreakerStates()}).
+	 */
+	public void setCircuitBreakerRegistry(
+			CircuitBreakerRegistry circuitBreakerRegistry) {
+		this.circuitBreakerRegistry = circuitBreakerRegistry;
+	}
+
+	/**
+	 * Publishes the statistics of the listener queues of the given
+	 * dispatcher (see {@link #getListenerQueues()}).
+	 */
+	public void setEventDispatcher(MetricEventDispatcher eventDispatcher) {
+		this.eventDispatcher = eventDispatcher;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	@Override
+	public void setSampleInterval(int sampleInterval) {
+		if (sampleInterval < 1) {
+			throw new IllegalArgumentException(
+					"Sample interval must be positive: " + sampleInterval);
+		}
+		this.sampleInterval = sampleInterval;
+	}
+
+	@Override
+	public void reset() {
+		taskPolls.reset();
+		groupPolls.reset();
+		schedulerLag.reset();
+		listenerFanOut.reset();
+		ruleProcessing.reset();
+		for (LatencyHistogram histogram : adapterClassCalls.values()) {
+			histogram.reset();
+		}
+		failedReads.clear();
+		rules.clear();
+	}
+
+	public void recordTaskPoll(long nanos) {
+		taskPolls.recordNanos(nanos);
+	}
+
+	public void recordGroupPoll(long nanos) {
+		groupPolls.recordNanos(nanos);
+	}
+
+	public void recordSchedulerLag(long nanos) {
+		schedulerLag.recordNanos(nanos);
+	}
+
+	public void recordListenerFanOut(long nanos) {
+		listenerFanOut.recordNanos(nanos);
+	}
+
+	public void recordRuleProcessing(long nanos) {
+		ruleProcessing.recordNanos(nanos);
+	}
+
+	public void recordAdapterCall(ITransportAdapter adapter, long nanos) {
+		LatencyHistogram histogram = adapterCalls.get(adapter);
+		if (histogram == null) {
+			histogram = getAdapterClassHistogram(getAdapterName(adapter));
+			adapterCalls.putIfAbsent(adapter, histogram);
+		}
+		histogram.recordNanos(nanos);
+	}
+
+	public void recordFailedRead(String endpointKey) {
+		String key = String.valueOf(endpointKey);
+		AtomicLong counter = failedReads.get(key);
+		if (counter == null) {
+			counter = new AtomicLong();
+			AtomicLong existing = failedReads.putIfAbsent(key, counter);
+			if (existing != null) {
+				counter = existing;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Adds the costs reported by Esper for a single reporting interval
+	 */
+	public void recordRuleStatement(String ruleName, long cpuNanos,
+			long wallNanos, long eventsIn) {
+		RuleCounters counters = getRuleCounters(ruleName);
+		counters.cpuNanos.addAndGet(cpuNanos);
+		counters.wallNanos.addAndGet(wallNanos);
+		counters.eventsIn.addAndGet(eventsIn);
+	}
+
+	public void recordRuleMatches(String ruleName, int matches) {
+		getRuleCounters(ruleName).eventsMatched.addAndGet(matches);
+	}
+
+	public void recordRuleAction(String ruleName) {
+		getRuleCounters(ruleName).actions.incrementAndGet();
+	}
+
+	/**
+	 * Drops the profile of a removed rule
+	 */
+	public void removeRule(String ruleName) {
+		rules.remove(ruleName);
+	}
+
+	public void removeAllRules() {
+		rules.clear();
+	}
+
+	private RuleCounters getRuleCounters(String ruleName) {
+		RuleCounters counters = rules.get(ruleName);
+		if (counters == null) {
+			counters = new RuleCounters();
+			RuleCounters existing = rules.putIfAbsent(ruleName, counters);
+			if (existing != null) {
+				counters = existing;
+			}
+		}
+		return counters;
+	}
+
+	private LatencyHistogram getAdapterClassHistogram(String name) {
+		LatencyHistogram histogram = adapterClassCalls.get(name);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram existing = adapterClassCalls.putIfAbsent(name,
+					histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		return histogram;
+	}
+
+	private static String getAdapterName(ITransportAdapter adapter) {
+		if (adapter instanceof CachingTransportAdapter) {
+			adapter = ((CachingTransportAdapter) adapter).getAdapter();
+		}
+		return adapter.getClass().getName();
+	}
+
+	@Override
+	public LatencySnapshot getTaskPollLatency() {
+		return taskPolls.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getGroupPollLatency() {
+		return groupPolls.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getSchedulerLag() {
+		return schedulerLag.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getListenerFanOutLatency() {
+		return listenerFanOut.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getRuleProcessingLatency() {
+		return ruleProcessing.snapshot();
+	}
+
+	@Override
+	public Map<String, LatencySnapshot> getAdapterCallLatencies() {
+		Map<String, LatencySnapshot> latencies = new TreeMap<String, LatencySnapshot>();
+		for (Map.Entry<String, LatencyHistogram> entry : adapterClassCalls
+				.entrySet()) {
+			latencies.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		return latencies;
+	}
+
+	@Override
+	public Map<String, Long> getFailedReadsPerEndpoint() {
+		Map<String, Long> failures = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : failedReads.entrySet()) {
+			failures.put(entry.getKey(), entry.getValue().get());
+		}
+		return failures;
+	}
+
+	@Override
+	public Map<String, RuleProfile> getRuleProfiles() {
+		Map<String, RuleProfile> profiles = new TreeMap<String, RuleProfile>();
+		for (Map.Entry<String, RuleCounters> entry : rules.entrySet()) {
+			RuleCounters counters = entry.getValue();
+			profiles.put(entry.getKey(), new RuleProfile(entry.getKey(),
+					counters.cpuNanos.get() / 1000L,
+					counters.wallNanos.get() / 1000L, counters.eventsIn.get(),
+					counters.eventsMatched.get(), counters.actions.get()));
+		}
+		return profiles;
+	}
+
+	@Override
+	public Map<String, CircuitBreakerSnapshot> getCircuitBreakerStates() {
+		Map<String, CircuitBreakerSnapshot> states = new TreeMap<String, CircuitBreakerSnapshot>();
+		CircuitBreakerRegistry circuitBreakerRegistry = this.circuitBreakerRegistry;
+		if (circuitBreakerRegistry != null) {
+			for (EndpointCircuitBreaker breaker : circuitBreakerRegistry
+					.getBreakers()) {
+				states.put(breaker.getEndpointKey(), breaker.snapshot());
+			}
+		}
+		return states;
+	}
+
+	@Override
+	public Map<String, ListenerQueueSnapshot> getListenerQueues() {
+		MetricEventDispatcher eventDispatcher = this.eventDispatcher;
+		if (eventDispatcher == null) {
+			return new TreeMap<String, ListenerQueueSnapshot>();
+		}
+		return eventDispatcher.getQueueStatistics();
+	}
+
+	private static class RuleCounters {
+		final AtomicLong cpuNanos = new AtomicLong();
+		final AtomicLong wallNanos = new AtomicLong();
+		final AtomicLong eventsIn = new AtomicLong();
+		final AtomicLong eventsMatched = new AtomicLong();
+		final AtomicLong actions = new AtomicLong();
+	}
+
+}
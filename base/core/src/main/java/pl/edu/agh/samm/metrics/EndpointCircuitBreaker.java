@@ -0,0 +1,203 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.core.CircuitBreakerSnapshot;
+
+/**
+ * Circuit breaker of a single transport adapter endpoint. After
+ * <code>failureThreshold</code> consecutive failed reads the breaker opens and
+ * reads are rejected (metrics are paused) until the backoff expires. Then one
+ * probe read is let through - if it succeeds the breaker closes and metrics
+ * resume, otherwise the breaker opens again with the backoff multiplied (up
+ * to the maximum). Every backoff is randomized with the configured jitter so
+ * endpoints which failed together aren't probed together.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class EndpointCircuitBreaker {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(EndpointCircuitBreaker.class);
+
+	private final String endpointKey;
+	private final CircuitBreakerRegistry config;
+	private final Random random = new Random();
+
+	private volatile CircuitState state = CircuitState.CLOSED;
+	private volatile int consecutiveFailures = 0;
+	private long backoffNanos = 0L;
+	// OPEN - when to let the probe through, HALF_OPEN - when the probe started
+	private long stateTime = 0L;
+
+	private long openedCount = 0L;
+	private long halfOpenedCount = 0L;
+	private long closedCount = 0L;
+	private long rejectedCount = 0L;
+
+	EndpointCircuitBreaker(String endpointKey, CircuitBreakerRegistry config) {
+		this.endpointKey = endpointKey;
+		this.config = config;
+	}
+
+	/**
+	 * Checks if a read from the endpoint can be made. The caller has to report
+	 * the result of the read with {@link #recordSuccess()} or
+	 * {@link #recordFailure()}.
+	 * 
+	 * @return <code>false</code> if the read should be skipped
+	 */
+	public boolean allowRequest() {
+		if (state == CircuitState.CLOSED) {
+			return true;
+		}
+		synchronized (this) {
+			long now = System.nanoTime();
+			switch (state) {
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (now - stateTime >= 0) {
+					state = CircuitState.HALF_OPEN;
+					stateTime = now;
+					halfOpenedCount++;
+					logger.info("Probing endpoint: " + endpointKey);
+					return true;
+				}
+				break;
+			case HALF_OPEN:
+				// the probe got lost (e.g. the poll was cancelled) - let
+				// another one through
+				if (now - stateTime >= config.getProbeTimeoutNanos()) {
+					stateTime = now;
+					return true;
+				}
+				break;
+			}
+			rejectedCount++;
+			return false;
+		}
+	}
+
+	public void recordSuccess() {
+		if (state == CircuitState.CLOSED && consecutiveFailures == 0) {
+			return;
+		}
+		synchronized (this) {
+			consecutiveFailures = 0;
+			backoffNanos = 0L;
+			if (state != CircuitState.CLOSED) {
+				state = CircuitState.CLOSED;
+				closedCount++;
+				logger.info("Endpoint recovered, resuming metrics: "
+						+ endpointKey);
+			}
+		}
+	}
+
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		switch (state) {
+		case CLOSED:
+			if (consecutiveFailures >= config.getFailureThreshold()) {
+				backoffNanos = TimeUnit.MILLISECONDS.toNanos(config
+						.getInitialBackoffMillis());
+				open();
+			}
+			break;
+		case HALF_OPEN:
+			backoffNanos = Math.min(
+					(long) (backoffNanos * config.getBackoffMultiplier()),
+					TimeUnit.MILLISECONDS.toNanos(config.getMaxBackoffMillis()));
+			open();
+			break;
+		case OPEN:
+			// result of a read started before the breaker opened
+			break;
+		}
+	}
+
+	private void open() {
+		double jitter = config.getJitter() * (2 * random.nextDouble() - 1);
+		long delay = (long) (backoffNanos * (1 + jitter));
+		state = CircuitState.OPEN;
+		stateTime = System.nanoTime() + delay;
+		openedCount++;
+		logger.warn("Endpoint failing, pausing its metrics for "
+				+ TimeUnit.NANOSECONDS.toMillis(delay) + "ms: " + endpointKey);
+	}
+
+	/**
+	 * @return <code>true</code> if the breaker isn't closed - single failed
+	 *         reads below the failure threshold don't make the endpoint
+	 *         failing
+	 */
+	public boolean isFailing() {
+		return state != CircuitState.CLOSED;
+	}
+
+	public String getEndpointKey() {
+		return endpointKey;
+	}
+
+	public CircuitState getState() {
+		return state;
+	}
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	public synchronized long getOpenedCount() {
+		return openedCount;
+	}
+
+	public synchronized long getHalfOpenedCount() {
+		return halfOpenedCount;
+	}
+
+	public synchronized long getClosedCount() {
+		return closedCount;
+	}
+
+	/**
+	 * @return Number of reads skipped because the breaker wasn't closed
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	public synchronized CircuitBreakerSnapshot snapshot() {
+		return new CircuitBreakerSnapshot(endpointKey, state.name(),
+				consecutiveFailures, openedCount, halfOpenedCount, closedCount,
+				rejectedCount);
+	}
+
+	@Override
+	public String toString() {
+		return endpointKey + " " + state;
+	}
+
+}
@@ -0,0 +1,97 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IMetricScheduler} backed by a {@link ScheduledThreadPoolExecutor}.
+ * Every scheduled task is a separate entry in the executor's delay queue, so
+ * starting, stopping and rescheduling costs O(log n).
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ExecutorMetricScheduler implements IMetricScheduler {
+
+	public static final int DEFAULT_POOL_SIZE = 10;
+
+	private final ScheduledThreadPoolExecutor executor;
+
+	public ExecutorMetricScheduler() {
+		this(DEFAULT_POOL_SIZE);
+	}
+
+	public ExecutorMetricScheduler(int poolSize) {
+		executor = new ScheduledThreadPoolExecutor(poolSize);
+		// cancelled tasks would otherwise stay in the queue until their delay
+		// expires
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	@Override
+	public IMetricSchedule schedule(Runnable task, long periodMillis) {
+		return new ExecutorSchedule(task, periodMillis);
+	}
+
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	private class ExecutorSchedule implements IMetricSchedule {
+
+		private final Runnable task;
+		private long period;
+		private ScheduledFuture<?> future;
+		private boolean cancelled = false;
+
+		public ExecutorSchedule(Runnable task, long period) {
+			this.task = task;
+			this.period = period;
+			this.future = executor.scheduleAtFixedRate(task, 0L, period,
+					TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+			future.cancel(false);
+		}
+
+		@Override
+		public synchronized void setPeriod(long periodMillis) {
+			if (cancelled || periodMillis == period) {
+				return;
+			}
+			long delay = Math.max(0L, future.getDelay(TimeUnit.MILLISECONDS)
+					- period + periodMillis);
+			future.cancel(false);
+			period = periodMillis;
+			future = executor.scheduleAtFixedRate(task, delay, period,
+					TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public synchronized long getPeriod() {
+			return period;
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
+
+/**
+ * Receives results of reads executed by {@link CapabilityReadExecutor}. For
+ * every read exactly one of {@link #readCompleted(CapabilityReadResults)} and
+ * {@link #readFailed(Exception)} is called. Independently of that
+ * {@link #readFinished()} is called when the transport adapter call returns,
+ * which can be long after the read has timed out.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public interface ICapabilityReadCallback {
+
+	void readCompleted(CapabilityReadResults results);
+
+	void readFailed(Exception e);
+
+	void readFinished();
+
+}
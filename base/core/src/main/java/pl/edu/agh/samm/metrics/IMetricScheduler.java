@@ -0,0 +1,42 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+/**
+ * Schedules periodic execution of metric polling tasks. Implementations decide
+ * how the periods are tracked (a thread pool with a delay queue, a timing
+ * wheel, ...). All operations are expected to be cheap enough to be called for
+ * every started or stopped metric.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public interface IMetricScheduler {
+
+	/**
+	 * Starts executing given task periodically.
+	 * 
+	 * @param task
+	 *            Task to execute
+	 * @param periodMillis
+	 *            Period between two consecutive executions (in milliseconds)
+	 * @return Handle which can be used to cancel the task or change its period
+	 */
+	IMetricSchedule schedule(Runnable task, long periodMillis);
+
+}
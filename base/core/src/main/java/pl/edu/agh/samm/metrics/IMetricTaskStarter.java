@@ -0,0 +1,48 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import pl.edu.agh.samm.api.metrics.IMetric;
+
+/**
+ * Starts metrics on behalf of {@link MetricRegistry}.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public interface IMetricTaskStarter {
+
+	/**
+	 * Creates the task of the metric. Called with the metric's lock held, only
+	 * if the metric isn't running yet.
+	 * 
+	 * @param metric
+	 *            Metric to start
+	 * @return Task computing the metric
+	 */
+	MetricTask create(IMetric metric);
+
+	/**
+	 * Schedules the task created by {@link #create(IMetric)}. Called with the
+	 * metric's lock held, after the metric has been registered as running.
+	 * 
+	 * @return Schedule of the task
+	 */
+	IMetricSchedule schedule(IMetric metric, MetricTask task);
+
+}
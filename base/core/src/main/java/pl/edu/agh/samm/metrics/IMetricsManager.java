@@ -137,4 +137,14 @@ public interface IMetricsManager {
 
 	List<IMetric> getPatternMetrics();
 
+	/**
+	 * Returns pattern metrics which pattern matches the given resource URI
+	 * (see {@link PatternMetricIndex}).
+	 * 
+	 * @param resourceURI
+	 *            URI of a resource
+	 * @return Matching pattern metrics, empty list if none
+	 */
+	List<IMetric> getPatternMetricsMatching(String resourceURI);
+
 }
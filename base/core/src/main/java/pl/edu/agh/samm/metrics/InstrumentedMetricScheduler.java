@@ -0,0 +1,119 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler decorator recording the lag of sampled executions - how much later
+ * than intended (the reference time plus the period times the number of
+ * executions since) a task was run. The first execution only sets the
+ * reference time; if a task falls behind by more than a period the reference
+ * is moved to the sampled execution.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class InstrumentedMetricScheduler implements IMetricScheduler {
+
+	private final IMetricScheduler metricScheduler;
+	private final CoreInstrumentation instrumentation;
+
+	public InstrumentedMetricScheduler(IMetricScheduler metricScheduler,
+			CoreInstrumentation instrumentation) {
+		this.metricScheduler = metricScheduler;
+		this.instrumentation = instrumentation;
+	}
+
+	@Override
+	public IMetricSchedule schedule(Runnable task, long periodMillis) {
+		LagRecordingTask lagRecordingTask = new LagRecordingTask(task,
+				periodMillis);
+		lagRecordingTask.schedule = metricScheduler.schedule(
+				lagRecordingTask, periodMillis);
+		return lagRecordingTask;
+	}
+
+	public IMetricScheduler getMetricScheduler() {
+		return metricScheduler;
+	}
+
+	private class LagRecordingTask implements Runnable, IMetricSchedule {
+
+		private final Runnable task;
+		private volatile IMetricSchedule schedule;
+		private volatile long periodNanos;
+		// only touched by the (non-concurrent) executions of the task
+		private long referenceTime = -1L;
+		private long executions = 0;
+		private volatile boolean periodChanged = false;
+
+		public LagRecordingTask(Runnable task, long periodMillis) {
+			this.task = task;
+			this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+		}
+
+		@Override
+		public void run() {
+			if (instrumentation.isEnabled()) {
+				recordLag();
+			} else {
+				referenceTime = -1L;
+			}
+			task.run();
+		}
+
+		private void recordLag() {
+			if (referenceTime < 0 || periodChanged) {
+				periodChanged = false;
+				referenceTime = System.nanoTime();
+				executions = 0;
+				return;
+			}
+			executions++;
+			if (executions % instrumentation.getSampleInterval() != 0) {
+				return;
+			}
+			long now = System.nanoTime();
+			long lag = now - (referenceTime + executions * periodNanos);
+			instrumentation.recordSchedulerLag(lag);
+			if (lag >= periodNanos) {
+				referenceTime = now;
+				executions = 0;
+			}
+		}
+
+		@Override
+		public void cancel() {
+			schedule.cancel();
+		}
+
+		@Override
+		public void setPeriod(long periodMillis) {
+			periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+			periodChanged = true;
+			schedule.setPeriod(periodMillis);
+		}
+
+		@Override
+		public long getPeriod() {
+			return schedule.getPeriod();
+		}
+	}
+
+}
@@ -0,0 +1,313 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+
+/**
+ * Bounded queue of metric events waiting for one listener. Metric tasks only
+ * put events into the queue; they are delivered to the listener on a thread of
+ * a shared executor, one event at a time, so a slow listener delays only
+ * itself.<br>
+ * Events are kept in a ring buffer together with the time they were queued,
+ * which is used to measure the delivery latency. When the queue is full the
+ * {@link OverflowPolicy} decides what happens. With
+ * {@link OverflowPolicy#COALESCE_LATEST_PER_METRIC} a new event of a metric
+ * which is already queued replaces its latest queued event (keeping its
+ * position); while there are free slots every event is queued.<br>
+ * If the listener throws an exception the queue is closed - further events
+ * are rejected with {@link IllegalStateException}, which makes the metric
+ * tasks remove the listener just like they did with listeners called inline.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class ListenerDeliveryQueue implements IMetricListener, Runnable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ListenerDeliveryQueue.class);
+
+	/**
+	 * Number of events delivered before the consumer gives the thread back to
+	 * the executor
+	 */
+	private static final int MAX_BATCH = 256;
+
+	private final IMetricListener listener;
+	private final ClassLoader classLoader;
+	private final OverflowPolicy policy;
+	private final Executor executor;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final IMetricEvent[] events;
+	private final long[] queuedAt;
+	// sequence numbers of the first queued and the next free slot
+	private long head = 0;
+	private long tail = 0;
+	// sequence number of the latest queued event of each metric (coalescing
+	// only)
+	private final Map<IMetric, Long> queuedMetrics;
+
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private volatile boolean closed = false;
+
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	public ListenerDeliveryQueue(IMetricListener listener,
+			ClassLoader classLoader, OverflowPolicy policy, int capacity,
+			Executor executor) {
+		this.listener = listener;
+		this.classLoader = classLoader;
+		this.policy = policy;
+		this.executor = executor;
+		this.events = new IMetricEvent[capacity];
+		this.queuedAt = new long[capacity];
+		this.queuedMetrics = policy == OverflowPolicy.COALESCE_LATEST_PER_METRIC ? new HashMap<IMetric, Long>()
+				: null;
+	}
+
+	/**
+	 * Queues the event for delivery.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the queue was closed
+	 */
+	@Override
+	public void processMetricEvent(IMetricEvent metricEvent)
+			throws InterruptedException {
+		if (closed) {
+			throw new IllegalStateException("Delivery queue of " + listener
+					+ " is closed");
+		}
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			if (tail - head == events.length) {
+				switch (policy) {
+				case BLOCK:
+					while (tail - head == events.length && !closed) {
+						notFull.await(100, TimeUnit.MILLISECONDS);
+					}
+					if (closed) {
+						return;
+					}
+					break;
+				case DROP_OLDEST:
+					remove();
+					dropped.incrementAndGet();
+					break;
+				default:
+					Long sequence = queuedMetrics.get(metricEvent.getMetric());
+					if (sequence != null) {
+						events[index(sequence.longValue())] = metricEvent;
+						coalesced.incrementAndGet();
+					} else {
+						// all slots taken by other metrics - nothing to coalesce
+						dropped.incrementAndGet();
+					}
+					return;
+				}
+			}
+			if (queuedMetrics != null) {
+				queuedMetrics.put(metricEvent.getMetric(), Long.valueOf(tail));
+			}
+			events[index(tail)] = metricEvent;
+			queuedAt[index(tail)] = now;
+			tail++;
+			queued.incrementAndGet();
+		} finally {
+			lock.unlock();
+		}
+		if (scheduled.compareAndSet(false, true)) {
+			schedule();
+		}
+	}
+
+	/**
+	 * Delivers queued events to the listener.
+	 */
+	@Override
+	public void run() {
+		Thread currentThread = Thread.currentThread();
+		ClassLoader originalClassLoader = currentThread.getContextClassLoader();
+		currentThread.setContextClassLoader(classLoader);
+		try {
+			for (int i = 0; i < MAX_BATCH && !closed; i++) {
+				IMetricEvent event;
+				long latency;
+				lock.lock();
+				try {
+					if (tail == head) {
+						break;
+					}
+					latency = System.nanoTime() - queuedAt[index(head)];
+					event = remove();
+					notFull.signal();
+				} finally {
+					lock.unlock();
+				}
+				deliver(event, latency);
+			}
+		} finally {
+			currentThread.setContextClassLoader(originalClassLoader);
+			scheduled.set(false);
+		}
+		if (!closed && getDepth() > 0 && scheduled.compareAndSet(false, true)) {
+			schedule();
+		}
+	}
+
+	private void deliver(IMetricEvent event, long latencyNanos) {
+		try {
+			listener.processMetricEvent(event);
+		} catch (Throwable e) {
+			if (!logger.isDebugEnabled()) {
+				logger.error("Error while notifying listener (" + listener
+						+ "). Removing from listeners list!");
+			} else {
+				logger.debug("Error while notifying listener (" + listener
+						+ "). Removing from listeners list!", e);
+			}
+			close();
+			return;
+		}
+		delivered.incrementAndGet();
+		totalLatencyNanos.addAndGet(latencyNanos);
+		long max = maxLatencyNanos.get();
+		while (latencyNanos > max
+				&& !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	private void schedule() {
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {
+			// executor is shutting down
+			scheduled.set(false);
+		}
+	}
+
+	// must be called with the lock held
+	private IMetricEvent remove() {
+		int index = index(head);
+		IMetricEvent event = events[index];
+		events[index] = null;
+		if (queuedMetrics != null) {
+			Long latest = queuedMetrics.get(event.getMetric());
+			if (latest != null && latest.longValue() == head) {
+				queuedMetrics.remove(event.getMetric());
+			}
+		}
+		head++;
+		return event;
+	}
+
+	private int index(long sequence) {
+		return (int) (sequence % events.length);
+	}
+
+	/**
+	 * Stops accepting events and discards the queued ones.
+	 */
+	public void close() {
+		closed = true;
+		lock.lock();
+		try {
+			while (tail != head) {
+				remove();
+			}
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public IMetricListener getListener() {
+		return listener;
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	public int getCapacity() {
+		return events.length;
+	}
+
+	public int getDepth() {
+		lock.lock();
+		try {
+			return (int) (tail - head);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getQueuedCount() {
+		return queued.get();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	public double getAverageDeliveryLatencyMillis() {
+		long count = delivered.get();
+		return count == 0 ? 0.0 : totalLatencyNanos.get() / 1e6 / count;
+	}
+
+	public double getMaxDeliveryLatencyMillis() {
+		return maxLatencyNanos.get() / 1e6;
+	}
+
+}
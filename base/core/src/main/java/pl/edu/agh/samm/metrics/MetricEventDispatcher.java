@@ -0,0 +1,216 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import pl.edu.agh.samm.api.core.ListenerQueueSnapshot;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+
+/**
+ * Gives every metric listener its own {@link ListenerDeliveryQueue}. The queue
+ * is shared by all metric tasks the listener is registered with and is closed
+ * when the listener is removed from the last of them. Queues are drained by a
+ * shared pool of delivery threads.<br>
+ * Overflow policy can be set for all listeners and overridden for listeners
+ * of a given class (<code>listenerPolicies</code>, keyed by class name).
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class MetricEventDispatcher {
+
+	private int queueCapacity = 1000;
+	private int deliveryThreads = 4;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private Map<String, OverflowPolicy> listenerPolicies = new HashMap<String, OverflowPolicy>();
+
+	private ExecutorService executor = null;
+	private final Map<IMetricListener, QueueReference> queues = new HashMap<IMetricListener, QueueReference>();
+
+	public void init() {
+		executor = Executors.newFixedThreadPool(deliveryThreads,
+				new NamedThreadFactory("samm-metric-delivery"));
+	}
+
+	public void destroy() {
+		synchronized (this) {
+			for (QueueReference reference : queues.values()) {
+				reference.queue.close();
+			}
+			queues.clear();
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the queue of the listener, creating it if needed.
+	 * 
+	 * @param classLoader
+	 *            Context classloader used when notifying a newly created
+	 *            queue's listener
+	 */
+	public synchronized ListenerDeliveryQueue acquire(IMetricListener listener,
+			ClassLoader classLoader) {
+		QueueReference reference = queues.get(listener);
+		if (reference == null || reference.queue.isClosed()) {
+			reference = new QueueReference(new ListenerDeliveryQueue(listener,
+					classLoader, getPolicyFor(listener), queueCapacity,
+					executor));
+			queues.put(listener, reference);
+		}
+		reference.references++;
+		return reference.queue;
+	}
+
+	/**
+	 * Releases the queue acquired with
+	 * {@link #acquire(IMetricListener, ClassLoader)}. The last release closes
+	 * the queue.
+	 */
+	public synchronized void release(ListenerDeliveryQueue queue) {
+		QueueReference reference = queues.get(queue.getListener());
+		if (reference == null || reference.queue != queue) {
+			// queue was closed and replaced in the meantime
+			return;
+		}
+		if (--reference.references == 0) {
+			queues.remove(queue.getListener());
+			queue.close();
+		}
+	}
+
+	/**
+	 * @return Snapshot of the queues of all registered listeners
+	 */
+	public synchronized Collection<ListenerDeliveryQueue> getQueues() {
+		Collection<ListenerDeliveryQueue> result = new ArrayList<ListenerDeliveryQueue>();
+		for (QueueReference reference : queues.values()) {
+			result.add(reference.queue);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Statistics of the queues of all registered listeners, summed
+	 *         per listener class
+	 */
+	public Map<String, ListenerQueueSnapshot> getQueueStatistics() {
+		Map<String, List<ListenerDeliveryQueue>> queuesByClass = new TreeMap<String, List<ListenerDeliveryQueue>>();
+		for (ListenerDeliveryQueue queue : getQueues()) {
+			String listenerClass = queue.getListener().getClass().getName();
+			List<ListenerDeliveryQueue> classQueues = queuesByClass
+					.get(listenerClass);
+			if (classQueues == null) {
+				classQueues = new ArrayList<ListenerDeliveryQueue>();
+				queuesByClass.put(listenerClass, classQueues);
+			}
+			classQueues.add(queue);
+		}
+		Map<String, ListenerQueueSnapshot> statistics = new TreeMap<String, ListenerQueueSnapshot>();
+		for (Map.Entry<String, List<ListenerDeliveryQueue>> entry : queuesByClass
+				.entrySet()) {
+			statistics.put(entry.getKey(),
+					summarize(entry.getKey(), entry.getValue()));
+		}
+		return statistics;
+	}
+
+	private static ListenerQueueSnapshot summarize(String listenerClass,
+			List<ListenerDeliveryQueue> queues) {
+		int depth = 0;
+		long queued = 0L;
+		long delivered = 0L;
+		long dropped = 0L;
+		long coalesced = 0L;
+		double totalLatency = 0.0;
+		double maxLatency = 0.0;
+		for (ListenerDeliveryQueue queue : queues) {
+			depth += queue.getDepth();
+			queued += queue.getQueuedCount();
+			long queueDelivered = queue.getDeliveredCount();
+			delivered += queueDelivered;
+			dropped += queue.getDroppedCount();
+			coalesced += queue.getCoalescedCount();
+			totalLatency += queue.getAverageDeliveryLatencyMillis()
+					* queueDelivered;
+			maxLatency = Math.max(maxLatency,
+					queue.getMaxDeliveryLatencyMillis());
+		}
+		return new ListenerQueueSnapshot(listenerClass, queues.get(0)
+				.getPolicy().name(), queues.size(), depth, queued, delivered,
+				dropped, coalesced, delivered == 0 ? 0.0 : totalLatency
+						/ delivered, maxLatency);
+	}
+
+	private OverflowPolicy getPolicyFor(IMetricListener listener) {
+		OverflowPolicy policy = listenerPolicies.get(listener.getClass()
+				.getName());
+		return policy == null ? overflowPolicy : policy;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getDeliveryThreads() {
+		return deliveryThreads;
+	}
+
+	public void setDeliveryThreads(int deliveryThreads) {
+		this.deliveryThreads = deliveryThreads;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public Map<String, OverflowPolicy> getListenerPolicies() {
+		return listenerPolicies;
+	}
+
+	public void setListenerPolicies(Map<String, OverflowPolicy> listenerPolicies) {
+		this.listenerPolicies = listenerPolicies;
+	}
+
+	private static class QueueReference {
+
+		private final ListenerDeliveryQueue queue;
+		private int references = 0;
+
+		public QueueReference(ListenerDeliveryQueue queue) {
+			this.queue = queue;
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
+import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
+
+/**
+ * Polls all metric tasks which read their capabilities from the same endpoint
+ * of a transport adapter with the same period. On every execution the
+ * capabilities of all members are merged (per resource) and read with a single
+ * {@link ITransportAdapter#getCapabilityValues(Map)} call, then the results are
+ * passed back to the tasks.<br>
+ * If a {@link CapabilityReadExecutor} is set, the read is done asynchronously
+ * with the same rules as in {@link MetricTask}: a poll is skipped while the
+ * previous one is in progress and a read blocked in the adapter fails the
+ * following polls instead of taking more threads.<br>
+ * If the group has a circuit breaker, polls are skipped (the tasks are
+ * paused) while the breaker is open and the result of every read is reported
+ * to the breaker.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class MetricPollGroup implements Runnable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(MetricPollGroup.class);
+
+	private final ITransportAdapter adapter;
+	private final String endpointKey;
+	private final List<MetricTask> tasks = new CopyOnWriteArrayList<MetricTask>();
+	private final CapabilityReadExecutor readExecutor;
+	private final EndpointCircuitBreaker breaker;
+	private volatile CoreInstrumentation instrumentation = null;
+	private final AtomicBoolean pollInProgress = new AtomicBoolean(false);
+	private final AtomicInteger pendingAdapterCalls = new AtomicInteger(0);
+
+	public MetricPollGroup(ITransportAdapter adapter, String endpointKey,
+			CapabilityReadExecutor readExecutor) {
+		this(adapter, endpointKey, readExecutor, null);
+	}
+
+	public MetricPollGroup(ITransportAdapter adapter, String endpointKey,
+			CapabilityReadExecutor readExecutor, EndpointCircuitBreaker breaker) {
+		this.adapter = adapter;
+		this.endpointKey = endpointKey;
+		this.readExecutor = readExecutor;
+		this.breaker = breaker;
+	}
+
+	public void setInstrumentation(CoreInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	public void addTask(MetricTask task) {
+		tasks.add(task);
+	}
+
+	public void removeTask(MetricTask task) {
+		tasks.remove(task);
+	}
+
+	public boolean isEmpty() {
+		return tasks.isEmpty();
+	}
+
+	public int getTasksCount() {
+		return tasks.size();
+	}
+
+	public ITransportAdapter getAdapter() {
+		return adapter;
+	}
+
+	public String getEndpointKey() {
+		return endpointKey;
+	}
+
+	@Override
+	public void run() {
+		CoreInstrumentation instrumentation = this.instrumentation;
+		if (instrumentation == null || !instrumentation.isEnabled()) {
+			poll();
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			poll();
+		} finally {
+			instrumentation.recordGroupPoll(System.nanoTime() - start);
+		}
+	}
+
+	private void poll() {
+		// the same members get the results the read was made for
+		List<MetricTask> members = new ArrayList<MetricTask>(tasks);
+		if (members.isEmpty()) {
+			return;
+		}
+		if (breaker != null && !breaker.allowRequest()) {
+			logger.debug("Endpoint paused by circuit breaker: " + endpointKey);
+			return;
+		}
+		if (readExecutor == null) {
+			pollSynchronously(members);
+		} else {
+			pollAsynchronously(members);
+		}
+	}
+
+	private void pollSynchronously(List<MetricTask> members) {
+		CapabilityReadResults results;
+		Map<Resource, Collection<String>> reads = collectReads(members);
+		CoreInstrumentation instrumentation = this.instrumentation;
+		long start = instrumentation != null && instrumentation.isEnabled() ? System
+				.nanoTime() : 0L;
+		try {
+			results = adapter.getCapabilityValues(reads);
+		} catch (Exception e) {
+			recordAdapterCall(instrumentation, start);
+			failAll(members, e);
+			return;
+		}
+		recordAdapterCall(instrumentation, start);
+		distribute(members, results);
+	}
+
+	private void recordAdapterCall(CoreInstrumentation instrumentation,
+			long start) {
+		if (start != 0L) {
+			instrumentation.recordAdapterCall(adapter, System.nanoTime()
+					- start);
+		}
+	}
+
+	private void pollAsynchronously(final List<MetricTask> members) {
+		if (!pollInProgress.compareAndSet(false, true)) {
+			logger.debug("Previous poll still in progress, skipping. Endpoint: "
+					+ endpointKey);
+			return;
+		}
+		if (pendingAdapterCalls.get() > 0) {
+			pollInProgress.set(false);
+			failAll(members, new IllegalStateException(
+					"Previous read still blocked in the transport adapter"));
+			return;
+		}
+		pendingAdapterCalls.incrementAndGet();
+		readExecutor.read(adapter, collectReads(members),
+				new ICapabilityReadCallback() {
+
+					@Override
+					public void readCompleted(CapabilityReadResults results) {
+						try {
+							distribute(members, results);
+						} finally {
+							pollInProgress.set(false);
+						}
+					}
+
+					@Override
+					public void readFailed(Exception e) {
+						try {
+							failAll(members, e);
+						} finally {
+							pollInProgress.set(false);
+						}
+					}
+
+					@Override
+					public void readFinished() {
+						pendingAdapterCalls.decrementAndGet();
+					}
+				});
+	}
+
+	private Map<Resource, Collection<String>> collectReads(
+			List<MetricTask> members) {
+		Map<Resource, Collection<String>> reads = new IdentityHashMap<Resource, Collection<String>>();
+		for (MetricTask task : members) {
+			Collection<String> capabilities = reads.get(task.getResource());
+			if (capabilities == null) {
+				capabilities = new LinkedHashSet<String>();
+				reads.put(task.getResource(), capabilities);
+			}
+			capabilities.addAll(task.getUsedCapabilities());
+		}
+		return reads;
+	}
+
+	private void distribute(List<MetricTask> members,
+			CapabilityReadResults results) {
+		// failures of single resources don't mean the endpoint is down
+		boolean anyRead = isAnyRead(members, results);
+		if (breaker != null) {
+			if (anyRead) {
+				breaker.recordSuccess();
+			} else {
+				breaker.recordFailure();
+			}
+		}
+		CoreInstrumentation instrumentation = this.instrumentation;
+		if (instrumentation != null && instrumentation.isEnabled()) {
+			for (MetricTask task : members) {
+				if (results.isFailed(task.getResource())) {
+					instrumentation.recordFailedRead(endpointKey);
+				}
+			}
+		}
+		for (MetricTask task : members) {
+			Exception failure = results.getFailure(task.getResource());
+			if (failure != null) {
+				task.failPoll(failure, !anyRead);
+			} else {
+				task.completePoll(results.getValues(task.getResource()));
+			}
+		}
+	}
+
+	private boolean isAnyRead(List<MetricTask> members,
+			CapabilityReadResults results) {
+		for (MetricTask task : members) {
+			if (!results.isFailed(task.getResource())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void failAll(List<MetricTask> members, Exception e) {
+		if (breaker != null) {
+			breaker.recordFailure();
+		}
+		CoreInstrumentation instrumentation = this.instrumentation;
+		if (instrumentation != null && instrumentation.isEnabled()) {
+			instrumentation.recordFailedRead(endpointKey);
+		}
+		for (MetricTask task : members) {
+			task.failPoll(e, true);
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
+
+/**
+ * Assigns metric tasks to {@link MetricPollGroup}s. Tasks using a single
+ * transport adapter are grouped by the adapter, its endpoint key (see
+ * {@link ITransportAdapter#getEndpointKey(Resource)}) and the poll period.
+ * Only the groups are scheduled with the underlying {@link IMetricScheduler};
+ * the handles returned to the callers move the task between groups when the
+ * period changes and cancel the group when its last task leaves.<br>
+ * If a {@link CircuitBreakerRegistry} is given, every group is guarded by the
+ * circuit breaker of its endpoint.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class MetricPollGroups {
+
+	private final IMetricScheduler metricScheduler;
+	private final CapabilityReadExecutor readExecutor;
+	private final CircuitBreakerRegistry circuitBreakers;
+	private CoreInstrumentation instrumentation = null;
+	private final Map<GroupKey, GroupEntry> groups = new HashMap<GroupKey, GroupEntry>();
+
+	public MetricPollGroups(IMetricScheduler metricScheduler,
+			CapabilityReadExecutor readExecutor) {
+		this(metricScheduler, readExecutor, null);
+	}
+
+	public MetricPollGroups(IMetricScheduler metricScheduler,
+			CapabilityReadExecutor readExecutor,
+			CircuitBreakerRegistry circuitBreakers) {
+		this.metricScheduler = metricScheduler;
+		this.readExecutor = readExecutor;
+		this.circuitBreakers = circuitBreakers;
+	}
+
+	/**
+	 * Makes groups created from now on record their poll and adapter call
+	 * times.
+	 */
+	public synchronized void setInstrumentation(
+			CoreInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	/**
+	 * Tells whether the task can be polled as a part of a group (i.e. reads
+	 * all its capabilities from one transport adapter).
+	 */
+	public boolean accepts(MetricTask task) {
+		return task.getSingleAdapter() != null;
+	}
+
+	/**
+	 * Adds the task to the group matching its endpoint and period.
+	 * 
+	 * @return handle which removes the task from the group when cancelled
+	 */
+	public synchronized IMetricSchedule schedule(MetricTask task,
+			long periodMillis) {
+		Membership membership = new Membership(task);
+		membership.join(periodMillis);
+		return membership;
+	}
+
+	public synchronized int getGroupsCount() {
+		return groups.size();
+	}
+
+	private GroupKey join(MetricTask task, long periodMillis) {
+		ITransportAdapter adapter = task.getSingleAdapter();
+		GroupKey key = new GroupKey(adapter,
+				adapter.getEndpointKey(task.getResource()), periodMillis);
+		GroupEntry entry = groups.get(key);
+		if (entry == null) {
+			EndpointCircuitBreaker breaker = null;
+			if (circuitBreakers != null) {
+				breaker = circuitBreakers.getBreaker(adapter, key.endpointKey);
+			}
+			MetricPollGroup group = new MetricPollGroup(adapter,
+					key.endpointKey, readExecutor, breaker);
+			group.setInstrumentation(instrumentation);
+			group.addTask(task);
+			entry = new GroupEntry(group, metricScheduler.schedule(group,
+					periodMillis));
+			groups.put(key, entry);
+		} else {
+			entry.group.addTask(task);
+		}
+		return key;
+	}
+
+	private void leave(MetricTask task, GroupKey key) {
+		GroupEntry entry = groups.get(key);
+		if (entry != null) {
+			entry.group.removeTask(task);
+			if (entry.group.isEmpty()) {
+				entry.schedule.cancel();
+				groups.remove(key);
+			}
+		}
+	}
+
+	private class Membership implements IMetricSchedule {
+
+		private final MetricTask task;
+		private GroupKey key = null;
+
+		public Membership(MetricTask task) {
+			this.task = task;
+		}
+
+		private void join(long periodMillis) {
+			key = MetricPollGroups.this.join(task, periodMillis);
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (MetricPollGroups.this) {
+				if (key != null) {
+					leave(task, key);
+					key = null;
+				}
+			}
+		}
+
+		@Override
+		public void setPeriod(long periodMillis) {
+			synchronized (MetricPollGroups.this) {
+				if (key == null || key.period == periodMillis) {
+					return;
+				}
+				leave(task, key);
+				join(periodMillis);
+			}
+		}
+
+		@Override
+		public long getPeriod() {
+			synchronized (MetricPollGroups.this) {
+				return key == null ? 0 : key.period;
+			}
+		}
+	}
+
+	private static class GroupEntry {
+
+		private final MetricPollGroup group;
+		private final IMetricSchedule schedule;
+
+		public GroupEntry(MetricPollGroup group, IMetricSchedule schedule) {
+			this.group = group;
+			this.schedule = schedule;
+		}
+	}
+
+	private static class GroupKey {
+
+		private final ITransportAdapter adapter;
+		private final String endpointKey;
+		private final long period;
+
+		public GroupKey(ITransportAdapter adapter, String endpointKey,
+				long period) {
+			this.adapter = adapter;
+			this.endpointKey = endpointKey;
+			this.period = period;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = System.identityHashCode(adapter);
+			result = 31 * result
+					+ (endpointKey == null ? 0 : endpointKey.hashCode());
+			result = 31 * result + (int) (period ^ (period >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof GroupKey)) {
+				return false;
+			}
+			GroupKey other = (GroupKey) obj;
+			return adapter == other.adapter
+					&& period == other.period
+					&& (endpointKey == null ? other.endpointKey == null
+							: endpointKey.equals(other.endpointKey));
+		}
+	}
+
+}
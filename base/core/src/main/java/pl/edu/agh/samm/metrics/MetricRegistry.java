@@ -0,0 +1,267 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricsManagerListener;
+
+/**
+ * Registry of running metrics which can be safely used from many threads.<br>
+ * Starting and stopping of a metric is done under one of a fixed number of
+ * locks chosen by the metric's hash, so operations on different metrics
+ * rarely wait for each other, while for a single metric the check and the
+ * start/stop are atomic.<br>
+ * Notifications of {@link IMetricsManagerListener}s are queued under the read
+ * side of a read-write lock, in the order of the changes, and delivered one at
+ * a time after all locks are released - by the thread which made the change
+ * or, if another thread is delivering already, by that thread. Listeners are
+ * added under the write side, with the snapshot of running metrics queued as
+ * their first notification. Thanks to that every listener learns about each
+ * running metric exactly once and in order - either from the snapshot or from
+ * a later notification - and may freely start or stop metrics.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class MetricRegistry {
+
+	public static final int DEFAULT_STRIPES = 64;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(MetricRegistry.class);
+
+	private final ConcurrentMap<IMetric, RunningMetric> runningMetrics = new ConcurrentHashMap<IMetric, RunningMetric>();
+	private final Object[] stripes;
+	private final ReadWriteLock listenersLock = new ReentrantReadWriteLock();
+	private final List<IMetricsManagerListener> listeners = new CopyOnWriteArrayList<IMetricsManagerListener>();
+	private final Queue<Notification> notifications = new ConcurrentLinkedQueue<Notification>();
+	private final ReentrantLock deliveryLock = new ReentrantLock();
+
+	public MetricRegistry() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param stripes
+	 *            Number of locks, rounded up to a power of two
+	 */
+	public MetricRegistry(int stripes) {
+		int size = 1;
+		while (size < stripes) {
+			size <<= 1;
+		}
+		this.stripes = new Object[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new Object();
+		}
+	}
+
+	public RunningMetric get(IMetric metric) {
+		return runningMetrics.get(metric);
+	}
+
+	public boolean isRunning(IMetric metric) {
+		return runningMetrics.containsKey(metric);
+	}
+
+	public int size() {
+		return runningMetrics.size();
+	}
+
+	/**
+	 * @return Unmodifiable copy of the running metrics collection
+	 */
+	public Collection<IMetric> snapshot() {
+		return Collections.unmodifiableList(new ArrayList<IMetric>(
+				runningMetrics.keySet()));
+	}
+
+	/**
+	 * Starts the metric with the given starter unless it is already running.
+	 * The metric is registered before its task is scheduled, so that even the
+	 * first poll finds it. Listeners are notified after the lock is released.
+	 * 
+	 * @return Already running metric or <code>null</code> if the metric was
+	 *         started by this call
+	 */
+	public RunningMetric startIfAbsent(IMetric metric,
+			IMetricTaskStarter starter) {
+		synchronized (lockFor(metric)) {
+			RunningMetric runningMetric = runningMetrics.get(metric);
+			if (runningMetric != null) {
+				return runningMetric;
+			}
+			runningMetric = new RunningMetric(starter.create(metric));
+			listenersLock.readLock().lock();
+			try {
+				runningMetrics.put(metric, runningMetric);
+				try {
+					runningMetric.setSchedule(starter.schedule(metric,
+							runningMetric.getTask()));
+				} catch (RuntimeException e) {
+					runningMetrics.remove(metric);
+					throw e;
+				}
+				enqueue(metric, true);
+			} finally {
+				listenersLock.readLock().unlock();
+			}
+		}
+		deliverNotifications();
+		return null;
+	}
+
+	/**
+	 * Stops the metric (cancels its schedule) and notifies the listeners after
+	 * the lock is released.
+	 * 
+	 * @return Stopped metric or <code>null</code> if it wasn't running
+	 */
+	public RunningMetric stop(IMetric metric) {
+		RunningMetric runningMetric;
+		synchronized (lockFor(metric)) {
+			listenersLock.readLock().lock();
+			try {
+				runningMetric = runningMetrics.remove(metric);
+				if (runningMetric == null) {
+					return null;
+				}
+				runningMetric.getSchedule().cancel();
+				enqueue(metric, false);
+			} finally {
+				listenersLock.readLock().unlock();
+			}
+		}
+		deliverNotifications();
+		return runningMetric;
+	}
+
+	/**
+	 * Lock guarding start and stop of the metric. Can be used to make other
+	 * operations on a running metric atomic with them.
+	 */
+	public Object lockFor(IMetric metric) {
+		int hash = metric.hashCode();
+		hash ^= (hash >>> 16);
+		return stripes[hash & (stripes.length - 1)];
+	}
+
+	/**
+	 * Adds the listener and notifies it about currently running metrics. If
+	 * the listener was previously added, the call is ignored.
+	 */
+	public void addListener(IMetricsManagerListener listener) {
+		listenersLock.writeLock().lock();
+		try {
+			if (listeners.contains(listener)) {
+				return;
+			}
+			listeners.add(listener);
+			if (!runningMetrics.isEmpty()) {
+				notifications.add(new Notification(
+						new IMetricsManagerListener[] { listener },
+						snapshot(), true));
+			}
+		} finally {
+			listenersLock.writeLock().unlock();
+		}
+		deliverNotifications();
+	}
+
+	public void removeListener(IMetricsManagerListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Queues the notification for the listeners added so far. Called under
+	 * the read side of the listeners lock.
+	 */
+	private void enqueue(IMetric metric, boolean started) {
+		if (!listeners.isEmpty()) {
+			notifications.add(new Notification(
+					listeners.toArray(new IMetricsManagerListener[0]),
+					Collections.singletonList(metric), started));
+		}
+	}
+
+	/**
+	 * Delivers queued notifications unless another thread is doing it. A
+	 * listener starting or stopping metrics from a notification only queues
+	 * new ones - they are delivered after the current one, by the same loop.
+	 */
+	private void deliverNotifications() {
+		while (!notifications.isEmpty()
+				&& !deliveryLock.isHeldByCurrentThread()
+				&& deliveryLock.tryLock()) {
+			try {
+				Notification notification;
+				while ((notification = notifications.poll()) != null) {
+					notification.deliver();
+				}
+			} finally {
+				deliveryLock.unlock();
+			}
+		}
+	}
+
+	private static class Notification {
+
+		private final IMetricsManagerListener[] listeners;
+		private final Collection<IMetric> metrics;
+		private final boolean started;
+
+		Notification(IMetricsManagerListener[] listeners,
+				Collection<IMetric> metrics, boolean started) {
+			this.listeners = listeners;
+			this.metrics = metrics;
+			this.started = started;
+		}
+
+		void deliver() {
+			for (IMetricsManagerListener listener : listeners) {
+				try {
+					if (started) {
+						listener.notifyNewMetricsStarted(metrics);
+					} else {
+						listener.notifyMetricsHasStopped(metrics);
+					}
+				} catch (Exception e) {
+					logger.error("Metric Manager Listener thrown an exception!",
+							e);
+				}
+			}
+		}
+	}
+
+}
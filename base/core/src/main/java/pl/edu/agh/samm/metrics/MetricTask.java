@@ -20,10 +20,16 @@
  */
 package pl.edu.agh.samm.metrics;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +37,9 @@ import org.slf4j.LoggerFactory;
 import pl.edu.agh.samm.api.core.Resource;
 import pl.edu.agh.samm.api.metrics.IMetric;
 import pl.edu.agh.samm.api.metrics.IMetricListener;
-import pl.edu.agh.samm.api.metrics.MetricEvent;
+import pl.edu.agh.samm.api.metrics.IPrimitiveMetricEvent;
+import pl.edu.agh.samm.api.metrics.PrimitiveMetricEvent;
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
 import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
 
 /**
@@ -41,33 +49,139 @@ import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
 public abstract class MetricTask implements Runnable {
 
     protected static final Logger logger = LoggerFactory.getLogger(MetricTask.class);
-    private List<IMetricListener> metricListeners = new CopyOnWriteArrayList<IMetricListener>();
-    private List<ClassLoader> metricListenersClassLoaders = new CopyOnWriteArrayList<ClassLoader>();
+    // listener together with the classloader to use when notifying it
+    private List<ListenerRegistration> metricListeners = new CopyOnWriteArrayList<ListenerRegistration>();
     private Resource resource = null;
     private List<String> usedCapabilities = null;
     protected IMetric metric = null;
     private List<ITransportAdapter> adapters = null;
     private Map<String, ITransportAdapter> adaptersToUseForCapabilities = new HashMap<String, ITransportAdapter>();
-    private Map<String, Number> values = new HashMap<String, Number>();
+    // capabilities read together in a single adapter call
+    private Map<ITransportAdapter, List<String>> capabilitiesByAdapter = new LinkedHashMap<ITransportAdapter, List<String>>();
+    // value of usedCapabilities.get(i) is kept in capabilityValues[i], NaN
+    // means no value
+    private final double[] capabilityValues;
+    private Map<ITransportAdapter, int[]> slotsByAdapter = new HashMap<ITransportAdapter, int[]>();
     private IMetricProblemObserver problemObserver;
-    private int numberOfRetries = 0;
+    private final AtomicInteger numberOfRetries = new AtomicInteger(0);
+    // failures of this task's resource only - not of its whole endpoint
+    private final AtomicInteger numberOfResourceRetries = new AtomicInteger(0);
+    private CapabilityReadExecutor readExecutor = null;
+    private MetricEventDispatcher eventDispatcher = null;
+    private CapabilityReadCache readCache = null;
+    private Map<ITransportAdapter, EndpointCircuitBreaker> breakersByAdapter = Collections.emptyMap();
+    private CoreInstrumentation instrumentation = null;
+    // sampling countdowns and whether the current poll is timed; races only
+    // shift the samples
+    private int pollsUntilSample = 0;
+    private int fanOutsUntilSample = 0;
+    private boolean sampledPoll = false;
+    private final AtomicBoolean pollInProgress = new AtomicBoolean(false);
+    private final AtomicInteger pendingAdapterCalls = new AtomicInteger(0);
 
     public MetricTask(IMetric metric, List<String> usedCapabilities,
                       Resource resource) {
         this.usedCapabilities = usedCapabilities;
         this.resource = resource;
         this.metric = metric;
+        this.capabilityValues = new double[usedCapabilities.size()];
     }
 
     public void setProblemObserver(IMetricProblemObserver observer) {
         this.problemObserver = observer;
     }
 
+    /**
+     * Switches the task to asynchronous polling - capabilities are read on
+     * the given executor and the thread calling {@link #run()} never waits for
+     * the transport adapters.
+     *
+     * @param readExecutor
+     *            Executor to use or <code>null</code> to read synchronously
+     */
+    public void setReadExecutor(CapabilityReadExecutor readExecutor) {
+        this.readExecutor = readExecutor;
+    }
+
+    /**
+     * Makes the task deliver events through the listeners' delivery queues,
+     * so the polling thread never waits for a listener. Has to be set before
+     * the listeners are added.
+     *
+     * @param eventDispatcher
+     *            Dispatcher to use or <code>null</code> to notify listeners
+     *            inline
+     */
+    public void setEventDispatcher(MetricEventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    /**
+     * Makes the task read capabilities through the cache shared with other
+     * tasks. Has to be set before {@link #init()}.
+     *
+     * @param readCache
+     *            Cache to use or <code>null</code> to read directly from the
+     *            transport adapters
+     */
+    public void setReadCache(CapabilityReadCache readCache) {
+        this.readCache = readCache;
+    }
+
+    /**
+     * Guards the reads of this task with the circuit breakers of the used
+     * endpoints - while any of them is open the task is paused. Has to be set
+     * after {@link #init()}.
+     *
+     * @param circuitBreakers
+     *            Breakers to use or <code>null</code> to always poll
+     */
+    public void setCircuitBreakers(CircuitBreakerRegistry circuitBreakers) {
+        if (circuitBreakers == null) {
+            breakersByAdapter = Collections.emptyMap();
+            return;
+        }
+        Map<ITransportAdapter, EndpointCircuitBreaker> breakers = new HashMap<ITransportAdapter, EndpointCircuitBreaker>();
+        for (ITransportAdapter adapter : capabilitiesByAdapter.keySet()) {
+            breakers.put(adapter, circuitBreakers.getBreaker(adapter, adapter.getEndpointKey(resource)));
+        }
+        breakersByAdapter = breakers;
+    }
+
+    /**
+     * Makes the task record its poll time, adapter calls, listeners
+     * notification time and failed reads.
+     *
+     * @param instrumentation
+     *            Instrumentation to use or <code>null</code>
+     */
+    public void setInstrumentation(CoreInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Tells whether the circuit breaker of any endpoint used by this task is
+     * not closed.
+     */
+    public boolean isEndpointFailing() {
+        for (EndpointCircuitBreaker breaker : breakersByAdapter.values()) {
+            if (breaker.isFailing()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void addMetricListener(IMetricListener metricListener) {
-        metricListeners.add(metricListener);
         // save metricListenres ClassLoader sa we can use it when notifying of
         // value change
-        metricListenersClassLoaders.add(Thread.currentThread().getContextClassLoader());
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (eventDispatcher != null) {
+            ListenerDeliveryQueue queue = eventDispatcher.acquire(metricListener, classLoader);
+            metricListeners.add(new ListenerRegistration(metricListener, queue, null));
+        } else {
+            metricListeners.add(new ListenerRegistration(metricListener, metricListener, classLoader));
+        }
     }
 
     public IMetric getMetric() {
@@ -79,38 +193,80 @@ public abstract class MetricTask implements Runnable {
     }
 
     public void removeMetricListener(IMetricListener metricListener) {
-        int index = metricListeners.indexOf(metricListener);
-        metricListenersClassLoaders.remove(index);
-        metricListeners.remove(metricListener);
+        for (ListenerRegistration registration : metricListeners) {
+            if (registration.listener.equals(metricListener)) {
+                removeRegistration(registration);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all listeners (releases their delivery queues).
+     */
+    public void removeAllMetricListeners() {
+        for (ListenerRegistration registration : metricListeners) {
+            removeRegistration(registration);
+        }
+    }
+
+    private void removeRegistration(ListenerRegistration registration) {
+        if (metricListeners.remove(registration) && registration.target instanceof ListenerDeliveryQueue) {
+            eventDispatcher.release((ListenerDeliveryQueue) registration.target);
+        }
     }
 
-    protected void fireMetricEvent(Number value) {
-        logger.debug("Metric: " + metric.getMetricURI() + " resource: "
-                + metric.getResourceURI() + " value: " + value);
-        int i = 0;
-        for (IMetricListener listener : metricListeners) {
+    /**
+     * Notifies all listeners with a single event instance.
+     */
+    protected void fireMetricEvent(double value) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Metric: " + metric.getMetricURI() + " resource: "
+                    + metric.getResourceURI() + " value: " + value);
+        }
+        IPrimitiveMetricEvent event = new PrimitiveMetricEvent(metric, value,
+                resource.getType(), System.currentTimeMillis());
+        Thread currentThread = Thread.currentThread();
+        ClassLoader originalClassLoader = currentThread.getContextClassLoader();
+        ClassLoader currentClassLoader = originalClassLoader;
+        for (ListenerRegistration registration : metricListeners) {
             try {
-                // set listeners classloader
-                Thread.currentThread().setContextClassLoader(
-                        metricListenersClassLoaders.get(i));
-                listener.processMetricEvent(new MetricEvent(metric, value,
-                        resource.getType()));
+                // set listeners classloader (delivery queues set it
+                // themselves)
+                if (registration.classLoader != null && registration.classLoader != currentClassLoader) {
+                    currentClassLoader = registration.classLoader;
+                    currentThread.setContextClassLoader(currentClassLoader);
+                }
+                registration.target.processMetricEvent(event);
+            } catch (InterruptedException e) {
+                // interrupted while waiting for a full delivery queue
+                currentThread.interrupt();
+                break;
             } catch (Throwable e) {
                 if (!logger.isDebugEnabled()) {
-                    logger.error("Error while notifying listener (" + listener
+                    logger.error("Error while notifying listener (" + registration.listener
                             + "). Removing from listeners list!");
                 } else {
-                    logger.debug("Error while notifying listener (" + listener
+                    logger.debug("Error while notifying listener (" + registration.listener
                             + "). Removing from listeners list!", e);
                 }
-                metricListeners.remove(listener);
+                removeRegistration(registration);
             }
-            i++;
+        }
+        if (currentClassLoader != originalClassLoader) {
+            currentThread.setContextClassLoader(originalClassLoader);
         }
     }
 
     public void init() {
         adapters = resource.getTransportAdapters();
+        if (readCache != null) {
+            List<ITransportAdapter> cachingAdapters = new ArrayList<ITransportAdapter>(adapters.size());
+            for (ITransportAdapter adapter : adapters) {
+                cachingAdapters.add(readCache.forAdapter(adapter));
+            }
+            adapters = cachingAdapters;
+        }
 
         for (String usedCapability : usedCapabilities) {
             ITransportAdapter adapterToUse = null;
@@ -129,9 +285,24 @@ public abstract class MetricTask implements Runnable {
                 throw new RuntimeException("No adapter found for: resource: " + resource + " capability: " + usedCapability);
             } else {
                 adaptersToUseForCapabilities.put(usedCapability, adapterToUse);
+                List<String> adapterCapabilities = capabilitiesByAdapter.get(adapterToUse);
+                if (adapterCapabilities == null) {
+                    adapterCapabilities = new ArrayList<String>();
+                    capabilitiesByAdapter.put(adapterToUse, adapterCapabilities);
+                }
+                adapterCapabilities.add(usedCapability);
             }
         }
 
+        for (Map.Entry<ITransportAdapter, List<String>> adapterReads : capabilitiesByAdapter.entrySet()) {
+            List<String> adapterCapabilities = adapterReads.getValue();
+            int[] slots = new int[adapterCapabilities.size()];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = usedCapabilities.indexOf(adapterCapabilities.get(i));
+            }
+            slotsByAdapter.put(adapterReads.getKey(), slots);
+        }
+
     }
 
     public boolean isOneCapabilityUsed() {
@@ -149,6 +320,25 @@ public abstract class MetricTask implements Runnable {
 
     public abstract Number computeMetricValue(Map<String, Number> values);
 
+    /**
+     * Computes the metric value from the capability values kept in slots
+     * (value of the i-th used capability is at index i, <code>NaN</code> if
+     * there is no value). Returning <code>NaN</code> means that there is no
+     * metric value to fire.<br>
+     * This implementation boxes the values and delegates to
+     * {@link #computeMetricValue(Map)}; subclasses which can work on
+     * primitives should override it.
+     */
+    protected double computeMetricValue(double[] capabilityValues) {
+        Map<String, Number> values = new HashMap<String, Number>();
+        for (int i = 0; i < capabilityValues.length; i++) {
+            values.put(usedCapabilities.get(i),
+                    Double.isNaN(capabilityValues[i]) ? null : Double.valueOf(capabilityValues[i]));
+        }
+        Number value = computeMetricValue(values);
+        return value == null ? Double.NaN : value.doubleValue();
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -156,52 +346,332 @@ public abstract class MetricTask implements Runnable {
      */
     @Override
     public void run() {
-        boolean computeMetricValue = true;
-        for (String usedCapability : usedCapabilities) {
+        CoreInstrumentation instrumentation = this.instrumentation;
+        if (instrumentation == null || !instrumentation.isEnabled() || --pollsUntilSample > 0) {
+            sampledPoll = false;
+            poll();
+            return;
+        }
+        pollsUntilSample = instrumentation.getSampleInterval();
+        sampledPoll = true;
+        long start = System.nanoTime();
+        try {
+            poll();
+        } finally {
+            instrumentation.recordTaskPoll(System.nanoTime() - start);
+        }
+    }
+
+    private void poll() {
+        for (EndpointCircuitBreaker breaker : breakersByAdapter.values()) {
+            if (!breaker.allowRequest()) {
+                logger.debug("Endpoint paused by circuit breaker: " + breaker.getEndpointKey() + " Metric: " + metric);
+                return;
+            }
+        }
+        if (readExecutor == null) {
+            pollSynchronously();
+        } else {
+            pollAsynchronously();
+        }
+    }
+
+    protected void pollSynchronously() {
+        for (Map.Entry<ITransportAdapter, List<String>> adapterReads : capabilitiesByAdapter.entrySet()) {
             try {
-                Number capabilityValue = (Number) adaptersToUseForCapabilities
-                        .get(usedCapability).getCapabilityValue(resource,
-                                usedCapability);
-                values.put(usedCapability, capabilityValue);
+                Map<String, Object> values = readCapabilityValues(adapterReads.getKey(), adapterReads.getValue());
+                recordSuccess(adapterReads.getKey());
+                storeValues(adapterReads.getValue(), slotsByAdapter.get(adapterReads.getKey()), values);
             } catch (Exception e) {
-                if (!logger.isDebugEnabled()) {
-                    logger.error("Couldn't retrieve metric value! Metric: " + metric + " Resource: " + resource + " Capability: " + usedCapability);
-                } else {
-                    logger.debug("Couldn't retrieve metric value! Metric: " + metric + " Resource: " + resource + " Capability: " + usedCapability, e);
-                }
-                reportProblem(e);
-
+                recordFailure(adapterReads.getKey());
+                readFailed(adapterReads.getValue(), e, true);
                 // if a problem gets found - evacuate
-                computeMetricValue = false;
-                break;
+                return;
             }
         }
-        if (computeMetricValue) {
-            try {
-                Number value = computeMetricValue(values);
-                if (value != null) {
+        computeAndFireMetricValue();
+    }
+
+    private Map<String, Object> readCapabilityValues(ITransportAdapter adapter, List<String> capabilities)
+            throws Exception {
+        CoreInstrumentation instrumentation = this.instrumentation;
+        if (instrumentation == null || !sampledPoll) {
+            return adapter.getCapabilityValues(resource, capabilities);
+        }
+        long start = System.nanoTime();
+        try {
+            return adapter.getCapabilityValues(resource, capabilities);
+        } finally {
+            instrumentation.recordAdapterCall(adapter, System.nanoTime() - start);
+        }
+    }
+
+    protected void pollAsynchronously() {
+        if (!pollInProgress.compareAndSet(false, true)) {
+            logger.debug("Previous poll still in progress, skipping. Metric: " + metric);
+            return;
+        }
+        if (pendingAdapterCalls.get() > 0) {
+            // a read which has timed out is still blocked in the adapter -
+            // don't stack more threads on the same problem
+            pollInProgress.set(false);
+            for (ITransportAdapter adapter : capabilitiesByAdapter.keySet()) {
+                recordFailure(adapter);
+            }
+            readFailed(usedCapabilities, new IllegalStateException(
+                    "Previous read still blocked in the transport adapter"), true);
+            return;
+        }
+        PollRound round = new PollRound(capabilitiesByAdapter.size());
+        for (Map.Entry<ITransportAdapter, List<String>> adapterReads : capabilitiesByAdapter.entrySet()) {
+            pendingAdapterCalls.incrementAndGet();
+            readExecutor.read(adapterReads.getKey(),
+                    Collections.<Resource, Collection<String>>singletonMap(resource, adapterReads.getValue()),
+                    round.forAdapter(adapterReads.getKey()));
+        }
+    }
+
+    /**
+     * Returns the only adapter used by this task or <code>null</code> if the
+     * capabilities are read from more than one adapter. Tasks with a single
+     * adapter can be polled as a part of a {@link MetricPollGroup}.
+     */
+    public ITransportAdapter getSingleAdapter() {
+        if (capabilitiesByAdapter.size() != 1) {
+            return null;
+        }
+        return capabilitiesByAdapter.keySet().iterator().next();
+    }
+
+    public List<String> getUsedCapabilities() {
+        return usedCapabilities;
+    }
+
+    /**
+     * Called by the {@link MetricPollGroup} with the capability values read
+     * for this task's resource.
+     */
+    public void completePoll(Map<String, Object> values) {
+        try {
+            for (int i = 0; i < capabilityValues.length; i++) {
+                capabilityValues[i] = toDouble(values.get(usedCapabilities.get(i)));
+            }
+        } catch (ClassCastException e) {
+            readFailed(usedCapabilities, e, false);
+            return;
+        }
+        computeAndFireMetricValue();
+    }
+
+    /**
+     * Called by the {@link MetricPollGroup} when the capabilities of this
+     * task's resource couldn't be read.
+     *
+     * @param endpointFailure
+     *            <code>true</code> if no resource of the group could be read
+     */
+    public void failPoll(Exception e, boolean endpointFailure) {
+        readFailed(usedCapabilities, e, endpointFailure);
+    }
+
+    private void storeValues(List<String> capabilities, int[] slots, Map<String, Object> values) {
+        for (int i = 0; i < slots.length; i++) {
+            capabilityValues[slots[i]] = toDouble(values.get(capabilities.get(i)));
+        }
+    }
+
+    private void recordSuccess(ITransportAdapter adapter) {
+        EndpointCircuitBreaker breaker = breakersByAdapter.get(adapter);
+        if (breaker != null) {
+            breaker.recordSuccess();
+        }
+    }
+
+    private void recordFailure(ITransportAdapter adapter) {
+        EndpointCircuitBreaker breaker = breakersByAdapter.get(adapter);
+        if (breaker != null) {
+            breaker.recordFailure();
+        }
+        CoreInstrumentation instrumentation = this.instrumentation;
+        if (instrumentation != null && instrumentation.isEnabled()) {
+            instrumentation.recordFailedRead(adapter.getEndpointKey(resource));
+        }
+    }
+
+    private static double toDouble(Object value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        if (!(value instanceof Number)) {
+            throw new ClassCastException("Not a number: " + value);
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    protected void computeAndFireMetricValue() {
+        try {
+            double value = computeMetricValue(capabilityValues);
+            if (!Double.isNaN(value)) {
+                CoreInstrumentation instrumentation = this.instrumentation;
+                if (instrumentation != null && instrumentation.isEnabled() && --fanOutsUntilSample <= 0) {
+                    fanOutsUntilSample = instrumentation.getSampleInterval();
+                    long start = System.nanoTime();
                     fireMetricEvent(value);
-                    numberOfRetries = 0;
-                }
-            } catch (Exception e) {
-                if (!logger.isDebugEnabled()) {
-                    logger.error("Error while computing metric value! " + metric);
+                    instrumentation.recordListenerFanOut(System.nanoTime() - start);
                 } else {
-                    logger.debug("Error while computing metric value! " + metric, e);
+                    fireMetricEvent(value);
                 }
-                reportProblem(e);
+                numberOfRetries.set(0);
+                numberOfResourceRetries.set(0);
+            }
+        } catch (Exception e) {
+            if (!logger.isDebugEnabled()) {
+                logger.error("Error while computing metric value! " + metric);
+            } else {
+                logger.debug("Error while computing metric value! " + metric, e);
             }
+            reportProblem(e);
         }
     }
 
+    private void readFailed(Collection<String> capabilities, Exception e, boolean endpointFailure) {
+        if (!logger.isDebugEnabled()) {
+            logger.error("Couldn't retrieve metric value! Metric: " + metric + " Resource: " + resource + " Capabilities: " + capabilities);
+        } else {
+            logger.debug("Couldn't retrieve metric value! Metric: " + metric + " Resource: " + resource + " Capabilities: " + capabilities, e);
+        }
+        reportProblem(new CapabilityReadException(resource, capabilities, e, endpointFailure));
+    }
+
+    /**
+     * @return Number of failed polls since the last value, including the
+     *         failures of the endpoint
+     */
     public int getNumberOfRetries() {
-        return numberOfRetries;
+        return numberOfRetries.get();
+    }
+
+    /**
+     * @return Number of failed polls since the last value which are not left
+     *         to the circuit breakers (see {@link #isLeftToCircuitBreaker(Exception)})
+     */
+    public int getNumberOfResourceRetries() {
+        return numberOfResourceRetries.get();
+    }
+
+    /**
+     * Tells whether a reported problem is left to the circuit breakers - the
+     * whole call to the endpoint failed, so the problem can't be blamed on
+     * the resource of this task, and the task's endpoints have breakers which
+     * pause it until the endpoint recovers.
+     */
+    public boolean isLeftToCircuitBreaker(Exception e) {
+        return !breakersByAdapter.isEmpty() && e instanceof CapabilityReadException
+                && ((CapabilityReadException) e).isEndpointFailure();
     }
 
     protected void reportProblem(Exception e) {
         problemObserver.problemOcurred(getMetric(), e);
         // we want the next iteration to be marked as a retry
-        numberOfRetries++;
+        numberOfRetries.incrementAndGet();
+        if (!isLeftToCircuitBreaker(e)) {
+            numberOfResourceRetries.incrementAndGet();
+        }
+    }
+
+    /**
+     * Collects results of the reads issued in a single asynchronous poll.
+     */
+    private class PollRound {
+
+        private final AtomicInteger remainingReads;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        public PollRound(int reads) {
+            remainingReads = new AtomicInteger(reads);
+        }
+
+        public ICapabilityReadCallback forAdapter(ITransportAdapter adapter) {
+            return new AdapterRead(adapter, capabilitiesByAdapter.get(adapter), slotsByAdapter.get(adapter));
+        }
+
+        private void readFailed(Exception e, boolean endpointFailure) {
+            if (finished.compareAndSet(false, true)) {
+                try {
+                    MetricTask.this.readFailed(usedCapabilities, e, endpointFailure);
+                } finally {
+                    pollInProgress.set(false);
+                }
+            }
+        }
+
+        /**
+         * Stores values read from one adapter in their slots - each adapter
+         * writes different slots and the last one computes the metric value.
+         */
+        private class AdapterRead implements ICapabilityReadCallback {
+
+            private final ITransportAdapter adapter;
+            private final List<String> capabilities;
+            private final int[] slots;
+
+            public AdapterRead(ITransportAdapter adapter, List<String> capabilities, int[] slots) {
+                this.adapter = adapter;
+                this.capabilities = capabilities;
+                this.slots = slots;
+            }
+
+            @Override
+            public void readCompleted(CapabilityReadResults results) {
+                Exception failure = results.getFailure(resource);
+                if (failure != null) {
+                    recordFailure(adapter);
+                    // the only resource of the call failed
+                    PollRound.this.readFailed(failure, true);
+                    return;
+                }
+                recordSuccess(adapter);
+                try {
+                    storeValues(capabilities, slots, results.getValues(resource));
+                } catch (ClassCastException e) {
+                    PollRound.this.readFailed(e, false);
+                    return;
+                }
+                if (remainingReads.decrementAndGet() == 0
+                        && finished.compareAndSet(false, true)) {
+                    try {
+                        computeAndFireMetricValue();
+                    } finally {
+                        pollInProgress.set(false);
+                    }
+                }
+            }
+
+            @Override
+            public void readFailed(Exception e) {
+                recordFailure(adapter);
+                PollRound.this.readFailed(e, true);
+            }
+
+            @Override
+            public void readFinished() {
+                pendingAdapterCalls.decrementAndGet();
+            }
+        }
+    }
+
+    private static class ListenerRegistration {
+
+        private final IMetricListener listener;
+        // listener itself or its delivery queue
+        private final IMetricListener target;
+        private final ClassLoader classLoader;
+
+        public ListenerRegistration(IMetricListener listener, IMetricListener target, ClassLoader classLoader) {
+            this.listener = listener;
+            this.target = target;
+            this.classLoader = classLoader;
+        }
     }
 
 }
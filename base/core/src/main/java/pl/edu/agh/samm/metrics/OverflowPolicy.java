@@ -0,0 +1,35 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+/**
+ * What a {@link ListenerDeliveryQueue} does with a new event when it is full.
+ * <ul>
+ * <li>BLOCK - the polling thread waits until the listener catches up (no
+ * events are lost)</li>
+ * <li>DROP_OLDEST - the oldest queued event is dropped</li>
+ * <li>COALESCE_LATEST_PER_METRIC - the new value replaces the latest queued
+ * event of its metric; if none of its events is queued it is dropped</li>
+ * </ul>
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public enum OverflowPolicy {
+	BLOCK, DROP_OLDEST, COALESCE_LATEST_PER_METRIC
+}
@@ -0,0 +1,217 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import pl.edu.agh.samm.api.impl.StringHelper;
+import pl.edu.agh.samm.api.metrics.IMetric;
+
+/**
+ * Index of pattern metrics (metrics which resource URI is a regular
+ * expression) used to find metrics which should be started for a newly
+ * discovered resource.<br>
+ * Patterns are compiled once and kept in a prefix tree by their literal
+ * prefix (see {@link StringHelper#getRegexLiteralPrefix(String)}), so a
+ * resource URI is matched in one pass over its characters and only against
+ * patterns which prefix it starts with. Metrics with the same pattern share
+ * a single match.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class PatternMetricIndex {
+
+	private final Node root = new Node();
+	private final List<IMetric> metrics = new ArrayList<IMetric>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Adds the metric to the index. A metric equal to the given one is
+	 * replaced (e.g. to update the poll time interval).
+	 */
+	public void add(IMetric metric) {
+		String regex = metric.getResourceURI();
+		lock.writeLock().lock();
+		try {
+			removeMetric(metric);
+			metrics.add(metric);
+			Node node = root;
+			String prefix = StringHelper.getRegexLiteralPrefix(regex);
+			for (int i = 0; i < prefix.length(); i++) {
+				node = node.getOrCreateChild(prefix.charAt(i));
+			}
+			PatternEntry entry = node.patterns.get(regex);
+			if (entry == null) {
+				entry = new PatternEntry(Pattern.compile(regex));
+				node.patterns.put(regex, entry);
+			}
+			entry.metrics.add(metric);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return True if the metric was in the index
+	 */
+	public boolean remove(IMetric metric) {
+		lock.writeLock().lock();
+		try {
+			return removeMetric(metric);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean contains(IMetric metric) {
+		lock.readLock().lock();
+		try {
+			return metrics.contains(metric);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return Copy of the list of indexed metrics, in the order they were
+	 *         added
+	 */
+	public List<IMetric> getMetrics() {
+		lock.readLock().lock();
+		try {
+			return new ArrayList<IMetric>(metrics);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return metrics.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns pattern metrics which pattern matches the whole resource URI.
+	 */
+	public List<IMetric> getMatchingMetrics(String resourceURI) {
+		List<IMetric> matching = null;
+		lock.readLock().lock();
+		try {
+			Node node = root;
+			int i = 0;
+			while (node != null) {
+				for (PatternEntry entry : node.patterns.values()) {
+					if (entry.pattern.matcher(resourceURI).matches()) {
+						if (matching == null) {
+							matching = new ArrayList<IMetric>();
+						}
+						matching.addAll(entry.metrics);
+					}
+				}
+				if (i == resourceURI.length() || node.children == null) {
+					break;
+				}
+				node = node.children.get(resourceURI.charAt(i++));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (matching == null) {
+			return Collections.emptyList();
+		}
+		return matching;
+	}
+
+	private boolean removeMetric(IMetric metric) {
+		int index = metrics.indexOf(metric);
+		if (index == -1) {
+			return false;
+		}
+		IMetric removed = metrics.remove(index);
+		String regex = removed.getResourceURI();
+		String prefix = StringHelper.getRegexLiteralPrefix(regex);
+		List<Node> path = new ArrayList<Node>(prefix.length() + 1);
+		Node node = root;
+		path.add(node);
+		for (int i = 0; i < prefix.length(); i++) {
+			node = node.children.get(prefix.charAt(i));
+			path.add(node);
+		}
+		PatternEntry entry = node.patterns.get(regex);
+		entry.metrics.remove(removed);
+		if (entry.metrics.isEmpty()) {
+			node.patterns.remove(regex);
+			// prune branches left without patterns
+			for (int i = prefix.length(); i > 0; i--) {
+				Node child = path.get(i);
+				if (!child.patterns.isEmpty() || child.children != null) {
+					break;
+				}
+				Node parent = path.get(i - 1);
+				parent.children.remove(prefix.charAt(i - 1));
+				if (parent.children.isEmpty()) {
+					parent.children = null;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static class Node {
+
+		private Map<Character, Node> children = null;
+		private final Map<String, PatternEntry> patterns = new LinkedHashMap<String, PatternEntry>(
+				2);
+
+		public Node getOrCreateChild(char c) {
+			if (children == null) {
+				children = new HashMap<Character, Node>(4);
+			}
+			Node child = children.get(c);
+			if (child == null) {
+				child = new Node();
+				children.put(c, child);
+			}
+			return child;
+		}
+	}
+
+	private static class PatternEntry {
+
+		private final Pattern pattern;
+		private final List<IMetric> metrics = new ArrayList<IMetric>(1);
+
+		public PatternEntry(Pattern pattern) {
+			this.pattern = pattern;
+		}
+	}
+
+}
@@ -17,17 +17,8 @@
 
 package pl.edu.agh.samm.metrics;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,19 +44,154 @@ public class RunningMetricsManagerImpl implements IMetricsManager,
 		IMetricProblemObserver {
 
 	public static final int NUMBER_OF_RETRIES_THRESHOLD = 3;
+	public static final int DEFAULT_ENDPOINT_RETRIES_THRESHOLD = 20;
 
 	private final Logger logger = LoggerFactory
 			.getLogger(RunningMetricsManagerImpl.class);
 
-	private List<IMetric> patternMetrics = new CopyOnWriteArrayList<IMetric>();
+	private final PatternMetricIndex patternMetrics = new PatternMetricIndex();
 	private IKnowledge knowledgeService = null;
 	private IResourceInstancesManager resourceInstancesManager = null;
-	private List<IMetricsManagerListener> metricManagerListeners = new CopyOnWriteArrayList<IMetricsManagerListener>();
-	private Map<IMetric, MetricTask> scheduledTasks = new HashMap<IMetric, MetricTask>();
-	private ScheduledExecutorService scheduledExecutorService = new ScheduledThreadPoolExecutor(
-			10);
+	private final MetricRegistry registry = new MetricRegistry();
+	private IMetricScheduler metricScheduler = null;
+	private CapabilityReadExecutor capabilityReadExecutor = null;
+	private boolean pollGrouping = true;
+	private MetricPollGroups pollGroups = null;
+	private MetricEventDispatcher eventDispatcher = null;
+	private CapabilityReadCache readCache = null;
+	private CircuitBreakerRegistry circuitBreakers = null;
+	private CoreInstrumentation instrumentation = null;
+	private IMetricScheduler taskScheduler = null;
+	private int endpointRetriesThreshold = DEFAULT_ENDPOINT_RETRIES_THRESHOLD;
+
+	public synchronized IMetricScheduler getMetricScheduler() {
+		if (metricScheduler == null) {
+			metricScheduler = new ExecutorMetricScheduler();
+		}
+		return metricScheduler;
+	}
+
+	public synchronized void setMetricScheduler(IMetricScheduler metricScheduler) {
+		this.metricScheduler = metricScheduler;
+		this.taskScheduler = null;
+	}
+
+	public CapabilityReadExecutor getCapabilityReadExecutor() {
+		return capabilityReadExecutor;
+	}
+
+	/**
+	 * Enables asynchronous polling - if set, metric tasks only issue reads on
+	 * the given executor, so the scheduler threads never wait for the
+	 * monitored systems.
+	 */
+	public void setCapabilityReadExecutor(
+			CapabilityReadExecutor capabilityReadExecutor) {
+		this.capabilityReadExecutor = capabilityReadExecutor;
+	}
+
+	public boolean isPollGrouping() {
+		return pollGrouping;
+	}
+
+	/**
+	 * Enables grouping of metrics which read from the same endpoint with the
+	 * same period - each group is polled with a single transport adapter call
+	 * (see {@link MetricPollGroup}).
+	 */
+	public void setPollGrouping(boolean pollGrouping) {
+		this.pollGrouping = pollGrouping;
+	}
+
+	public MetricEventDispatcher getEventDispatcher() {
+		return eventDispatcher;
+	}
+
+	/**
+	 * Enables asynchronous delivery of metric events - every listener gets its
+	 * own delivery queue, so a slow listener doesn't delay polling.
+	 */
+	public void setEventDispatcher(MetricEventDispatcher eventDispatcher) {
+		this.eventDispatcher = eventDispatcher;
+	}
+
+	public CapabilityReadCache getReadCache() {
+		return readCache;
+	}
 
-	private Map<IMetric, ScheduledFuture<?>> scheduledFutures = new HashMap<IMetric, ScheduledFuture<?>>();
+	/**
+	 * Makes metric tasks share capability values read within the cache's
+	 * freshness window (see {@link CapabilityReadCache}).
+	 */
+	public void setReadCache(CapabilityReadCache readCache) {
+		this.readCache = readCache;
+	}
+
+	public CircuitBreakerRegistry getCircuitBreakers() {
+		return circuitBreakers;
+	}
+
+	/**
+	 * Enables circuit breakers of the endpoints - metrics reading from a
+	 * failing endpoint are paused and resumed when it recovers instead of
+	 * being stopped after {@link #NUMBER_OF_RETRIES_THRESHOLD} failures. Only
+	 * failures of calls which read other resources successfully (e.g. a
+	 * single broken resource of a poll group) count toward that threshold;
+	 * a call which read nothing is a failure of the endpoint.
+	 */
+	public void setCircuitBreakers(CircuitBreakerRegistry circuitBreakers) {
+		this.circuitBreakers = circuitBreakers;
+	}
+
+	public int getEndpointRetriesThreshold() {
+		return endpointRetriesThreshold;
+	}
+
+	/**
+	 * Number of failed reads after which a metric is stopped even though its
+	 * endpoint's circuit breaker is open - the endpoint is then considered
+	 * gone rather than temporarily failing.
+	 */
+	public void setEndpointRetriesThreshold(int endpointRetriesThreshold) {
+		this.endpointRetriesThreshold = endpointRetriesThreshold;
+	}
+
+	public CoreInstrumentation getInstrumentation() {
+		return instrumentation;
+	}
+
+	/**
+	 * Enables recording of poll times, scheduler lag, adapter calls,
+	 * listeners notification times and failed reads (see
+	 * {@link CoreInstrumentation}).
+	 */
+	public void setInstrumentation(CoreInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	/**
+	 * Returns the scheduler used for metric tasks and poll groups - the
+	 * configured one, measuring the lag if instrumentation is enabled.
+	 */
+	private synchronized IMetricScheduler getTaskScheduler() {
+		if (taskScheduler == null) {
+			taskScheduler = getMetricScheduler();
+			if (instrumentation != null) {
+				taskScheduler = new InstrumentedMetricScheduler(taskScheduler,
+						instrumentation);
+			}
+		}
+		return taskScheduler;
+	}
+
+	private synchronized MetricPollGroups getPollGroups() {
+		if (pollGroups == null) {
+			pollGroups = new MetricPollGroups(getTaskScheduler(),
+					capabilityReadExecutor, circuitBreakers);
+			pollGroups.setInstrumentation(instrumentation);
+		}
+		return pollGroups;
+	}
 
 	public void setKnowledgeService(IKnowledge knowledgeService) {
 		this.knowledgeService = knowledgeService;
@@ -84,30 +210,22 @@ public class RunningMetricsManagerImpl implements IMetricsManager,
 		this.resourceInstancesManager = resourceInstancesManager;
 	}
 
+	/**
+	 * @return Snapshot of the running metrics
+	 */
 	@Override
 	public Collection<IMetric> getRunningMetrics() {
-		return scheduledTasks.keySet();
+		return registry.snapshot();
 	}
 
 	@Override
 	public void addMetricsManagerListener(IMetricsManagerListener listener) {
-		if (!metricManagerListeners.contains(listener)) {
-			metricManagerListeners.add(listener);
-			if (scheduledTasks.size() > 0) {
-				try {
-					listener.notifyNewMetricsStarted(new HashSet<IMetric>(
-							scheduledTasks.keySet()));
-				} catch (Exception e) {
-					logger.error(
-							"Metric Manager Listener thrown an exception!", e);
-				}
-			}
-		}
+		registry.addListener(listener);
 	}
 
 	@Override
 	public void removeMetricsManagerListener(IMetricsManagerListener listener) {
-		metricManagerListeners.remove(listener);
+		registry.removeListener(listener);
 	}
 
 	/*
@@ -120,9 +238,9 @@ public class RunningMetricsManagerImpl implements IMetricsManager,
 	@Override
 	public void addMetricListener(IMetric metric, IMetricListener listener)
 			throws MetricNotRunningException {
-		if (scheduledTasks.containsKey(metric)) {
-			MetricTask metricTask = scheduledTasks.get(metric);
-			metricTask.addMetricListener(listener);
+		RunningMetric runningMetric = registry.get(metric);
+		if (runningMetric != null) {
+			runningMetric.getTask().addMetricListener(listener);
 		} else {
 			throw new MetricNotRunningException(metric.getMetricURI());
 		}
@@ -137,33 +255,9 @@ public class RunningMetricsManagerImpl implements IMetricsManager,
 	 */
 	@Override
 	public void removeMetricListener(IMetric metric, IMetricListener listener) {
-		if (scheduledTasks.containsKey(metric)) {
-			MetricTask metricTask = scheduledTasks.get(metric);
-			metricTask.removeMetricListener(listener);
-		}
-	}
-
-	protected void fireNewMetricHasStarted(IMetric metric) {
-		Collection<IMetric> collection = new ArrayList<IMetric>();
-		collection.add(metric);
-		for (IMetricsManagerListener listener : metricManagerListeners) {
-			try {
-				listener.notifyNewMetricsStarted(collection);
-			} catch (Exception e) {
-				logger.error("Metric Manager Listener thrown an exception!", e);
-			}
-		}
-	}
-
-	protected void fireMetricHasStopped(IMetric metric) {
-		Collection<IMetric> collection = new ArrayList<IMetric>();
-		collection.add(metric);
-		for (IMetricsManagerListener listener : metricManagerListeners) {
-			try {
-				listener.notifyMetricsHasStopped(collection);
-			} catch (Exception e) {
-				logger.error("Metric Manager Listener thrown an exception!", e);
-			}
+		RunningMetric runningMetric = registry.get(metric);
+		if (runningMetric != null) {
+			runningMetric.getTask().removeMetricListener(listener);
 		}
 	}
 
@@ -187,18 +281,15 @@ public class RunningMetricsManagerImpl implements IMetricsManager,
 	@Override
 	public void stopMetric(IMetric metric) {
 		logger.info("Stopping metric: " + metric);
-		if (scheduledTasks.containsKey(metric)) {
-			scheduledTasks.remove(metric);
-			ScheduledFuture<?> removedFuture = scheduledFutures.remove(metric);
-			removedFuture.cancel(false);
-
-			fireMetricHasStopped(metric);
+		RunningMetric runningMetric = registry.stop(metric);
+		if (runningMetric != null) {
+			runningMetric.getTask().removeAllMetricListeners();
 		}
 	}
 
 	@Override
 	public boolean isMetricRunning(IMetric metric) {
-		return scheduledTasks.containsKey(metric);
+		return registry.isRunning(metric);
 	}
 
 	/*
@@ -231,82 +322,137 @@ public class RunningMetricsManagerImpl implements IMetricsManager,
 	}
 
 	private void startSingleMetricAndAddRunningMetricListener(IMetric metric,
-			Collection<IMetricListener> listeners) {
+			final Collection<IMetricListener> listeners) {
 		logger.info("Starting single metric: " + metric);
-		MetricTask task = null;
-		if (!scheduledTasks.containsKey(metric)) {
-			List<String> usedCapabilities = knowledgeService
-					.getUsedCapabilities(metric.getMetricURI());
-			Resource resource = resourceInstancesManager
-					.getResourceForURI(metric.getResourceURI());
-			if (knowledgeService.isCustomMetric(metric.getMetricURI())) {
-				String customClassName = knowledgeService
-						.getClassNameForCustomMetric(metric.getMetricURI());
-				task = new CustomMetricTask(metric, usedCapabilities, resource,
-						customClassName);
-			} else {
-				task = new SingleCapabilityMetricTask(metric, usedCapabilities,
-						resource);
-			}
-			task.init();
-
-		} else {
-			task = scheduledTasks.get(metric);
-		}
-
-		if (listeners != null) {
+		RunningMetric runningMetric = registry.startIfAbsent(metric,
+				new IMetricTaskStarter() {
+					@Override
+					public MetricTask create(IMetric metric) {
+						MetricTask task = createMetricTask(metric);
+						task.setEventDispatcher(eventDispatcher);
+						// listeners are attached before the first poll
+						if (listeners != null) {
+							for (IMetricListener listener : listeners) {
+								task.addMetricListener(listener);
+							}
+						}
+						return task;
+					}
+
+					@Override
+					public IMetricSchedule schedule(IMetric metric,
+							MetricTask task) {
+						return scheduleMetricTask(task,
+								metric.getMetricPollTimeInterval());
+					}
+				});
+
+		if (runningMetric != null && listeners != null) {
+			// already running
 			for (IMetricListener listener : listeners) {
-				task.addMetricListener(listener);
+				runningMetric.getTask().addMetricListener(listener);
 			}
 		}
+	}
 
-		if (!scheduledTasks.containsKey(metric)) {
-			task.setProblemObserver(this);
-			ScheduledFuture<?> future = scheduledExecutorService
-					.scheduleAtFixedRate(task, 0L,
-							metric.getMetricPollTimeInterval(),
-							TimeUnit.MILLISECONDS);
-			scheduledTasks.put(metric, task);
-			scheduledFutures.put(metric, future);
+	/**
+	 * Creates and initializes the task computing the metric.
+	 */
+	protected MetricTask createMetricTask(IMetric metric) {
+		List<String> usedCapabilities = knowledgeService
+				.getUsedCapabilities(metric.getMetricURI());
+		Resource resource = resourceInstancesManager.getResourceForURI(metric
+				.getResourceURI());
+		MetricTask task = null;
+		if (knowledgeService.isCustomMetric(metric.getMetricURI())) {
+			String customClassName = knowledgeService
+					.getClassNameForCustomMetric(metric.getMetricURI());
+			task = new CustomMetricTask(metric, usedCapabilities, resource,
+					customClassName);
+		} else {
+			task = new SingleCapabilityMetricTask(metric, usedCapabilities,
+					resource);
+		}
+		task.setReadCache(readCache);
+		task.init();
+		return task;
+	}
 
-			fireNewMetricHasStarted(metric);
+	private IMetricSchedule scheduleMetricTask(MetricTask task, long interval) {
+		task.setProblemObserver(this);
+		task.setReadExecutor(capabilityReadExecutor);
+		task.setCircuitBreakers(circuitBreakers);
+		task.setInstrumentation(instrumentation);
+		if (pollGrouping && getPollGroups().accepts(task)) {
+			return getPollGroups().schedule(task, interval);
 		}
+		return getTaskScheduler().schedule(task, interval);
 	}
 
 	@Override
 	public void updateMetricPollTime(IMetric metric)
 			throws MetricNotRunningException {
 		if (patternMetrics.contains(metric)) {
-			// removes old object instance
-			patternMetrics.remove(metric);
-			// adds instance with new pooling time
+			// replaces old object instance with the one with new pooling time
 			patternMetrics.add(metric);
 		} else {
-			stopMetric(metric);
+			synchronized (registry.lockFor(metric)) {
+				RunningMetric runningMetric = registry.get(metric);
+				if (runningMetric != null) {
+					// reschedule in place - task and its listeners are kept
+					long pollTimeInterval = metric.getMetricPollTimeInterval();
+					runningMetric.getTask().getMetric()
+							.setMetricPollTimeInterval(pollTimeInterval);
+					runningMetric.getSchedule().setPeriod(pollTimeInterval);
+					return;
+				}
+			}
 			startMetric(metric);
 		}
 	}
 
 	@Override
 	public void problemOcurred(IMetric metric, Exception e) {
-		// retry three times
-		MetricTask task = scheduledTasks.get(metric);
-
-		if (task.getNumberOfRetries() >= NUMBER_OF_RETRIES_THRESHOLD) {
+		RunningMetric runningMetric = registry.get(metric);
+		if (runningMetric == null) {
+			// already stopped
+			return;
+		}
+		MetricTask task = runningMetric.getTask();
+
+		if (task.isLeftToCircuitBreaker(e)) {
+			// nothing could be read from the endpoint - its circuit breaker
+			// pauses the metric until the endpoint recovers, unless it never
+			// does
+			if (task.getNumberOfRetries() >= endpointRetriesThreshold) {
+				logger.debug("Metric: " + metric + " failed! Endpoint failing, stopping after "
+						+ task.getNumberOfRetries() + " retries ("
+						+ endpointRetriesThreshold + ")");
+				stopMetric(metric);
+			} else {
+				logger.debug("Metric: " + metric
+						+ " failed! Endpoint failing, left to its circuit breaker");
+			}
+		} else if (task.getNumberOfResourceRetries() >= NUMBER_OF_RETRIES_THRESHOLD) {
 			logger.debug("Metric: " + metric + " failed! Stopping after "
-					+ task.getNumberOfRetries() + " retries ("
+					+ task.getNumberOfResourceRetries() + " retries ("
 					+ NUMBER_OF_RETRIES_THRESHOLD + ")");
 			stopMetric(metric);
 		} else {
 			logger.debug("Metric: " + metric + " failed! Retrying: "
-					+ task.getNumberOfRetries() + " ("
+					+ task.getNumberOfResourceRetries() + " ("
 					+ NUMBER_OF_RETRIES_THRESHOLD + ")");
 		}
 	}
 
 	@Override
 	public List<IMetric> getPatternMetrics() {
-		return patternMetrics;
+		return patternMetrics.getMetrics();
+	}
+
+	@Override
+	public List<IMetric> getPatternMetricsMatching(String resourceURI) {
+		return patternMetrics.getMatchingMetrics(resourceURI);
 	}
 
 }
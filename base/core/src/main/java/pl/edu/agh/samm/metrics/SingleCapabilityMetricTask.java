@@ -20,12 +20,8 @@ package pl.edu.agh.samm.metrics;
 import java.util.List;
 import java.util.Map;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import pl.edu.agh.samm.api.core.Resource;
 import pl.edu.agh.samm.api.metrics.IMetric;
-import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
 
 /**
  * @author Pawel Koperek <pkoperek@gmail.com>
@@ -34,10 +30,7 @@ import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
  */
 public class SingleCapabilityMetricTask extends MetricTask {
 
-	private static final Logger logger = LoggerFactory.getLogger(SingleCapabilityMetricTask.class);
-	private ITransportAdapter adapterToUse;
 	private String usedCapability;
-	private Resource resource;
 
 	public SingleCapabilityMetricTask(IMetric metric, List<String> usedCapabilities,
 			Resource resource) {
@@ -54,13 +47,11 @@ public class SingleCapabilityMetricTask extends MetricTask {
 							+ getMetric());
 		}
 
-		adapterToUse = getAdapterForSingleCapabilitySituation();
 		usedCapability = getCapabilityForSingleCapabilitySituation();
-		resource = getResource();
 	}
 
 	/*
-	 * Not used at all
+	 * Value of the only used capability is the value of the metric
 	 * 
 	 * (non-Javadoc)
 	 * 
@@ -68,24 +59,19 @@ public class SingleCapabilityMetricTask extends MetricTask {
 	 */
 	@Override
 	public Number computeMetricValue(Map<String, Number> values) {
-		return values.values().toArray(new Number[1])[0];
+		return values.get(usedCapability);
 	}
 
+	/*
+	 * Primitive fast path - the only capability is in the first slot
+	 * 
+	 * (non-Javadoc)
+	 * 
+	 * @see pl.edu.agh.samm.metrics.MetricTask#computeMetricValue(double[])
+	 */
 	@Override
-	public void run() {
-		Number value;
-		try {
-			value = (Number) adapterToUse.getCapabilityValue(resource, usedCapability);
-			if (value != null) {
-				fireMetricEvent(value);
-			}
-		} catch (Exception e) {
-			logger.error("Couldn't retrieve metric value! Metric: " + getMetric() + " Resource: " + resource
-					+ " Capability: " + usedCapability);
-			logger.debug("Couldn't retrieve metric value! Metric: " + getMetric() + " Resource: " + resource
-					+ " Capability: " + usedCapability, e);
-			reportProblem(e);
-		}
+	protected double computeMetricValue(double[] capabilityValues) {
+		return capabilityValues[0];
 	}
 
 }
@@ -0,0 +1,384 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hierarchical timing wheel (Varghese &amp; Lauck) used to drive metric polling.
+ * <br>
+ * Time is divided into ticks of <code>tickMillis</code>. Each level of the
+ * wheel has <code>2^wheelBits</code> slots, a slot on level <code>n</code>
+ * covers <code>2^(wheelBits*n)</code> ticks. Tasks are kept in doubly linked
+ * lists hanging off the slots and are moved to a lower level when the wheel
+ * reaches their slot, so the cost of a tick depends only on the number of
+ * tasks which expire in it.<br>
+ * {@link #schedule(Runnable, long)}, {@link IMetricSchedule#cancel()} and
+ * {@link IMetricSchedule#setPeriod(long)} only enqueue a change which is
+ * applied by the tick thread at the beginning of the next tick, so they are
+ * O(1) and never contend with each other. Expired tasks are run on a fixed
+ * pool of worker threads. If a task is still running when it expires again,
+ * the execution is skipped (just like a fixed-rate task of a
+ * {@link java.util.concurrent.ScheduledExecutorService} never runs
+ * concurrently with itself).<br>
+ * When <code>phaseJitter</code> is enabled, first execution of every task is
+ * delayed by a random number of ticks (smaller than the period), so metrics
+ * started together do not all hit the monitored systems in the same tick.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class TimingWheelMetricScheduler implements IMetricScheduler {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(TimingWheelMetricScheduler.class);
+
+	public static final long DEFAULT_TICK_MILLIS = 100L;
+	public static final int DEFAULT_WHEEL_BITS = 9;
+	public static final int DEFAULT_LEVELS = 4;
+	public static final int DEFAULT_WORKER_THREADS = 10;
+
+	private long tickMillis = DEFAULT_TICK_MILLIS;
+	private int wheelBits = DEFAULT_WHEEL_BITS;
+	private int levels = DEFAULT_LEVELS;
+	private int workerThreads = DEFAULT_WORKER_THREADS;
+	private boolean phaseJitter = true;
+
+	private final Queue<WheelEntry> pendingChanges = new ConcurrentLinkedQueue<WheelEntry>();
+	private final AtomicLong skippedExecutions = new AtomicLong();
+	private volatile int scheduledTasksCount = 0;
+	private volatile boolean running = false;
+
+	// state below is owned by the tick thread
+	private WheelEntry[][] wheels;
+	private int wheelMask;
+	private long currentTick = 0L;
+
+	private ExecutorService workers;
+	private Thread tickThread;
+
+	public void init() {
+		int slots = 1 << wheelBits;
+		wheelMask = slots - 1;
+		wheels = new WheelEntry[levels][slots];
+		for (int level = 0; level < levels; level++) {
+			for (int slot = 0; slot < slots; slot++) {
+				wheels[level][slot] = new WheelEntry();
+			}
+		}
+		workers = Executors.newFixedThreadPool(workerThreads,
+				new NamedThreadFactory("samm-metric-worker"));
+		running = true;
+		tickThread = new NamedThreadFactory("samm-timing-wheel")
+				.newThread(new Runnable() {
+					@Override
+					public void run() {
+						runTicks();
+					}
+				});
+		tickThread.start();
+	}
+
+	public void destroy() {
+		running = false;
+		if (tickThread != null) {
+			tickThread.interrupt();
+		}
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+	}
+
+	@Override
+	public IMetricSchedule schedule(Runnable task, long periodMillis) {
+		WheelEntry entry = new WheelEntry(task, periodMillis);
+		pendingChanges.offer(entry);
+		return entry;
+	}
+
+	private void runTicks() {
+		long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		long startNanos = System.nanoTime();
+		while (running) {
+			long sleepNanos = startNanos + (currentTick + 1) * tickNanos
+					- System.nanoTime();
+			if (sleepNanos > 0) {
+				LockSupport.parkNanos(this, sleepNanos);
+				continue;
+			}
+			try {
+				applyPendingChanges();
+				advance();
+			} catch (Throwable t) {
+				logger.error("Timing wheel tick failed!", t);
+			}
+		}
+	}
+
+	private void applyPendingChanges() {
+		WheelEntry entry;
+		while ((entry = pendingChanges.poll()) != null) {
+			unlink(entry);
+			if (entry.cancelled) {
+				continue;
+			}
+			long periodTicks = toTicks(entry.period);
+			if (entry.deadline < 0) {
+				// first execution
+				long delay = phaseJitter ? ThreadLocalRandom.current()
+						.nextLong(periodTicks) : 0L;
+				entry.deadline = currentTick + 1 + delay;
+			} else if (periodTicks != entry.periodTicks) {
+				// keep the phase of the last execution
+				entry.deadline = Math.max(currentTick + 1, entry.deadline
+						- entry.periodTicks + periodTicks);
+			}
+			entry.periodTicks = periodTicks;
+			insert(entry);
+		}
+	}
+
+	private void advance() {
+		long tick = ++currentTick;
+		for (int level = levels - 1; level > 0; level--) {
+			int shift = wheelBits * level;
+			if ((tick & ((1L << shift) - 1)) == 0) {
+				WheelEntry head = wheels[level][(int) ((tick >>> shift) & wheelMask)];
+				WheelEntry entry = detachAll(head);
+				while (entry != head) {
+					WheelEntry next = entry.next;
+					entry.next = null;
+					entry.prev = null;
+					insert(entry);
+					entry = next;
+				}
+			}
+		}
+
+		WheelEntry head = wheels[0][(int) (tick & wheelMask)];
+		WheelEntry entry = detachAll(head);
+		while (entry != head) {
+			WheelEntry next = entry.next;
+			entry.next = null;
+			entry.prev = null;
+			if (entry.cancelled) {
+				// cancelled in the meantime - just drop it
+				entry = next;
+				continue;
+			}
+			if (entry.deadline <= tick) {
+				dispatch(entry);
+				entry.deadline = Math.max(tick + 1, entry.deadline
+						+ entry.periodTicks);
+			}
+			insert(entry);
+			entry = next;
+		}
+	}
+
+	private void dispatch(WheelEntry entry) {
+		if (entry.executing.compareAndSet(false, true)) {
+			try {
+				workers.execute(entry);
+			} catch (RejectedExecutionException e) {
+				entry.executing.set(false);
+			}
+		} else {
+			skippedExecutions.incrementAndGet();
+		}
+	}
+
+	private void insert(WheelEntry entry) {
+		long distance = entry.deadline - currentTick;
+		int level = 0;
+		while (level < levels - 1
+				&& distance >= (1L << (wheelBits * (level + 1)))) {
+			level++;
+		}
+		int slot = (int) ((entry.deadline >>> (wheelBits * level)) & wheelMask);
+		WheelEntry head = wheels[level][slot];
+		entry.prev = head.prev;
+		entry.next = head;
+		head.prev.next = entry;
+		head.prev = entry;
+		scheduledTasksCount++;
+	}
+
+	private void unlink(WheelEntry entry) {
+		if (entry.next != null) {
+			entry.prev.next = entry.next;
+			entry.next.prev = entry.prev;
+			entry.next = null;
+			entry.prev = null;
+			scheduledTasksCount--;
+		}
+	}
+
+	/**
+	 * Empties the list and returns its first element. The last element of the
+	 * returned chain still points to the head.
+	 */
+	private WheelEntry detachAll(WheelEntry head) {
+		WheelEntry first = head.next;
+		int count = 0;
+		for (WheelEntry entry = first; entry != head; entry = entry.next) {
+			count++;
+		}
+		head.next = head;
+		head.prev = head;
+		scheduledTasksCount -= count;
+		return first;
+	}
+
+	private long toTicks(long millis) {
+		return Math.max(1L, (millis + tickMillis - 1) / tickMillis);
+	}
+
+	/**
+	 * @return Number of executions skipped because previous execution of the
+	 *         same task was still in progress
+	 */
+	public long getSkippedExecutions() {
+		return skippedExecutions.get();
+	}
+
+	public int getScheduledTasksCount() {
+		return scheduledTasksCount;
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+	public void setTickMillis(long tickMillis) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("Tick has to be positive: "
+					+ tickMillis);
+		}
+		this.tickMillis = tickMillis;
+	}
+
+	public int getWheelBits() {
+		return wheelBits;
+	}
+
+	public void setWheelBits(int wheelBits) {
+		this.wheelBits = wheelBits;
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	public void setLevels(int levels) {
+		this.levels = levels;
+	}
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public void setWorkerThreads(int workerThreads) {
+		this.workerThreads = workerThreads;
+	}
+
+	public boolean isPhaseJitter() {
+		return phaseJitter;
+	}
+
+	public void setPhaseJitter(boolean phaseJitter) {
+		this.phaseJitter = phaseJitter;
+	}
+
+	private class WheelEntry implements IMetricSchedule, Runnable {
+
+		private final Runnable task;
+		private final AtomicBoolean executing = new AtomicBoolean(false);
+		private volatile long period;
+		private volatile boolean cancelled = false;
+
+		// owned by the tick thread
+		private WheelEntry prev;
+		private WheelEntry next;
+		private long deadline = -1L;
+		private long periodTicks;
+
+		/**
+		 * Creates list head
+		 */
+		public WheelEntry() {
+			this.task = null;
+			this.prev = this;
+			this.next = this;
+		}
+
+		public WheelEntry(Runnable task, long period) {
+			if (period <= 0) {
+				throw new IllegalArgumentException(
+						"Period has to be positive: " + period);
+			}
+			this.task = task;
+			this.period = period;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				logger.error("Scheduled task threw an exception!", t);
+			} finally {
+				executing.set(false);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			pendingChanges.offer(this);
+		}
+
+		@Override
+		public void setPeriod(long periodMillis) {
+			if (periodMillis <= 0) {
+				throw new IllegalArgumentException(
+						"Period has to be positive: " + periodMillis);
+			}
+			period = periodMillis;
+			pendingChanges.offer(this);
+		}
+
+		@Override
+		public long getPeriod() {
+			return period;
+		}
+	}
+
+}
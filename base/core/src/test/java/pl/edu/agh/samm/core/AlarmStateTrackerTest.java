@@ -0,0 +1,175 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.AlarmState;
+import pl.edu.agh.samm.api.core.IAlarm;
+import pl.edu.agh.samm.api.core.IAlarmBatchListener;
+import pl.edu.agh.samm.api.core.IAlarmListener;
+import pl.edu.agh.samm.api.core.IAlarmStateChange;
+import pl.edu.agh.samm.api.metrics.Metric;
+
+public class AlarmStateTrackerTest {
+
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#CPUUsageMetric";
+	private static final String RULE = "CpuAboveZero";
+
+	private AlarmStateTracker tracker;
+	private RecordingListener listener;
+
+	@Before
+	public void setUp() {
+		tracker = new AlarmStateTracker();
+		tracker.setFireAfterMatches(2);
+		tracker.setResolveAfterMillis(30000L);
+		tracker.setRenotifyIntervalMillis(300000L);
+		listener = new RecordingListener();
+		tracker.setListener(listener);
+	}
+
+	@Test
+	public void testFlappingMetricsAreSuppressed() {
+		// 200 nodes polled every second for 1000 seconds, matching every
+		// other poll
+		int nodes = 200;
+		int polls = 1000;
+		for (int second = 0; second < polls; second++) {
+			long now = second * 1000L;
+			for (int node = 0; node < nodes; node++) {
+				if ((second + node) % 2 == 0) {
+					tracker.match(RULE, new Metric(METRIC, "/slave/" + node),
+							1.0, now);
+				}
+			}
+			tracker.resolveAlarms(now);
+			tracker.deliver();
+		}
+		tracker.resolveAlarms(polls * 1000L + 30000L);
+		tracker.deliver();
+
+		assertEquals(nodes * polls / 2, tracker.getMatchCount());
+		assertTrue(listener.calls <= polls + 1);
+		assertTrue(tracker.getDeliveredCount() * 50 < tracker.getMatchCount());
+		assertEquals(0, tracker.getFiringCount());
+		for (int node = 0; node < nodes; node++) {
+			List<IAlarmStateChange> alarms = listener.getAlarms("/slave/" + node);
+			// first notification, one every 5 minutes, resolution at the end
+			assertEquals(5, alarms.size());
+			for (int i = 0; i < 4; i++) {
+				assertEquals(AlarmState.FIRING, alarms.get(i).getState());
+			}
+			assertEquals(AlarmState.RESOLVED, alarms.get(4).getState());
+		}
+	}
+
+	@Test
+	public void testAllStateChangesAreDelivered() {
+		String resource = "/slave/1";
+		for (int second = 0; second < 200; second++) {
+			long now = second * 1000L;
+			// above the threshold for 10 seconds out of every 100
+			if (second % 100 < 10) {
+				tracker.match(RULE, new Metric(METRIC, resource), 1.0, now);
+			}
+			// a single match isn't enough to start firing
+			if (second == 50) {
+				tracker.match(RULE, new Metric(METRIC, resource), 1.0, now);
+			}
+			tracker.resolveAlarms(now);
+			if (second % 7 == 0) {
+				tracker.deliver();
+			}
+		}
+		tracker.deliver();
+
+		List<IAlarmStateChange> alarms = listener.getAlarms(resource);
+		assertEquals(4, alarms.size());
+		assertEquals(AlarmState.FIRING, alarms.get(0).getState());
+		assertEquals(1000L, alarms.get(0).getTimestamp());
+		assertEquals(AlarmState.RESOLVED, alarms.get(1).getState());
+		assertEquals(39000L, alarms.get(1).getTimestamp());
+		assertEquals(AlarmState.FIRING, alarms.get(2).getState());
+		assertEquals(101000L, alarms.get(2).getTimestamp());
+		assertEquals(AlarmState.RESOLVED, alarms.get(3).getState());
+	}
+
+	@Test
+	public void testOnlyBatchListenersGetResolvedAlarms() {
+		EsperRuleProcessor processor = new EsperRuleProcessor();
+		processor.setAlarmStateTracker(tracker);
+		final List<IAlarm> plainAlarms = new ArrayList<IAlarm>();
+		processor.addAlarmListener(new IAlarmListener() {
+			@Override
+			public void handleAlarm(IAlarm alarm) {
+				plainAlarms.add(alarm);
+			}
+		});
+		processor.addAlarmListener(listener);
+
+		String resource = "/slave/1";
+		tracker.match(RULE, new Metric(METRIC, resource), 1.0, 0L);
+		tracker.match(RULE, new Metric(METRIC, resource), 1.0, 1000L);
+		tracker.resolveAlarms(40000L);
+		tracker.deliver();
+
+		assertEquals(2, listener.getAlarms(resource).size());
+		assertEquals(1, plainAlarms.size());
+		assertEquals(AlarmState.FIRING,
+				((IAlarmStateChange) plainAlarms.get(0)).getState());
+	}
+
+	private static class RecordingListener implements IAlarmBatchListener {
+
+		private final Map<String, List<IAlarmStateChange>> alarms = new HashMap<String, List<IAlarmStateChange>>();
+		private int calls = 0;
+
+		@Override
+		public void handleAlarm(IAlarm alarm) {
+			fail("Alarms should come in batches");
+		}
+
+		@Override
+		public void handleAlarms(List<IAlarmStateChange> batch) {
+			calls++;
+			for (IAlarmStateChange alarm : batch) {
+				getAlarms(alarm.getMetric().getResourceURI()).add(alarm);
+			}
+		}
+
+		public List<IAlarmStateChange> getAlarms(String resource) {
+			List<IAlarmStateChange> resourceAlarms = alarms.get(resource);
+			if (resourceAlarms == null) {
+				resourceAlarms = new ArrayList<IAlarmStateChange>();
+				alarms.put(resource, resourceAlarms);
+			}
+			return resourceAlarms;
+		}
+	}
+
+}
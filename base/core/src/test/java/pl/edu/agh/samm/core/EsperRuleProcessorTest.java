@@ -38,7 +38,6 @@ import pl.edu.agh.samm.api.metrics.MetricEvent;
 import pl.edu.agh.samm.api.metrics.Metric;
 import pl.edu.agh.samm.api.tadapter.IMeasurementEvent;
 
-import com.espertech.esper.client.Configuration;
 import com.espertech.esper.client.EPAdministrator;
 import com.espertech.esper.client.EPRuntime;
 import com.espertech.esper.client.EPServiceProvider;
@@ -127,7 +126,7 @@ public class EsperRuleProcessorTest {
 		expect(
 				mockEpAdmin
 						.createEPL(
-								"select metric, value from IMetricEvent(metric.resourceURI like 'testURI' and metric.metricURI like 'metrictestURI' and resourceType like 'resourceTypeURI') where value > 10.0",
+								"select metric, value from IMetricEvent(resourceURI = 'testURI' and metricURI = 'metrictestURI' and resourceType = 'resourceTypeURI') where value > 10.0",
 								RULE_NAME)).andReturn(mockStatement);
 
 		// catch the update listener
@@ -175,10 +174,10 @@ public class EsperRuleProcessorTest {
 		Capture<UpdateListener> updateListenerCapture = new Capture<UpdateListener>();
 		mockStatement.addListener(EasyMock.capture(updateListenerCapture));
 
-		// mock metric event
-		IMetricEvent mockEvent = mocksControl.createMock(IMetricEvent.class);
-		// sending the event to the runtime
-		mockEpRuntime.sendEvent(mockEvent);
+		// metric event - the runtime gets its flat view
+		IMetricEvent event = new MetricEvent(new Metric("metricURI",
+				"resourceURI"), 1.0, "resourceTypeURI");
+		mockEpRuntime.sendEvent(anyObject(FlatMetricEvent.class));
 
 		// mock metric
 		IMetric mockMetric = mocksControl.createMock(IMetric.class);
@@ -200,7 +199,7 @@ public class EsperRuleProcessorTest {
 		impl.setActionExecutor(mockActionExecutor);
 		impl.setEpService(mockEPservice);
 		impl.addRule(rule);
-		impl.processMetricEvent(mockEvent);
+		impl.processMetricEvent(event);
 		// the EP engine fires an event for update listener...
 		UpdateListener updateListener = updateListenerCapture.getValue();
 		updateListener.update(new EventBean[] { mockEventBean }, null);
@@ -321,12 +320,8 @@ public class EsperRuleProcessorTest {
 				.createMock(IAlarmListener.class);
 		mockAlarmListener.handleAlarm(anyObject(IAlarm.class));
 
-		Configuration config = new Configuration();
-		config.addEventType(IMeasurementEvent.class);
-		config.addEventType(IMetricEvent.class);
-
 		EPServiceProvider service = EPServiceProviderManager
-				.getDefaultProvider(config);
+				.getDefaultProvider(EsperRuleProcessor.getDefaultConfiguration());
 
 		Rule rule = new Rule("testRuleName");
 		rule.setResourceUri("%");
@@ -345,6 +340,7 @@ public class EsperRuleProcessorTest {
 		impl.addAlarmListener(mockAlarmListener);
 		impl.processMetricEvent(e);
 		mocksControl.verify();
+		service.destroy();
 	}
 
 	@Test
@@ -353,12 +349,8 @@ public class EsperRuleProcessorTest {
 				.createMock(IAlarmListener.class);
 		mockAlarmListener.handleAlarm(anyObject(IAlarm.class));
 
-		Configuration config = new Configuration();
-		config.addEventType(IMeasurementEvent.class);
-		config.addEventType(IMetricEvent.class);
-
 		EPServiceProvider service = EPServiceProviderManager
-				.getDefaultProvider(config);
+				.getDefaultProvider(EsperRuleProcessor.getDefaultConfiguration());
 
 		Rule rule = new Rule("testRuleName");
 		rule.setResourceUri("resourceURI");
@@ -377,12 +369,48 @@ public class EsperRuleProcessorTest {
 		impl.addAlarmListener(mockAlarmListener);
 		impl.processMetricEvent(e);
 		mocksControl.verify();
+		service.destroy();
+	}
+
+	@Test
+	public void testProcessingWildcardPattern() throws Exception {
+		IAlarmListener mockAlarmListener = mocksControl
+				.createMock(IAlarmListener.class);
+		// only the event of /JVM_1 - '_' is not a wildcard
+		mockAlarmListener.handleAlarm(anyObject(IAlarm.class));
+
+		EPServiceProvider service = EPServiceProviderManager.getProvider(
+				"wildcardPattern",
+				EsperRuleProcessor.getDefaultConfiguration());
+
+		Rule rule = new Rule("wildcardRule");
+		rule.setResourceUri("/JVM_%");
+		rule.setMetricUri("%Usage");
+		rule.setCondition("value > 10");
+
+		// scenario
+		mocksControl.replay();
+		impl.setEpService(service);
+		impl.addRule(rule);
+		impl.addAlarmListener(mockAlarmListener);
+		impl.processMetricEvent(new MetricEvent(new Metric("CpuUsage",
+				"/JVM_1"), 50.0, "JVM"));
+		impl.processMetricEvent(new MetricEvent(new Metric("CpuUsage",
+				"/JVMx1"), 50.0, "JVM"));
+		impl.processMetricEvent(new MetricEvent(new Metric("CpuLoad",
+				"/JVM_1"), 50.0, "JVM"));
+		impl.processMetricEvent(new MetricEvent(new Metric("CpuUsage",
+				"/JVM_1"), 5.0, "JVM"));
+		mocksControl.verify();
+		service.destroy();
 	}
 
 	@Test
 	public void testProcessMetricEvent() throws Exception {
-		// proper invocation of EPServiceProvider
-		IMetricEvent event = mocksControl.createMock(IMetricEvent.class);
+		// proper invocation of EPServiceProvider - the rule engine gets the
+		// flat representation of the event
+		IMetricEvent event = new MetricEvent(new Metric("metricURI",
+				"resourceURI"), 1.0, "resourceTypeURI");
 		EPServiceProvider serviceP = mocksControl
 				.createMock(EPServiceProvider.class);
 		EPRuntime epRuntime = mocksControl.createMock(EPRuntime.class);
@@ -390,7 +418,7 @@ public class EsperRuleProcessorTest {
 				.createMock(EPAdministrator.class);
 		expect(serviceP.getEPRuntime()).andReturn(epRuntime);
 		expect(serviceP.getEPAdministrator()).andReturn(epAdmin);
-		epRuntime.sendEvent(event);
+		epRuntime.sendEvent(anyObject(FlatMetricEvent.class));
 
 		mocksControl.replay();
 		impl.setEpService(serviceP);
@@ -0,0 +1,91 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.action.Action;
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+import pl.edu.agh.samm.api.db.IStorageService;
+
+public class HistoryReplayEngineTest {
+
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+	private static final String RESOURCE = "/test/resource";
+	private static final long START = 1000000000000L;
+
+	@Test
+	public void testReplayUsesHistoryTime() throws Exception {
+		// a day of history - 95 every minute, except for a 50 once an hour
+		final int minutes = 24 * 60;
+		IStorageService storageService = EasyMock
+				.createMock(IStorageService.class);
+		storageService.streamHistory(eq(new Date(START)), eq(new Date(START
+				+ minutes * 60000L)), anyObject(IHistoryRecordHandler.class));
+		expectLastCall().andAnswer(new IAnswer<Object>() {
+			@Override
+			public Object answer() throws Throwable {
+				IHistoryRecordHandler handler = (IHistoryRecordHandler) EasyMock
+						.getCurrentArguments()[2];
+				for (int i = 0; i < minutes; i++) {
+					handler.handleMetricValue(METRIC, RESOURCE, START + i
+							* 60000L, i % 60 == 0 ? 50.0 : 95.0);
+				}
+				return null;
+			}
+		});
+		EasyMock.replay(storageService);
+
+		Rule rule = new Rule("HighValue");
+		rule.setResourceUri(RESOURCE);
+		rule.setMetricUri(METRIC);
+		rule.setCondition("value > 90");
+		rule.setActionToExecute(new Action());
+
+		HistoryReplayEngine engine = new HistoryReplayEngine();
+		engine.setStorageService(storageService);
+		// grace period of 10 minutes of the replayed history
+		ReplayReport report = engine.replay(Arrays.asList(rule), new Date(
+				START), new Date(START + minutes * 60000L), 600);
+
+		EasyMock.verify(storageService);
+		assertEquals(minutes, report.getMetricEvents());
+		assertEquals(minutes - 24, report.getAlarms().size());
+		assertEquals(START + 60000L, report.getAlarms().get(0).getTime());
+		// one action every 10 minutes of history
+		assertEquals(24 * 6, report.getActions().size());
+		assertEquals(START + 11 * 60000L, report.getActions().get(1)
+				.getStartTime().getTime());
+		assertTrue(report.getEventsPerSecond() > 0);
+		assertTrue(report.getSpeedup() > 1);
+	}
+
+}
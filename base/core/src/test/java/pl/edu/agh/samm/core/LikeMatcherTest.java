@@ -0,0 +1,67 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LikeMatcherTest {
+
+	private static final String URI = "http://www.icsr.agh.edu.pl/samm_1.owl#Cpu_Usage";
+
+	@Test
+	public void testLiteralAndAnchoredPatterns() {
+		assertTrue(LikeMatcher.matches(URI, URI));
+		assertFalse(LikeMatcher.matches(URI, URI + "x"));
+		assertTrue(LikeMatcher.matches(URI, "http://www.icsr.agh.edu.pl/%"));
+		assertTrue(LikeMatcher.matches(URI, "%#Cpu_Usage"));
+		assertTrue(LikeMatcher.matches(URI, "%samm_1%"));
+		assertFalse(LikeMatcher.matches(URI, "%samm_2%"));
+		assertTrue(LikeMatcher.matches(URI, "%"));
+		assertFalse(LikeMatcher.matches(null, "%"));
+	}
+
+	@Test
+	public void testRegexPatterns() {
+		assertTrue(LikeMatcher.matches(URI, "http://%samm_1.owl#%Usage"));
+		assertTrue(LikeMatcher.matches(URI, "http://%samm_1%#Cpu_Usage"));
+		assertFalse(LikeMatcher.matches(URI, "http://%samm_1%#Cpu_Usag"));
+		assertTrue(LikeMatcher.matches("100%", "100\\%"));
+		assertFalse(LikeMatcher.matches("1000", "100\\%"));
+		assertTrue(LikeMatcher.matches("a.b", "a.%"));
+		assertFalse(LikeMatcher.matches("axb", "a.%"));
+	}
+
+	@Test
+	public void testUnderscoreIsLiteral() {
+		assertFalse(LikeMatcher.matches(URI, "%samm__.owl%"));
+		assertFalse(LikeMatcher.matches("/JVMx1", "/JVM_%"));
+		assertTrue(LikeMatcher.matches("/JVM_1", "/JVM_%"));
+		assertFalse(LikeMatcher.matches("/JVMx1", "%/JVM_1"));
+		assertTrue(LikeMatcher.matches("/JVM_1", "/JVM\\_1"));
+	}
+
+	@Test
+	public void testHasWildcards() {
+		assertFalse(LikeMatcher.hasWildcards(URI));
+		assertTrue(LikeMatcher.hasWildcards("%Usage"));
+		assertTrue(LikeMatcher.hasWildcards("100\\%"));
+	}
+}
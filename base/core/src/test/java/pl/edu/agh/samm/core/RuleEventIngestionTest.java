@@ -0,0 +1,178 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.metrics.MetricEvent;
+
+public class RuleEventIngestionTest {
+
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+
+	private RuleEventIngestion ingestion;
+
+	@After
+	public void tearDown() throws Exception {
+		if (ingestion != null) {
+			ingestion.stop(1000L);
+		}
+	}
+
+	@Test
+	public void testEventsOfResourceKeepOrder() throws Exception {
+		final int producers = 4;
+		final int resources = 16;
+		final int eventsPerResource = 2000;
+		final Map<String, List<Integer>> received = new ConcurrentHashMap<String, List<Integer>>();
+		final Map<String, Thread> receivingThreads = new ConcurrentHashMap<String, Thread>();
+		final CountDownLatch done = new CountDownLatch(producers * resources
+				* eventsPerResource);
+		ingestion = new RuleEventIngestion(new IRuleEventSink() {
+			@Override
+			public void sendEvents(Object[] events, int count) {
+				for (int i = 0; i < count; i++) {
+					IMetricEvent event = (IMetricEvent) events[i];
+					String resource = event.getMetric().getResourceURI();
+					Thread previous = receivingThreads.put(resource,
+							Thread.currentThread());
+					assertTrue(previous == null
+							|| previous == Thread.currentThread());
+					received.get(resource).add(event.getValue().intValue());
+					done.countDown();
+				}
+			}
+		}, 3, 64, 16);
+		ingestion.start();
+
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			for (int r = 0; r < resources; r++) {
+				received.put(getResource(producer, r), new ArrayList<Integer>());
+			}
+			threads[p] = new Thread() {
+				@Override
+				public void run() {
+					IMetric[] metrics = new IMetric[resources];
+					for (int r = 0; r < resources; r++) {
+						metrics[r] = new Metric(METRIC, getResource(producer,
+								r));
+					}
+					for (int i = 0; i < eventsPerResource; i++) {
+						for (int r = 0; r < resources; r++) {
+							ingestion.submit(new MetricEvent(metrics[r], i,
+									"type"));
+						}
+					}
+				}
+			};
+			threads[p].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (List<Integer> values : received.values()) {
+			assertEquals(eventsPerResource, values.size());
+			for (int i = 0; i < eventsPerResource; i++) {
+				assertEquals(i, values.get(i).intValue());
+			}
+		}
+		// assertions in the sink would fail the batch
+		assertEquals(0, ingestion.getFailedBatchesCount());
+		assertEquals(0, ingestion.getQueuedEvents());
+	}
+
+	@Test
+	public void testSlowSinkGetsBatches() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ingestion = new RuleEventIngestion(new IRuleEventSink() {
+			@Override
+			public void sendEvents(Object[] events, int count) {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, 1, 1000, 100);
+		ingestion.start();
+		IMetric metric = new Metric(METRIC, "/resource");
+
+		ingestion.submit(new MetricEvent(metric, 0, "type"));
+		assertTrue(blocked.await(1, TimeUnit.SECONDS));
+		for (int i = 1; i <= 300; i++) {
+			ingestion.submit(new MetricEvent(metric, i, "type"));
+		}
+		assertEquals(300, ingestion.getQueuedEvents());
+		release.countDown();
+		// stop waits for the queued events
+		ingestion.stop(1000L);
+
+		assertEquals(301, ingestion.getProcessedCount());
+		// 1 + 100 + 100 + 100
+		assertEquals(301 / 4.0, ingestion.getAverageBatchSize(), 0.001);
+	}
+
+	@Test
+	public void testSubmitWhenStoppedIsSynchronous() throws Exception {
+		final List<Thread> receivingThreads = new ArrayList<Thread>();
+		ingestion = new RuleEventIngestion(new IRuleEventSink() {
+			@Override
+			public void sendEvents(Object[] events, int count) {
+				for (int i = 0; i < count; i++) {
+					receivingThreads.add(Thread.currentThread());
+				}
+			}
+		}, 1, 10, 10);
+		ingestion.start();
+		ingestion.stop(1000L);
+
+		// e.g. a poll finishing while the rule processor is destroyed
+		ingestion.submit(new MetricEvent(new Metric(METRIC, "/resource"), 0,
+				"type"));
+
+		assertEquals(1, ingestion.getSynchronousCount());
+		assertEquals(0, ingestion.getSubmittedCount());
+		assertEquals(Collections.singletonList(Thread.currentThread()),
+				receivingThreads);
+	}
+
+	private static String getResource(int producer, int resource) {
+		return "/producer" + producer + "/resource" + resource;
+	}
+
+}
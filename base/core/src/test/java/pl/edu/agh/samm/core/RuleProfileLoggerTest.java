@@ -0,0 +1,66 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.RuleProfile;
+import pl.edu.agh.samm.metrics.CoreInstrumentation;
+
+public class RuleProfileLoggerTest {
+
+	@Test
+	public void testIntervalProfiles() {
+		CoreInstrumentation instrumentation = new CoreInstrumentation();
+		RuleProfileLogger profileLogger = new RuleProfileLogger();
+		profileLogger.setInstrumentation(instrumentation);
+
+		instrumentation.recordRuleStatement("cheap", 1000000L, 2000000L, 100L);
+		instrumentation.recordRuleStatement("expensive", 5000000L, 6000000L, 100L);
+		instrumentation.recordRuleMatches("expensive", 3);
+		instrumentation.recordRuleAction("expensive");
+
+		List<RuleProfile> profiles = profileLogger.getIntervalProfiles();
+		assertEquals(2, profiles.size());
+		assertEquals("expensive", profiles.get(0).getRuleName());
+		assertEquals(5000L, profiles.get(0).getCpuTimeMicros());
+		assertEquals(3L, profiles.get(0).getEventsMatched());
+		assertEquals(1L, profiles.get(0).getActionsTriggered());
+
+		// only the costs since the previous summary count
+		instrumentation.recordRuleStatement("cheap", 3000000L, 3000000L, 50L);
+		instrumentation.recordRuleStatement("expensive", 1000000L, 1000000L, 50L);
+
+		profiles = profileLogger.getIntervalProfiles();
+		assertEquals("cheap", profiles.get(0).getRuleName());
+		assertEquals(3000L, profiles.get(0).getCpuTimeMicros());
+		assertEquals(50L, profiles.get(0).getEventsIn());
+		assertEquals(0L, profiles.get(1).getActionsTriggered());
+
+		instrumentation.removeRule("cheap");
+		assertEquals(1, instrumentation.getRuleProfiles().size());
+		instrumentation.reset();
+		assertTrue(instrumentation.getRuleProfiles().isEmpty());
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.agh.samm.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+
+public class RuleThresholdSweepTest {
+
+	@Test
+	public void testGridVariants() {
+		Map<String, List<String>> grid = new LinkedHashMap<String, List<String>>();
+		grid.put("threshold", Arrays.asList("80", "90"));
+		grid.put("window", Arrays.asList("10", "30", "60"));
+
+		List<Map<String, String>> variants = RuleThresholdSweep
+				.getVariantParameters(grid);
+
+		assertEquals(6, variants.size());
+		assertEquals("80", variants.get(0).get("threshold"));
+		assertEquals("10", variants.get(0).get("window"));
+		assertEquals("80", variants.get(2).get("threshold"));
+		assertEquals("60", variants.get(2).get("window"));
+		assertEquals("90", variants.get(3).get("threshold"));
+		assertEquals("10", variants.get(3).get("window"));
+	}
+
+	@Test
+	public void testCreateVariant() {
+		Rule template = new Rule("CpuHigh");
+		template.setMetricUri("metric");
+		template.setCondition("value > ${threshold}");
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put("threshold", "90");
+
+		Rule rule = RuleThresholdSweep.createVariant(template, parameters);
+
+		assertEquals("value > 90", rule.getCondition());
+		assertEquals("metric", rule.getMetricUri());
+		assertNull(rule.getCustomStatement());
+		assertFalse(template.getName().equals(rule.getName()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingParameter() {
+		Rule template = new Rule("CpuHigh");
+		template.setCondition("value > ${threshold}");
+		RuleThresholdSweep.createVariant(template,
+				new LinkedHashMap<String, String>());
+	}
+
+	@Test
+	public void testSnapshotReplaysRecordsInOrder() {
+		HistorySnapshot snapshot = new HistorySnapshot(0L, 10000L);
+		for (int i = 0; i < 5000; i++) {
+			if (i % 2 == 0) {
+				snapshot.handleMeasurement("/res/" + i % 3, "capability", i,
+						i);
+			} else {
+				snapshot.handleMetricValue("metric", "/res/" + i % 3, i, i);
+			}
+		}
+
+		final List<String> records = new ArrayList<String>();
+		snapshot.replay(new IHistoryRecordHandler() {
+			@Override
+			public void handleMetricValue(String metricURI,
+					String resourceURI, long timestamp, double value) {
+				records.add(metricURI + resourceURI + timestamp + "=" + value);
+			}
+
+			@Override
+			public void handleMeasurement(String instanceURI,
+					String capabilityURI, long timestamp, double value) {
+				records.add(capabilityURI + instanceURI + timestamp + "="
+						+ value);
+			}
+		});
+
+		assertEquals(5000, snapshot.size());
+		assertEquals(5000, records.size());
+		assertEquals("capability/res/00=0.0", records.get(0));
+		assertEquals("metric/res/14999=4999.0", records.get(4999));
+	}
+
+}
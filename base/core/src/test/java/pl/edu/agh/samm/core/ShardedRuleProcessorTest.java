@@ -0,0 +1,156 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.action.Action;
+import pl.edu.agh.samm.api.action.ActionExecution;
+import pl.edu.agh.samm.api.core.IAlarm;
+import pl.edu.agh.samm.api.core.IAlarmListener;
+import pl.edu.agh.samm.api.core.Rule;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.metrics.PrimitiveMetricEvent;
+
+public class ShardedRuleProcessorTest {
+
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#HeapUsageMetric";
+
+	private ShardedRuleProcessor ruleProcessor;
+
+	@Before
+	public void setUp() {
+		ruleProcessor = new ShardedRuleProcessor();
+		ruleProcessor.setShardCount(4);
+		ruleProcessor.init();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ruleProcessor.destroy();
+	}
+
+	@Test
+	public void testRuleRouting() {
+		Rule first = createRule("first", "/JVM_1");
+		Rule second = createRule("second", "/JVM_1");
+		assertSame(ruleProcessor.getShard(first),
+				ruleProcessor.getShard(second));
+		assertNotSame(ruleProcessor.getGlobalShard(),
+				ruleProcessor.getShard(first));
+
+		assertSame(ruleProcessor.getGlobalShard(),
+				ruleProcessor.getShard(createRule("wildcard", "/JVM_%")));
+		assertSame(ruleProcessor.getGlobalShard(),
+				ruleProcessor.getShard(createRule("any", null)));
+		Rule custom = createRule("custom", "/JVM_1");
+		custom.setCustomStatement("select * from IMetricEvent");
+		assertSame(ruleProcessor.getGlobalShard(),
+				ruleProcessor.getShard(custom));
+	}
+
+	@Test
+	public void testAlarmsOfShardedAndGlobalRules() throws Exception {
+		final CountDownLatch alarms = new CountDownLatch(2);
+		final AtomicInteger delivered = new AtomicInteger();
+		ruleProcessor.addAlarmListener(new IAlarmListener() {
+			@Override
+			public void handleAlarm(IAlarm alarm) {
+				delivered.incrementAndGet();
+				alarms.countDown();
+			}
+		});
+		ruleProcessor.addRule(createRule("single", "/JVM_1"));
+		ruleProcessor.addRule(createRule("all", "/JVM_%"));
+
+		ruleProcessor.processMetricEvent(new PrimitiveMetricEvent(new Metric(
+				METRIC, "/JVM_1"), 95.0, "JVM", System.currentTimeMillis()));
+		assertTrue(alarms.await(5, TimeUnit.SECONDS));
+		// one alarm per rule - not one per engine the listener was added to
+		Thread.sleep(100);
+		assertEquals(2, delivered.get());
+
+		ruleProcessor.removeRule("single");
+		ruleProcessor.removeRule("all");
+		try {
+			ruleProcessor.removeRule("all");
+			fail("Removed an unknown rule");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testListenersAndTrackerSetBeforeInit() throws Exception {
+		ShardedRuleProcessor processor = new ShardedRuleProcessor();
+		AlarmStateTracker tracker = new AlarmStateTracker();
+		tracker.setFireAfterMatches(1);
+		processor.setAlarmStateTracker(tracker);
+		final List<IAlarm> received = new ArrayList<IAlarm>();
+		IAlarmListener listener = new IAlarmListener() {
+			@Override
+			public void handleAlarm(IAlarm alarm) {
+				received.add(alarm);
+			}
+		};
+		processor.addAlarmListener(listener);
+		processor.notifyActionExecution(new ActionExecution(new Action(),
+				new Date(), new Date()));
+		try {
+			processor.addRule(createRule("single", "/JVM_1"));
+			fail("Added a rule before init");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		processor.init();
+		try {
+			// the shards don't take over the listener of the tracker
+			tracker.match("single", new Metric(METRIC, "/JVM_1"), 95.0, 0L);
+			tracker.deliver();
+			assertEquals(1, received.size());
+
+			processor.removeAlarmListener(listener);
+			tracker.match("single", new Metric(METRIC, "/JVM_2"), 95.0, 0L);
+			tracker.deliver();
+			assertEquals(1, received.size());
+		} finally {
+			processor.destroy();
+		}
+	}
+
+	private static Rule createRule(String name, String resourceUri) {
+		Rule rule = new Rule(name);
+		rule.setResourceUri(resourceUri);
+		rule.setMetricUri(METRIC);
+		rule.setCondition("value > 90.0");
+		return rule;
+	}
+
+}
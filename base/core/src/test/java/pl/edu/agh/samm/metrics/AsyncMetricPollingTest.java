@@ -0,0 +1,145 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+
+public class AsyncMetricPollingTest {
+
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#TestCapability";
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+	private static final long PERIOD = 50L;
+	private static final int HEALTHY_METRICS = 3;
+
+	private ExecutorMetricScheduler scheduler;
+	private CapabilityReadExecutor readExecutor;
+	private FakeTransportAdapter hangingAdapter;
+	private List<Exception> problems;
+
+	@Before
+	public void setUp() throws Exception {
+		// a single scheduler thread - one blocked poll is enough to stall
+		// everything
+		scheduler = new ExecutorMetricScheduler(1);
+		readExecutor = new CapabilityReadExecutor();
+		readExecutor.setReadTimeoutMillis(200L);
+		readExecutor.setUseVirtualThreads(false);
+		readExecutor.setMaxThreads(8);
+		readExecutor.init();
+		hangingAdapter = new FakeTransportAdapter().withValue(CAPABILITY, 1);
+		problems = new CopyOnWriteArrayList<Exception>();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		hangingAdapter.release();
+		scheduler.destroy();
+		readExecutor.destroy();
+	}
+
+	@Test
+	public void testHangingAdapterDoesNotStallOtherMetrics() throws Exception {
+		List<AtomicInteger> healthyEvents = startMetrics(readExecutor);
+
+		Thread.sleep(1000L);
+
+		// ~20 polls expected in a second
+		for (AtomicInteger events : healthyEvents) {
+			assertTrue("Only " + events.get() + " events", events.get() >= 15);
+		}
+		// timeouts were reported as read problems
+		assertFalse(problems.isEmpty());
+		Throwable cause = problems.get(0).getCause();
+		assertTrue(problems.get(0) instanceof CapabilityReadException);
+		assertTrue(cause instanceof TimeoutException);
+		// the hung read is not retried while it is still blocked
+		assertEquals(1, hangingAdapter.getReads());
+		assertEquals(1, readExecutor.getTimedOutReads());
+	}
+
+	@Test
+	public void testHangingAdapterStallsSynchronousPolling() throws Exception {
+		List<AtomicInteger> healthyEvents = startMetrics(null);
+
+		Thread.sleep(1000L);
+
+		for (AtomicInteger events : healthyEvents) {
+			assertTrue(events.get() <= 1);
+		}
+	}
+
+	private List<AtomicInteger> startMetrics(CapabilityReadExecutor executor) {
+		hangingAdapter.setHanging(true);
+		startMetric("/hanging", hangingAdapter, new AtomicInteger(), executor);
+
+		List<AtomicInteger> healthyEvents = new ArrayList<AtomicInteger>();
+		for (int i = 0; i < HEALTHY_METRICS; i++) {
+			AtomicInteger events = new AtomicInteger();
+			startMetric("/healthy" + i,
+					new FakeTransportAdapter().withValue(CAPABILITY, i),
+					events, executor);
+			healthyEvents.add(events);
+		}
+		return healthyEvents;
+	}
+
+	private void startMetric(String uri, FakeTransportAdapter adapter,
+			final AtomicInteger events, CapabilityReadExecutor executor) {
+		Resource resource = new Resource(uri, "type",
+				new HashMap<String, Object>());
+		resource.addTransportAdapter(adapter);
+		IMetric metric = new Metric(METRIC, uri, PERIOD);
+		MetricTask task = new SingleCapabilityMetricTask(metric,
+				Arrays.asList(CAPABILITY), resource);
+		task.init();
+		task.setReadExecutor(executor);
+		task.setProblemObserver(new IMetricProblemObserver() {
+			@Override
+			public void problemOcurred(IMetric metric, Exception e) {
+				problems.add(e);
+			}
+		});
+		task.addMetricListener(new IMetricListener() {
+			@Override
+			public void processMetricEvent(IMetricEvent metricEvent)
+					throws Exception {
+				events.incrementAndGet();
+			}
+		});
+		scheduler.schedule(task, PERIOD);
+	}
+
+}
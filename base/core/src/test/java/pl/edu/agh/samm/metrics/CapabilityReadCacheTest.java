@@ -0,0 +1,216 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
+import pl.edu.agh.samm.api.tadapter.ITransportAdapter;
+
+public class CapabilityReadCacheTest {
+
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#TestCapability";
+	private static final String OTHER_CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#OtherCapability";
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+
+	private CapabilityReadCache cache;
+	private FakeTransportAdapter adapter;
+	private Resource resource;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new CapabilityReadCache();
+		cache.setFreshnessMillis(60000L);
+		adapter = new FakeTransportAdapter().withValue(CAPABILITY, 7)
+				.withValue(OTHER_CAPABILITY, 8);
+		resource = new Resource("/resource", "type",
+				new HashMap<String, Object>());
+		resource.addTransportAdapter(adapter);
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		adapter.release();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testFreshValuesAreReadOnce() throws Exception {
+		ITransportAdapter cachingAdapter = cache.forAdapter(adapter);
+		assertSame(cachingAdapter, cache.forAdapter(adapter));
+		assertSame(cachingAdapter, cache.forAdapter(cachingAdapter));
+
+		assertEquals(7, cachingAdapter.getCapabilityValue(resource, CAPABILITY));
+		assertEquals(7, cachingAdapter.getCapabilityValue(resource, CAPABILITY));
+		assertEquals(8, cachingAdapter.getCapabilityValues(resource,
+				Arrays.asList(CAPABILITY, OTHER_CAPABILITY)).get(
+				OTHER_CAPABILITY));
+
+		assertEquals(2, adapter.getReads());
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testStaleValuesAreReadAgain() throws Exception {
+		cache.setFreshnessMillis(0L);
+		ITransportAdapter cachingAdapter = cache.forAdapter(adapter);
+
+		cachingAdapter.getCapabilityValue(resource, CAPABILITY);
+		Thread.sleep(2);
+		cachingAdapter.getCapabilityValue(resource, CAPABILITY);
+
+		assertEquals(2, adapter.getReads());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testConcurrentReadsAreMerged() throws Exception {
+		final ITransportAdapter cachingAdapter = cache.forAdapter(adapter);
+		adapter.setHanging(true);
+
+		Future<?> first = executor.submit(new ValueRead(cachingAdapter));
+		waitForReads(1);
+		Future<?> second = executor.submit(new ValueRead(cachingAdapter));
+		while (cache.getSharedReads() == 0) {
+			Thread.sleep(1);
+		}
+		adapter.release();
+
+		assertEquals(7, first.get(5, TimeUnit.SECONDS));
+		assertEquals(7, second.get(5, TimeUnit.SECONDS));
+		assertEquals(1, adapter.getReads());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testSharedReadFailsWhenReadThrowsError() throws Exception {
+		FakeTransportAdapter brokenAdapter = new FakeTransportAdapter() {
+			@Override
+			public CapabilityReadResults getCapabilityValues(
+					Map<Resource, Collection<String>> capabilities) {
+				super.getCapabilityValues(capabilities);
+				throw new AssertionError("broken adapter");
+			}
+		}.withValue(CAPABILITY, 7);
+		final ITransportAdapter cachingAdapter = cache.forAdapter(brokenAdapter);
+		brokenAdapter.setHanging(true);
+
+		Future<?> first = executor.submit(new ValueRead(cachingAdapter));
+		while (brokenAdapter.getReads() == 0) {
+			Thread.sleep(1);
+		}
+		Future<?> second = executor.submit(new ValueRead(cachingAdapter));
+		while (cache.getSharedReads() == 0) {
+			Thread.sleep(1);
+		}
+		brokenAdapter.release();
+
+		assertFailure(first, AssertionError.class);
+		assertFailure(second, IllegalStateException.class);
+
+		// the aborted read doesn't block later reads
+		brokenAdapter.setHanging(false);
+		assertFailure(executor.submit(new ValueRead(cachingAdapter)),
+				AssertionError.class);
+		assertEquals(2, brokenAdapter.getReads());
+	}
+
+	@Test
+	public void testSharedReadTimesOut() throws Exception {
+		cache.setSharedReadTimeoutMillis(50L);
+		final ITransportAdapter cachingAdapter = cache.forAdapter(adapter);
+		adapter.setHanging(true);
+
+		Future<?> first = executor.submit(new ValueRead(cachingAdapter));
+		waitForReads(1);
+		Future<?> second = executor.submit(new ValueRead(cachingAdapter));
+
+		assertFailure(second, TimeoutException.class);
+		adapter.release();
+		assertEquals(7, first.get(5, TimeUnit.SECONDS));
+	}
+
+	private void assertFailure(Future<?> read,
+			Class<? extends Throwable> failureType) throws Exception {
+		try {
+			read.get(5, TimeUnit.SECONDS);
+			fail("Read should fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(),
+					failureType.isInstance(e.getCause()));
+		}
+	}
+
+	@Test
+	public void testTasksShareReads() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			MetricTask task = new SingleCapabilityMetricTask(new Metric(
+					METRIC + i, resource.getUri(), 1000L),
+					Arrays.asList(CAPABILITY), resource);
+			task.setReadCache(cache);
+			task.init();
+			task.run();
+		}
+
+		assertEquals(1, adapter.getReads());
+		assertEquals(1, cache.getCapabilityCheckMisses());
+		assertEquals(2, cache.getCapabilityCheckHits());
+	}
+
+	private void waitForReads(int reads) throws InterruptedException {
+		while (adapter.getReads() < reads) {
+			Thread.sleep(1);
+		}
+	}
+
+	private class ValueRead implements Callable<Object> {
+
+		private final ITransportAdapter cachingAdapter;
+
+		public ValueRead(ITransportAdapter cachingAdapter) {
+			this.cachingAdapter = cachingAdapter;
+		}
+
+		@Override
+		public Object call() throws Exception {
+			return cachingAdapter.getCapabilityValue(resource, CAPABILITY);
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.CircuitBreakerSnapshot;
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+
+public class EndpointCircuitBreakerTest {
+
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#TestCapability";
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+	private static final String RESOURCE = "/resource";
+	private static final String ENDPOINT = "endpoint";
+
+	private CircuitBreakerRegistry circuitBreakers;
+	private FakeTransportAdapter adapter;
+
+	@Before
+	public void setUp() throws Exception {
+		circuitBreakers = new CircuitBreakerRegistry();
+		circuitBreakers.setFailureThreshold(3);
+		circuitBreakers.setInitialBackoffMillis(50L);
+		circuitBreakers.setJitter(0.0);
+		adapter = new FakeTransportAdapter().withValue(CAPABILITY, 7)
+				.withFailingResource(RESOURCE);
+	}
+
+	@Test
+	public void testBackoffGrowsUntilRecovery() throws Exception {
+		EndpointCircuitBreaker breaker = circuitBreakers.getBreaker(adapter,
+				"endpoint");
+		assertSame(breaker, circuitBreakers.getBreaker(adapter, "endpoint"));
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(breaker.allowRequest());
+			breaker.recordFailure();
+		}
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+
+		Thread.sleep(70L);
+		// single probe
+		assertTrue(breaker.allowRequest());
+		assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		breaker.recordFailure();
+
+		// backoff doubled to 100ms
+		Thread.sleep(70L);
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(50L);
+		assertTrue(breaker.allowRequest());
+		breaker.recordSuccess();
+
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+		assertFalse(breaker.isFailing());
+		assertEquals(2, breaker.getOpenedCount());
+		assertEquals(2, breaker.getHalfOpenedCount());
+		assertEquals(1, breaker.getClosedCount());
+		assertEquals(3, breaker.getRejectedCount());
+	}
+
+	@Test
+	public void testTaskIsPausedAndResumed() throws Exception {
+		final AtomicInteger events = new AtomicInteger();
+		MetricTask task = createTask(events);
+
+		for (int i = 0; i < 10; i++) {
+			task.run();
+		}
+		// polling stopped when the breaker opened
+		assertEquals(3, adapter.getReads());
+		assertTrue(task.isEndpointFailing());
+
+		adapter.recover(RESOURCE);
+		Thread.sleep(70L);
+		task.run();
+		task.run();
+
+		assertEquals(5, adapter.getReads());
+		assertEquals(2, events.get());
+		assertFalse(task.isEndpointFailing());
+	}
+
+	@Test
+	public void testMetricOfBrokenResourceIsStopped() throws Exception {
+		// the other resource of the endpoint is read in the same call
+		adapter.withEndpointKey(ENDPOINT);
+		AtomicReference<Runnable> scheduled = new AtomicReference<Runnable>();
+		RunningMetricsManagerImpl manager = createManager(scheduled);
+		manager.setPollGrouping(true);
+		IMetric broken = new Metric(METRIC, RESOURCE, 1000L);
+		IMetric healthy = new Metric(METRIC, "/healthy", 1000L);
+		manager.startMetric(broken);
+		manager.startMetric(healthy);
+
+		for (int i = 0; i < RunningMetricsManagerImpl.NUMBER_OF_RETRIES_THRESHOLD; i++) {
+			scheduled.get().run();
+			assertTrue(manager.getRunningMetrics().contains(broken));
+		}
+		scheduled.get().run();
+
+		assertFalse(manager.getRunningMetrics().contains(broken));
+		assertTrue(manager.getRunningMetrics().contains(healthy));
+		assertEquals(CircuitState.CLOSED,
+				circuitBreakers.getBreaker(adapter, ENDPOINT).getState());
+	}
+
+	@Test
+	public void testGroupedMetricsResumeAfterEndpointOutage() throws Exception {
+		// the shipped threshold - higher than the retries threshold
+		circuitBreakers.setFailureThreshold(5);
+		adapter.withEndpointKey(ENDPOINT).withFailingResource("/other");
+		AtomicReference<Runnable> scheduled = new AtomicReference<Runnable>();
+		RunningMetricsManagerImpl manager = createManager(scheduled);
+		manager.setPollGrouping(true);
+		IMetric first = new Metric(METRIC, RESOURCE, 1000L);
+		IMetric second = new Metric(METRIC, "/other", 1000L);
+		final AtomicInteger events = new AtomicInteger();
+		IMetricListener listener = new IMetricListener() {
+			@Override
+			public void processMetricEvent(IMetricEvent metricEvent)
+					throws Exception {
+				events.incrementAndGet();
+			}
+		};
+		manager.startMetricAndAddRunningMetricListener(first,
+				Arrays.asList(listener));
+		manager.startMetricAndAddRunningMetricListener(second,
+				Arrays.asList(listener));
+
+		// the endpoint is down for more periods than the retries threshold
+		for (int i = 0; i < 10; i++) {
+			scheduled.get().run();
+		}
+		EndpointCircuitBreaker breaker = circuitBreakers.getBreaker(adapter,
+				ENDPOINT);
+		assertEquals(CircuitState.OPEN, breaker.getState());
+		assertTrue(manager.getRunningMetrics().contains(first));
+		assertTrue(manager.getRunningMetrics().contains(second));
+
+		adapter.recover(RESOURCE);
+		adapter.recover("/other");
+		Thread.sleep(70L);
+		scheduled.get().run();
+		scheduled.get().run();
+
+		assertEquals(CircuitState.CLOSED, breaker.getState());
+		assertEquals(4, events.get());
+
+		CoreInstrumentation instrumentation = new CoreInstrumentation();
+		instrumentation.setCircuitBreakerRegistry(circuitBreakers);
+		CircuitBreakerSnapshot state = instrumentation
+				.getCircuitBreakerStates().get(ENDPOINT);
+		assertEquals("CLOSED", state.getState());
+		assertEquals(1, state.getOpenedCount());
+		assertEquals(1, state.getClosedCount());
+	}
+
+	@Test
+	public void testMetricOfFailingEndpointIsStopped() throws Exception {
+		AtomicReference<Runnable> scheduled = new AtomicReference<Runnable>();
+		RunningMetricsManagerImpl manager = createManager(scheduled);
+		manager.setEndpointRetriesThreshold(4);
+		IMetric metric = new Metric(METRIC, RESOURCE, 1000L);
+		manager.startMetric(metric);
+
+		for (int i = 0; i < 10; i++) {
+			scheduled.get().run();
+		}
+		// paused by the breaker after 3 reads
+		assertTrue(manager.getRunningMetrics().contains(metric));
+
+		Thread.sleep(70L);
+		scheduled.get().run();
+		assertTrue(manager.getRunningMetrics().contains(metric));
+
+		// backoff doubled to 100ms, the second failed probe stops the metric
+		Thread.sleep(120L);
+		scheduled.get().run();
+
+		assertFalse(manager.getRunningMetrics().contains(metric));
+		assertEquals(5, adapter.getReads());
+	}
+
+	private RunningMetricsManagerImpl createManager(
+			final AtomicReference<Runnable> scheduled) {
+		RunningMetricsManagerImpl manager = new RunningMetricsManagerImpl() {
+			@Override
+			protected MetricTask createMetricTask(IMetric metric) {
+				Resource resource = new Resource(metric.getResourceURI(),
+						"type", new HashMap<String, Object>());
+				resource.addTransportAdapter(adapter);
+				MetricTask task = new SingleCapabilityMetricTask(metric,
+						Arrays.asList(CAPABILITY), resource);
+				task.init();
+				return task;
+			}
+		};
+		manager.setCircuitBreakers(circuitBreakers);
+		manager.setPollGrouping(false);
+		manager.setMetricScheduler(new IMetricScheduler() {
+			@Override
+			public IMetricSchedule schedule(Runnable task, final long periodMillis) {
+				scheduled.set(task);
+				return new IMetricSchedule() {
+					@Override
+					public void cancel() {
+					}
+
+					@Override
+					public void setPeriod(long period) {
+					}
+
+					@Override
+					public long getPeriod() {
+						return periodMillis;
+					}
+				};
+			}
+		});
+		return manager;
+	}
+
+	private MetricTask createTask(final AtomicInteger events) {
+		Resource resource = new Resource(RESOURCE, "type",
+				new HashMap<String, Object>());
+		resource.addTransportAdapter(adapter);
+		MetricTask task = new SingleCapabilityMetricTask(new Metric(METRIC,
+				RESOURCE, 1000L), Arrays.asList(CAPABILITY), resource);
+		task.init();
+		task.setCircuitBreakers(circuitBreakers);
+		task.setProblemObserver(new IMetricProblemObserver() {
+			@Override
+			public void problemOcurred(IMetric metric, Exception e) {
+			}
+		});
+		task.addMetricListener(new IMetricListener() {
+			@Override
+			public void processMetricEvent(IMetricEvent metricEvent)
+					throws Exception {
+				events.incrementAndGet();
+			}
+		});
+		return task;
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pl.edu.agh.samm.api.action.Action;
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.tadapter.AbstractTransportAdapter;
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
+
+/**
+ * Transport adapter serving fixed capability values. Can be switched to hang
+ * (uninterruptibly) on every read until {@link #release()} is called.
+ */
+public class FakeTransportAdapter extends AbstractTransportAdapter {
+
+	private final Map<String, Object> values = new ConcurrentHashMap<String, Object>();
+	private final AtomicInteger reads = new AtomicInteger();
+	private final CountDownLatch hangLatch = new CountDownLatch(1);
+	private final AtomicInteger batchReads = new AtomicInteger();
+	private volatile boolean hanging = false;
+	private volatile String endpointKey = null;
+	private final Set<String> failingResources = new CopyOnWriteArraySet<String>();
+
+	public FakeTransportAdapter withValue(String capability, Object value) {
+		values.put(capability, value);
+		return this;
+	}
+
+	public void setHanging(boolean hanging) {
+		this.hanging = hanging;
+	}
+
+	public void release() {
+		hangLatch.countDown();
+	}
+
+	public int getReads() {
+		return reads.get();
+	}
+
+	/**
+	 * Makes all resources look like they are served by the same endpoint.
+	 */
+	public FakeTransportAdapter withEndpointKey(String endpointKey) {
+		this.endpointKey = endpointKey;
+		return this;
+	}
+
+	public FakeTransportAdapter withFailingResource(String uri) {
+		failingResources.add(uri);
+		return this;
+	}
+
+	public void recover(String uri) {
+		failingResources.remove(uri);
+	}
+
+	public int getBatchReads() {
+		return batchReads.get();
+	}
+
+	@Override
+	public CapabilityReadResults getCapabilityValues(
+			Map<Resource, Collection<String>> capabilities) {
+		batchReads.incrementAndGet();
+		return super.getCapabilityValues(capabilities);
+	}
+
+	@Override
+	public String getEndpointKey(Resource resource) {
+		return endpointKey != null ? endpointKey : super
+				.getEndpointKey(resource);
+	}
+
+	@Override
+	public Object getCapabilityValue(Resource resource, String capabilityType)
+			throws Exception {
+		reads.incrementAndGet();
+		if (failingResources.contains(resource.getUri())) {
+			throw new IllegalStateException("Resource unavailable: "
+					+ resource.getUri());
+		}
+		while (hanging) {
+			// like a blocked socket read - ignores interrupts
+			try {
+				hangLatch.await();
+				break;
+			} catch (InterruptedException e) {
+				continue;
+			}
+		}
+		return values.get(capabilityType);
+	}
+
+	@Override
+	public boolean hasCapability(Resource resource, String capabilityType)
+			throws Exception {
+		return values.containsKey(capabilityType);
+	}
+
+	@Override
+	public void registerResource(Resource resource) throws Exception {
+	}
+
+	@Override
+	public void unregisterResource(Resource resource) {
+	}
+
+	@Override
+	public boolean isURISupported(Resource resource) {
+		return true;
+	}
+
+	@Override
+	public void discoverChildren(Resource resource, List<String> types)
+			throws Exception {
+	}
+
+	@Override
+	public boolean isActionSupported(String actionUri) {
+		return false;
+	}
+
+	@Override
+	public boolean isResourceRegistered(Resource resource) {
+		return true;
+	}
+
+	@Override
+	public void executeAction(Action actionToExecute) throws Exception {
+	}
+
+}
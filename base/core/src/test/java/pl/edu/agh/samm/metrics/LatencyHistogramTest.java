@@ -0,0 +1,85 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.LatencySnapshot;
+
+public class LatencyHistogramTest {
+
+	private LatencyHistogram histogram;
+
+	@Before
+	public void setUp() throws Exception {
+		histogram = new LatencyHistogram();
+	}
+
+	@Test
+	public void testBucketBounds() {
+		long[] values = { 0L, 1L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L,
+				Long.MAX_VALUE };
+		for (long value : values) {
+			int bucket = LatencyHistogram.bucketOf(value);
+			long upperBound = LatencyHistogram.upperBoundOf(bucket);
+			assertTrue(value + " above " + upperBound, value <= upperBound);
+			if (bucket > 0) {
+				assertTrue(value + " below bucket " + bucket,
+						value > LatencyHistogram.upperBoundOf(bucket - 1));
+			}
+			assertTrue(upperBound - value <= value / 16);
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		for (int i = 1; i <= 1000; i++) {
+			histogram.recordNanos(i * 1000L);
+		}
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(1000L, snapshot.getCount());
+		assertEquals(500.5, snapshot.getMeanMicros(), 0.001);
+		assertEquals(500.0, snapshot.getP50Micros(), 500.0 / 16);
+		assertEquals(900.0, snapshot.getP90Micros(), 900.0 / 16);
+		assertEquals(990.0, snapshot.getP99Micros(), 990.0 / 16);
+		assertEquals(1000.0, snapshot.getMaxMicros(), 0.001);
+	}
+
+	@Test
+	public void testMergeAndReset() {
+		LatencyHistogram other = new LatencyHistogram();
+		histogram.recordNanos(1000L);
+		other.recordNanos(5000L);
+		other.recordNanos(-1L);
+
+		histogram.merge(other);
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(3L, snapshot.getCount());
+		assertEquals(5.0, snapshot.getMaxMicros(), 0.001);
+		assertEquals(2.0, snapshot.getMeanMicros(), 0.001);
+		assertEquals(2L, other.getCount());
+
+		histogram.reset();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.snapshot().getCount());
+	}
+
+}
@@ -0,0 +1,224 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.ListenerQueueSnapshot;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+import pl.edu.agh.samm.api.metrics.PrimitiveMetricEvent;
+
+public class ListenerDeliveryQueueTest {
+
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+
+	private ManualExecutor executor;
+	private RecordingListener listener;
+	private IMetric first;
+	private IMetric second;
+
+	@Before
+	public void setUp() throws Exception {
+		executor = new ManualExecutor();
+		listener = new RecordingListener();
+		first = new Metric(METRIC, "/first", 1000L);
+		second = new Metric(METRIC, "/second", 1000L);
+	}
+
+	@Test
+	public void testDropOldest() throws Exception {
+		ListenerDeliveryQueue queue = createQueue(OverflowPolicy.DROP_OLDEST);
+
+		for (int i = 0; i < 5; i++) {
+			queue.processMetricEvent(event(first, i));
+		}
+		assertEquals(3, queue.getDepth());
+		assertEquals(2, queue.getDroppedCount());
+
+		executor.runAll();
+		assertEquals(3, listener.values.size());
+		assertEquals(2.0, listener.values.get(0), 0.0);
+		assertEquals(4.0, listener.values.get(2), 0.0);
+		assertEquals(3, queue.getDeliveredCount());
+		assertEquals(0, queue.getDepth());
+	}
+
+	@Test
+	public void testCoalesceLatestPerMetric() throws Exception {
+		ListenerDeliveryQueue queue = createQueue(OverflowPolicy.COALESCE_LATEST_PER_METRIC);
+
+		queue.processMetricEvent(event(first, 1));
+		queue.processMetricEvent(event(second, 10));
+		// nothing is coalesced while there are free slots
+		queue.processMetricEvent(event(first, 2));
+		assertEquals(3, queue.getDepth());
+		assertEquals(0, queue.getCoalescedCount());
+
+		queue.processMetricEvent(event(first, 3));
+		queue.processMetricEvent(event(first, 4));
+		assertEquals(3, queue.getDepth());
+		assertEquals(2, queue.getCoalescedCount());
+		executor.runAll();
+		// latest value of the first metric replaced its latest queued event
+		assertEquals(1.0, listener.values.get(0), 0.0);
+		assertEquals(10.0, listener.values.get(1), 0.0);
+		assertEquals(4.0, listener.values.get(2), 0.0);
+
+		queue.processMetricEvent(event(first, 5));
+		executor.runAll();
+		assertEquals(5.0, listener.values.get(3), 0.0);
+		assertEquals(0, queue.getDroppedCount());
+	}
+
+	@Test
+	public void testBlockWaitsForConsumer() throws Exception {
+		final ListenerDeliveryQueue queue = createQueue(OverflowPolicy.BLOCK);
+		for (int i = 0; i < 3; i++) {
+			queue.processMetricEvent(event(first, i));
+		}
+
+		final CountDownLatch queued = new CountDownLatch(1);
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					queue.processMetricEvent(event(first, 3));
+					queued.countDown();
+				} catch (InterruptedException e) {
+					// test fails on the latch
+				}
+			}
+		});
+		producer.start();
+		assertFalse(queued.await(200, TimeUnit.MILLISECONDS));
+
+		executor.runAll();
+		assertTrue(queued.await(1, TimeUnit.SECONDS));
+		executor.runAll();
+		assertEquals(4, listener.values.size());
+		assertEquals(0, queue.getDroppedCount());
+	}
+
+	@Test
+	public void testFailingListenerClosesQueue() throws Exception {
+		ListenerDeliveryQueue queue = createQueue(OverflowPolicy.BLOCK);
+		listener.failing = true;
+		queue.processMetricEvent(event(first, 1));
+		executor.runAll();
+
+		assertTrue(queue.isClosed());
+		try {
+			queue.processMetricEvent(event(first, 2));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected - makes the task remove the listener
+		}
+	}
+
+	@Test
+	public void testQueueStatisticsPerListenerClass() throws Exception {
+		MetricEventDispatcher dispatcher = new MetricEventDispatcher();
+		dispatcher.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+		dispatcher.init();
+		try {
+			ListenerDeliveryQueue firstQueue = dispatcher.acquire(listener,
+					getClass().getClassLoader());
+			ListenerDeliveryQueue secondQueue = dispatcher.acquire(
+					new RecordingListener(), getClass().getClassLoader());
+			firstQueue.processMetricEvent(event(first, 1));
+			firstQueue.processMetricEvent(event(second, 2));
+			secondQueue.processMetricEvent(event(first, 3));
+			long deadline = System.currentTimeMillis() + 1000L;
+			while (firstQueue.getDeliveredCount()
+					+ secondQueue.getDeliveredCount() < 3
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(10L);
+			}
+
+			ListenerQueueSnapshot statistics = dispatcher
+					.getQueueStatistics().get(
+							RecordingListener.class.getName());
+			assertEquals("DROP_OLDEST", statistics.getOverflowPolicy());
+			assertEquals(2, statistics.getQueues());
+			assertEquals(0, statistics.getDepth());
+			assertEquals(3, statistics.getQueuedCount());
+			assertEquals(3, statistics.getDeliveredCount());
+			assertEquals(0, statistics.getDroppedCount());
+		} finally {
+			dispatcher.destroy();
+		}
+	}
+
+	private ListenerDeliveryQueue createQueue(OverflowPolicy policy) {
+		return new ListenerDeliveryQueue(listener, getClass().getClassLoader(),
+				policy, 3, executor);
+	}
+
+	private IMetricEvent event(IMetric metric, double value) {
+		return new PrimitiveMetricEvent(metric, value, "type",
+				System.currentTimeMillis());
+	}
+
+	private static class RecordingListener implements IMetricListener {
+
+		private final List<Double> values = new ArrayList<Double>();
+		private volatile boolean failing = false;
+
+		@Override
+		public void processMetricEvent(IMetricEvent metricEvent)
+				throws Exception {
+			if (failing) {
+				throw new IllegalStateException("Listener failure");
+			}
+			values.add(metricEvent.getValue().doubleValue());
+		}
+	}
+
+	private static class ManualExecutor implements Executor {
+
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public synchronized void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		public void runAll() {
+			List<Runnable> toRun;
+			synchronized (this) {
+				toRun = new ArrayList<Runnable>(tasks);
+				tasks.clear();
+			}
+			for (Runnable task : toRun) {
+				task.run();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricEvent;
+import pl.edu.agh.samm.api.metrics.IMetricListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+
+public class MetricPollGroupsTest {
+
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#TestCapability";
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+	private static final long PERIOD = 1000L;
+
+	private ManualScheduler scheduler;
+	private MetricPollGroups pollGroups;
+	private FakeTransportAdapter adapter;
+	private List<Exception> problems;
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new ManualScheduler();
+		pollGroups = new MetricPollGroups(scheduler, null);
+		adapter = new FakeTransportAdapter().withValue(CAPABILITY, 7)
+				.withEndpointKey("service:jmx:rmi:///jndi/rmi://host:9999/jmxrmi");
+		problems = new ArrayList<Exception>();
+	}
+
+	@Test
+	public void testSameEndpointIsPolledWithSingleCall() throws Exception {
+		List<AtomicInteger> events = new ArrayList<AtomicInteger>();
+		for (int i = 0; i < 5; i++) {
+			AtomicInteger counter = new AtomicInteger();
+			pollGroups.schedule(createTask("/child" + i, counter), PERIOD);
+			events.add(counter);
+		}
+
+		assertEquals(1, pollGroups.getGroupsCount());
+		assertEquals(1, scheduler.schedules.size());
+		scheduler.runAll();
+
+		assertEquals(1, adapter.getBatchReads());
+		for (AtomicInteger counter : events) {
+			assertEquals(1, counter.get());
+		}
+		assertTrue(problems.isEmpty());
+	}
+
+	@Test
+	public void testPeriodChangeMovesTaskToAnotherGroup() throws Exception {
+		IMetricSchedule first = pollGroups.schedule(
+				createTask("/child0", new AtomicInteger()), PERIOD);
+		IMetricSchedule second = pollGroups.schedule(
+				createTask("/child1", new AtomicInteger()), PERIOD);
+
+		second.setPeriod(2 * PERIOD);
+		assertEquals(2, pollGroups.getGroupsCount());
+		assertEquals(2 * PERIOD, second.getPeriod());
+
+		first.cancel();
+		assertEquals(1, pollGroups.getGroupsCount());
+		assertTrue(scheduler.schedules.get(0).cancelled);
+
+		second.cancel();
+		assertEquals(0, pollGroups.getGroupsCount());
+		assertTrue(scheduler.schedules.get(1).cancelled);
+	}
+
+	@Test
+	public void testFailureOfOneResourceIsReportedOnlyForItsTask()
+			throws Exception {
+		AtomicInteger healthy = new AtomicInteger();
+		pollGroups.schedule(createTask("/healthy", healthy), PERIOD);
+		pollGroups.schedule(createTask("/broken", new AtomicInteger()),
+				PERIOD);
+		adapter.withFailingResource("/broken");
+
+		scheduler.runAll();
+
+		assertEquals(1, adapter.getBatchReads());
+		assertEquals(1, healthy.get());
+		assertEquals(1, problems.size());
+		assertTrue(problems.get(0) instanceof CapabilityReadException);
+	}
+
+	private MetricTask createTask(String uri, final AtomicInteger events) {
+		Resource resource = new Resource(uri, "type",
+				new HashMap<String, Object>());
+		resource.addTransportAdapter(adapter);
+		IMetric metric = new Metric(METRIC, uri, PERIOD);
+		MetricTask task = new SingleCapabilityMetricTask(metric,
+				Arrays.asList(CAPABILITY), resource);
+		task.init();
+		task.setProblemObserver(new IMetricProblemObserver() {
+			@Override
+			public void problemOcurred(IMetric metric, Exception e) {
+				problems.add(e);
+			}
+		});
+		task.addMetricListener(new IMetricListener() {
+			@Override
+			public void processMetricEvent(IMetricEvent metricEvent)
+					throws Exception {
+				events.incrementAndGet();
+			}
+		});
+		return task;
+	}
+
+	private static class ManualScheduler implements IMetricScheduler {
+
+		private final List<ManualSchedule> schedules = new ArrayList<ManualSchedule>();
+
+		@Override
+		public IMetricSchedule schedule(Runnable task, long periodMillis) {
+			ManualSchedule schedule = new ManualSchedule(task, periodMillis);
+			schedules.add(schedule);
+			return schedule;
+		}
+
+		public void runAll() {
+			for (ManualSchedule schedule : schedules) {
+				if (!schedule.cancelled) {
+					schedule.task.run();
+				}
+			}
+		}
+	}
+
+	private static class ManualSchedule implements IMetricSchedule {
+
+		private final Runnable task;
+		private long period;
+		private boolean cancelled = false;
+
+		public ManualSchedule(Runnable task, long period) {
+			this.task = task;
+			this.period = period;
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		@Override
+		public void setPeriod(long periodMillis) {
+			period = periodMillis;
+		}
+
+		@Override
+		public long getPeriod() {
+			return period;
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.impl.StringHelper;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.Metric;
+
+public class PatternMetricIndexTest {
+
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+	private static final String OTHER_METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#OtherMetric";
+
+	private PatternMetricIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		index = new PatternMetricIndex();
+	}
+
+	@Test
+	public void testRegexLiteralPrefix() {
+		assertEquals("/Amazon/EC2/",
+				StringHelper.getRegexLiteralPrefix("/Amazon/EC2/.*Thread_.*"));
+		assertEquals("/u", StringHelper.getRegexLiteralPrefix("/u.*"));
+		assertEquals("/a.", StringHelper.getRegexLiteralPrefix("/a\\.b*"));
+		assertEquals("/a", StringHelper.getRegexLiteralPrefix("^/a[0-9]+"));
+		assertEquals("", StringHelper.getRegexLiteralPrefix("/a|/b"));
+		assertEquals("", StringHelper.getRegexLiteralPrefix("(?i)/a"));
+		assertEquals("", StringHelper.getRegexLiteralPrefix("\\d+"));
+	}
+
+	@Test
+	public void testMatching() {
+		IMetric threads = new Metric(METRIC, "/Amazon/EC2/.*Thread_.*");
+		IMetric sameThreads = new Metric(OTHER_METRIC, "/Amazon/EC2/.*Thread_.*");
+		IMetric anyThread = new Metric(METRIC, ".*Thread_1");
+		IMetric other = new Metric(METRIC, "/Amazon/S3/.*");
+		index.add(threads);
+		index.add(sameThreads);
+		index.add(anyThread);
+		index.add(other);
+
+		List<IMetric> matching = index
+				.getMatchingMetrics("/Amazon/EC2/i-1/Thread_1");
+		assertEquals(3, matching.size());
+		assertTrue(matching.contains(threads));
+		assertTrue(matching.contains(sameThreads));
+		assertTrue(matching.contains(anyThread));
+
+		assertTrue(index.getMatchingMetrics("/Amazon/EC2").isEmpty());
+		assertEquals(1, index.getMatchingMetrics("/Amazon/S3/bucket").size());
+	}
+
+	@Test
+	public void testRemoveAndReplace() {
+		IMetric threads = new Metric(METRIC, "/Amazon/EC2/.*Thread_.*", 1000L);
+		index.add(threads);
+		index.add(new Metric(METRIC, "/Amazon/EC2/.*Thread_.*", 5000L));
+
+		assertEquals(1, index.size());
+		assertEquals(5000L, index.getMetrics().get(0)
+				.getMetricPollTimeInterval());
+
+		assertTrue(index.remove(threads));
+		assertFalse(index.remove(threads));
+		assertTrue(index.getMatchingMetrics("/Amazon/EC2/i-1/Thread_1")
+				.isEmpty());
+	}
+
+}
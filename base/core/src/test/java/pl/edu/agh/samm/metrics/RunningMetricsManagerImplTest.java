@@ -0,0 +1,289 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.core.Resource;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.IMetricsManagerListener;
+import pl.edu.agh.samm.api.metrics.Metric;
+
+public class RunningMetricsManagerImplTest {
+
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#TestCapability";
+	private static final String METRIC = "http://www.icsr.agh.edu.pl/samm_1.owl#TestMetric";
+	private static final int METRICS = 50000;
+	private static final int THREADS = 16;
+
+	private CountingScheduler scheduler;
+	private AtomicInteger createdTasks;
+	private RunningMetricsManagerImpl manager;
+	private List<IMetric> metrics;
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new CountingScheduler();
+		createdTasks = new AtomicInteger();
+		final FakeTransportAdapter adapter = new FakeTransportAdapter()
+				.withValue(CAPABILITY, 1);
+		manager = new RunningMetricsManagerImpl() {
+			@Override
+			protected MetricTask createMetricTask(IMetric metric) {
+				createdTasks.incrementAndGet();
+				Resource resource = new Resource(metric.getResourceURI(),
+						"type", new HashMap<String, Object>());
+				resource.addTransportAdapter(adapter);
+				MetricTask task = new SingleCapabilityMetricTask(metric,
+						Arrays.asList(CAPABILITY), resource);
+				task.init();
+				return task;
+			}
+		};
+		manager.setMetricScheduler(scheduler);
+		manager.setPollGrouping(false);
+
+		metrics = new ArrayList<IMetric>(METRICS);
+		for (int i = 0; i < METRICS; i++) {
+			metrics.add(new Metric(METRIC, "/resource" + i, 1000L));
+		}
+	}
+
+	@Test
+	public void testConcurrentStartAndStop() throws Exception {
+		final CountingListener earlyListener = new CountingListener();
+		final CountingListener lateListener = new CountingListener();
+		manager.addMetricsManagerListener(earlyListener);
+
+		// every thread tries to start every metric
+		runOnAllThreads(new MetricOperation() {
+			@Override
+			public void execute(IMetric metric, int i) {
+				manager.startMetric(metric);
+				if (i == METRICS / 2) {
+					manager.addMetricsManagerListener(lateListener);
+				}
+			}
+		});
+
+		assertEquals(METRICS, createdTasks.get());
+		assertEquals(METRICS, scheduler.active.get());
+		assertEquals(METRICS, manager.getRunningMetrics().size());
+		earlyListener.assertRunning(metrics, true);
+		lateListener.assertRunning(metrics, true);
+
+		runOnAllThreads(new MetricOperation() {
+			@Override
+			public void execute(IMetric metric, int i) {
+				manager.stopMetric(metric);
+			}
+		});
+
+		assertEquals(0, scheduler.active.get());
+		assertEquals(METRICS, scheduler.cancelled.get());
+		assertTrue(manager.getRunningMetrics().isEmpty());
+		earlyListener.assertRunning(metrics, false);
+		lateListener.assertRunning(metrics, false);
+	}
+
+	@Test
+	public void testGetRunningMetricsIsSnapshot() throws Exception {
+		manager.startMetric(metrics.get(0));
+		Collection<IMetric> running = manager.getRunningMetrics();
+
+		manager.startMetric(metrics.get(1));
+		manager.stopMetric(metrics.get(0));
+
+		assertEquals(Collections.singletonList(metrics.get(0)),
+				new ArrayList<IMetric>(running));
+	}
+
+	@Test
+	public void testMetricIsRunningWhenScheduled() throws Exception {
+		final AtomicBoolean runningWhenScheduled = new AtomicBoolean(false);
+		manager.setMetricScheduler(new IMetricScheduler() {
+			@Override
+			public IMetricSchedule schedule(Runnable task, long periodMillis) {
+				// the first poll may run right away and report a problem
+				runningWhenScheduled.set(manager.getRunningMetrics().contains(
+						metrics.get(0)));
+				return scheduler.schedule(task, periodMillis);
+			}
+		});
+
+		manager.startMetric(metrics.get(0));
+
+		assertTrue(runningWhenScheduled.get());
+	}
+
+	@Test
+	public void testListenerMayStopOtherMetrics() throws Exception {
+		final CountingListener listener = new CountingListener();
+		manager.startMetric(metrics.get(1));
+		manager.addMetricsManagerListener(new IMetricsManagerListener() {
+			@Override
+			public void notifyNewMetricsStarted(
+					Collection<IMetric> startedMetrics) throws Exception {
+				if (startedMetrics.contains(metrics.get(0))) {
+					manager.stopMetric(metrics.get(1));
+				}
+			}
+
+			@Override
+			public void notifyMetricsHasStopped(
+					Collection<IMetric> stoppedMetrics) throws Exception {
+			}
+		});
+		manager.addMetricsManagerListener(listener);
+
+		manager.startMetric(metrics.get(0));
+
+		assertEquals(Collections.singletonList(metrics.get(0)),
+				new ArrayList<IMetric>(manager.getRunningMetrics()));
+		listener.assertRunning(metrics.subList(0, 1), true);
+		listener.assertRunning(metrics.subList(1, 2), false);
+	}
+
+	/**
+	 * Executes the operation on all metrics in every thread, each thread in a
+	 * different order
+	 */
+	private void runOnAllThreads(final MetricOperation operation)
+			throws Exception {
+		final CyclicBarrier barrier = new CyclicBarrier(THREADS + 1);
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		for (int t = 0; t < THREADS; t++) {
+			final List<IMetric> order = new ArrayList<IMetric>(metrics);
+			Collections.shuffle(order, new Random(t));
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+						for (int i = 0; i < order.size(); i++) {
+							operation.execute(order.get(i), i);
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		barrier.await();
+		done.await();
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+
+	private interface MetricOperation {
+		void execute(IMetric metric, int i);
+	}
+
+	/**
+	 * Tracks the state of every metric from the notifications - fails on a
+	 * duplicated start or a stop of a metric which isn't running.
+	 */
+	private static class CountingListener implements IMetricsManagerListener {
+
+		private final ConcurrentMap<IMetric, Boolean> running = new ConcurrentHashMap<IMetric, Boolean>();
+		private final AtomicBoolean inconsistent = new AtomicBoolean(false);
+
+		@Override
+		public void notifyNewMetricsStarted(Collection<IMetric> startedMetrics)
+				throws Exception {
+			for (IMetric metric : startedMetrics) {
+				Boolean previous = running.put(metric, Boolean.TRUE);
+				if (Boolean.TRUE.equals(previous)) {
+					inconsistent.set(true);
+				}
+			}
+		}
+
+		@Override
+		public void notifyMetricsHasStopped(Collection<IMetric> stoppedMetrics)
+				throws Exception {
+			for (IMetric metric : stoppedMetrics) {
+				Boolean previous = running.put(metric, Boolean.FALSE);
+				if (!Boolean.TRUE.equals(previous)) {
+					inconsistent.set(true);
+				}
+			}
+		}
+
+		public void assertRunning(List<IMetric> metrics, boolean expected) {
+			assertFalse(inconsistent.get());
+			for (IMetric metric : metrics) {
+				assertEquals(expected, Boolean.TRUE.equals(running.get(metric)));
+			}
+		}
+	}
+
+	private static class CountingScheduler implements IMetricScheduler {
+
+		private final AtomicInteger active = new AtomicInteger();
+		private final AtomicInteger cancelled = new AtomicInteger();
+
+		@Override
+		public IMetricSchedule schedule(Runnable task, final long periodMillis) {
+			active.incrementAndGet();
+			return new IMetricSchedule() {
+
+				private final AtomicBoolean done = new AtomicBoolean(false);
+
+				@Override
+				public void cancel() {
+					if (done.compareAndSet(false, true)) {
+						active.decrementAndGet();
+						cancelled.incrementAndGet();
+					}
+				}
+
+				@Override
+				public void setPeriod(long period) {
+				}
+
+				@Override
+				public long getPeriod() {
+					return periodMillis;
+				}
+			};
+		}
+	}
+
+}
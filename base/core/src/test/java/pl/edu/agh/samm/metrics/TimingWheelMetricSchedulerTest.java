@@ -0,0 +1,115 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimingWheelMetricSchedulerTest {
+
+	private TimingWheelMetricScheduler scheduler = null;
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new TimingWheelMetricScheduler();
+		scheduler.setTickMillis(10);
+		// small wheel - forces cascading between levels
+		scheduler.setWheelBits(2);
+		scheduler.setPhaseJitter(false);
+		scheduler.init();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		scheduler.destroy();
+	}
+
+	@Test
+	public void testPeriodicExecution() throws Exception {
+		CountingTask task = new CountingTask();
+		scheduler.schedule(task, 50);
+		Thread.sleep(520);
+		// first execution is immediate, then every 50ms
+		int count = task.count.get();
+		assertTrue("Executed " + count + " times", count >= 9 && count <= 12);
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		CountingTask task = new CountingTask();
+		IMetricSchedule schedule = scheduler.schedule(task, 20);
+		Thread.sleep(100);
+		schedule.cancel();
+		Thread.sleep(50);
+		int count = task.count.get();
+		Thread.sleep(100);
+		assertEquals(count, task.count.get());
+		assertEquals(0, scheduler.getScheduledTasksCount());
+	}
+
+	@Test
+	public void testSetPeriod() throws Exception {
+		CountingTask task = new CountingTask();
+		IMetricSchedule schedule = scheduler.schedule(task, 1000);
+		Thread.sleep(50);
+		assertEquals(1, task.count.get());
+		schedule.setPeriod(30);
+		assertEquals(30, schedule.getPeriod());
+		Thread.sleep(320);
+		int count = task.count.get();
+		assertTrue("Executed " + count + " times", count >= 9 && count <= 12);
+	}
+
+	@Test
+	public void testLongRunningTaskIsNotExecutedConcurrently()
+			throws Exception {
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				int now = concurrent.incrementAndGet();
+				maxConcurrent.set(Math.max(maxConcurrent.get(), now));
+				try {
+					Thread.sleep(55);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				concurrent.decrementAndGet();
+			}
+		}, 10);
+		Thread.sleep(300);
+		assertEquals(1, maxConcurrent.get());
+		assertTrue(scheduler.getSkippedExecutions() > 0);
+	}
+
+	private static class CountingTask implements Runnable {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public void run() {
+			count.incrementAndGet();
+		}
+	}
+
+}
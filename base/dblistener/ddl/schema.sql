@@ -15,6 +15,16 @@
 -- along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
 --
 
-CREATE TABLE METRIC_VALUE(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,METRIC_URI VARCHAR(255) NOT NULL,RESOURCE_URI VARCHAR(255) NOT NULL,TIMESTAMP TIMESTAMP NOT NULL,VALUE FLOAT NOT NULL,CONSTRAINT METRIC_VALUE_PK PRIMARY KEY(ID));
-CREATE TABLE MEASUREMENT_VALUE(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,CAPABILITY_URI VARCHAR(255) NOT NULL,INSTANCE_URI VARCHAR(255) NOT NULL,TIMESTAMP TIMESTAMP NOT NULL,VALUE FLOAT NOT NULL,CONSTRAINT MEASUREMENT_VALUE_PK PRIMARY KEY(ID));
+CREATE TABLE URI_DICTIONARY(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,URI VARCHAR(255) NOT NULL,CONSTRAINT URI_DICTIONARY_PK PRIMARY KEY(ID),CONSTRAINT URI_DICTIONARY_URI UNIQUE(URI));
+CREATE TABLE SERIES(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,URI_ID INTEGER NOT NULL,RESOURCE_ID INTEGER NOT NULL,CONSTRAINT SERIES_PK PRIMARY KEY(ID),CONSTRAINT SERIES_URIS UNIQUE(URI_ID,RESOURCE_ID));
+CREATE TABLE METRIC_VALUE(SERIES_ID INTEGER NOT NULL,TIMESTAMP TIMESTAMP NOT NULL,VALUE FLOAT NOT NULL);
+CREATE INDEX METRIC_VALUE_SERIES ON METRIC_VALUE(SERIES_ID,TIMESTAMP);
+CREATE INDEX METRIC_VALUE_TIME ON METRIC_VALUE(TIMESTAMP);
+CREATE TABLE MEASUREMENT_VALUE(SERIES_ID INTEGER NOT NULL,TIMESTAMP TIMESTAMP NOT NULL,VALUE FLOAT NOT NULL);
+CREATE INDEX MEASUREMENT_VALUE_SERIES ON MEASUREMENT_VALUE(SERIES_ID,TIMESTAMP);
+CREATE INDEX MEASUREMENT_VALUE_TIME ON MEASUREMENT_VALUE(TIMESTAMP);
+CREATE TABLE METRIC_ROLLUP(RESOLUTION INTEGER NOT NULL,SERIES_ID INTEGER NOT NULL,BUCKET TIMESTAMP NOT NULL,MIN_VALUE FLOAT NOT NULL,MAX_VALUE FLOAT NOT NULL,SUM_VALUE FLOAT NOT NULL,VALUE_COUNT BIGINT NOT NULL,CONSTRAINT METRIC_ROLLUP_PK PRIMARY KEY(RESOLUTION,SERIES_ID,BUCKET));
+CREATE INDEX METRIC_ROLLUP_BUCKET ON METRIC_ROLLUP(RESOLUTION,BUCKET);
+CREATE TABLE MEASUREMENT_ROLLUP(RESOLUTION INTEGER NOT NULL,SERIES_ID INTEGER NOT NULL,BUCKET TIMESTAMP NOT NULL,MIN_VALUE FLOAT NOT NULL,MAX_VALUE FLOAT NOT NULL,SUM_VALUE FLOAT NOT NULL,VALUE_COUNT BIGINT NOT NULL,CONSTRAINT MEASUREMENT_ROLLUP_PK PRIMARY KEY(RESOLUTION,SERIES_ID,BUCKET));
+CREATE INDEX MEASUREMENT_ROLLUP_BUCKET ON MEASUREMENT_ROLLUP(RESOLUTION,BUCKET);
 CREATE MEMORY TABLE ACTION_EXECUTION(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,ACTION_URI VARCHAR(255) NOT NULL,START TIMESTAMP NOT NULL,"END" TIMESTAMP NOT NULL,CONSTRAINT ACTION_EXECUTION_PK PRIMARY KEY(ID))
@@ -0,0 +1,179 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+
+/**
+ * Reads both value tables with a single ordered query and hands the rows to
+ * the handler as they come, without building a list of them. Series ids are
+ * translated to URIs by the in-memory dictionary.
+ * <p>
+ * Values older than the raw retention are gone from the value tables - that
+ * part of the period is read from the rollup tables instead (one-hour rollups
+ * before the oldest one-minute rollup), each rollup passed as its average at
+ * the start of its bucket.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public class HistoryDAO extends AbstractDao implements IHistoryDAO {
+
+	private static final int MEASUREMENT = 0;
+	private static final int METRIC_VALUE = 1;
+
+	// measurements go first when timestamps are equal - metrics are computed
+	// from them
+	private static final String SQL_QUERY_HISTORY = "SELECT " + MEASUREMENT
+			+ " AS kind, series_id, timestamp, value FROM measurement_value WHERE timestamp BETWEEN :start AND :end"
+			+ " UNION ALL SELECT " + METRIC_VALUE
+			+ " AS kind, series_id, timestamp, value FROM metric_value WHERE timestamp BETWEEN :start AND :end"
+			+ " ORDER BY 3, 1";
+
+	private static final String SQL_QUERY_ROLLUP_HISTORY = "SELECT " + MEASUREMENT
+			+ " AS kind, series_id, bucket, sum_value / value_count FROM measurement_rollup WHERE resolution=:resolution AND bucket >= :start AND bucket < :end"
+			+ " UNION ALL SELECT " + METRIC_VALUE
+			+ " AS kind, series_id, bucket, sum_value / value_count FROM metric_rollup WHERE resolution=:resolution AND bucket >= :start AND bucket < :end"
+			+ " ORDER BY 3, 1";
+
+	private IUriDictionaryDAO uriDictionary;
+	private IRollupDAO measurementRollupDAO = null;
+	private IRollupDAO metricRollupDAO = null;
+
+	public void setUriDictionary(IUriDictionaryDAO uriDictionary) {
+		this.uriDictionary = uriDictionary;
+	}
+
+	/**
+	 * @param measurementRollupDAO
+	 *            Rollups of the measurements; without both rollup DAOs only
+	 *            the value tables are read
+	 */
+	public void setMeasurementRollupDAO(IRollupDAO measurementRollupDAO) {
+		this.measurementRollupDAO = measurementRollupDAO;
+	}
+
+	public void setMetricRollupDAO(IRollupDAO metricRollupDAO) {
+		this.metricRollupDAO = metricRollupDAO;
+	}
+
+	@Override
+	public void streamHistory(Date startTime, Date endTime,
+			final IHistoryRecordHandler handler) {
+		long start = startTime.getTime();
+		long end = endTime.getTime();
+		HistoryRowHandler rowHandler = new HistoryRowHandler(handler);
+		if (measurementRollupDAO != null && metricRollupDAO != null) {
+			Long rawStart = latest(measurementRollupDAO.getFirstValueTime(),
+					metricRollupDAO.getFirstValueTime());
+			if (rawStart == null || start < rawStart) {
+				// the minute holding the oldest raw value might not be rolled
+				// up yet - it's read from the value tables
+				long rawFrom = rawStart == null ? end + 1 : SeriesRollup
+						.getBucket(rawStart, SeriesRollup.MINUTE);
+				Long minuteStart = latest(
+						measurementRollupDAO.getFirstBucket(SeriesRollup.MINUTE),
+						metricRollupDAO.getFirstBucket(SeriesRollup.MINUTE));
+				// the hour holding the oldest one-minute rollup is complete
+				// only in the one-hour rollups
+				long minuteFrom = minuteStart == null ? rawFrom : Math.min(
+						ceil(minuteStart, SeriesRollup.HOUR), rawFrom);
+				long rollupsEnd = Math.min(rawFrom, end + 1);
+				streamRollups(SeriesRollup.HOUR, start,
+						Math.min(minuteFrom, rollupsEnd), rowHandler);
+				streamRollups(SeriesRollup.MINUTE, Math.max(start, minuteFrom),
+						rollupsEnd, rowHandler);
+				start = Math.max(start, rawFrom);
+			}
+		}
+		if (start > end) {
+			return;
+		}
+		MapSqlParameterSource sps = new MapSqlParameterSource();
+		sps.addValue("start", new Date(start));
+		sps.addValue("end", endTime);
+		getSimpleJdbcTemplate().getNamedParameterJdbcOperations().query(
+				SQL_QUERY_HISTORY, sps, rowHandler);
+	}
+
+	private void streamRollups(int resolution, long start, long end,
+			HistoryRowHandler rowHandler) {
+		if (start >= end) {
+			return;
+		}
+		MapSqlParameterSource sps = new MapSqlParameterSource();
+		sps.addValue("resolution", resolution);
+		sps.addValue("start", new Timestamp(start));
+		sps.addValue("end", new Timestamp(end));
+		getSimpleJdbcTemplate().getNamedParameterJdbcOperations().query(
+				SQL_QUERY_ROLLUP_HISTORY, sps, rowHandler);
+	}
+
+	/**
+	 * @return The later of the times, ignoring missing ones (tables without
+	 *         any data)
+	 */
+	private static Long latest(Long time, Long otherTime) {
+		if (time == null) {
+			return otherTime;
+		}
+		return otherTime == null ? time : Math.max(time, otherTime);
+	}
+
+	/**
+	 * @return End of the bucket of the resolution holding the time, the time
+	 *         itself if it starts a bucket
+	 */
+	private static long ceil(long time, int resolution) {
+		return SeriesRollup.getBucket(time + resolution * 1000L - 1,
+				resolution);
+	}
+
+	private class HistoryRowHandler implements RowCallbackHandler {
+
+		private final IHistoryRecordHandler handler;
+
+		public HistoryRowHandler(IHistoryRecordHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public void processRow(ResultSet rs) throws SQLException {
+			int seriesId = rs.getInt(2);
+			String uri = uriDictionary.getSeriesUri(seriesId);
+			String resource = uriDictionary.getSeriesResourceUri(seriesId);
+			long timestamp = rs.getTimestamp(3).getTime();
+			double value = rs.getDouble(4);
+			if (rs.getInt(1) == MEASUREMENT) {
+				handler.handleMeasurement(resource, uri, timestamp, value);
+			} else {
+				handler.handleMetricValue(uri, resource, timestamp, value);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.util.Date;
+
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+
+/**
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public interface IHistoryDAO {
+
+	/**
+	 * Passes metric values and measurements stored between the given dates
+	 * to the handler in timestamp order; where the values already expired,
+	 * averages of their rollups are passed instead
+	 */
+	void streamHistory(Date startTime, Date endTime, IHistoryRecordHandler handler);
+}
@@ -38,6 +38,14 @@ public interface IMeasurementValueDAO {
 	 */
 	void store(MeasurementValue information);
 
+	/**
+	 * Inserts all the values in a single JDBC batch
+	 * 
+	 * @param informations
+	 *            to store
+	 */
+	void storeAll(List<MeasurementValue> informations);
+
 	Set<String> getResourcesUris(Date preActionStartTime, Date actionStartTime);
 
 	Set<String> getResourcesUris();
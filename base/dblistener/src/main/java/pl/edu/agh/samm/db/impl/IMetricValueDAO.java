@@ -30,6 +30,8 @@ import pl.edu.agh.samm.api.metrics.MetricValue;
 public interface IMetricValueDAO {
 	void store(MetricValue metricValue);
 
+	void storeAll(List<MetricValue> metricValues);
+
 	List<Number> loadValues(String metricURI, String resourceURI);
 
 	List<IMetric> getKnownMetrics();
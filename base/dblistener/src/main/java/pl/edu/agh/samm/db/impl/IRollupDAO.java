@@ -0,0 +1,77 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Rollups of a value table and removal of old values. Times are in
+ * milliseconds, resolutions in seconds (see {@link SeriesRollup}); periods
+ * include their start and exclude their end.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public interface IRollupDAO {
+
+	/**
+	 * @return Rollups of the stored values from the period
+	 */
+	List<SeriesRollup> aggregateValues(long start, long end, int resolution);
+
+	/**
+	 * @return Rollups of the stored rollups of <code>sourceResolution</code>
+	 *         from the period
+	 */
+	List<SeriesRollup> aggregateRollups(int sourceResolution, long start, long end, int resolution);
+
+	/**
+	 * Replaces the rollups of the period with the given ones
+	 */
+	void replaceRollups(int resolution, long start, long end, List<SeriesRollup> rollups);
+
+	/**
+	 * @return Start of the latest rollup bucket or <code>null</code> if there
+	 *         are no rollups of the resolution
+	 */
+	Long getLastBucket(int resolution);
+
+	Long getFirstBucket(int resolution);
+
+	/**
+	 * @return Time of the oldest stored value or <code>null</code> if there
+	 *         are none
+	 */
+	Long getFirstValueTime();
+
+	int deleteValuesBefore(long time);
+
+	int deleteRollupsBefore(int resolution, long time);
+
+	/**
+	 * @return Rollups of the series from the period, ordered by time
+	 */
+	List<SeriesRollup> getRollups(int resolution, int seriesId, Date startTime, Date endTime);
+
+	/**
+	 * @return Rollups of all series of the resource from the period
+	 */
+	List<SeriesRollup> getResourceRollups(int resolution, int resourceId, Date startTime, Date endTime);
+}
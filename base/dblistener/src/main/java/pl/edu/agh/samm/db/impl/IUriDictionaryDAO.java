@@ -0,0 +1,57 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+/**
+ * Integer ids of the URIs stored in the value tables. A series is a pair of
+ * URIs - metric and resource for metric values, capability and instance for
+ * measurements - and the value tables keep only the id of their series.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public interface IUriDictionaryDAO {
+
+	/**
+	 * @return Id of the series, created if it isn't stored yet
+	 */
+	int getSeriesId(String uri, String resourceUri);
+
+	/**
+	 * @return Id of the series or <code>null</code> if it isn't stored
+	 */
+	Integer findSeriesId(String uri, String resourceUri);
+
+	/**
+	 * @return Id of the URI or <code>null</code> if it isn't stored
+	 */
+	Integer findUriId(String uri);
+
+	String getUri(int uriId);
+
+	/**
+	 * @return The metric or capability URI of the series
+	 */
+	String getSeriesUri(int seriesId);
+
+	/**
+	 * @return The resource or instance URI of the series
+	 */
+	String getSeriesResourceUri(int seriesId);
+}
@@ -19,6 +19,8 @@ package pl.edu.agh.samm.db.impl;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -27,7 +29,6 @@ import java.util.Map;
 import java.util.Set;
 
 import org.springframework.jdbc.core.RowCallbackHandler;
-import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
@@ -35,44 +36,187 @@ import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
 import pl.edu.agh.samm.api.metrics.MeasurementValue;
 import pl.edu.agh.samm.db.impl.mapper.MeasurementValueRowMapper;
 
-/**
- * @author Pawel Koperek <pkoperek@gmail.com>
- * @author Mateusz Kupisz <mkupisz@gmail.com>
- * 
- */
 public class MeasurementValueDAO extends AbstractDao implements
 		IMeasurementValueDAO {
 
-	private static final String SQL_INSERT = "INSERT INTO measurement_value(capability_uri,instance_uri,timestamp,value) values (:capabilityUri,:instanceUri,:timestamp,:value)";
+	private static final String SQL_INSERT = "INSERT INTO measurement_value(series_id,timestamp,value) values (?,?,?)";
+
+	private static final String SQL_QUERY_RESOURCE_URI_BETWEEN_DATE = "SELECT DISTINCT s.resource_id FROM series s, measurement_value v WHERE v.series_id=s.id AND v.timestamp BETWEEN :start AND :end";
+
+	private static final String SQL_QUERY_RESOURCE_URI = "SELECT DISTINCT s.resource_id FROM series s WHERE EXISTS (SELECT 1 FROM measurement_value v WHERE v.series_id=s.id)";
+
+	private static final String SQL_QUERY_RESOURCE_CAPABILITIES = "SELECT s.uri_id FROM series s WHERE s.resource_id=:instance AND EXISTS (SELECT 1 FROM measurement_value v WHERE v.series_id=s.id)";
+
+	private static final String SQL_QUERY_AVERAGE_BY_CAPABILITY = "SELECT s.uri_id, AVG(v.value) FROM series s, measurement_value v WHERE s.resource_id=:instance AND v.series_id=s.id AND v.timestamp BETWEEN :start AND :end GROUP By s.uri_id";
+
+	private static final String SQL_QUERY_TOTAL_BY_SERIES = "SELECT s.id, MIN(v.value), MAX(v.value), SUM(v.value), COUNT(v.value) FROM series s, measurement_value v WHERE s.resource_id=:instance AND v.series_id=s.id AND v.timestamp BETWEEN :start AND :end GROUP BY s.id";
+
+	private static final String SQL_QUERY_MEASUREMENT_BETWEEN_DATE = "SELECT v.series_id, v.timestamp, v.value FROM series s, measurement_value v WHERE s.resource_id=:instance AND v.series_id=s.id AND v.timestamp BETWEEN :start AND :end";
 
-	private static final String SQL_QUERY_RESOURCE_URI_BETWEEN_DATE = "SELECT instance_uri FROM measurement_value WHERE timestamp BETWEEN :start AND :end";
+	private static final String SQL_QUERY_MEASUREMENT_BY_CAPABILITY = "SELECT series_id, timestamp, value FROM measurement_value WHERE series_id=:series";
 
-	private static final String SQL_QUERY_RESOURCE_URI = "SELECT DISTINCT instance_uri FROM measurement_value";
+	private static final String SQL_QUERY_MEASUREMENT_BY_CAPABILITY_BETWEEN_DATE = "SELECT series_id, timestamp, value FROM measurement_value WHERE series_id=:series AND timestamp BETWEEN :start AND :end";
 
-	private static final String SQL_QUERY_RESOURCE_CAPABILITIES = "SELECT DISTINCT capability_uri FROM measurement_value WHERE instance_uri=:instance";
+	private static final String SQL_QUERY_MEASUREMENT = "SELECT v.series_id, v.timestamp, v.value FROM series s, measurement_value v WHERE s.resource_id=:instance AND v.series_id=s.id";
 
-	private static final String SQL_QUERY_AVERAGE_BY_CAPABILITY = "SELECT capability_uri, AVG(value) FROM measurement_value WHERE instance_uri=:instance AND timestamp BETWEEN :start AND :end GROUP By capability_uri";
+	private IUriDictionaryDAO uriDictionary;
+	private IRollupDAO rollupDAO = null;
+	private RetentionPolicy retentionPolicy = null;
 
-	private static final String SQL_QUERY_MEASUREMENT_BETWEEN_DATE = "SELECT id, capability_uri, instance_uri, timestamp, value FROM measurement_value WHERE instance_uri=:instanceUri AND timestamp BETWEEN :start AND :end";
+	public void setUriDictionary(IUriDictionaryDAO uriDictionary) {
+		this.uriDictionary = uriDictionary;
+	}
+
+	/**
+	 * @param rollupDAO
+	 *            Rollups answering queries for long or old periods (see
+	 *            {@link RetentionPolicy#getQueryResolution(Date, Date, long)});
+	 *            without them all queries read the raw values
+	 */
+	public void setRollupDAO(IRollupDAO rollupDAO) {
+		this.rollupDAO = rollupDAO;
+	}
+
+	public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.retentionPolicy = retentionPolicy;
+	}
+
+	private int getQueryResolution(Date startTime, Date endTime) {
+		if (rollupDAO == null || retentionPolicy == null || startTime == null
+				|| endTime == null) {
+			return RetentionPolicy.RAW;
+		}
+		return retentionPolicy.getQueryResolution(startTime, endTime,
+				System.currentTimeMillis());
+	}
 
-	private static final String SQL_QUERY_MEASUREMENT_BY_CAPABILITY = "SELECT id, capability_uri, instance_uri, timestamp, value FROM measurement_value WHERE instance_uri=:instanceUri AND capability_uri=:capabilityUri";
+	/**
+	 * @return Averages of the rollups as measurements at the starts of their
+	 *         buckets
+	 */
+	private List<MeasurementValue> toMeasurementValues(
+			List<SeriesRollup> rollups) {
+		List<MeasurementValue> values = new ArrayList<MeasurementValue>(
+				rollups.size());
+		for (SeriesRollup rollup : rollups) {
+			int seriesId = rollup.getSeriesId();
+			MeasurementValue value = new MeasurementValue();
+			value.setCapabilityUri(uriDictionary.getSeriesUri(seriesId));
+			value.setInstanceUri(uriDictionary.getSeriesResourceUri(seriesId));
+			value.setTimestamp(new Date(rollup.getBucket()));
+			value.setValue(rollup.getAverage());
+			values.add(value);
+		}
+		return values;
+	}
 
-	private static final String SQL_QUERY_MEASUREMENT_BY_CAPABILITY_BETWEEN_DATE = "SELECT id, capability_uri, instance_uri, timestamp, value FROM measurement_value WHERE instance_uri=:instanceUri AND capability_uri=:capabilityUri AND timestamp BETWEEN :start AND :end";
+	/**
+	 * Rollups lag behind the stored values (the last hour is rolled up only
+	 * when it ends), so the values after the last rollup of the resolution
+	 * are read from the value table.
+	 * 
+	 * @param rawQuery
+	 *            Query of the raw values of the period between
+	 *            <code>:start</code> and <code>:end</code>
+	 */
+	private List<MeasurementValue> withUnrolledTail(List<SeriesRollup> rollups,
+			int resolution, Date startTime, Date endTime, String rawQuery,
+			Map<String, Object> params) {
+		List<MeasurementValue> values = toMeasurementValues(rollups);
+		Date tailStart = getUnrolledTailStart(resolution, startTime, endTime);
+		if (tailStart != null) {
+			Map<String, Object> tailParams = new HashMap<String, Object>(params);
+			tailParams.put("start", tailStart);
+			tailParams.put("end", endTime);
+			values.addAll(getSimpleJdbcTemplate().query(rawQuery,
+					new MeasurementValueRowMapper(uriDictionary),
+					new MapSqlParameterSource(tailParams)));
+		}
+		return values;
+	}
 
-	private static final String SQL_QUERY_MEASUREMENT = "SELECT id, capability_uri, instance_uri, timestamp, value FROM measurement_value WHERE instance_uri=:instanceUri";
+	/**
+	 * @return Start of the values of the period which aren't rolled up in the
+	 *         resolution yet or <code>null</code> if all of them are
+	 */
+	private Date getUnrolledTailStart(int resolution, Date startTime,
+			Date endTime) {
+		Long lastBucket = rollupDAO.getLastBucket(resolution);
+		long tailStart = lastBucket == null ? startTime.getTime() : Math.max(
+				startTime.getTime(), lastBucket + resolution * 1000L);
+		return tailStart <= endTime.getTime() ? new Date(tailStart) : null;
+	}
 
 	@Override
 	public void store(MeasurementValue information) {
-		SqlParameterSource sps = new BeanPropertySqlParameterSource(information);
-		getSimpleJdbcTemplate().update(SQL_INSERT, sps);
+		getSimpleJdbcTemplate().update(SQL_INSERT, toRow(information));
+	}
+
+	@Override
+	public void storeAll(List<MeasurementValue> informations) {
+		List<Object[]> batch = new ArrayList<Object[]>(informations.size());
+		for (MeasurementValue information : informations) {
+			batch.add(toRow(information));
+		}
+		getSimpleJdbcTemplate().batchUpdate(SQL_INSERT, batch);
+	}
+
+	private Object[] toRow(MeasurementValue information) {
+		return new Object[] {
+				uriDictionary.getSeriesId(information.getCapabilityUri(),
+						information.getInstanceUri()),
+				information.getTimestamp(), information.getValue() };
 	}
 
 	@Override
 	public Map<String, Number> getAverageMeasurementValue(String resource,
 			Date beforeActionStartTime, Date actionStartTime) {
 		final Map<String, Number> ret = new HashMap<String, Number>();
+		Integer resourceId = uriDictionary.findUriId(resource);
+		if (resourceId == null) {
+			return ret;
+		}
+		int resolution = getQueryResolution(beforeActionStartTime,
+				actionStartTime);
+		if (resolution != RetentionPolicy.RAW) {
+			final Map<String, SeriesRollup> totals = new HashMap<String, SeriesRollup>();
+			for (SeriesRollup rollup : rollupDAO.getResourceRollups(resolution,
+					resourceId, beforeActionStartTime, actionStartTime)) {
+				mergeTotal(totals, rollup);
+			}
+			// weighted with the rollups by the sums and counts
+			Date tailStart = getUnrolledTailStart(resolution,
+					beforeActionStartTime, actionStartTime);
+			if (tailStart != null) {
+				Map<String, Object> params = new HashMap<String, Object>();
+				params.put("instance", resourceId);
+				params.put("start", tailStart);
+				params.put("end", actionStartTime);
+				final long bucket = tailStart.getTime();
+				getSimpleJdbcTemplate().getNamedParameterJdbcOperations()
+						.query(SQL_QUERY_TOTAL_BY_SERIES,
+								new MapSqlParameterSource(params),
+								new RowCallbackHandler() {
+
+									@Override
+									public void processRow(ResultSet rs)
+											throws SQLException {
+										mergeTotal(totals, new SeriesRollup(
+												rs.getInt(1), bucket,
+												rs.getDouble(2), rs
+														.getDouble(3), rs
+														.getDouble(4), rs
+														.getLong(5)));
+									}
+								});
+			}
+			for (Map.Entry<String, SeriesRollup> entry : totals.entrySet()) {
+				ret.put(entry.getKey(), entry.getValue().getAverage());
+			}
+			return ret;
+		}
 		Map<String, Object> params = new HashMap<String, Object>();
-		params.put("instance", resource);
+		params.put("instance", resourceId);
 		params.put("start", beforeActionStartTime);
 		params.put("end", actionStartTime);
 		SqlParameterSource sps = new MapSqlParameterSource(params);
@@ -81,18 +225,40 @@ public class MeasurementValueDAO extends AbstractDao implements
 
 					@Override
 					public void processRow(ResultSet arg0) throws SQLException {
-						ret.put(arg0.getString(1), arg0.getDouble(2));
+						ret.put(uriDictionary.getUri(arg0.getInt(1)),
+								arg0.getDouble(2));
 
 					}
 				});
 		return ret;
 	}
 
+	private void mergeTotal(Map<String, SeriesRollup> totals,
+			SeriesRollup rollup) {
+		String capability = uriDictionary.getSeriesUri(rollup.getSeriesId());
+		SeriesRollup total = totals.get(capability);
+		if (total == null) {
+			total = new SeriesRollup(rollup.getSeriesId(), rollup.getBucket());
+			totals.put(capability, total);
+		}
+		total.merge(rollup);
+	}
+
 	@Override
 	public List<MeasurementValue> getMeasurementValues(String instanceUri,
 			Date startTime, Date endTime) {
+		Integer instanceId = uriDictionary.findUriId(instanceUri);
+		if (instanceId == null) {
+			return Collections.emptyList();
+		}
 		Map<String, Object> params = new HashMap<String, Object>();
-		params.put("instanceUri", instanceUri);
+		params.put("instance", instanceId);
+		int resolution = getQueryResolution(startTime, endTime);
+		if (resolution != RetentionPolicy.RAW) {
+			return withUnrolledTail(rollupDAO.getResourceRollups(resolution,
+					instanceId, startTime, endTime), resolution, startTime,
+					endTime, SQL_QUERY_MEASUREMENT_BETWEEN_DATE, params);
+		}
 
 		String query = SQL_QUERY_MEASUREMENT;
 		if (startTime != null && endTime != null) {
@@ -103,7 +269,7 @@ public class MeasurementValueDAO extends AbstractDao implements
 
 		SqlParameterSource sps = new MapSqlParameterSource(params);
 		return getSimpleJdbcTemplate().query(query,
-				new MeasurementValueRowMapper(), sps);
+				new MeasurementValueRowMapper(uriDictionary), sps);
 	}
 
 	@Override
@@ -113,72 +279,73 @@ public class MeasurementValueDAO extends AbstractDao implements
 		sps.put("start", preActionStartTime);
 		sps.put("end", actionStartTime);
 		return new HashSet<String>(getSimpleJdbcTemplate().query(
-				SQL_QUERY_RESOURCE_URI_BETWEEN_DATE,
-				new ParameterizedRowMapper<String>() {
-
-					@Override
-					public String mapRow(ResultSet arg0, int arg1)
-							throws SQLException {
-						return arg0.getString(1);
-					}
-				}, sps));
+				SQL_QUERY_RESOURCE_URI_BETWEEN_DATE, new UriRowMapper(), sps));
 
 	}
 
 	@Override
 	public Set<String> getResourcesUris() {
 		return new HashSet<String>(getSimpleJdbcTemplate().query(
-				SQL_QUERY_RESOURCE_URI, new ParameterizedRowMapper<String>() {
-
-					@Override
-					public String mapRow(ResultSet arg0, int arg1)
-							throws SQLException {
-						return arg0.getString(1);
-					}
-				}));
+				SQL_QUERY_RESOURCE_URI, new UriRowMapper()));
 	}
 
 	@Override
 	public Set<String> getResourceCapabilities(String resourceURI) {
+		Integer resourceId = uriDictionary.findUriId(resourceURI);
+		if (resourceId == null) {
+			return new HashSet<String>();
+		}
 		Map<String, Object> sps = new HashMap<String, Object>();
-		sps.put("instance", resourceURI);
+		sps.put("instance", resourceId);
 		return new HashSet<String>(getSimpleJdbcTemplate().query(
-				SQL_QUERY_RESOURCE_CAPABILITIES,
-				new ParameterizedRowMapper<String>() {
-					@Override
-					public String mapRow(ResultSet arg0, int arg1)
-							throws SQLException {
-						return arg0.getString(1);
-					}
-				}, sps));
+				SQL_QUERY_RESOURCE_CAPABILITIES, new UriRowMapper(), sps));
 	}
 
 	@Override
 	public List<MeasurementValue> getHistoricalMeasurementValues(
 			String resourceURI, String capabilityURI) {
-		Map<String, Object> params = new HashMap<String, Object>();
-		params.put("instanceUri", resourceURI);
-		params.put("capabilityUri", capabilityURI);
-
-		SqlParameterSource sps = new MapSqlParameterSource(params);
-		return getSimpleJdbcTemplate().query(
-				SQL_QUERY_MEASUREMENT_BY_CAPABILITY,
-				new MeasurementValueRowMapper(), sps);
+		return getHistoricalMeasurementValues(resourceURI, capabilityURI,
+				null, null);
 	}
 
 	@Override
 	public List<MeasurementValue> getHistoricalMeasurementValues(
 			String resourceURI, String capabilityURI, Date startTime,
 			Date endTime) {
+		Integer seriesId = uriDictionary.findSeriesId(capabilityURI,
+				resourceURI);
+		if (seriesId == null) {
+			return Collections.emptyList();
+		}
 		Map<String, Object> params = new HashMap<String, Object>();
-		params.put("instanceUri", resourceURI);
-		params.put("capabilityUri", capabilityURI);
-		params.put("start", startTime);
-		params.put("end", endTime);
+		params.put("series", seriesId);
+		int resolution = getQueryResolution(startTime, endTime);
+		if (resolution != RetentionPolicy.RAW) {
+			return withUnrolledTail(rollupDAO.getRollups(resolution, seriesId,
+					startTime, endTime), resolution, startTime, endTime,
+					SQL_QUERY_MEASUREMENT_BY_CAPABILITY_BETWEEN_DATE, params);
+		}
+
+		String query = SQL_QUERY_MEASUREMENT_BY_CAPABILITY;
+		if (startTime != null && endTime != null) {
+			query = SQL_QUERY_MEASUREMENT_BY_CAPABILITY_BETWEEN_DATE;
+			params.put("start", startTime);
+			params.put("end", endTime);
+		}
 		SqlParameterSource sps = new MapSqlParameterSource(params);
-		return getSimpleJdbcTemplate().query(
-				SQL_QUERY_MEASUREMENT_BY_CAPABILITY_BETWEEN_DATE,
-				new MeasurementValueRowMapper(), sps);
+		return getSimpleJdbcTemplate().query(query,
+				new MeasurementValueRowMapper(uriDictionary), sps);
+	}
+
+	/**
+	 * Maps a column of URI ids to the URIs
+	 */
+	private class UriRowMapper implements ParameterizedRowMapper<String> {
+
+		@Override
+		public String mapRow(ResultSet arg0, int arg1) throws SQLException {
+			return uriDictionary.getUri(arg0.getInt(1));
+		}
 	}
 
 }
@@ -19,16 +19,12 @@ package pl.edu.agh.samm.db.impl;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
 import org.springframework.jdbc.core.simple.ParameterizedSingleColumnRowMapper;
 
@@ -36,52 +32,64 @@ import pl.edu.agh.samm.api.metrics.IMetric;
 import pl.edu.agh.samm.api.metrics.Metric;
 import pl.edu.agh.samm.api.metrics.MetricValue;
 
-/**
- * @author Pawel Koperek <pkoperek@gmail.com>
- * @author Mateusz Kupisz <mkupisz@gmail.com>
- * 
- */
 public class MetricValueDAO extends AbstractDao implements IMetricValueDAO {
 
 	private static final Logger log = LoggerFactory.getLogger(MetricValueDAO.class);
 
-	private static final String SQL_INSERT = "INSERT INTO metric_value(metric_uri,resource_uri, timestamp, value) values (:metricUri, :resourceUri, :timestamp, :value)";
+	private static final String SQL_INSERT = "INSERT INTO metric_value(series_id, timestamp, value) values (?, ?, ?)";
+
+	private static final String SQL_QUERY_VALUES = "SELECT value FROM metric_value WHERE series_id=?";
+
+	private static final String SQL_QUERY_SERIES = "SELECT s.id FROM series s WHERE EXISTS (SELECT 1 FROM metric_value v WHERE v.series_id=s.id)";
 
-	private static final String SQL_QUERY_VALUES = "SELECT value FROM metric_value WHERE metric_uri=:metricUri AND resource_uri=:resourceUri";
+	private IUriDictionaryDAO uriDictionary;
+
+	public void setUriDictionary(IUriDictionaryDAO uriDictionary) {
+		this.uriDictionary = uriDictionary;
+	}
 
 	@Override
 	public void store(MetricValue metricValue) {
-		SqlParameterSource sps = new BeanPropertySqlParameterSource(metricValue);
-		getSimpleJdbcTemplate().update(SQL_INSERT, sps);
+		getSimpleJdbcTemplate().update(SQL_INSERT, toRow(metricValue));
 
 	}
 
+	@Override
+	public void storeAll(List<MetricValue> metricValues) {
+		List<Object[]> batch = new ArrayList<Object[]>(metricValues.size());
+		for (MetricValue metricValue : metricValues) {
+			batch.add(toRow(metricValue));
+		}
+		getSimpleJdbcTemplate().batchUpdate(SQL_INSERT, batch);
+	}
+
+	private Object[] toRow(MetricValue metricValue) {
+		return new Object[] {
+				uriDictionary.getSeriesId(metricValue.getMetricUri(), metricValue.getResourceUri()),
+				metricValue.getTimestamp(), metricValue.getValue() };
+	}
+
 	@Override
 	public List<Number> loadValues(String metricURI, String resourceURI) {
-		Map<String, Object> params = new HashMap<String, Object>();
-		params.put("metricUri", metricURI);
-		params.put("resourceUri", resourceURI);
-		try {
-			List<Number> values = getSimpleJdbcTemplate().query(SQL_QUERY_VALUES,
-					ParameterizedSingleColumnRowMapper.newInstance(Number.class), params);
-			return values;
-		} catch (EmptyResultDataAccessException e) {
+		Integer seriesId = uriDictionary.findSeriesId(metricURI, resourceURI);
+		if (seriesId == null) {
 			log.info("No metric values meet criteria: metricUri=" + metricURI);
 			return Collections.emptyList();
 		}
+		return getSimpleJdbcTemplate().query(SQL_QUERY_VALUES,
+				ParameterizedSingleColumnRowMapper.newInstance(Number.class), seriesId);
 	}
 
 	@Override
 	public List<IMetric> getKnownMetrics() {
-		return getSimpleJdbcTemplate().query("SELECT DISTINCT metric_uri, resource_uri FROM metric_value",
-				new ParameterizedRowMapper<IMetric>() {
-
-					@Override
-					public IMetric mapRow(ResultSet rs, int arg1) throws SQLException {
-						final String metricUri = rs.getString("metric_uri");
-						final String resourceUri = rs.getString("resource_uri");
-						return new Metric(metricUri, resourceUri);
-					};
-				}, Collections.emptyMap());
+		return getSimpleJdbcTemplate().query(SQL_QUERY_SERIES, new ParameterizedRowMapper<IMetric>() {
+
+			@Override
+			public IMetric mapRow(ResultSet rs, int arg1) throws SQLException {
+				int seriesId = rs.getInt(1);
+				return new Metric(uriDictionary.getSeriesUri(seriesId), uriDictionary
+						.getSeriesResourceUri(seriesId));
+			};
+		});
 	}
 }
@@ -0,0 +1,104 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long raw values and rollups are kept and which of them answer a query
+ * for a period. A retention of 0 keeps the data forever.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public class RetentionPolicy {
+
+	/** Resolution of queries answered with the raw values */
+	public static final int RAW = 0;
+
+	private long rawRetentionMillis = TimeUnit.DAYS.toMillis(7);
+	private long minuteRetentionMillis = TimeUnit.DAYS.toMillis(30);
+	private long hourRetentionMillis = 0L;
+	private long rawQueryRangeMillis = TimeUnit.HOURS.toMillis(6);
+	private long minuteQueryRangeMillis = TimeUnit.DAYS.toMillis(2);
+
+	public long getRawRetentionMillis() {
+		return rawRetentionMillis;
+	}
+
+	public void setRawRetentionMillis(long rawRetentionMillis) {
+		this.rawRetentionMillis = rawRetentionMillis;
+	}
+
+	public long getMinuteRetentionMillis() {
+		return minuteRetentionMillis;
+	}
+
+	public void setMinuteRetentionMillis(long minuteRetentionMillis) {
+		this.minuteRetentionMillis = minuteRetentionMillis;
+	}
+
+	public long getHourRetentionMillis() {
+		return hourRetentionMillis;
+	}
+
+	public void setHourRetentionMillis(long hourRetentionMillis) {
+		this.hourRetentionMillis = hourRetentionMillis;
+	}
+
+	/**
+	 * @param rawQueryRangeMillis
+	 *            Longest period answered with the raw values
+	 */
+	public void setRawQueryRangeMillis(long rawQueryRangeMillis) {
+		this.rawQueryRangeMillis = rawQueryRangeMillis;
+	}
+
+	/**
+	 * @param minuteQueryRangeMillis
+	 *            Longest period answered with one-minute rollups; longer ones
+	 *            get one-hour rollups
+	 */
+	public void setMinuteQueryRangeMillis(long minuteQueryRangeMillis) {
+		this.minuteQueryRangeMillis = minuteQueryRangeMillis;
+	}
+
+	/**
+	 * @return {@link #RAW} or the resolution of the rollups (in seconds)
+	 *         answering a query for the period: the finest one which is still
+	 *         kept for the start of the period and doesn't return more points
+	 *         than the query ranges allow
+	 */
+	public int getQueryResolution(Date startTime, Date endTime, long now) {
+		long range = endTime.getTime() - startTime.getTime();
+		long age = now - startTime.getTime();
+		if (range <= rawQueryRangeMillis && isKept(age, rawRetentionMillis)) {
+			return RAW;
+		}
+		if (range <= minuteQueryRangeMillis && isKept(age, minuteRetentionMillis)) {
+			return SeriesRollup.MINUTE;
+		}
+		return SeriesRollup.HOUR;
+	}
+
+	private static boolean isKept(long age, long retention) {
+		return retention == 0L || age <= retention;
+	}
+}
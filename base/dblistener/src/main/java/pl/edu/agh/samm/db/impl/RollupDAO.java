@@ -0,0 +1,217 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
+import org.springframework.jdbc.core.simple.ParameterizedSingleColumnRowMapper;
+
+/**
+ * Rollups of one value table (<code>valueTable</code>) kept in its rollup
+ * table (<code>rollupTable</code>). Rollups are computed while streaming the
+ * rows, so a period of any length needs memory only for its buckets.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public class RollupDAO extends AbstractDao implements IRollupDAO {
+
+	private static final String SQL_QUERY_VALUES = "SELECT series_id, timestamp, value FROM %1$s WHERE timestamp >= :start AND timestamp < :end";
+
+	private static final String SQL_QUERY_FIRST_VALUE = "SELECT MIN(timestamp) FROM %1$s";
+
+	private static final String SQL_DELETE_VALUES = "DELETE FROM %1$s WHERE timestamp < ?";
+
+	private static final String SQL_QUERY_ROLLUPS = "SELECT series_id, bucket, min_value, max_value, sum_value, value_count FROM %2$s WHERE resolution=:resolution AND bucket >= :start AND bucket < :end";
+
+	private static final String SQL_QUERY_SERIES_ROLLUPS = "SELECT series_id, bucket, min_value, max_value, sum_value, value_count FROM %2$s WHERE resolution=:resolution AND series_id=:series AND bucket BETWEEN :start AND :end ORDER BY bucket";
+
+	private static final String SQL_QUERY_RESOURCE_ROLLUPS = "SELECT r.series_id, r.bucket, r.min_value, r.max_value, r.sum_value, r.value_count FROM series s, %2$s r WHERE s.resource_id=:resource AND r.series_id=s.id AND r.resolution=:resolution AND r.bucket BETWEEN :start AND :end";
+
+	private static final String SQL_INSERT_ROLLUP = "INSERT INTO %2$s(resolution, series_id, bucket, min_value, max_value, sum_value, value_count) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String SQL_DELETE_ROLLUPS = "DELETE FROM %2$s WHERE resolution=? AND bucket >= ? AND bucket < ?";
+
+	private static final String SQL_DELETE_OLD_ROLLUPS = "DELETE FROM %2$s WHERE resolution=? AND bucket < ?";
+
+	private static final String SQL_QUERY_LAST_BUCKET = "SELECT MAX(bucket) FROM %2$s WHERE resolution=?";
+
+	private static final String SQL_QUERY_FIRST_BUCKET = "SELECT MIN(bucket) FROM %2$s WHERE resolution=?";
+
+	private String valueTable = "measurement_value";
+	private String rollupTable = "measurement_rollup";
+
+	/**
+	 * @param valueTable
+	 *            Table with the raw values of the series
+	 */
+	public void setValueTable(String valueTable) {
+		this.valueTable = valueTable;
+	}
+
+	public void setRollupTable(String rollupTable) {
+		this.rollupTable = rollupTable;
+	}
+
+	private String sql(String template) {
+		return String.format(template, valueTable, rollupTable);
+	}
+
+	@Override
+	public List<SeriesRollup> aggregateValues(long start, long end, final int resolution) {
+		final Map<Long, SeriesRollup> rollups = new HashMap<Long, SeriesRollup>();
+		getSimpleJdbcTemplate().getNamedParameterJdbcOperations().query(sql(SQL_QUERY_VALUES),
+				getPeriod(start, end), new RowCallbackHandler() {
+
+					@Override
+					public void processRow(ResultSet rs) throws SQLException {
+						int seriesId = rs.getInt(1);
+						long bucket = SeriesRollup.getBucket(rs.getTimestamp(2).getTime(), resolution);
+						getRollup(rollups, seriesId, bucket).add(rs.getDouble(3));
+					}
+				});
+		return new ArrayList<SeriesRollup>(rollups.values());
+	}
+
+	@Override
+	public List<SeriesRollup> aggregateRollups(int sourceResolution, long start, long end, final int resolution) {
+		final Map<Long, SeriesRollup> rollups = new HashMap<Long, SeriesRollup>();
+		MapSqlParameterSource params = getPeriod(start, end);
+		params.addValue("resolution", sourceResolution);
+		getSimpleJdbcTemplate().getNamedParameterJdbcOperations().query(sql(SQL_QUERY_ROLLUPS), params,
+				new RowCallbackHandler() {
+
+					@Override
+					public void processRow(ResultSet rs) throws SQLException {
+						SeriesRollup rollup = mapRollup(rs);
+						long bucket = SeriesRollup.getBucket(rollup.getBucket(), resolution);
+						getRollup(rollups, rollup.getSeriesId(), bucket).merge(rollup);
+					}
+				});
+		return new ArrayList<SeriesRollup>(rollups.values());
+	}
+
+	@Override
+	public void replaceRollups(int resolution, long start, long end, List<SeriesRollup> rollups) {
+		getSimpleJdbcTemplate().update(sql(SQL_DELETE_ROLLUPS), resolution, new Timestamp(start),
+				new Timestamp(end));
+		if (rollups.isEmpty()) {
+			return;
+		}
+		List<Object[]> batch = new ArrayList<Object[]>(rollups.size());
+		for (SeriesRollup rollup : rollups) {
+			batch.add(new Object[] { resolution, rollup.getSeriesId(), new Timestamp(rollup.getBucket()),
+					rollup.getMin(), rollup.getMax(), rollup.getSum(), rollup.getCount() });
+		}
+		getSimpleJdbcTemplate().batchUpdate(sql(SQL_INSERT_ROLLUP), batch);
+	}
+
+	@Override
+	public Long getLastBucket(int resolution) {
+		return queryTime(sql(SQL_QUERY_LAST_BUCKET), resolution);
+	}
+
+	@Override
+	public Long getFirstBucket(int resolution) {
+		return queryTime(sql(SQL_QUERY_FIRST_BUCKET), resolution);
+	}
+
+	@Override
+	public Long getFirstValueTime() {
+		return queryTime(sql(SQL_QUERY_FIRST_VALUE));
+	}
+
+	@Override
+	public int deleteValuesBefore(long time) {
+		return getSimpleJdbcTemplate().update(sql(SQL_DELETE_VALUES), new Timestamp(time));
+	}
+
+	@Override
+	public int deleteRollupsBefore(int resolution, long time) {
+		return getSimpleJdbcTemplate().update(sql(SQL_DELETE_OLD_ROLLUPS), resolution, new Timestamp(time));
+	}
+
+	@Override
+	public List<SeriesRollup> getRollups(int resolution, int seriesId, Date startTime, Date endTime) {
+		MapSqlParameterSource params = new MapSqlParameterSource();
+		params.addValue("resolution", resolution);
+		params.addValue("series", seriesId);
+		params.addValue("start", startTime);
+		params.addValue("end", endTime);
+		return getSimpleJdbcTemplate().query(sql(SQL_QUERY_SERIES_ROLLUPS), new RollupRowMapper(), params);
+	}
+
+	@Override
+	public List<SeriesRollup> getResourceRollups(int resolution, int resourceId, Date startTime, Date endTime) {
+		MapSqlParameterSource params = new MapSqlParameterSource();
+		params.addValue("resolution", resolution);
+		params.addValue("resource", resourceId);
+		params.addValue("start", startTime);
+		params.addValue("end", endTime);
+		return getSimpleJdbcTemplate().query(sql(SQL_QUERY_RESOURCE_ROLLUPS), new RollupRowMapper(), params);
+	}
+
+	private Long queryTime(String sql, Object... args) {
+		List<Timestamp> found = getSimpleJdbcTemplate().query(sql,
+				ParameterizedSingleColumnRowMapper.newInstance(Timestamp.class), args);
+		return found.isEmpty() || found.get(0) == null ? null : found.get(0).getTime();
+	}
+
+	private static MapSqlParameterSource getPeriod(long start, long end) {
+		MapSqlParameterSource params = new MapSqlParameterSource();
+		params.addValue("start", new Timestamp(start));
+		params.addValue("end", new Timestamp(end));
+		return params;
+	}
+
+	private static SeriesRollup getRollup(Map<Long, SeriesRollup> rollups, int seriesId, long bucket) {
+		// buckets are whole seconds - the bucket and the series fit in a key
+		Long key = (bucket / 1000L) << 32 | (seriesId & 0xFFFFFFFFL);
+		SeriesRollup rollup = rollups.get(key);
+		if (rollup == null) {
+			rollup = new SeriesRollup(seriesId, bucket);
+			rollups.put(key, rollup);
+		}
+		return rollup;
+	}
+
+	private static SeriesRollup mapRollup(ResultSet rs) throws SQLException {
+		return new SeriesRollup(rs.getInt(1), rs.getTimestamp(2).getTime(), rs.getDouble(3), rs.getDouble(4),
+				rs.getDouble(5), rs.getLong(6));
+	}
+
+	private static class RollupRowMapper implements ParameterizedRowMapper<SeriesRollup> {
+
+		@Override
+		public SeriesRollup mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return mapRollup(rs);
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+
+/**
+ * Brings the value tables to the dictionary-encoded schema (see
+ * <code>ddl/schema.sql</code>): creates missing tables (including the rollup
+ * tables) and rewrites value tables which still hold full URIs, so existing
+ * databases keep their history. Must run before any DAO uses the database.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public class SchemaMigration extends AbstractDao {
+
+	private static final Logger logger = LoggerFactory.getLogger(SchemaMigration.class);
+
+	private static final String SQL_CREATE_URI_DICTIONARY = "CREATE MEMORY TABLE URI_DICTIONARY(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,URI VARCHAR(255) NOT NULL,CONSTRAINT URI_DICTIONARY_PK PRIMARY KEY(ID),CONSTRAINT URI_DICTIONARY_URI UNIQUE(URI))";
+
+	private static final String SQL_CREATE_SERIES = "CREATE MEMORY TABLE SERIES(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,URI_ID INTEGER NOT NULL,RESOURCE_ID INTEGER NOT NULL,CONSTRAINT SERIES_PK PRIMARY KEY(ID),CONSTRAINT SERIES_URIS UNIQUE(URI_ID,RESOURCE_ID))";
+
+	private static final String SQL_CREATE_VALUE_TABLE = "CREATE MEMORY TABLE %s(SERIES_ID INTEGER NOT NULL,TIMESTAMP TIMESTAMP NOT NULL,VALUE FLOAT NOT NULL)";
+
+	private static final String SQL_CREATE_SERIES_INDEX = "CREATE INDEX %1$s_SERIES ON %1$s(SERIES_ID,TIMESTAMP)";
+
+	private static final String SQL_CREATE_TIME_INDEX = "CREATE INDEX %1$s_TIME ON %1$s(TIMESTAMP)";
+
+	private static final String SQL_CREATE_ROLLUP_TABLE = "CREATE MEMORY TABLE %1$s(RESOLUTION INTEGER NOT NULL,SERIES_ID INTEGER NOT NULL,BUCKET TIMESTAMP NOT NULL,MIN_VALUE FLOAT NOT NULL,MAX_VALUE FLOAT NOT NULL,SUM_VALUE FLOAT NOT NULL,VALUE_COUNT BIGINT NOT NULL,CONSTRAINT %1$s_PK PRIMARY KEY(RESOLUTION,SERIES_ID,BUCKET))";
+
+	private static final String SQL_CREATE_ROLLUP_INDEX = "CREATE INDEX %1$s_BUCKET ON %1$s(RESOLUTION,BUCKET)";
+
+	private static final String SQL_MIGRATE_URIS = "INSERT INTO URI_DICTIONARY(URI) SELECT DISTINCT %2$s FROM %1$s WHERE %2$s NOT IN (SELECT URI FROM URI_DICTIONARY)";
+
+	private static final String SQL_MIGRATE_SERIES = "INSERT INTO SERIES(URI_ID,RESOURCE_ID) SELECT DISTINCT U.ID, R.ID FROM %1$s V, URI_DICTIONARY U, URI_DICTIONARY R"
+			+ " WHERE U.URI=V.%2$s AND R.URI=V.%3$s AND NOT EXISTS (SELECT 1 FROM SERIES S WHERE S.URI_ID=U.ID AND S.RESOURCE_ID=R.ID)";
+
+	private static final String SQL_MIGRATE_VALUES = "INSERT INTO %4$s(SERIES_ID,TIMESTAMP,VALUE) SELECT S.ID, V.TIMESTAMP, V.VALUE FROM %1$s V, URI_DICTIONARY U, URI_DICTIONARY R, SERIES S"
+			+ " WHERE U.URI=V.%2$s AND R.URI=V.%3$s AND S.URI_ID=U.ID AND S.RESOURCE_ID=R.ID";
+
+	public void migrate() {
+		if (!hasTable("URI_DICTIONARY")) {
+			execute(SQL_CREATE_URI_DICTIONARY);
+			execute(SQL_CREATE_SERIES);
+		}
+		migrateValueTable("METRIC_VALUE", "METRIC_URI", "RESOURCE_URI");
+		migrateValueTable("MEASUREMENT_VALUE", "CAPABILITY_URI", "INSTANCE_URI");
+		createRollupTable("METRIC_ROLLUP");
+		createRollupTable("MEASUREMENT_ROLLUP");
+	}
+
+	private void createRollupTable(String table) {
+		if (!hasTable(table)) {
+			execute(String.format(SQL_CREATE_ROLLUP_TABLE, table));
+			execute(String.format(SQL_CREATE_ROLLUP_INDEX, table));
+		}
+	}
+
+	/**
+	 * HSQLDB commits every DDL statement on its own, so the migration may be
+	 * interrupted between any two of them. The old table is renamed aside
+	 * before anything is copied and dropped only after the new table is
+	 * complete - if it still exists on startup the migration is simply run
+	 * again.
+	 */
+	private void migrateValueTable(String table, String uriColumn, String resourceColumn) {
+		String oldTable = table + "_URIS";
+		String newTable = table + "_V2";
+		if (hasTable(newTable)) {
+			if (hasTable(table) || hasTable(oldTable)) {
+				// left by an interrupted copy
+				execute("DROP TABLE " + newTable);
+			} else {
+				// the old table was dropped, but the copy not renamed yet
+				logger.info("Finishing the migration of " + table);
+				execute("ALTER TABLE " + newTable + " RENAME TO " + table);
+				createIndexes(table);
+				return;
+			}
+		}
+		if (hasTable(table) && hasColumn(table, uriColumn)) {
+			execute("ALTER TABLE " + table + " RENAME TO " + oldTable);
+		}
+		if (!hasTable(oldTable)) {
+			if (!hasTable(table)) {
+				createValueTable(table);
+			}
+			return;
+		}
+
+		logger.info("Moving URIs of " + table + " to the dictionary");
+		// holds only rows copied by an interrupted migration
+		if (hasTable(table)) {
+			execute("DROP TABLE " + table);
+		}
+		execute(String.format(SQL_MIGRATE_URIS, oldTable, uriColumn));
+		execute(String.format(SQL_MIGRATE_URIS, oldTable, resourceColumn));
+		execute(String.format(SQL_MIGRATE_SERIES, oldTable, uriColumn, resourceColumn));
+		execute(String.format(SQL_CREATE_VALUE_TABLE, table));
+		execute(String.format(SQL_MIGRATE_VALUES, oldTable, uriColumn, resourceColumn, table));
+		createIndexes(table);
+		execute("DROP TABLE " + oldTable);
+		logger.info(table + " migrated");
+	}
+
+	private void createValueTable(String table) {
+		execute(String.format(SQL_CREATE_VALUE_TABLE, table));
+		createIndexes(table);
+	}
+
+	private void createIndexes(String table) {
+		execute(String.format(SQL_CREATE_SERIES_INDEX, table));
+		execute(String.format(SQL_CREATE_TIME_INDEX, table));
+	}
+
+	private void execute(String sql) {
+		getSimpleJdbcTemplate().getJdbcOperations().execute(sql);
+	}
+
+	private boolean hasTable(final String table) {
+		return hasColumn(table, null);
+	}
+
+	/**
+	 * @param column
+	 *            <code>null</code> checks only if the table exists
+	 */
+	private boolean hasColumn(final String table, final String column) {
+		JdbcOperations operations = getSimpleJdbcTemplate().getJdbcOperations();
+		return (Boolean) operations.execute(new ConnectionCallback() {
+
+			@Override
+			public Object doInConnection(Connection connection) throws SQLException,
+					DataAccessException {
+				DatabaseMetaData metaData = connection.getMetaData();
+				ResultSet rs = column == null ? metaData.getTables(null, null, table, null) : metaData
+						.getColumns(null, null, table, column);
+				try {
+					return rs.next();
+				} finally {
+					rs.close();
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+/**
+ * Minimum, maximum, sum and count of the values of a series in a time bucket.
+ * Rollups of a finer resolution merge into the coarser ones exactly.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public class SeriesRollup {
+
+	/** Resolution of one-minute rollups, in seconds */
+	public static final int MINUTE = 60;
+
+	/** Resolution of one-hour rollups, in seconds */
+	public static final int HOUR = 3600;
+
+	private final int seriesId;
+	private final long bucket;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum = 0.0;
+	private long count = 0;
+
+	public SeriesRollup(int seriesId, long bucket) {
+		this.seriesId = seriesId;
+		this.bucket = bucket;
+	}
+
+	public SeriesRollup(int seriesId, long bucket, double min, double max, double sum, long count) {
+		this.seriesId = seriesId;
+		this.bucket = bucket;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.count = count;
+	}
+
+	public void add(double value) {
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		sum += value;
+		count++;
+	}
+
+	public void merge(SeriesRollup rollup) {
+		min = Math.min(min, rollup.min);
+		max = Math.max(max, rollup.max);
+		sum += rollup.sum;
+		count += rollup.count;
+	}
+
+	public int getSeriesId() {
+		return seriesId;
+	}
+
+	/**
+	 * @return Start of the bucket, in milliseconds
+	 */
+	public long getBucket() {
+		return bucket;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getAverage() {
+		return sum / count;
+	}
+
+	/**
+	 * @return Start of the bucket of the given resolution (in seconds)
+	 *         holding the time
+	 */
+	public static long getBucket(long time, int resolution) {
+		long millis = resolution * 1000L;
+		return time - ((time % millis) + millis) % millis;
+	}
+}
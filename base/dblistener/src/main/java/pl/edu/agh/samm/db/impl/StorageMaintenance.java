@@ -0,0 +1,192 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background job rolling the values of the value tables up into one-minute
+ * rollups and those into one-hour rollups, then removing the data older than
+ * the {@link RetentionPolicy} allows. Data is removed only after it was rolled
+ * up. Both are done in day-long chunks, so a long backlog (e.g. after the
+ * migration of an old database) doesn't build huge statements.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public class StorageMaintenance {
+
+	private static final Logger logger = LoggerFactory.getLogger(StorageMaintenance.class);
+
+	private static final long CHUNK_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	private List<IRollupDAO> rollupDAOs = new ArrayList<IRollupDAO>();
+	private RetentionPolicy retentionPolicy = new RetentionPolicy();
+	private long intervalMillis = 60000L;
+	private long rollupDelayMillis = 120000L;
+
+	private ScheduledExecutorService executor = null;
+	// end of the rolled up period - minutes and hours - of every DAO
+	private final Map<IRollupDAO, long[]> rolledUp = new HashMap<IRollupDAO, long[]>();
+
+	public void setRollupDAOs(List<IRollupDAO> rollupDAOs) {
+		this.rollupDAOs = rollupDAOs;
+	}
+
+	public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.retentionPolicy = retentionPolicy;
+	}
+
+	public void setIntervalMillis(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * @param rollupDelayMillis
+	 *            Time after which a minute is rolled up - values of the minute
+	 *            stored later (e.g. queued by the write-behind storage) would
+	 *            be missing in the rollups
+	 */
+	public void setRollupDelayMillis(long rollupDelayMillis) {
+		this.rollupDelayMillis = rollupDelayMillis;
+	}
+
+	public void init() {
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SAMM-StorageMaintenance");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				maintain(System.currentTimeMillis());
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void destroy() throws InterruptedException {
+		if (executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(30, TimeUnit.SECONDS);
+			executor = null;
+		}
+	}
+
+	/**
+	 * Rolls up the closed periods and applies the retention as of
+	 * <code>now</code>
+	 */
+	public synchronized void maintain(long now) {
+		for (IRollupDAO rollupDAO : rollupDAOs) {
+			try {
+				long[] ends = rolledUp.get(rollupDAO);
+				if (ends == null) {
+					ends = new long[] { getRolledUpEnd(rollupDAO, SeriesRollup.MINUTE),
+							getRolledUpEnd(rollupDAO, SeriesRollup.HOUR) };
+					rolledUp.put(rollupDAO, ends);
+				}
+				long minuteEnd = SeriesRollup.getBucket(now - rollupDelayMillis, SeriesRollup.MINUTE);
+				ends[0] = rollUp(rollupDAO, SeriesRollup.MINUTE, ends[0], minuteEnd);
+				long hourEnd = SeriesRollup.getBucket(ends[0], SeriesRollup.HOUR);
+				ends[1] = rollUp(rollupDAO, SeriesRollup.HOUR, ends[1], hourEnd);
+				applyRetention(rollupDAO, now, ends[0], ends[1]);
+			} catch (RuntimeException e) {
+				logger.error("Storage maintenance failed", e);
+			}
+		}
+	}
+
+	/**
+	 * @return End of the rolled up period of the resolution, -1 if nothing
+	 *         was rolled up
+	 */
+	private static long getRolledUpEnd(IRollupDAO rollupDAO, int resolution) {
+		Long lastBucket = rollupDAO.getLastBucket(resolution);
+		return lastBucket == null ? -1L : lastBucket + resolution * 1000L;
+	}
+
+	/**
+	 * @return End of the rolled up period
+	 */
+	private long rollUp(IRollupDAO rollupDAO, int resolution, long start, long end) {
+		if (start < 0) {
+			// nothing rolled up yet - starts with the oldest data
+			Long first = resolution == SeriesRollup.MINUTE ? rollupDAO.getFirstValueTime() : rollupDAO
+					.getFirstBucket(SeriesRollup.MINUTE);
+			if (first == null) {
+				return -1L;
+			}
+			start = SeriesRollup.getBucket(first, resolution);
+		}
+		while (start < end) {
+			long chunkEnd = Math.min(start + CHUNK_MILLIS, end);
+			List<SeriesRollup> rollups = resolution == SeriesRollup.MINUTE ? rollupDAO.aggregateValues(start,
+					chunkEnd, resolution) : rollupDAO.aggregateRollups(SeriesRollup.MINUTE, start, chunkEnd,
+					resolution);
+			rollupDAO.replaceRollups(resolution, start, chunkEnd, rollups);
+			if (logger.isDebugEnabled()) {
+				logger.debug(rollups.size() + " rollups of " + resolution + " s computed up to " + chunkEnd);
+			}
+			start = chunkEnd;
+		}
+		return start;
+	}
+
+	private void applyRetention(IRollupDAO rollupDAO, long now, long minuteEnd, long hourEnd) {
+		long rawRetention = retentionPolicy.getRawRetentionMillis();
+		if (rawRetention > 0 && minuteEnd > 0) {
+			long cutoff = Math.min(now - rawRetention, minuteEnd);
+			Long first = rollupDAO.getFirstValueTime();
+			while (first != null && first < cutoff) {
+				first = Math.min(first + CHUNK_MILLIS, cutoff);
+				rollupDAO.deleteValuesBefore(first);
+			}
+		}
+		long minuteRetention = retentionPolicy.getMinuteRetentionMillis();
+		if (minuteRetention > 0 && hourEnd > 0) {
+			long cutoff = Math.min(now - minuteRetention, hourEnd);
+			Long first = rollupDAO.getFirstBucket(SeriesRollup.MINUTE);
+			while (first != null && first < cutoff) {
+				first = Math.min(first + CHUNK_MILLIS, cutoff);
+				rollupDAO.deleteRollupsBefore(SeriesRollup.MINUTE, first);
+			}
+		}
+		long hourRetention = retentionPolicy.getHourRetentionMillis();
+		if (hourRetention > 0) {
+			rollupDAO.deleteRollupsBefore(SeriesRollup.HOUR, now - hourRetention);
+		}
+	}
+
+}
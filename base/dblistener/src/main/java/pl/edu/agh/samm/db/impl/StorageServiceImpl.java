@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import pl.edu.agh.samm.api.action.Action;
 import pl.edu.agh.samm.api.action.ActionExecution;
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
 import pl.edu.agh.samm.api.db.IStorageService;
 import pl.edu.agh.samm.api.metrics.IMetric;
 import pl.edu.agh.samm.api.metrics.MeasurementValue;
@@ -48,6 +49,7 @@ public class StorageServiceImpl implements IStorageService {
 	private IMeasurementValueDAO measurementValueDAO = null;
 	private IMetricValueDAO metricValueDAO;
 	private IActionExecutionDAO actionExecutionDAO;
+	private IHistoryDAO historyDAO;
 
 	/**
 	 * @param measurementValueDAO
@@ -74,27 +76,45 @@ public class StorageServiceImpl implements IStorageService {
 	 */
 	@Override
 	public void storeMetricValue(IMetric metric, Number value) {
+		metricValueDAO.store(createMetricValue(metric, value));
+	}
+
+	@Override
+	public void storeMeasurement(String instanceURI, String capabilityURI, Date timestamp, Object value) {
+		MeasurementValue info = createMeasurementValue(instanceURI, capabilityURI, timestamp, value);
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Storing to database: " + info.toString());
+		}
+		measurementValueDAO.store(info);
+
+	}
+
+	protected MetricValue createMetricValue(IMetric metric, Number value) {
 		MetricValue mv = new MetricValue();
 		mv.setMetricUri(metric.getMetricURI());
 		mv.setResourceUri(metric.getResourceURI());
 		mv.setValue(value);
 		mv.setTimestamp(new Date());
-		metricValueDAO.store(mv);
+		return mv;
 	}
 
-	@Override
-	public void storeMeasurement(String instanceURI, String capabilityURI, Date timestamp, Object value) {
+	protected MeasurementValue createMeasurementValue(String instanceURI, String capabilityURI,
+			Date timestamp, Object value) {
 		MeasurementValue info = new MeasurementValue();
 		info.setInstanceUri(instanceURI);
 		info.setCapabilityUri(capabilityURI);
 		info.setTimestamp(timestamp);
 		info.setValue(value);
+		return info;
+	}
 
-		if (logger.isDebugEnabled()) {
-			logger.debug("Storing to database: " + info.toString());
-		}
-		measurementValueDAO.store(info);
+	protected IMetricValueDAO getMetricValueDAO() {
+		return metricValueDAO;
+	}
 
+	protected IMeasurementValueDAO getMeasurementValueDAO() {
+		return measurementValueDAO;
 	}
 
 	@Override
@@ -112,6 +132,14 @@ public class StorageServiceImpl implements IStorageService {
 		this.actionExecutionDAO = actionExecutionDAO;
 	}
 
+	/**
+	 * @param historyDAO
+	 *            the historyDAO to set
+	 */
+	public void setHistoryDAO(IHistoryDAO historyDAO) {
+		this.historyDAO = historyDAO;
+	}
+
 	@Override
 	public Map<String, List<ActionExecution>> getAllActionExecutions() {
 		Map<String, List<ActionExecution>> ret = new HashMap<String, List<ActionExecution>>();
@@ -182,4 +210,9 @@ public class StorageServiceImpl implements IStorageService {
 	public List<Number> getHistoricalMetricValues(String metricURI, String resourceURI) {
 		return metricValueDAO.loadValues(metricURI, resourceURI);
 	}
+
+	@Override
+	public void streamHistory(Date startTime, Date endTime, IHistoryRecordHandler handler) {
+		historyDAO.streamHistory(startTime, endTime, handler);
+	}
 }
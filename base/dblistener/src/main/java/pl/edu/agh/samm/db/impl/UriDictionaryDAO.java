@@ -0,0 +1,214 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
+import org.springframework.jdbc.core.simple.ParameterizedSingleColumnRowMapper;
+
+/**
+ * Dictionary of URIs and series kept in memory in both directions, so writes
+ * and reads translate between URIs and ids without querying the database.
+ * Entries missing in memory (e.g. added by another connection) are read
+ * from the database.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public class UriDictionaryDAO extends AbstractDao implements IUriDictionaryDAO {
+
+	private static final String SQL_QUERY_URIS = "SELECT id, uri FROM uri_dictionary";
+
+	private static final String SQL_QUERY_URI_ID = "SELECT id FROM uri_dictionary WHERE uri=?";
+
+	private static final String SQL_QUERY_URI = "SELECT uri FROM uri_dictionary WHERE id=?";
+
+	private static final String SQL_INSERT_URI = "INSERT INTO uri_dictionary(uri) VALUES (?)";
+
+	private static final String SQL_QUERY_ALL_SERIES = "SELECT id, uri_id, resource_id FROM series";
+
+	private static final String SQL_QUERY_SERIES_ID = "SELECT id FROM series WHERE uri_id=? AND resource_id=?";
+
+	private static final String SQL_QUERY_SERIES = "SELECT id, uri_id, resource_id FROM series WHERE id=?";
+
+	private static final String SQL_INSERT_SERIES = "INSERT INTO series(uri_id, resource_id) VALUES (?, ?)";
+
+	private final ConcurrentMap<String, Integer> uriIds = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentMap<Integer, String> uris = new ConcurrentHashMap<Integer, String>();
+	private final ConcurrentMap<Long, Integer> seriesIds = new ConcurrentHashMap<Long, Integer>();
+	private final ConcurrentMap<Integer, Long> series = new ConcurrentHashMap<Integer, Long>();
+
+	/**
+	 * Reads the whole dictionary into memory
+	 */
+	public void load() {
+		getSimpleJdbcTemplate().query(SQL_QUERY_URIS, new ParameterizedRowMapper<Object>() {
+
+			@Override
+			public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
+				cacheUri(rs.getInt(1), rs.getString(2));
+				return null;
+			}
+		});
+		getSimpleJdbcTemplate().query(SQL_QUERY_ALL_SERIES, new SeriesRowMapper());
+	}
+
+	@Override
+	public int getSeriesId(String uri, String resourceUri) {
+		Integer seriesId = findSeriesId(uri, resourceUri);
+		if (seriesId != null) {
+			return seriesId;
+		}
+		return createSeries(getUriId(uri), getUriId(resourceUri));
+	}
+
+	@Override
+	public Integer findSeriesId(String uri, String resourceUri) {
+		Integer uriId = findUriId(uri);
+		Integer resourceId = uriId == null ? null : findUriId(resourceUri);
+		if (resourceId == null) {
+			return null;
+		}
+		long key = getSeriesKey(uriId, resourceId);
+		Integer seriesId = seriesIds.get(key);
+		if (seriesId == null) {
+			seriesId = querySeriesId(uriId, resourceId);
+			if (seriesId != null) {
+				cacheSeries(seriesId, key);
+			}
+		}
+		return seriesId;
+	}
+
+	@Override
+	public Integer findUriId(String uri) {
+		Integer uriId = uriIds.get(uri);
+		if (uriId == null) {
+			uriId = queryUriId(uri);
+			if (uriId != null) {
+				cacheUri(uriId, uri);
+			}
+		}
+		return uriId;
+	}
+
+	@Override
+	public String getUri(int uriId) {
+		String uri = uris.get(uriId);
+		if (uri == null) {
+			List<String> found = getSimpleJdbcTemplate().query(SQL_QUERY_URI,
+					ParameterizedSingleColumnRowMapper.newInstance(String.class), uriId);
+			if (found.isEmpty()) {
+				throw new IllegalArgumentException("Unknown URI id: " + uriId);
+			}
+			uri = found.get(0);
+			cacheUri(uriId, uri);
+		}
+		return uri;
+	}
+
+	@Override
+	public String getSeriesUri(int seriesId) {
+		return getUri((int) (getSeriesKey(seriesId) >>> 32));
+	}
+
+	@Override
+	public String getSeriesResourceUri(int seriesId) {
+		return getUri((int) getSeriesKey(seriesId));
+	}
+
+	private long getSeriesKey(int seriesId) {
+		Long key = series.get(seriesId);
+		if (key == null) {
+			getSimpleJdbcTemplate().query(SQL_QUERY_SERIES, new SeriesRowMapper(), seriesId);
+			key = series.get(seriesId);
+			if (key == null) {
+				throw new IllegalArgumentException("Unknown series id: " + seriesId);
+			}
+		}
+		return key;
+	}
+
+	private int getUriId(String uri) {
+		Integer uriId = findUriId(uri);
+		return uriId != null ? uriId : createUri(uri);
+	}
+
+	private synchronized int createUri(String uri) {
+		Integer uriId = uriIds.get(uri);
+		if (uriId == null) {
+			getSimpleJdbcTemplate().update(SQL_INSERT_URI, uri);
+			uriId = queryUriId(uri);
+			cacheUri(uriId, uri);
+		}
+		return uriId;
+	}
+
+	private synchronized int createSeries(int uriId, int resourceId) {
+		long key = getSeriesKey(uriId, resourceId);
+		Integer seriesId = seriesIds.get(key);
+		if (seriesId == null) {
+			getSimpleJdbcTemplate().update(SQL_INSERT_SERIES, uriId, resourceId);
+			seriesId = querySeriesId(uriId, resourceId);
+			cacheSeries(seriesId, key);
+		}
+		return seriesId;
+	}
+
+	private Integer queryUriId(String uri) {
+		List<Integer> found = getSimpleJdbcTemplate().query(SQL_QUERY_URI_ID,
+				ParameterizedSingleColumnRowMapper.newInstance(Integer.class), uri);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	private Integer querySeriesId(int uriId, int resourceId) {
+		List<Integer> found = getSimpleJdbcTemplate().query(SQL_QUERY_SERIES_ID,
+				ParameterizedSingleColumnRowMapper.newInstance(Integer.class), uriId, resourceId);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	private void cacheUri(int uriId, String uri) {
+		uriIds.put(uri, uriId);
+		uris.put(uriId, uri);
+	}
+
+	private void cacheSeries(int seriesId, long key) {
+		seriesIds.put(key, seriesId);
+		series.put(seriesId, key);
+	}
+
+	private static long getSeriesKey(int uriId, int resourceId) {
+		return ((long) uriId << 32) | (resourceId & 0xFFFFFFFFL);
+	}
+
+	private class SeriesRowMapper implements ParameterizedRowMapper<Object> {
+
+		@Override
+		public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
+			cacheSeries(rs.getInt(1), getSeriesKey(rs.getInt(2), rs.getInt(3)));
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,325 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+import pl.edu.agh.samm.api.metrics.MetricValue;
+
+/**
+ * Storage service which doesn't write metric values and measurements on the
+ * calling (polling) threads. The values are queued and a writer thread inserts
+ * them in JDBC batches, once <code>batchSize</code> values are waiting or the
+ * oldest of them waited <code>flushIntervalMillis</code>. Stored values are
+ * visible to the queries after they are flushed. If the queue stays full for
+ * <code>offerTimeoutMillis</code> (the database can't keep up), the value is
+ * written synchronously by the storing thread, which slows the producers down
+ * instead of losing data. Before {@link #init()} and after {@link #destroy()}
+ * values are written synchronously as well - a value is queued only while
+ * the service is running, so every queued value is flushed by
+ * {@link #destroy()}.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class WriteBehindStorageService extends StorageServiceImpl {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindStorageService.class);
+
+	private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private int queueCapacity = 100000;
+	private int batchSize = 1000;
+	private long flushIntervalMillis = 1000L;
+	private long offerTimeoutMillis = 100L;
+
+	private BlockingQueue<Object> queue = null;
+	private Thread writer = null;
+	private volatile boolean running = false;
+	// held while queueing, so destroy() doesn't stop the writer in between
+	// the check of running and the offer
+	private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+
+	private final AtomicLong writtenCount = new AtomicLong();
+	private final AtomicLong synchronousCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong flushCount = new AtomicLong();
+	private final AtomicLong flushNanos = new AtomicLong();
+	private volatile long lastFlushNanos = 0L;
+	private volatile long maxFlushNanos = 0L;
+
+	/**
+	 * @param queueCapacity
+	 *            Number of values which can wait for the writer
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * @param batchSize
+	 *            Maximal number of values inserted in a single batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param flushIntervalMillis
+	 *            Maximal time a value waits for a batch to fill up
+	 */
+	public void setFlushIntervalMillis(long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * @param offerTimeoutMillis
+	 *            Time a storing thread waits for space in a full queue before
+	 *            it writes the value itself
+	 */
+	public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+		this.offerTimeoutMillis = offerTimeoutMillis;
+	}
+
+	public synchronized void init() {
+		if (running) {
+			return;
+		}
+		queue = new ArrayBlockingQueue<Object>(queueCapacity);
+		running = true;
+		writer = new Thread(new Writer(), "SAMM-WriteBehind");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Flushes the queued values and stops the writer
+	 */
+	public synchronized void destroy() throws InterruptedException {
+		if (!running) {
+			return;
+		}
+		runningLock.writeLock().lock();
+		try {
+			running = false;
+		} finally {
+			runningLock.writeLock().unlock();
+		}
+		writer.join();
+		// values queued by threads which saw the service still running
+		List<Object> remaining = new ArrayList<Object>();
+		queue.drainTo(remaining);
+		if (!remaining.isEmpty()) {
+			flush(remaining);
+		}
+		logger.info("Write-behind storage stopped: " + writtenCount.get() + " values written, "
+				+ synchronousCount.get() + " synchronously, " + failedCount.get() + " failed, average flush "
+				+ String.format("%.2f", getAverageFlushMillis()) + " ms");
+	}
+
+	@Override
+	public void storeMetricValue(IMetric metric, Number value) {
+		if (!enqueue(createMetricValue(metric, value))) {
+			super.storeMetricValue(metric, value);
+		}
+	}
+
+	@Override
+	public void storeMeasurement(String instanceURI, String capabilityURI, Date timestamp, Object value) {
+		if (!enqueue(createMeasurementValue(instanceURI, capabilityURI, timestamp, value))) {
+			super.storeMeasurement(instanceURI, capabilityURI, timestamp, value);
+		}
+	}
+
+	/**
+	 * @return <code>false</code> if the service isn't running - the value has
+	 *         to be written synchronously
+	 */
+	private boolean enqueue(Object value) {
+		runningLock.readLock().lock();
+		try {
+			if (!running) {
+				return false;
+			}
+			boolean queued = false;
+			try {
+				queued = queue.offer(value, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (!queued) {
+				long synchronous = synchronousCount.incrementAndGet();
+				// 1st, 2nd, 4th, 8th... time, not to flood the log
+				if ((synchronous & (synchronous - 1)) == 0) {
+					logger.warn("Write-behind queue full, " + synchronous + " values written synchronously so far");
+				}
+				store(Collections.singletonList(value), value instanceof MetricValue);
+			}
+			return true;
+		} finally {
+			runningLock.readLock().unlock();
+		}
+	}
+
+	private void flush(List<Object> batch) {
+		List<MetricValue> metricValues = new ArrayList<MetricValue>();
+		List<MeasurementValue> measurementValues = new ArrayList<MeasurementValue>();
+		for (Object value : batch) {
+			if (value instanceof MetricValue) {
+				metricValues.add((MetricValue) value);
+			} else {
+				measurementValues.add((MeasurementValue) value);
+			}
+		}
+		long start = System.nanoTime();
+		if (!metricValues.isEmpty()) {
+			store(metricValues, true);
+		}
+		if (!measurementValues.isEmpty()) {
+			store(measurementValues, false);
+		}
+		long elapsed = System.nanoTime() - start;
+		flushCount.incrementAndGet();
+		flushNanos.addAndGet(elapsed);
+		lastFlushNanos = elapsed;
+		if (elapsed > maxFlushNanos) {
+			maxFlushNanos = elapsed;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Flushed " + batch.size() + " values in " + elapsed / 1000 + " us, "
+					+ queue.size() + " waiting");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void store(List<?> values, boolean metricValues) {
+		try {
+			if (metricValues) {
+				getMetricValueDAO().storeAll((List<MetricValue>) values);
+			} else {
+				getMeasurementValueDAO().storeAll((List<MeasurementValue>) values);
+			}
+			writtenCount.addAndGet(values.size());
+		} catch (RuntimeException e) {
+			failedCount.addAndGet(values.size());
+			logger.error("Cannot store " + values.size() + " values", e);
+		}
+	}
+
+	/**
+	 * @return Number of values waiting for the writer
+	 */
+	public int getQueueDepth() {
+		BlockingQueue<Object> queue = this.queue;
+		return queue == null ? 0 : queue.size();
+	}
+
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	/**
+	 * @return Number of values written by the storing threads because the
+	 *         queue was full
+	 */
+	public long getSynchronousCount() {
+		return synchronousCount.get();
+	}
+
+	/**
+	 * @return Number of values lost because their batch failed
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getFlushCount() {
+		return flushCount.get();
+	}
+
+	public double getAverageFlushMillis() {
+		long flushes = flushCount.get();
+		return flushes == 0 ? 0.0 : flushNanos.get() / 1e6 / flushes;
+	}
+
+	public double getLastFlushMillis() {
+		return lastFlushNanos / 1e6;
+	}
+
+	public double getMaxFlushMillis() {
+		return maxFlushNanos / 1e6;
+	}
+
+	private class Writer implements Runnable {
+
+		@Override
+		public void run() {
+			long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+			List<Object> batch = new ArrayList<Object>(batchSize);
+			long firstQueued = 0L;
+			while (true) {
+				// read before polling - values queued before the stop are
+				// still drained
+				boolean stopping = !running;
+				long wait = 0L;
+				if (!stopping) {
+					// at most IDLE_WAIT_NANOS, not to delay the stop
+					wait = batch.isEmpty() ? IDLE_WAIT_NANOS : Math.min(IDLE_WAIT_NANOS,
+							Math.max(0L, flushIntervalNanos - (System.nanoTime() - firstQueued)));
+				}
+				Object value;
+				try {
+					value = queue.poll(wait, TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					value = null;
+					running = false;
+				}
+				if (value != null) {
+					if (batch.isEmpty()) {
+						firstQueued = System.nanoTime();
+					}
+					batch.add(value);
+					queue.drainTo(batch, batchSize - batch.size());
+				}
+				if (!batch.isEmpty()
+						&& (batch.size() >= batchSize || stopping || System.nanoTime() - firstQueued >= flushIntervalNanos)) {
+					flush(batch);
+					batch.clear();
+				}
+				if (stopping && value == null && batch.isEmpty()) {
+					return;
+				}
+			}
+		}
+	}
+
+}
@@ -24,20 +24,30 @@ import java.util.Date;
 import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
 
 import pl.edu.agh.samm.api.metrics.MeasurementValue;
+import pl.edu.agh.samm.db.impl.IUriDictionaryDAO;
 
 /**
+ * Maps rows of series id, timestamp and value, translating the series id to
+ * the capability and instance URIs.
+ * 
  * @author Pawel Koperek <pkoperek@gmail.com>
  * @author Mateusz Kupisz <mkupisz@gmail.com>
  * 
  */
 public class MeasurementValueRowMapper implements ParameterizedRowMapper<MeasurementValue> {
 
+	private final IUriDictionaryDAO uriDictionary;
+
+	public MeasurementValueRowMapper(IUriDictionaryDAO uriDictionary) {
+		this.uriDictionary = uriDictionary;
+	}
+
 	@Override
 	public MeasurementValue mapRow(ResultSet rs, int arnrg1) throws SQLException {
 		MeasurementValue mv = new MeasurementValue();
-		mv.setCapabilityUri(rs.getString("capability_uri"));
-		mv.setId(rs.getLong("id"));
-		mv.setInstanceUri(rs.getString("instance_uri"));
+		int seriesId = rs.getInt("series_id");
+		mv.setCapabilityUri(uriDictionary.getSeriesUri(seriesId));
+		mv.setInstanceUri(uriDictionary.getSeriesResourceUri(seriesId));
 		mv.setTimestamp(new Date(rs.getTimestamp("timestamp").getTime())); // FIXME
 																			// why
 																			// the
@@ -0,0 +1,191 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+
+public class HistoryDAOTest {
+
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#TestCapability";
+	private static final String RESOURCE = "/resource";
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	private static int databases = 0;
+
+	private Connection connection;
+	private MeasurementValueDAO measurementValueDAO;
+	private HistoryDAO historyDAO;
+	private StorageMaintenance maintenance;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName(DRIVER);
+		connection = DriverManager.getConnection("jdbc:hsqldb:mem:history"
+				+ databases++, "sa", "");
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+				connection, true);
+		SchemaMigration schemaMigration = new SchemaMigration();
+		schemaMigration.setDataSource(dataSource);
+		schemaMigration.migrate();
+		UriDictionaryDAO uriDictionary = new UriDictionaryDAO();
+		uriDictionary.setDataSource(dataSource);
+		uriDictionary.load();
+
+		RetentionPolicy retentionPolicy = new RetentionPolicy();
+		retentionPolicy.setRawRetentionMillis(DAY);
+		retentionPolicy.setMinuteRetentionMillis(0L);
+		RollupDAO measurementRollupDAO = new RollupDAO();
+		measurementRollupDAO.setDataSource(dataSource);
+		RollupDAO metricRollupDAO = new RollupDAO();
+		metricRollupDAO.setDataSource(dataSource);
+		metricRollupDAO.setValueTable("metric_value");
+		metricRollupDAO.setRollupTable("metric_rollup");
+
+		measurementValueDAO = new MeasurementValueDAO();
+		measurementValueDAO.setDataSource(dataSource);
+		measurementValueDAO.setUriDictionary(uriDictionary);
+		measurementValueDAO.setRollupDAO(measurementRollupDAO);
+		measurementValueDAO.setRetentionPolicy(retentionPolicy);
+		historyDAO = new HistoryDAO();
+		historyDAO.setDataSource(dataSource);
+		historyDAO.setUriDictionary(uriDictionary);
+		historyDAO.setMeasurementRollupDAO(measurementRollupDAO);
+		historyDAO.setMetricRollupDAO(metricRollupDAO);
+		maintenance = new StorageMaintenance();
+		maintenance.setRollupDAOs(Arrays.<IRollupDAO> asList(
+				measurementRollupDAO, metricRollupDAO));
+		maintenance.setRetentionPolicy(retentionPolicy);
+		maintenance.setRollupDelayMillis(0L);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Statement statement = connection.createStatement();
+		statement.execute("SHUTDOWN");
+		statement.close();
+		connection.close();
+	}
+
+	@Test
+	public void testExpiredValuesAreStreamedFromRollups() {
+		// a value every minute for two days, raw values kept for one
+		long end = 2 * DAY;
+		store(0L, end);
+		maintenance.maintain(end);
+
+		final List<Long> timestamps = new ArrayList<Long>();
+		historyDAO.streamHistory(new Date(0L), new Date(end),
+				new IHistoryRecordHandler() {
+
+					@Override
+					public void handleMetricValue(String metricURI,
+							String resourceURI, long timestamp, double value) {
+						fail("No metric values stored");
+					}
+
+					@Override
+					public void handleMeasurement(String instanceURI,
+							String capabilityURI, long timestamp, double value) {
+						assertEquals(RESOURCE, instanceURI);
+						assertEquals(CAPABILITY, capabilityURI);
+						timestamps.add(timestamp);
+					}
+				});
+
+		// one-minute rollups of the first day, then the raw values
+		assertEquals(2 * DAY / MINUTE, timestamps.size());
+		for (int i = 0; i < timestamps.size(); i++) {
+			assertEquals(i * MINUTE, timestamps.get(i).longValue());
+		}
+	}
+
+	@Test
+	public void testRollupQueriesIncludeTheUnrolledTail() {
+		long end = 3 * DAY + 30 * MINUTE;
+		store(end - 3 * DAY, end);
+		// rolled up until 3 days
+		maintenance.maintain(3 * DAY);
+
+		// a long period is read from one-hour rollups
+		List<MeasurementValue> values = measurementValueDAO
+				.getHistoricalMeasurementValues(RESOURCE, CAPABILITY,
+						new Date(end - 3 * DAY), new Date(end));
+
+		MeasurementValue last = values.get(values.size() - 1);
+		assertEquals(end - MINUTE, last.getTimestamp().getTime());
+		// hours up to 3 days and the 30 raw values after them
+		assertEquals(3 * DAY / HOUR - 1 + 30, values.size());
+	}
+
+	@Test
+	public void testAverageIncludesTheUnrolledTail() {
+		long end = 3 * DAY + 30 * MINUTE;
+		store(end - 3 * DAY, 3 * DAY, 1.0);
+		store(3 * DAY, end, 4.0);
+		maintenance.maintain(3 * DAY);
+
+		Map<String, Number> averages = measurementValueDAO
+				.getAverageMeasurementValue(RESOURCE, new Date(end - 3 * DAY),
+						new Date(end));
+
+		// one-hour rollups of the whole hours and the 30 raw values after
+		// them, weighted by their counts
+		long rolledUp = (3 * DAY / HOUR - 1) * 60;
+		assertEquals((rolledUp * 1.0 + 30 * 4.0) / (rolledUp + 30),
+				averages.get(CAPABILITY).doubleValue(), 1e-9);
+	}
+
+	private void store(long start, long end) {
+		store(start, end, 1.0);
+	}
+
+	private void store(long start, long end, double storedValue) {
+		List<MeasurementValue> values = new ArrayList<MeasurementValue>();
+		for (long time = start; time < end; time += MINUTE) {
+			MeasurementValue value = new MeasurementValue();
+			value.setCapabilityUri(CAPABILITY);
+			value.setInstanceUri(RESOURCE);
+			value.setTimestamp(new Date(time));
+			value.setValue(storedValue);
+			values.add(value);
+		}
+		measurementValueDAO.storeAll(values);
+	}
+
+}
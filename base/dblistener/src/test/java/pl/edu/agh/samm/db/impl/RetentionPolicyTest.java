@@ -0,0 +1,70 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RetentionPolicyTest {
+
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	private static final long NOW = 100 * DAY;
+
+	private final RetentionPolicy retentionPolicy = new RetentionPolicy();
+
+	@Test
+	public void testShortRecentPeriodsReadRawValues() {
+		assertEquals(RetentionPolicy.RAW, getResolution(NOW - HOUR, NOW));
+		assertEquals(RetentionPolicy.RAW, getResolution(NOW - 6 * HOUR, NOW));
+	}
+
+	@Test
+	public void testLongPeriodsReadRollups() {
+		assertEquals(SeriesRollup.MINUTE, getResolution(NOW - 7 * HOUR, NOW));
+		assertEquals(SeriesRollup.MINUTE, getResolution(NOW - 2 * DAY, NOW));
+		assertEquals(SeriesRollup.HOUR, getResolution(NOW - 3 * DAY, NOW));
+	}
+
+	@Test
+	public void testExpiredPeriodsReadRollups() {
+		// raw values expired after 7 days
+		assertEquals(SeriesRollup.MINUTE,
+				getResolution(NOW - 8 * DAY, NOW - 8 * DAY + HOUR));
+		// one-minute rollups expired after 30 days
+		assertEquals(SeriesRollup.HOUR,
+				getResolution(NOW - 31 * DAY, NOW - 31 * DAY + HOUR));
+	}
+
+	@Test
+	public void testDataIsKeptForeverWithoutRetention() {
+		retentionPolicy.setRawRetentionMillis(0L);
+		assertEquals(RetentionPolicy.RAW,
+				getResolution(NOW - 90 * DAY, NOW - 90 * DAY + HOUR));
+	}
+
+	private int getResolution(long start, long end) {
+		return retentionPolicy.getQueryResolution(new Date(start),
+				new Date(end), NOW);
+	}
+
+}
@@ -0,0 +1,192 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+
+public class SchemaMigrationTest {
+
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+	private static final String CREATE_URIS_TABLE = "CREATE MEMORY TABLE MEASUREMENT_VALUE(ID INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 0) NOT NULL,CAPABILITY_URI VARCHAR(255) NOT NULL,INSTANCE_URI VARCHAR(255) NOT NULL,TIMESTAMP TIMESTAMP NOT NULL,VALUE FLOAT NOT NULL,CONSTRAINT MEASUREMENT_VALUE_PK PRIMARY KEY(ID))";
+	private static final String INSERT_URIS = "INSERT INTO MEASUREMENT_VALUE(CAPABILITY_URI,INSTANCE_URI,TIMESTAMP,VALUE) VALUES (?,?,?,?)";
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#TestCapability";
+	private static final String OTHER_CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#OtherCapability";
+	private static final String RESOURCE = "/resource";
+	private static final int VALUES = 10;
+
+	private static int databases = 0;
+
+	private Connection connection;
+	private SingleConnectionDataSource dataSource;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName(DRIVER);
+		connection = DriverManager.getConnection("jdbc:hsqldb:mem:migration"
+				+ databases++, "sa", "");
+		dataSource = new SingleConnectionDataSource(connection, true);
+
+		execute(CREATE_URIS_TABLE);
+		PreparedStatement insert = connection.prepareStatement(INSERT_URIS);
+		for (int i = 0; i < VALUES; i++) {
+			insert.setString(1, CAPABILITY);
+			insert.setString(2, RESOURCE);
+			insert.setTimestamp(3, new Timestamp(1000L * i));
+			insert.setDouble(4, i);
+			insert.executeUpdate();
+			insert.setString(1, OTHER_CAPABILITY);
+			insert.executeUpdate();
+		}
+		insert.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		execute("SHUTDOWN");
+		connection.close();
+	}
+
+	@Test
+	public void testMigratesUriTable() throws Exception {
+		migrate();
+
+		assertMigrated();
+	}
+
+	@Test
+	public void testResumesMigrationInterruptedDuringCopy() throws Exception {
+		// renamed aside and partially copied before the crash
+		execute("ALTER TABLE MEASUREMENT_VALUE RENAME TO MEASUREMENT_VALUE_URIS");
+		execute("CREATE MEMORY TABLE MEASUREMENT_VALUE(SERIES_ID INTEGER NOT NULL,TIMESTAMP TIMESTAMP NOT NULL,VALUE FLOAT NOT NULL)");
+		execute("INSERT INTO MEASUREMENT_VALUE VALUES (0, '1970-01-01 00:00:00', 0.0)");
+
+		migrate();
+
+		assertMigrated();
+	}
+
+	@Test
+	public void testFinishesRenameOfCopiedTable() throws Exception {
+		migrate();
+		// copied without indexes and the old table dropped before the crash
+		execute("DROP INDEX MEASUREMENT_VALUE_SERIES");
+		execute("DROP INDEX MEASUREMENT_VALUE_TIME");
+		execute("ALTER TABLE MEASUREMENT_VALUE RENAME TO MEASUREMENT_VALUE_V2");
+
+		migrate();
+
+		assertMigrated();
+		assertTrue(hasIndex("MEASUREMENT_VALUE", "MEASUREMENT_VALUE_SERIES"));
+	}
+
+	private void migrate() {
+		SchemaMigration schemaMigration = new SchemaMigration();
+		schemaMigration.setDataSource(dataSource);
+		schemaMigration.migrate();
+	}
+
+	private void assertMigrated() throws Exception {
+		assertFalse(hasTable("MEASUREMENT_VALUE_URIS"));
+		assertFalse(hasTable("MEASUREMENT_VALUE_V2"));
+		assertEquals(2 * VALUES, count("SELECT COUNT(*) FROM MEASUREMENT_VALUE"));
+
+		UriDictionaryDAO uriDictionary = new UriDictionaryDAO();
+		uriDictionary.setDataSource(dataSource);
+		uriDictionary.load();
+		Integer seriesId = uriDictionary.findSeriesId(CAPABILITY, RESOURCE);
+		assertNotNull(seriesId);
+		assertEquals(CAPABILITY, uriDictionary.getSeriesUri(seriesId));
+		assertEquals(RESOURCE, uriDictionary.getSeriesResourceUri(seriesId));
+		assertEquals(VALUES, count("SELECT COUNT(*) FROM MEASUREMENT_VALUE WHERE SERIES_ID=" + seriesId));
+
+		MeasurementValueDAO measurementValueDAO = new MeasurementValueDAO();
+		measurementValueDAO.setDataSource(dataSource);
+		measurementValueDAO.setUriDictionary(uriDictionary);
+		List<MeasurementValue> values = measurementValueDAO
+				.getHistoricalMeasurementValues(RESOURCE, CAPABILITY);
+		assertEquals(VALUES, values.size());
+		double sum = 0;
+		for (MeasurementValue value : values) {
+			assertEquals(CAPABILITY, value.getCapabilityUri());
+			assertEquals(RESOURCE, value.getInstanceUri());
+			sum += ((Number) value.getValue()).doubleValue();
+		}
+		assertEquals(VALUES * (VALUES - 1) / 2, sum, 0.0);
+	}
+
+	private void execute(String sql) throws Exception {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(sql);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private int count(String sql) throws Exception {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery(sql);
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private boolean hasIndex(String table, String index) throws Exception {
+		ResultSet rs = connection.getMetaData().getIndexInfo(null, null,
+				table, false, false);
+		try {
+			while (rs.next()) {
+				if (index.equals(rs.getString("INDEX_NAME"))) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			rs.close();
+		}
+	}
+
+	private boolean hasTable(String table) throws Exception {
+		ResultSet rs = connection.getMetaData().getTables(null, null, table,
+				null);
+		try {
+			return rs.next();
+		} finally {
+			rs.close();
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StorageMaintenanceTest {
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	private static final long INTERVAL = 10 * MINUTE;
+
+	private InMemoryRollupDAO rollupDAO;
+	private StorageMaintenance maintenance;
+
+	@Before
+	public void setUp() {
+		rollupDAO = new InMemoryRollupDAO();
+		RetentionPolicy retentionPolicy = new RetentionPolicy();
+		retentionPolicy.setRawRetentionMillis(7 * DAY);
+		retentionPolicy.setMinuteRetentionMillis(30 * DAY);
+		retentionPolicy.setHourRetentionMillis(0L);
+		maintenance = new StorageMaintenance();
+		maintenance.setRollupDAOs(Collections
+				.<IRollupDAO> singletonList(rollupDAO));
+		maintenance.setRetentionPolicy(retentionPolicy);
+		maintenance.setRollupDelayMillis(2 * MINUTE);
+	}
+
+	@Test
+	public void testValuesAreRolledUp() {
+		store(0L, 2 * HOUR + 30 * MINUTE);
+
+		maintenance.maintain(2 * HOUR + 21 * MINUTE);
+
+		List<SeriesRollup> minutes = rollupDAO.getRollups(SeriesRollup.MINUTE);
+		// 0:00 to 2:10 - 2:20 is within the rollup delay
+		assertEquals(14, minutes.size());
+		List<SeriesRollup> hours = rollupDAO.getRollups(SeriesRollup.HOUR);
+		assertEquals(2, hours.size());
+		for (SeriesRollup hour : hours) {
+			assertEquals(6, hour.getCount());
+			assertEquals(0.0, hour.getMin(), 0.0);
+			assertEquals(5.0, hour.getMax(), 0.0);
+			assertEquals(2.5, hour.getAverage(), 0.0);
+		}
+		// nothing expired yet
+		assertEquals(15, rollupDAO.values.size());
+	}
+
+	@Test
+	public void testExpiredDataIsDeleted() {
+		long now = 40 * DAY;
+		store(0L, now);
+
+		maintenance.maintain(now);
+
+		assertTrue(rollupDAO.getFirstValueTime() >= now - 7 * DAY);
+		assertTrue(rollupDAO.getFirstValueTime() < now - 7 * DAY + INTERVAL);
+		assertTrue(rollupDAO.getFirstBucket(SeriesRollup.MINUTE) >= now - 30 * DAY);
+		// one-hour rollups are kept forever and hold every rolled up value
+		assertEquals(0L, rollupDAO.getFirstBucket(SeriesRollup.HOUR).longValue());
+		long count = 0;
+		for (SeriesRollup hour : rollupDAO.getRollups(SeriesRollup.HOUR)) {
+			count += hour.getCount();
+		}
+		assertEquals((now - HOUR) / INTERVAL, count);
+	}
+
+	@Test
+	public void testValuesAreDeletedOnlyAfterRollup() {
+		long now = 10 * DAY;
+		store(0L, now);
+		// the minutes of the last week weren't rolled up yet
+		maintenance.setRollupDelayMillis(8 * DAY);
+
+		maintenance.maintain(now);
+
+		// older than the raw retention, but not rolled up
+		assertEquals(2 * DAY, rollupDAO.getFirstValueTime().longValue());
+		assertEquals(2 * DAY - INTERVAL,
+				rollupDAO.getLastBucket(SeriesRollup.MINUTE).longValue());
+	}
+
+	@Test
+	public void testRollupIsIncremental() {
+		store(0L, 3 * HOUR);
+		maintenance.maintain(3 * HOUR);
+		store(3 * HOUR, 5 * HOUR);
+		maintenance.maintain(5 * HOUR);
+
+		List<SeriesRollup> hours = rollupDAO.getRollups(SeriesRollup.HOUR);
+		assertEquals(4, hours.size());
+		for (SeriesRollup hour : hours) {
+			assertEquals(6, hour.getCount());
+		}
+	}
+
+	/**
+	 * Stores a value every {@link #INTERVAL} in the period, cycling from 0 to
+	 * 5 every hour
+	 */
+	private void store(long start, long end) {
+		for (long time = start; time < end; time += INTERVAL) {
+			rollupDAO.values.add(new double[] { time, (time % HOUR) / INTERVAL });
+		}
+	}
+
+	/**
+	 * Rollups of a single series, computed like {@link RollupDAO} does
+	 */
+	private static class InMemoryRollupDAO implements IRollupDAO {
+
+		private static final int SERIES = 1;
+
+		// time and value
+		private final List<double[]> values = new ArrayList<double[]>();
+		private final Map<Integer, List<SeriesRollup>> rollups = new HashMap<Integer, List<SeriesRollup>>();
+
+		public List<SeriesRollup> getRollups(int resolution) {
+			List<SeriesRollup> resolutionRollups = rollups.get(resolution);
+			if (resolutionRollups == null) {
+				resolutionRollups = new ArrayList<SeriesRollup>();
+				rollups.put(resolution, resolutionRollups);
+			}
+			return resolutionRollups;
+		}
+
+		@Override
+		public List<SeriesRollup> aggregateValues(long start, long end, int resolution) {
+			Map<Long, SeriesRollup> buckets = new HashMap<Long, SeriesRollup>();
+			for (double[] value : values) {
+				long time = (long) value[0];
+				if (time >= start && time < end) {
+					getBucket(buckets, SeriesRollup.getBucket(time, resolution)).add(value[1]);
+				}
+			}
+			return new ArrayList<SeriesRollup>(buckets.values());
+		}
+
+		@Override
+		public List<SeriesRollup> aggregateRollups(int sourceResolution, long start, long end, int resolution) {
+			Map<Long, SeriesRollup> buckets = new HashMap<Long, SeriesRollup>();
+			for (SeriesRollup rollup : getRollups(sourceResolution)) {
+				if (rollup.getBucket() >= start && rollup.getBucket() < end) {
+					getBucket(buckets, SeriesRollup.getBucket(rollup.getBucket(), resolution)).merge(rollup);
+				}
+			}
+			return new ArrayList<SeriesRollup>(buckets.values());
+		}
+
+		private static SeriesRollup getBucket(Map<Long, SeriesRollup> buckets, long bucket) {
+			SeriesRollup rollup = buckets.get(bucket);
+			if (rollup == null) {
+				rollup = new SeriesRollup(SERIES, bucket);
+				buckets.put(bucket, rollup);
+			}
+			return rollup;
+		}
+
+		@Override
+		public void replaceRollups(int resolution, long start, long end, List<SeriesRollup> newRollups) {
+			deleteRollups(resolution, start, end);
+			getRollups(resolution).addAll(newRollups);
+		}
+
+		private int deleteRollups(int resolution, long start, long end) {
+			int deleted = 0;
+			for (Iterator<SeriesRollup> iterator = getRollups(resolution).iterator(); iterator.hasNext();) {
+				long bucket = iterator.next().getBucket();
+				if (bucket >= start && bucket < end) {
+					iterator.remove();
+					deleted++;
+				}
+			}
+			return deleted;
+		}
+
+		@Override
+		public Long getLastBucket(int resolution) {
+			Long last = null;
+			for (SeriesRollup rollup : getRollups(resolution)) {
+				if (last == null || rollup.getBucket() > last) {
+					last = rollup.getBucket();
+				}
+			}
+			return last;
+		}
+
+		@Override
+		public Long getFirstBucket(int resolution) {
+			Long first = null;
+			for (SeriesRollup rollup : getRollups(resolution)) {
+				if (first == null || rollup.getBucket() < first) {
+					first = rollup.getBucket();
+				}
+			}
+			return first;
+		}
+
+		@Override
+		public Long getFirstValueTime() {
+			Long first = null;
+			for (double[] value : values) {
+				if (first == null || value[0] < first) {
+					first = (long) value[0];
+				}
+			}
+			return first;
+		}
+
+		@Override
+		public int deleteValuesBefore(long time) {
+			int deleted = 0;
+			for (Iterator<double[]> iterator = values.iterator(); iterator.hasNext();) {
+				if (iterator.next()[0] < time) {
+					iterator.remove();
+					deleted++;
+				}
+			}
+			return deleted;
+		}
+
+		@Override
+		public int deleteRollupsBefore(int resolution, long time) {
+			return deleteRollups(resolution, Long.MIN_VALUE, time);
+		}
+
+		@Override
+		public List<SeriesRollup> getRollups(int resolution, int seriesId, Date startTime, Date endTime) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<SeriesRollup> getResourceRollups(int resolution, int resourceId, Date startTime, Date endTime) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.db.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+
+public class WriteBehindStorageServiceTest {
+
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#TestCapability";
+	private static final String RESOURCE = "/resource";
+	private static final long TIMEOUT = 5000L;
+
+	private RecordingMeasurementValueDAO measurementValueDAO;
+	private WriteBehindStorageService storageService;
+
+	@Before
+	public void setUp() {
+		measurementValueDAO = new RecordingMeasurementValueDAO();
+		storageService = new WriteBehindStorageService();
+		storageService.setMeasurementValueDAO(measurementValueDAO);
+		storageService.setMetricValueDAO(new MetricValueDAO());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		measurementValueDAO.release();
+		storageService.destroy();
+	}
+
+	@Test
+	public void testWritesFullBatches() throws Exception {
+		storageService.setBatchSize(10);
+		storageService.setFlushIntervalMillis(60000L);
+		storageService.init();
+
+		store(0, 25);
+		waitForWritten(20);
+
+		assertEquals(2, measurementValueDAO.getBatchSizes().size());
+		assertEquals(Integer.valueOf(10), measurementValueDAO.getBatchSizes().get(0));
+		assertEquals(Integer.valueOf(10), measurementValueDAO.getBatchSizes().get(1));
+
+		storageService.destroy();
+		assertEquals(25, measurementValueDAO.getWritten().size());
+		assertEquals(0, storageService.getSynchronousCount());
+	}
+
+	@Test
+	public void testFlushesAfterInterval() throws Exception {
+		storageService.setBatchSize(1000);
+		storageService.setFlushIntervalMillis(50L);
+		storageService.init();
+
+		store(0, 3);
+		waitForWritten(3);
+
+		assertEquals(Collections.singletonList(3), measurementValueDAO.getBatchSizes());
+	}
+
+	@Test
+	public void testDestroyWritesAllStoredValues() throws Exception {
+		storageService.setBatchSize(100);
+		storageService.setFlushIntervalMillis(60000L);
+		storageService.init();
+
+		final int threads = 4;
+		final int valuesPerThread = 5000;
+		final CountDownLatch started = new CountDownLatch(threads);
+		List<Thread> producers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			final int first = i * valuesPerThread;
+			Thread producer = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					started.countDown();
+					store(first, valuesPerThread);
+				}
+			});
+			producer.start();
+			producers.add(producer);
+		}
+		started.await();
+		storageService.destroy();
+		for (Thread producer : producers) {
+			producer.join();
+		}
+
+		List<MeasurementValue> written = measurementValueDAO.getWritten();
+		assertEquals(threads * valuesPerThread, written.size());
+		boolean[] seen = new boolean[threads * valuesPerThread];
+		for (MeasurementValue value : written) {
+			seen[((Number) value.getValue()).intValue()] = true;
+		}
+		for (int i = 0; i < seen.length; i++) {
+			assertTrue("Value " + i + " lost", seen[i]);
+		}
+	}
+
+	@Test
+	public void testWritesSynchronouslyWhenQueueIsFull() throws Exception {
+		storageService.setQueueCapacity(1);
+		storageService.setBatchSize(1);
+		storageService.setOfferTimeoutMillis(1L);
+		measurementValueDAO.blockWriter();
+		storageService.init();
+
+		store(0, 1);
+		measurementValueDAO.awaitWriterBlocked();
+		// 1 fills the queue, 2 doesn't fit
+		store(1, 2);
+
+		assertEquals(1, storageService.getSynchronousCount());
+		assertEquals(1, measurementValueDAO.getWritten().size());
+		assertEquals(2, ((Number) measurementValueDAO.getWritten().get(0).getValue()).intValue());
+
+		measurementValueDAO.release();
+		storageService.destroy();
+		assertEquals(3, measurementValueDAO.getWritten().size());
+	}
+
+	private void store(int first, int count) {
+		for (int i = first; i < first + count; i++) {
+			storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(i), i);
+		}
+	}
+
+	private void waitForWritten(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (measurementValueDAO.getWritten().size() < count) {
+			assertTrue("Values not written in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static class RecordingMeasurementValueDAO extends MeasurementValueDAO {
+
+		private final List<MeasurementValue> written = new ArrayList<MeasurementValue>();
+		private final List<Integer> batchSizes = new ArrayList<Integer>();
+		private final CountDownLatch writerBlocked = new CountDownLatch(1);
+		private final CountDownLatch writerReleased = new CountDownLatch(1);
+		private final AtomicInteger blockedWrites = new AtomicInteger();
+
+		@Override
+		public void store(MeasurementValue information) {
+			storeAll(Collections.singletonList(information));
+		}
+
+		@Override
+		public void storeAll(List<MeasurementValue> informations) {
+			if (Thread.currentThread().getName().equals("SAMM-WriteBehind")
+					&& blockedWrites.getAndDecrement() > 0) {
+				writerBlocked.countDown();
+				try {
+					writerReleased.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			synchronized (this) {
+				written.addAll(informations);
+				batchSizes.add(informations.size());
+			}
+		}
+
+		public void blockWriter() {
+			blockedWrites.set(1);
+		}
+
+		public void awaitWriterBlocked() throws InterruptedException {
+			assertTrue(writerBlocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		}
+
+		public void release() {
+			writerReleased.countDown();
+		}
+
+		public synchronized List<MeasurementValue> getWritten() {
+			return new ArrayList<MeasurementValue>(written);
+		}
+
+		public synchronized List<Integer> getBatchSizes() {
+			return new ArrayList<Integer>(batchSizes);
+		}
+	}
+
+}
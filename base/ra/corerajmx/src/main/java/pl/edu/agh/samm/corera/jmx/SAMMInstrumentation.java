@@ -0,0 +1,135 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.corera.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.core.CircuitBreakerSnapshot;
+import pl.edu.agh.samm.api.core.ICoreInstrumentation;
+import pl.edu.agh.samm.api.core.LatencySnapshot;
+import pl.edu.agh.samm.api.core.ListenerQueueSnapshot;
+import pl.edu.agh.samm.api.core.RuleProfile;
+
+/**
+ * Publishes the core instrumentation next to {@link SAMMCoreManagement} -
+ * simply delegates all calls to passed instrumentation instance
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ * 
+ */
+public class SAMMInstrumentation implements SAMMInstrumentationMXBean {
+
+	public static final String OBJECT_NAME = "pl.edu.agh.samm:type=Instrumentation";
+	private Logger logger = LoggerFactory.getLogger(SAMMInstrumentation.class
+			.getName());
+
+	private ICoreInstrumentation instrumentation;
+	private ObjectName objectName;
+
+	public void init() throws Exception {
+		logger.info("Starting Instrumentation JMX...");
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		objectName = new ObjectName(OBJECT_NAME);
+		mBeanServer.registerMBean(this, objectName);
+		logger.info("Started Instrumentation JMX");
+	}
+
+	public void destroy() throws Exception {
+		logger.info("Stopping Instrumentation JMX...");
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		mBeanServer.unregisterMBean(objectName);
+		logger.info("Stopped Instrumentation JMX");
+	}
+
+	/**
+	 * @param instrumentation
+	 *            the instrumentation to set
+	 */
+	public void setInstrumentation(ICoreInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	public boolean isEnabled() {
+		return instrumentation.isEnabled();
+	}
+
+	public void setEnabled(boolean enabled) {
+		instrumentation.setEnabled(enabled);
+	}
+
+	public int getSampleInterval() {
+		return instrumentation.getSampleInterval();
+	}
+
+	public void setSampleInterval(int sampleInterval) {
+		instrumentation.setSampleInterval(sampleInterval);
+	}
+
+	public void reset() {
+		instrumentation.reset();
+	}
+
+	public LatencySnapshot getTaskPollLatency() {
+		return instrumentation.getTaskPollLatency();
+	}
+
+	public LatencySnapshot getGroupPollLatency() {
+		return instrumentation.getGroupPollLatency();
+	}
+
+	public LatencySnapshot getSchedulerLag() {
+		return instrumentation.getSchedulerLag();
+	}
+
+	public LatencySnapshot getListenerFanOutLatency() {
+		return instrumentation.getListenerFanOutLatency();
+	}
+
+	public LatencySnapshot getRuleProcessingLatency() {
+		return instrumentation.getRuleProcessingLatency();
+	}
+
+	public Map<String, LatencySnapshot> getAdapterCallLatencies() {
+		return instrumentation.getAdapterCallLatencies();
+	}
+
+	public Map<String, Long> getFailedReadsPerEndpoint() {
+		return instrumentation.getFailedReadsPerEndpoint();
+	}
+
+	public Map<String, RuleProfile> getRuleProfiles() {
+		return instrumentation.getRuleProfiles();
+	}
+
+	public Map<String, CircuitBreakerSnapshot> getCircuitBreakerStates() {
+		return instrumentation.getCircuitBreakerStates();
+	}
+
+	public Map<String, ListenerQueueSnapshot> getListenerQueues() {
+		return instrumentation.getListenerQueues();
+	}
+
+}
@@ -21,7 +21,9 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -43,6 +45,7 @@ import pl.edu.agh.samm.api.core.ResourceNotRegisteredException;
 import pl.edu.agh.samm.api.impl.StringHelper;
 import pl.edu.agh.samm.api.tadapter.AbstractTransportAdapter;
 import pl.edu.agh.samm.api.tadapter.ActionNotSupportedException;
+import pl.edu.agh.samm.api.tadapter.CapabilityReadResults;
 
 /**
  * Engine for the JMX client communication.
@@ -101,7 +104,7 @@ public class JMXTransportAdapterImpl extends AbstractTransportAdapter {
         String[] queryElements = query.split("\\|");
         ObjectName name = new ObjectName(queryElements[0]);
 
-        if (queryElements[1].contains("(") && queryElements[1].contains(")")) {
+        if (isOperationQuery(queryElements[1])) {
             // use invoke(...) rather than getAttribute(...)
             int lparenIdx = queryElements[1].indexOf('(');
             int rparenIdx = queryElements[1].indexOf(')', lparenIdx);
@@ -164,6 +167,10 @@ public class JMXTransportAdapterImpl extends AbstractTransportAdapter {
         return attributeValue;
     }
 
+    private boolean isOperationQuery(String queryElement) {
+        return queryElement.contains("(") && queryElement.contains(")");
+    }
+
     /**
      * Drills down through returned attributes from JMX system using more
      * specific query elements. For example if value returned from JMX is of
@@ -227,18 +234,10 @@ public class JMXTransportAdapterImpl extends AbstractTransportAdapter {
     @Override
     public Object getCapabilityValue(Resource resource, String capabilityType) throws Exception {
 
-        String capabilityName = StringHelper.getNameFromURI(capabilityType);
-
-        logger.info("Get capability value of instance: " + resource.getUri() + " type: " + resource.getType() + " name: " + capabilityName);
-
-        String lcType = StringHelper.getNameFromURI(resource.getType()).toLowerCase();
-        String query = getProperty(lcType + CAPABILITY_KEY_PART + capabilityName);
-
-        if (query == null) {
-            throw new RuntimeException("No query defined for: " + lcType + " " + capabilityName);
-        }
+        logger.info("Get capability value of instance: " + resource.getUri() + " type: " + resource.getType() + " name: " + StringHelper.getNameFromURI(capabilityType));
 
-        String prefixToRemove = getProperty(lcType + INSTANCE_NAME_PREFIX);
+        String query = getQueryForCapability(resource, capabilityType);
+        String prefixToRemove = getPrefixToRemove(resource);
 
         MBeanServerConnection connection = getConnectionForResource(resource);
         Object retVal = getAttribute(connection, query, resource.getUri(), prefixToRemove);
@@ -250,6 +249,149 @@ public class JMXTransportAdapterImpl extends AbstractTransportAdapter {
         return retVal;
     }
 
+    @Override
+    public Map<String, Object> getCapabilityValues(Resource resource, Collection<String> capabilityTypes) throws Exception {
+        Map<Resource, Collection<String>> reads = new HashMap<Resource, Collection<String>>();
+        reads.put(resource, capabilityTypes);
+        CapabilityReadResults results = getCapabilityValues(reads);
+        if (results.isFailed(resource)) {
+            throw results.getFailure(resource);
+        }
+        return results.getValues(resource);
+    }
+
+    /**
+     * Reads all requested attributes of a single MBean with one
+     * {@link MBeanServerConnection#getAttributes(ObjectName, String[])} call,
+     * also when they are requested for different resources sharing the
+     * connection. Operation invocations can't be batched and are executed one
+     * by one.
+     */
+    @Override
+    public CapabilityReadResults getCapabilityValues(Map<Resource, Collection<String>> capabilityTypes) {
+        logger.debug("Get capability values of: " + capabilityTypes.size() + " resources");
+
+        CapabilityReadResults results = new CapabilityReadResults();
+        // connection -> MBean -> attribute -> reads of this attribute
+        Map<MBeanServerConnection, Map<ObjectName, Map<String, List<AttributeRead>>>> attributeReads = new LinkedHashMap<MBeanServerConnection, Map<ObjectName, Map<String, List<AttributeRead>>>>();
+
+        for (Map.Entry<Resource, Collection<String>> resourceReads : capabilityTypes.entrySet()) {
+            Resource resource = resourceReads.getKey();
+            try {
+                MBeanServerConnection connection = getConnectionForResource(resource);
+                String prefixToRemove = getPrefixToRemove(resource);
+                for (String capabilityType : resourceReads.getValue()) {
+                    String query = getQueryForCapability(resource, capabilityType);
+                    String[] queryElements = query.split("\\|");
+                    if (isOperationQuery(queryElements[1])) {
+                        results.addValue(resource, capabilityType, getAttribute(connection, query, resource.getUri(), prefixToRemove));
+                    } else {
+                        addAttributeRead(attributeReads, connection, new ObjectName(queryElements[0]), queryElements[1],
+                                new AttributeRead(resource, capabilityType, query));
+                    }
+                }
+            } catch (Exception e) {
+                results.setFailure(resource, e);
+            }
+        }
+
+        for (Map.Entry<MBeanServerConnection, Map<ObjectName, Map<String, List<AttributeRead>>>> connectionReads : attributeReads.entrySet()) {
+            MBeanServerConnection connection = connectionReads.getKey();
+            for (Map.Entry<ObjectName, Map<String, List<AttributeRead>>> mbeanReads : connectionReads.getValue().entrySet()) {
+                readAttributes(connection, mbeanReads.getKey(), mbeanReads.getValue(), results);
+            }
+        }
+
+        for (Resource resource : capabilityTypes.keySet()) {
+            if (!results.isFailed(resource)) {
+                for (Map.Entry<String, Object> value : results.getValues(resource).entrySet()) {
+                    fireNewCapabilityValueEvent(value.getKey(), resource.getUri(), resource.getType(), value.getValue());
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private void addAttributeRead(Map<MBeanServerConnection, Map<ObjectName, Map<String, List<AttributeRead>>>> attributeReads,
+                                  MBeanServerConnection connection, ObjectName name, String attribute, AttributeRead read) {
+        Map<ObjectName, Map<String, List<AttributeRead>>> mbeans = attributeReads.get(connection);
+        if (mbeans == null) {
+            mbeans = new LinkedHashMap<ObjectName, Map<String, List<AttributeRead>>>();
+            attributeReads.put(connection, mbeans);
+        }
+        Map<String, List<AttributeRead>> attributes = mbeans.get(name);
+        if (attributes == null) {
+            attributes = new LinkedHashMap<String, List<AttributeRead>>();
+            mbeans.put(name, attributes);
+        }
+        List<AttributeRead> reads = attributes.get(attribute);
+        if (reads == null) {
+            reads = new ArrayList<AttributeRead>();
+            attributes.put(attribute, reads);
+        }
+        reads.add(read);
+    }
+
+    private void readAttributes(MBeanServerConnection connection, ObjectName name, Map<String, List<AttributeRead>> attributes,
+                                CapabilityReadResults results) {
+        try {
+            AttributeList attributeList = connection.getAttributes(name,
+                    attributes.keySet().toArray(new String[attributes.size()]));
+            for (Attribute attribute : attributeList.asList()) {
+                List<AttributeRead> reads = attributes.remove(attribute.getName());
+                if (reads != null) {
+                    for (AttributeRead read : reads) {
+                        results.addValue(read.resource, read.capabilityType, getScalarValue(attribute.getValue(), read.query, 2));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            for (List<AttributeRead> reads : attributes.values()) {
+                for (AttributeRead read : reads) {
+                    results.setFailure(read.resource, e);
+                }
+            }
+            return;
+        }
+        // getAttributes() silently skips attributes it couldn't read - read
+        // them separately to get the reason
+        for (List<AttributeRead> reads : attributes.values()) {
+            for (AttributeRead read : reads) {
+                try {
+                    results.addValue(read.resource, read.capabilityType, getAttribute(connection, read.query, read.resource.getUri()));
+                } catch (Exception e) {
+                    results.setFailure(read.resource, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resources sharing the JMX connection are served by the same endpoint.
+     */
+    @Override
+    public String getEndpointKey(Resource resource) {
+        Object transportUri = resource.getProperty(JMX_TRANSPORT_PROPERTY_KEY);
+        return transportUri == null ? super.getEndpointKey(resource) : transportUri.toString();
+    }
+
+    private String getQueryForCapability(Resource resource, String capabilityType) {
+        String capabilityName = StringHelper.getNameFromURI(capabilityType);
+        String lcType = StringHelper.getNameFromURI(resource.getType()).toLowerCase();
+        String query = getProperty(lcType + CAPABILITY_KEY_PART + capabilityName);
+
+        if (query == null) {
+            throw new RuntimeException("No query defined for: " + lcType + " " + capabilityName);
+        }
+        return query;
+    }
+
+    private String getPrefixToRemove(Resource resource) {
+        String lcType = StringHelper.getNameFromURI(resource.getType()).toLowerCase();
+        return getProperty(lcType + INSTANCE_NAME_PREFIX);
+    }
+
     @Override
     public String toString() {
         return "JMX Transport Adapter";
@@ -435,4 +577,16 @@ public class JMXTransportAdapterImpl extends AbstractTransportAdapter {
         return connections.containsKey(resource.getProperty(JMX_TRANSPORT_PROPERTY_KEY));
     }
 
+    private static class AttributeRead {
+        private final Resource resource;
+        private final String capabilityType;
+        private final String query;
+
+        public AttributeRead(Resource resource, String capabilityType, String query) {
+            this.resource = resource;
+            this.capabilityType = capabilityType;
+            this.query = query;
+        }
+    }
+
 }
@@ -0,0 +1,142 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.action.Action;
+import pl.edu.agh.samm.api.action.ActionExecution;
+
+/**
+ * Append-only file of executed actions. Actions are executed rarely, so all of
+ * them are kept in memory too and the file is read only when it's opened.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+final class ActionExecutionLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(ActionExecutionLog.class);
+
+	static final String LOG_FILE = "actions.log";
+
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private final File file;
+	private final Map<String, List<ActionExecution>> executions = new HashMap<String, List<ActionExecution>>();
+	private RandomAccessFile log;
+
+	ActionExecutionLog(File directory) {
+		this.file = new File(directory, LOG_FILE);
+	}
+
+	synchronized void open() throws IOException {
+		log = new RandomAccessFile(file, "rw");
+		long position = 0;
+		try {
+			while (position < log.length()) {
+				Action action = new Action();
+				action.setActionURI(log.readUTF());
+				Date start = readDate();
+				Date end = readDate();
+				int parameters = log.readInt();
+				Map<String, String> values = new LinkedHashMap<String, String>();
+				for (int i = 0; i < parameters; i++) {
+					values.put(log.readUTF(), log.readBoolean() ? log.readUTF() : null);
+				}
+				action.setParameterValues(values);
+				add(new ActionExecution(action, start, end));
+				position = log.getFilePointer();
+			}
+		} catch (EOFException e) {
+			logger.warn("Dropping the incomplete last record of the action log");
+			log.setLength(position);
+		}
+		log.seek(position);
+	}
+
+	private Date readDate() throws IOException {
+		long time = log.readLong();
+		return time == NO_DATE ? null : new Date(time);
+	}
+
+	synchronized void append(ActionExecution execution) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeUTF(execution.getAction().getActionURI());
+		writeDate(record, execution.getStartTime());
+		writeDate(record, execution.getEndTime());
+		Map<String, String> values = execution.getAction().getParameterValues();
+		if (values == null) {
+			record.writeInt(0);
+		} else {
+			record.writeInt(values.size());
+			for (Map.Entry<String, String> entry : values.entrySet()) {
+				record.writeUTF(entry.getKey());
+				record.writeBoolean(entry.getValue() != null);
+				if (entry.getValue() != null) {
+					record.writeUTF(entry.getValue());
+				}
+			}
+		}
+		log.write(bytes.toByteArray());
+		log.getFD().sync();
+		add(execution);
+	}
+
+	private static void writeDate(DataOutputStream record, Date date) throws IOException {
+		record.writeLong(date == null ? NO_DATE : date.getTime());
+	}
+
+	private void add(ActionExecution execution) {
+		String actionUri = execution.getAction().getActionURI();
+		List<ActionExecution> list = executions.get(actionUri);
+		if (list == null) {
+			list = new ArrayList<ActionExecution>();
+			executions.put(actionUri, list);
+		}
+		list.add(execution);
+	}
+
+	synchronized Map<String, List<ActionExecution>> getAll() {
+		Map<String, List<ActionExecution>> result = new HashMap<String, List<ActionExecution>>();
+		for (Map.Entry<String, List<ActionExecution>> entry : executions.entrySet()) {
+			result.put(entry.getKey(), new ArrayList<ActionExecution>(entry.getValue()));
+		}
+		return result;
+	}
+
+	synchronized void close() throws IOException {
+		log.close();
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads bits written by {@link BitOutput} straight from a buffer, without
+ * changing its position - any number of readers may share one buffer.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+final class BitInput {
+
+	private final ByteBuffer buffer;
+	private int position;
+	private long bits = 0;
+	// number of the lowest bits of 'bits' not read yet
+	private int available = 0;
+
+	BitInput(ByteBuffer buffer, int position) {
+		this.buffer = buffer;
+		this.position = position;
+	}
+
+	boolean readBit() {
+		if (available == 0) {
+			bits = buffer.get(position++) & 0xff;
+			available = 8;
+		}
+		available--;
+		return ((bits >>> available) & 1) != 0;
+	}
+
+	/**
+	 * @return the next <code>length</code> (up to 64) bits
+	 */
+	long read(int length) {
+		if (length <= available) {
+			available -= length;
+			return (bits >>> available) & mask(length);
+		}
+		long result = bits & mask(available);
+		int missing = length - available;
+		available = 0;
+		while (missing >= 8) {
+			result = (result << 8) | (buffer.get(position++) & 0xff);
+			missing -= 8;
+		}
+		if (missing > 0) {
+			bits = buffer.get(position++) & 0xff;
+			available = 8 - missing;
+			result = (result << missing) | (bits >>> available);
+		}
+		return result;
+	}
+
+	private static long mask(int length) {
+		return length == 64 ? -1L : (1L << length) - 1;
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.util.Arrays;
+
+/**
+ * Growing array of bits, written most significant bit first.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+final class BitOutput {
+
+	private byte[] bytes = new byte[4096];
+	private int size = 0;
+	private int current = 0;
+	private int used = 0;
+
+	void writeBit(boolean bit) {
+		current = (current << 1) | (bit ? 1 : 0);
+		if (++used == 8) {
+			flushByte();
+		}
+	}
+
+	/**
+	 * Writes the lowest <code>length</code> bits of the value.
+	 */
+	void write(long value, int length) {
+		while (length > 0) {
+			int take = Math.min(8 - used, length);
+			length -= take;
+			current = (current << take) | (int) ((value >>> length) & ((1 << take) - 1));
+			used += take;
+			if (used == 8) {
+				flushByte();
+			}
+		}
+	}
+
+	private void flushByte() {
+		if (size == bytes.length) {
+			bytes = Arrays.copyOf(bytes, size * 2);
+		}
+		bytes[size++] = (byte) current;
+		current = 0;
+		used = 0;
+	}
+
+	/**
+	 * Pads the last byte with zeros.
+	 */
+	void align() {
+		if (used > 0) {
+			write(0, 8 - used);
+		}
+	}
+
+	/**
+	 * @return number of complete bytes written
+	 */
+	int getSize() {
+		return size;
+	}
+
+	byte[] toByteArray() {
+		align();
+		return Arrays.copyOf(bytes, size);
+	}
+
+}
@@ -0,0 +1,224 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Closed {@link Segment}, rewritten with the {@link GorillaEncoder} in blocks
+ * of <code>BLOCK_SIZE</code> values. The header is followed by the index of
+ * the blocks - the time of the first value and the file offset of every block
+ * - and the encoded blocks. The index is kept in memory, the blocks are read
+ * from the file by the scans. A range scan of sorted values starts decoding
+ * from the last block which begins before the range.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+final class CompressedSegment implements ISegment {
+
+	static final int VERSION = 2;
+	static final int BLOCK_SIZE = 1024;
+
+	private static final int COUNT_OFFSET = 12;
+	private static final int MIN_TIME_OFFSET = 16;
+	private static final int MAX_TIME_OFFSET = 24;
+	private static final int FLAGS_OFFSET = 32;
+	private static final int BLOCKS_OFFSET = 36;
+	private static final int INDEX_ENTRY_SIZE = 12;
+
+	private final File file;
+	private final int count;
+	private final long minTime;
+	private final long maxTime;
+	private final boolean sorted;
+	private final int blocks;
+	private final long[] blockTimes;
+	private final int[] blockOffsets;
+
+	private CompressedSegment(File file, ByteBuffer header) {
+		this.file = file;
+		this.count = header.getInt(COUNT_OFFSET);
+		this.minTime = header.getLong(MIN_TIME_OFFSET);
+		this.maxTime = header.getLong(MAX_TIME_OFFSET);
+		this.sorted = (header.getInt(FLAGS_OFFSET) & Segment.FLAG_UNSORTED) == 0;
+		this.blocks = header.getInt(BLOCKS_OFFSET);
+		this.blockTimes = new long[Math.max(blocks, 0)];
+		this.blockOffsets = new int[Math.max(blocks, 0)];
+	}
+
+	/**
+	 * @param header
+	 *            the header of the file, with a valid magic number and version
+	 */
+	static CompressedSegment open(File file, ByteBuffer header) throws IOException {
+		CompressedSegment segment = new CompressedSegment(file, header);
+		int blocks = (segment.count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		if (segment.count < 0 || segment.blocks != blocks) {
+			throw new IOException(file + " is truncated");
+		}
+		ByteBuffer index = Segment.read(file, Segment.HEADER_SIZE, blocks * INDEX_ENTRY_SIZE);
+		if (index.limit() < blocks * INDEX_ENTRY_SIZE) {
+			throw new IOException(file + " is truncated");
+		}
+		for (int block = 0; block < blocks; block++) {
+			segment.blockTimes[block] = index.getLong(block * INDEX_ENTRY_SIZE);
+			segment.blockOffsets[block] = index.getInt(block * INDEX_ENTRY_SIZE + 8);
+		}
+		return segment;
+	}
+
+	/**
+	 * Encodes the values of the segment and replaces its file with the
+	 * compressed one. Readers of the segment are not affected.
+	 */
+	static CompressedSegment compress(Segment segment) throws IOException {
+		int count = segment.getCount();
+		int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int dataOffset = Segment.HEADER_SIZE + blocks * INDEX_ENTRY_SIZE;
+		GorillaEncoder encoder = new GorillaEncoder();
+		ByteBuffer header = ByteBuffer.allocate(dataOffset);
+		for (int block = 0; block < blocks; block++) {
+			int first = block * BLOCK_SIZE;
+			header.putLong(Segment.HEADER_SIZE + block * INDEX_ENTRY_SIZE, segment.getTime(first));
+			header.putInt(Segment.HEADER_SIZE + block * INDEX_ENTRY_SIZE + 8, dataOffset + encoder.getSize());
+			for (int i = first; i < Math.min(count, first + BLOCK_SIZE); i++) {
+				encoder.add(segment.getTime(i), segment.getValue(i));
+			}
+			encoder.finishBlock();
+		}
+		header.putInt(Segment.MAGIC_OFFSET, Segment.MAGIC);
+		header.putInt(Segment.VERSION_OFFSET, VERSION);
+		header.putInt(Segment.SERIES_ID_OFFSET, segment.getSeriesId());
+		header.putInt(COUNT_OFFSET, count);
+		header.putLong(MIN_TIME_OFFSET, segment.getMinTime());
+		header.putLong(MAX_TIME_OFFSET, segment.getMaxTime());
+		header.putInt(FLAGS_OFFSET, segment.isSorted() ? 0 : Segment.FLAG_UNSORTED);
+		header.putInt(BLOCKS_OFFSET, blocks);
+
+		File file = segment.getFile();
+		File tmp = new File(file.getPath() + Segment.TMP_SUFFIX);
+		FileOutputStream output = new FileOutputStream(tmp);
+		try {
+			output.write(header.array());
+			output.write(encoder.toByteArray());
+			output.getFD().sync();
+		} finally {
+			output.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return (CompressedSegment) Segment.open(file, false);
+	}
+
+	@Override
+	public void scan(long start, long end, ISeriesVisitor visitor) {
+		if (count == 0 || minTime > end || maxTime < start) {
+			return;
+		}
+		int first = sorted ? findBlock(start) : 0;
+		// only the blocks which may hold values of the range are read
+		int last = blocks;
+		while (sorted && last > first + 1 && blockTimes[last - 1] > end) {
+			last--;
+		}
+		int length = last == blocks ? Integer.MAX_VALUE : blockOffsets[last] - blockOffsets[first];
+		ByteBuffer data;
+		try {
+			data = Segment.read(file, blockOffsets[first], length);
+		} catch (FileNotFoundException e) {
+			// expired while the scan was starting
+			return;
+		} catch (IOException e) {
+			throw new TimeSeriesStoreException("Cannot read " + file, e);
+		}
+		for (int block = first; block < last; block++) {
+			if (sorted && blockTimes[block] > end) {
+				return;
+			}
+			GorillaDecoder decoder = new GorillaDecoder(data, blockOffsets[block] - blockOffsets[first]);
+			int blockCount = Math.min(BLOCK_SIZE, count - block * BLOCK_SIZE);
+			for (int i = 0; i < blockCount; i++) {
+				decoder.next();
+				long time = decoder.getTime();
+				if (time > end) {
+					if (sorted) {
+						return;
+					}
+				} else if (time >= start) {
+					visitor.visit(time, decoder.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the last block which starts before the given time, values equal
+	 *         to it may end the previous block
+	 */
+	private int findBlock(long time) {
+		int low = 0;
+		int high = blocks - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (blockTimes[middle] < time) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	@Override
+	public void force() {
+		// written and synced when compressed
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	@Override
+	public long getMinTime() {
+		return count == 0 ? Long.MAX_VALUE : minTime;
+	}
+
+	@Override
+	public long getMaxTime() {
+		return count == 0 ? Long.MIN_VALUE : maxTime;
+	}
+
+}
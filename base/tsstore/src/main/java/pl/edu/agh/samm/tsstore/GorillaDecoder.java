@@ -0,0 +1,98 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes one block written by {@link GorillaEncoder}, reading the bytes in
+ * place from the buffer, e.g. a memory-mapped file. The decoder doesn't know
+ * how many pairs the block has - the caller has to stop after the last one.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public final class GorillaDecoder {
+
+	private final BitInput input;
+
+	private boolean first = true;
+	private long time;
+	private long delta;
+	private long bits;
+	private int leading;
+	private int trailing;
+
+	/**
+	 * @param offset
+	 *            Position of the block in the buffer
+	 */
+	public GorillaDecoder(ByteBuffer buffer, int offset) {
+		this.input = new BitInput(buffer, offset);
+	}
+
+	/**
+	 * Decodes the next pair of the block.
+	 */
+	public void next() {
+		if (first) {
+			time = input.read(64);
+			bits = input.read(64);
+			first = false;
+			return;
+		}
+		delta += readDeltaOfDelta();
+		time += delta;
+		if (input.readBit()) {
+			if (input.readBit()) {
+				leading = (int) input.read(5);
+				int meaningful = (int) input.read(6) + 1;
+				trailing = 64 - leading - meaningful;
+			}
+			bits ^= input.read(64 - leading - trailing) << trailing;
+		}
+	}
+
+	private long readDeltaOfDelta() {
+		if (!input.readBit()) {
+			return 0;
+		}
+		if (!input.readBit()) {
+			return input.read(7) - 63;
+		}
+		if (!input.readBit()) {
+			return input.read(9) - 255;
+		}
+		if (!input.readBit()) {
+			return input.read(12) - 2047;
+		}
+		if (!input.readBit()) {
+			return (int) input.read(32);
+		}
+		return input.read(64);
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public double getValue() {
+		return Double.longBitsToDouble(bits);
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+/**
+ * Compresses (timestamp, value) pairs as in Facebook's Gorilla: timestamps as
+ * delta-of-deltas in variable length buckets and values XOR-ed with the
+ * previous value, storing only the meaningful bits of the result. Slowly
+ * changing gauges sampled at a fixed interval take a few bits per pair instead
+ * of 16 bytes.<br>
+ * Pairs are encoded in blocks. Every block starts on a byte boundary with its
+ * first pair written in full, so a block can be decoded on its own by a
+ * {@link GorillaDecoder}.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public final class GorillaEncoder {
+
+	private final BitOutput output = new BitOutput();
+
+	private boolean first = true;
+	private long previousTime;
+	private long previousDelta;
+	private long previousBits;
+	private int previousLeading;
+	private int previousTrailing;
+
+	public void add(long time, double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		if (first) {
+			output.write(time, 64);
+			output.write(bits, 64);
+			first = false;
+			previousDelta = 0;
+			previousLeading = -1;
+		} else {
+			long delta = time - previousTime;
+			writeDeltaOfDelta(delta - previousDelta);
+			writeXor(bits ^ previousBits);
+			previousDelta = delta;
+		}
+		previousTime = time;
+		previousBits = bits;
+	}
+
+	private void writeDeltaOfDelta(long deltaOfDelta) {
+		if (deltaOfDelta == 0) {
+			output.writeBit(false);
+		} else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+			output.write(0x2, 2);
+			output.write(deltaOfDelta + 63, 7);
+		} else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+			output.write(0x6, 3);
+			output.write(deltaOfDelta + 255, 9);
+		} else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+			output.write(0xe, 4);
+			output.write(deltaOfDelta + 2047, 12);
+		} else if (deltaOfDelta >= Integer.MIN_VALUE && deltaOfDelta <= Integer.MAX_VALUE) {
+			output.write(0x1e, 5);
+			output.write(deltaOfDelta, 32);
+		} else {
+			output.write(0x1f, 5);
+			output.write(deltaOfDelta, 64);
+		}
+	}
+
+	private void writeXor(long xor) {
+		if (xor == 0) {
+			output.writeBit(false);
+			return;
+		}
+		output.writeBit(true);
+		int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		int trailing = Long.numberOfTrailingZeros(xor);
+		if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+			// fits in the meaningful bits of the previous value
+			output.writeBit(false);
+			output.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+		} else {
+			int meaningful = 64 - leading - trailing;
+			output.writeBit(true);
+			output.write(leading, 5);
+			output.write(meaningful - 1, 6);
+			output.write(xor >>> trailing, meaningful);
+			previousLeading = leading;
+			previousTrailing = trailing;
+		}
+	}
+
+	/**
+	 * Ends the current block, the next pair starts a new one.
+	 */
+	public void finishBlock() {
+		output.align();
+		first = true;
+	}
+
+	/**
+	 * @return offset of the next block in the encoded bytes
+	 */
+	public int getSize() {
+		return output.getSize();
+	}
+
+	/**
+	 * @return the encoded bytes of all finished blocks
+	 */
+	public byte[] toByteArray() {
+		return output.toByteArray();
+	}
+
+}
@@ -0,0 +1,54 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.io.File;
+
+/**
+ * Values of a series stored in one file.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+interface ISegment {
+
+	/**
+	 * Visits the values between start and end (inclusive) in the order they
+	 * were appended.
+	 */
+	void scan(long start, long end, ISeriesVisitor visitor);
+
+	/**
+	 * Writes the committed values to the disk.
+	 */
+	void force();
+
+	File getFile();
+
+	int getCount();
+
+	/**
+	 * @return true if the values were appended in time order
+	 */
+	boolean isSorted();
+
+	long getMinTime();
+
+	long getMaxTime();
+
+}
@@ -0,0 +1,407 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * One memory-mapped, append-only file with up to <code>capacity</code> values
+ * of a single series, stored in two columns: the timestamps, as int
+ * millisecond deltas from the base time of the segment, followed by the values,
+ * as doubles. The header keeps the number of committed values, which is
+ * written after the value itself - a crashed process leaves at most an
+ * uncommitted tail, which is ignored when the file is opened again.<br>
+ * Values are appended by one thread at a time. Readers don't lock: they see
+ * every value committed before they read the count and read the columns
+ * straight from the mapped file. Only the last segment of a series is mapped -
+ * a closed one is read from its file on every scan, so that a long history
+ * doesn't hold a mapping per file: the time column first, then only the values
+ * in the scanned range. A closed segment is usually replaced by its
+ * {@link CompressedSegment}.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+final class Segment implements ISegment {
+
+	static final int HEADER_SIZE = 64;
+	static final String TMP_SUFFIX = ".tmp";
+
+	static final int MAGIC = 0x53414d53;
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 4;
+	static final int SERIES_ID_OFFSET = 8;
+	static final int FLAG_UNSORTED = 1;
+
+	private static final int VERSION = 1;
+	private static final int CAPACITY_OFFSET = 12;
+	private static final int BASE_TIME_OFFSET = 16;
+	private static final int COUNT_OFFSET = 24;
+	private static final int FLAGS_OFFSET = 28;
+
+	private final File file;
+	// null if the segment is closed
+	private final MappedByteBuffer buffer;
+	private final int seriesId;
+	private final int capacity;
+	private final long baseTime;
+	private final int valuesOffset;
+
+	private volatile int count;
+	private volatile boolean sorted;
+	private volatile long minTime;
+	private volatile long maxTime;
+
+	private Segment(File file, MappedByteBuffer buffer, int seriesId, int capacity, long baseTime) {
+		this.file = file;
+		this.buffer = buffer;
+		this.seriesId = seriesId;
+		this.capacity = capacity;
+		this.baseTime = baseTime;
+		this.valuesOffset = getValuesOffset(capacity);
+	}
+
+	static Segment create(File file, int seriesId, int capacity, long baseTime) throws IOException {
+		MappedByteBuffer buffer = map(file, getFileSize(capacity), true);
+		buffer.putInt(MAGIC_OFFSET, MAGIC);
+		buffer.putInt(VERSION_OFFSET, VERSION);
+		buffer.putInt(SERIES_ID_OFFSET, seriesId);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putLong(BASE_TIME_OFFSET, baseTime);
+		buffer.putInt(COUNT_OFFSET, 0);
+		buffer.putInt(FLAGS_OFFSET, 0);
+		Segment segment = new Segment(file, buffer, seriesId, capacity, baseTime);
+		segment.sorted = true;
+		return segment;
+	}
+
+	/**
+	 * @param last
+	 *            Whether the segment is the last one of its series and takes
+	 *            new values, so it's mapped
+	 * @return the segment, or its {@link CompressedSegment} if it was closed
+	 */
+	static ISegment open(File file, boolean last) throws IOException {
+		ByteBuffer header = read(file, 0, HEADER_SIZE);
+		if (header.limit() < HEADER_SIZE || header.getInt(MAGIC_OFFSET) != MAGIC) {
+			throw new IOException(file + " is not a segment file");
+		}
+		int version = header.getInt(VERSION_OFFSET);
+		if (version == CompressedSegment.VERSION) {
+			return CompressedSegment.open(file, header);
+		}
+		if (version != VERSION) {
+			throw new IOException(file + " has unknown version " + version);
+		}
+		int capacity = header.getInt(CAPACITY_OFFSET);
+		if (capacity < 0 || file.length() < getFileSize(capacity)) {
+			throw new IOException(file + " is truncated");
+		}
+		int count = Math.min(Math.max(header.getInt(COUNT_OFFSET), 0), capacity);
+		MappedByteBuffer buffer = last ? map(file, -1, false) : null;
+		// the time column, to find the time range of the values
+		ByteBuffer data = last ? buffer : read(file, 0, HEADER_SIZE + count * 4);
+		Segment segment = new Segment(file, buffer, header.getInt(SERIES_ID_OFFSET), capacity,
+				header.getLong(BASE_TIME_OFFSET));
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		boolean sorted = true;
+		for (int i = 0; i < count; i++) {
+			long time = segment.getTime(data, i);
+			sorted &= time >= max;
+			min = Math.min(min, time);
+			max = Math.max(max, time);
+		}
+		segment.minTime = min;
+		segment.maxTime = max;
+		segment.sorted = sorted;
+		segment.count = count;
+		return segment;
+	}
+
+	/**
+	 * Reads up to <code>length</code> bytes of the file, starting at the
+	 * position, to a heap buffer. The limit of the buffer is the number of
+	 * bytes read.
+	 */
+	static ByteBuffer read(File file, long position, int length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return read(raf.getChannel(), position, length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate((int) Math.max(0L, Math.min(length, channel.size() - position)));
+		while (data.hasRemaining()) {
+			if (channel.read(data, position + data.position()) < 0) {
+				break;
+			}
+		}
+		data.flip();
+		return data;
+	}
+
+	private static MappedByteBuffer map(File file, long size, boolean create) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (create) {
+				raf.setLength(size);
+			}
+			// the mapping stays valid after the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static int getValuesOffset(int capacity) {
+		return HEADER_SIZE + ((capacity * 4 + 7) & ~7);
+	}
+
+	static long getFileSize(int capacity) {
+		return getValuesOffset(capacity) + capacity * 8L;
+	}
+
+	/**
+	 * Appends the value and commits it.
+	 * 
+	 * @return false if the segment is full or the time is too far from its
+	 *         base time
+	 */
+	boolean append(long time, double value) {
+		int n = count;
+		long delta = time - baseTime;
+		if (n == capacity || delta < Integer.MIN_VALUE || delta > Integer.MAX_VALUE) {
+			return false;
+		}
+		buffer.putInt(HEADER_SIZE + n * 4, (int) delta);
+		buffer.putDouble(valuesOffset + n * 8, value);
+		if (n == 0) {
+			minTime = time;
+			maxTime = time;
+		} else if (time < maxTime) {
+			sorted = false;
+			buffer.putInt(FLAGS_OFFSET, FLAG_UNSORTED);
+			minTime = Math.min(minTime, time);
+		} else {
+			maxTime = time;
+		}
+		buffer.putInt(COUNT_OFFSET, n + 1);
+		count = n + 1;
+		return true;
+	}
+
+	@Override
+	public void scan(long start, long end, ISeriesVisitor visitor) {
+		int n = count;
+		if (n == 0 || minTime > end || maxTime < start) {
+			return;
+		}
+		ByteBuffer data = buffer;
+		if (data == null) {
+			scanClosed(start, end, n, visitor);
+			return;
+		}
+		int i = sorted ? findFirst(data, start, n) : 0;
+		for (; i < n; i++) {
+			long time = getTime(data, i);
+			if (time > end) {
+				if (sorted) {
+					break;
+				}
+			} else if (time >= start) {
+				visitor.visit(time, getValue(data, i));
+			}
+		}
+	}
+
+	/**
+	 * Reads the time column of the closed segment, finds the values in the
+	 * range and reads only them.
+	 */
+	private void scanClosed(long start, long end, int n, ISeriesVisitor visitor) {
+		ByteBuffer times;
+		ByteBuffer values;
+		int first = -1;
+		int last = -1;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				// with the header, so that the offsets are the same as in the file
+				times = read(channel, 0, HEADER_SIZE + n * 4);
+				n = Math.min(n, (times.limit() - HEADER_SIZE) / 4);
+				for (int i = sorted ? findFirst(times, start, n) : 0; i < n; i++) {
+					long time = getTime(times, i);
+					if (time > end) {
+						if (sorted) {
+							break;
+						}
+					} else if (time >= start) {
+						if (first < 0) {
+							first = i;
+						}
+						last = i;
+					}
+				}
+				if (first < 0) {
+					return;
+				}
+				values = read(channel, valuesOffset + first * 8L, (last - first + 1) * 8);
+			} finally {
+				raf.close();
+			}
+		} catch (FileNotFoundException e) {
+			// expired while the scan was starting
+			return;
+		} catch (IOException e) {
+			throw new TimeSeriesStoreException("Cannot read " + file, e);
+		}
+		last = Math.min(last, first + values.limit() / 8 - 1);
+		for (int i = first; i <= last; i++) {
+			long time = getTime(times, i);
+			if (time >= start && time <= end) {
+				visitor.visit(time, values.getDouble((i - first) * 8));
+			}
+		}
+	}
+
+	/**
+	 * @return index of the first value not older than the given time
+	 */
+	private int findFirst(ByteBuffer data, long time, int n) {
+		int low = 0;
+		int high = n;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getTime(data, middle) < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	long getTime(int index) {
+		return getTime(buffer, index);
+	}
+
+	double getValue(int index) {
+		return getValue(buffer, index);
+	}
+
+	private long getTime(ByteBuffer data, int index) {
+		return baseTime + data.getInt(HEADER_SIZE + index * 4);
+	}
+
+	private double getValue(ByteBuffer data, int index) {
+		return data.getDouble(valuesOffset + index * 8);
+	}
+
+	/**
+	 * Rewrites a partially filled segment to a file which holds only its
+	 * values. The copy replaces the original atomically, readers of this
+	 * instance are not affected.
+	 * 
+	 * @return the compacted segment, which is full and closed
+	 */
+	Segment compact() throws IOException {
+		int n = count;
+		if (n == capacity) {
+			buffer.force();
+			return (Segment) open(file, false);
+		}
+		File tmp = new File(file.getPath() + TMP_SUFFIX);
+		Segment copy = create(tmp, seriesId, n, baseTime);
+		ByteBuffer times = buffer.duplicate();
+		times.position(HEADER_SIZE).limit(HEADER_SIZE + n * 4);
+		ByteBuffer target = copy.buffer.duplicate();
+		target.position(HEADER_SIZE);
+		target.put(times);
+		ByteBuffer values = buffer.duplicate();
+		values.position(valuesOffset).limit(valuesOffset + n * 8);
+		target.position(copy.valuesOffset);
+		target.put(values);
+		copy.buffer.putInt(FLAGS_OFFSET, buffer.getInt(FLAGS_OFFSET));
+		copy.buffer.putInt(COUNT_OFFSET, n);
+		copy.buffer.force();
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return (Segment) open(file, false);
+	}
+
+	@Override
+	public void force() {
+		if (buffer != null) {
+			buffer.force();
+		}
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	int getSeriesId() {
+		return seriesId;
+	}
+
+	@Override
+	public int getCount() {
+		return count;
+	}
+
+	boolean isFull() {
+		return count == capacity;
+	}
+
+	/**
+	 * @return true if the segment takes no more values and isn't mapped
+	 */
+	boolean isClosed() {
+		return buffer == null;
+	}
+
+	@Override
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	@Override
+	public long getMinTime() {
+		return count == 0 ? Long.MAX_VALUE : minTime;
+	}
+
+	@Override
+	public long getMaxTime() {
+		return count == 0 ? Long.MIN_VALUE : maxTime;
+	}
+
+}
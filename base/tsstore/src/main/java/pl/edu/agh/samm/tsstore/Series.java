@@ -0,0 +1,323 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Values of one metric or capability of one resource, kept in a list of
+ * segments in the order they were created. Values are appended to the last
+ * {@link Segment}, which is closed - compressed or compacted - when it can't
+ * take more, and continued after a restart. The oldest segments are deleted
+ * when they expire. The time ranges of the segments form a sparse index of the
+ * series - a range scan skips the segments which don't overlap the range and
+ * binary searches the first one that does.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+final class Series {
+
+	static final byte METRIC = 1;
+	static final byte MEASUREMENT = 2;
+
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	private final int id;
+	private final byte kind;
+	private final String uri;
+	private final String resourceUri;
+	private final File directory;
+	private final int segmentCapacity;
+	private final boolean compress;
+
+	// replaced on every change, so that readers don't have to lock
+	private volatile ISegment[] segments = new ISegment[0];
+	private int nextSequence = 0;
+	private int firstUnforced = 0;
+
+	Series(int id, byte kind, String uri, String resourceUri, File directory, int segmentCapacity,
+			boolean compress) {
+		this.id = id;
+		this.kind = kind;
+		this.uri = uri;
+		this.resourceUri = resourceUri;
+		this.directory = directory;
+		this.segmentCapacity = segmentCapacity;
+		this.compress = compress;
+	}
+
+	static String getSegmentFileName(int seriesId, int sequence) {
+		return String.format("%d-%08d%s", seriesId, sequence, SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * @return series id and sequence number of a segment file or null if the
+	 *         name isn't a segment file name
+	 */
+	static int[] parseSegmentFileName(String name) {
+		int dash = name.indexOf('-');
+		if (dash <= 0 || !name.endsWith(SEGMENT_SUFFIX)) {
+			return null;
+		}
+		try {
+			return new int[] { Integer.parseInt(name.substring(0, dash)),
+					Integer.parseInt(name.substring(dash + 1, name.length() - SEGMENT_SUFFIX.length())) };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Adds a segment read from the disk. Segments have to be opened in the
+	 * order of their sequence numbers and can't be empty.
+	 */
+	synchronized void openSegment(int sequence, ISegment segment) {
+		segments = append(segments, segment);
+		nextSequence = sequence + 1;
+	}
+
+	synchronized void append(long time, double value) throws IOException {
+		ISegment[] current = segments;
+		ISegment last = current.length == 0 ? null : current[current.length - 1];
+		if (isOpen(last)) {
+			if (((Segment) last).append(time, value)) {
+				return;
+			}
+			// full or the time is too far from its base time
+			current = current.clone();
+			current[current.length - 1] = close((Segment) last);
+		}
+		Segment segment = Segment.create(new File(directory, getSegmentFileName(id, nextSequence++)), id,
+				segmentCapacity, time);
+		segment.append(time, value);
+		segments = append(current, segment);
+	}
+
+	private ISegment close(Segment segment) throws IOException {
+		if (compress) {
+			return CompressedSegment.compress(segment);
+		}
+		return segment.compact();
+	}
+
+	private static boolean isOpen(ISegment segment) {
+		return segment instanceof Segment && !((Segment) segment).isClosed();
+	}
+
+	private static ISegment[] append(ISegment[] segments, ISegment segment) {
+		ISegment[] result = Arrays.copyOf(segments, segments.length + 1);
+		result[segments.length] = segment;
+		return result;
+	}
+
+	/**
+	 * Visits the values between start and end (inclusive) in time order.
+	 */
+	void scan(long start, long end, ISeriesVisitor visitor) {
+		ISegment[] current = segments;
+		if (isOrdered(current)) {
+			for (int i = findFirst(current, start); i < current.length; i++) {
+				if (current[i].getMinTime() > end) {
+					break;
+				}
+				current[i].scan(start, end, visitor);
+			}
+		} else {
+			SortingVisitor sorting = new SortingVisitor();
+			for (ISegment segment : current) {
+				segment.scan(start, end, sorting);
+			}
+			sorting.replay(visitor);
+		}
+	}
+
+	/**
+	 * @return true if the values of the segments are sorted and the segments
+	 *         don't overlap
+	 */
+	private static boolean isOrdered(ISegment[] segments) {
+		long last = Long.MIN_VALUE;
+		for (ISegment segment : segments) {
+			if (!segment.isSorted() || segment.getMinTime() < last) {
+				return false;
+			}
+			last = segment.getMaxTime();
+		}
+		return true;
+	}
+
+	/**
+	 * @return index of the first of the ordered segments which ends after the
+	 *         given time
+	 */
+	private static int findFirst(ISegment[] segments, long time) {
+		int low = 0;
+		int high = segments.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (segments[middle].getMaxTime() < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Writes the values committed since the last call to the disk.
+	 */
+	void force() {
+		ISegment[] current;
+		int first;
+		synchronized (this) {
+			current = segments;
+			first = firstUnforced;
+		}
+		for (int i = first; i < current.length; i++) {
+			current[i].force();
+		}
+		synchronized (this) {
+			// the last segment may still get new values
+			firstUnforced = Math.max(firstUnforced, current.length - 1);
+		}
+	}
+
+	/**
+	 * Writes the values to the disk and closes the last segment if it's full.
+	 * A partially filled one is continued when the store is opened again.
+	 */
+	synchronized void close() throws IOException {
+		force();
+		ISegment[] current = segments;
+		if (current.length == 0 || !isOpen(current[current.length - 1])
+				|| !((Segment) current[current.length - 1]).isFull()) {
+			return;
+		}
+		current = current.clone();
+		current[current.length - 1] = close((Segment) current[current.length - 1]);
+		segments = current;
+		firstUnforced = current.length;
+	}
+
+	/**
+	 * Deletes the oldest closed segments, which have no values newer than the
+	 * given time.
+	 * 
+	 * @return number of deleted segments
+	 */
+	synchronized int expire(long time) throws IOException {
+		ISegment[] current = segments;
+		int expired = 0;
+		while (expired < current.length && !isOpen(current[expired])
+				&& current[expired].getMaxTime() < time) {
+			expired++;
+		}
+		if (expired == 0) {
+			return 0;
+		}
+		// scans which have already read the array skip the deleted files
+		segments = Arrays.copyOfRange(current, expired, current.length);
+		firstUnforced = Math.max(0, firstUnforced - expired);
+		for (int i = 0; i < expired; i++) {
+			File file = current[i].getFile();
+			if (!file.delete()) {
+				throw new IOException("Cannot delete " + file);
+			}
+		}
+		return expired;
+	}
+
+	long getValueCount() {
+		long count = 0;
+		for (ISegment segment : segments) {
+			count += segment.getCount();
+		}
+		return count;
+	}
+
+	long getSizeOnDisk() {
+		long size = 0;
+		for (ISegment segment : segments) {
+			size += segment.getFile().length();
+		}
+		return size;
+	}
+
+	int getId() {
+		return id;
+	}
+
+	byte getKind() {
+		return kind;
+	}
+
+	String getUri() {
+		return uri;
+	}
+
+	String getResourceUri() {
+		return resourceUri;
+	}
+
+	/**
+	 * Collects values read from segments appended out of time order, to visit
+	 * them sorted.
+	 */
+	private static class SortingVisitor implements ISeriesVisitor {
+
+		private long[] times = new long[64];
+		private double[] values = new double[64];
+		private int size = 0;
+
+		@Override
+		public void visit(long timestamp, double value) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			times[size] = timestamp;
+			values[size] = value;
+			size++;
+		}
+
+		void replay(ISeriesVisitor visitor) {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			// stable, so values with equal timestamps keep the append order
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer first, Integer second) {
+					long a = times[first];
+					long b = times[second];
+					return a < b ? -1 : (a == b ? 0 : 1);
+				}
+			});
+			for (Integer i : order) {
+				visitor.visit(times[i], values[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,514 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.edu.agh.samm.api.action.Action;
+import pl.edu.agh.samm.api.action.ActionExecution;
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+import pl.edu.agh.samm.api.db.IStorageService;
+import pl.edu.agh.samm.api.metrics.IMetric;
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+import pl.edu.agh.samm.api.metrics.Metric;
+
+/**
+ * {@link IStorageService} keeping metric values and measurements in an
+ * embedded store of memory-mapped, append-only column files - one set of
+ * segment files per series - instead of a database. Storing a value costs two
+ * writes to the mapped memory on the calling thread and range scans read the
+ * columns in place.<br>
+ * A value is committed as soon as it's stored, so it survives a crash of the
+ * process. The mapped files are written to the disk every
+ * <code>syncIntervalMillis</code>, which bounds the loss on a crash of the
+ * machine. Full segments are closed - compressed with the
+ * {@link GorillaEncoder} and decoded on the fly by the scans - and the last,
+ * partially filled segment of a series is continued after a restart. Closed
+ * segments older than <code>retentionMillis</code> are deleted. Measurements
+ * which aren't numbers are not stored.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+public class TimeSeriesStorageService implements IStorageService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStorageService.class);
+
+	public static final int DEFAULT_SEGMENT_CAPACITY = 65536;
+	private static final long EXPIRY_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private File dataDirectory = new File("tsstore");
+	private int segmentCapacity = DEFAULT_SEGMENT_CAPACITY;
+	private long syncIntervalMillis = 1000L;
+	private long streamWindowMillis = TimeUnit.HOURS.toMillis(1);
+	private boolean compressClosedSegments = true;
+	private long retentionMillis = 0L;
+
+	private TimeSeriesStore store = null;
+	private ActionExecutionLog actionLog = null;
+	private ScheduledExecutorService maintenanceExecutor = null;
+
+	public void setDataDirectory(String dataDirectory) {
+		this.dataDirectory = new File(dataDirectory);
+	}
+
+	/**
+	 * @param segmentCapacity
+	 *            Number of values in one segment file of a series
+	 */
+	public void setSegmentCapacity(int segmentCapacity) {
+		this.segmentCapacity = segmentCapacity;
+	}
+
+	/**
+	 * @param syncIntervalMillis
+	 *            How often the stored values are written to the disk, 0 leaves
+	 *            it to the operating system
+	 */
+	public void setSyncIntervalMillis(long syncIntervalMillis) {
+		this.syncIntervalMillis = syncIntervalMillis;
+	}
+
+	/**
+	 * @param streamWindowMillis
+	 *            Length of the periods in which
+	 *            {@link #streamHistory(Date, Date, IHistoryRecordHandler)}
+	 *            sorts the values of all series in memory
+	 */
+	public void setStreamWindowMillis(long streamWindowMillis) {
+		this.streamWindowMillis = streamWindowMillis;
+	}
+
+	/**
+	 * @param compressClosedSegments
+	 *            false leaves the closed segments uncompressed, trading disk
+	 *            space for the cost of decoding
+	 */
+	public void setCompressClosedSegments(boolean compressClosedSegments) {
+		this.compressClosedSegments = compressClosedSegments;
+	}
+
+	/**
+	 * @param retentionMillis
+	 *            How long the values are kept, 0 keeps them forever. Values are
+	 *            deleted with their segments, so a segment is kept until its
+	 *            newest value expires
+	 */
+	public void setRetentionMillis(long retentionMillis) {
+		this.retentionMillis = retentionMillis;
+	}
+
+	public synchronized void init() throws IOException {
+		store = new TimeSeriesStore(dataDirectory, segmentCapacity, compressClosedSegments);
+		store.open();
+		actionLog = new ActionExecutionLog(dataDirectory);
+		actionLog.open();
+		if (syncIntervalMillis > 0 || retentionMillis > 0) {
+			maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SAMM-TimeSeriesMaintenance");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		if (retentionMillis > 0) {
+			maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						expire();
+					} catch (RuntimeException e) {
+						logger.error("Cannot delete expired values of the time series store", e);
+					}
+				}
+			}, 0, EXPIRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		if (syncIntervalMillis > 0) {
+			maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						store.force();
+					} catch (RuntimeException e) {
+						logger.error("Cannot write the time series store to the disk", e);
+					}
+				}
+			}, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public synchronized void destroy() throws IOException, InterruptedException {
+		if (maintenanceExecutor != null) {
+			maintenanceExecutor.shutdown();
+			maintenanceExecutor.awaitTermination(30, TimeUnit.SECONDS);
+			maintenanceExecutor = null;
+		}
+		if (store != null) {
+			store.close();
+			actionLog.close();
+			store = null;
+			actionLog = null;
+		}
+	}
+
+	@Override
+	public void storeActionExecution(Action executedAction, Date startDate, Date endDate) {
+		try {
+			actionLog.append(new ActionExecution(executedAction, startDate, endDate));
+		} catch (IOException e) {
+			throw new TimeSeriesStoreException("Cannot store execution of " + executedAction, e);
+		}
+	}
+
+	@Override
+	public void storeMetricValue(IMetric metric, Number value) {
+		append(Series.METRIC, metric.getMetricURI(), metric.getResourceURI(), System.currentTimeMillis(),
+				value.doubleValue());
+	}
+
+	@Override
+	public void storeMeasurement(String instanceURI, String capabilityURI, Date timestamp, Object value) {
+		double number;
+		if (value instanceof Number) {
+			number = ((Number) value).doubleValue();
+		} else {
+			try {
+				number = Double.parseDouble(String.valueOf(value));
+			} catch (NumberFormatException e) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Not storing non-numeric value of " + capabilityURI + " of " + instanceURI);
+				}
+				return;
+			}
+		}
+		append(Series.MEASUREMENT, capabilityURI, instanceURI, timestamp.getTime(), number);
+	}
+
+	private void append(byte kind, String uri, String resourceUri, long time, double value) {
+		try {
+			store.getSeries(kind, uri, resourceUri).append(time, value);
+		} catch (IOException e) {
+			throw new TimeSeriesStoreException("Cannot store a value of " + uri + " of " + resourceUri, e);
+		}
+	}
+
+	@Override
+	public List<MeasurementValue> getHistoricalMeasurementValues(String instanceUri, Date startTime,
+			Date endTime) {
+		List<MeasurementValue> values = new ArrayList<MeasurementValue>();
+		for (Series series : store.getResourceMeasurements(instanceUri)) {
+			series.scan(startTime.getTime(), endTime.getTime(), new MeasurementCollector(series, values));
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, List<ActionExecution>> getAllActionExecutions() {
+		return actionLog.getAll();
+	}
+
+	@Override
+	public Set<String> getKnownResources(Date actionStartTime, Date consequenceStartTime, long windowWidth) {
+		long preActionStartTime = actionStartTime.getTime() - windowWidth * 1000;
+		long consEndTime = consequenceStartTime.getTime() + windowWidth * 1000;
+		Set<String> resources = new HashSet<String>();
+		for (String resource : store.getMeasuredResources()) {
+			if (hasMeasurements(resource, preActionStartTime, actionStartTime.getTime())
+					&& hasMeasurements(resource, consequenceStartTime.getTime(), consEndTime)) {
+				resources.add(resource);
+			}
+		}
+		return resources;
+	}
+
+	private boolean hasMeasurements(String resource, long start, long end) {
+		for (Series series : store.getResourceMeasurements(resource)) {
+			Average average = new Average();
+			series.scan(start, end, average);
+			if (average.count > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Set<String> getAllKnownResources() {
+		Set<String> resources = new HashSet<String>();
+		for (String resource : store.getMeasuredResources()) {
+			resources.add(resource);
+		}
+		return resources;
+	}
+
+	@Override
+	public Map<String, Number> getAverageMeasurementValue(String resource, Date beforeActionStartTime,
+			Date actionStartTime) {
+		Map<String, Number> averages = new HashMap<String, Number>();
+		for (Series series : store.getResourceMeasurements(resource)) {
+			Average average = new Average();
+			series.scan(beforeActionStartTime.getTime(), actionStartTime.getTime(), average);
+			if (average.count > 0) {
+				averages.put(series.getUri(), average.sum / average.count);
+			}
+		}
+		return averages;
+	}
+
+	@Override
+	public Set<String> getResourceCapabilites(String resourceURI) {
+		Set<String> capabilities = new HashSet<String>();
+		for (Series series : store.getResourceMeasurements(resourceURI)) {
+			capabilities.add(series.getUri());
+		}
+		return capabilities;
+	}
+
+	@Override
+	public List<MeasurementValue> getHistoricalMeasurementValues(String resourceURI, String capabilityURI) {
+		return getHistoricalMeasurementValues(resourceURI, capabilityURI, new Date(Long.MIN_VALUE), new Date(
+				Long.MAX_VALUE));
+	}
+
+	@Override
+	public List<MeasurementValue> getHistoricalMeasurementValues(String resourceURI, String capabilityURI,
+			Date startTime, Date endTime) {
+		List<MeasurementValue> values = new ArrayList<MeasurementValue>();
+		Series series = store.findSeries(Series.MEASUREMENT, capabilityURI, resourceURI);
+		if (series != null) {
+			series.scan(startTime.getTime(), endTime.getTime(), new MeasurementCollector(series, values));
+		}
+		return values;
+	}
+
+	@Override
+	public List<IMetric> getAllKnownMetrics() {
+		List<IMetric> metrics = new ArrayList<IMetric>();
+		for (Series series : store.getAllSeries()) {
+			if (series.getKind() == Series.METRIC) {
+				metrics.add(new Metric(series.getUri(), series.getResourceUri()));
+			}
+		}
+		return metrics;
+	}
+
+	@Override
+	public List<Number> getHistoricalMetricValues(String metricURI, String resourceURI) {
+		final List<Number> values = new ArrayList<Number>();
+		Series series = store.findSeries(Series.METRIC, metricURI, resourceURI);
+		if (series != null) {
+			series.scan(Long.MIN_VALUE, Long.MAX_VALUE, new ISeriesVisitor() {
+
+				@Override
+				public void visit(long timestamp, double value) {
+					values.add(value);
+				}
+			});
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the period in windows of <code>streamWindowMillis</code>, merging
+	 * the values of all series read in a window by their timestamps.
+	 */
+	@Override
+	public void streamHistory(Date startTime, Date endTime, IHistoryRecordHandler handler) {
+		HistoryWindow window = new HistoryWindow();
+		long start = startTime.getTime();
+		long end = endTime.getTime();
+		while (start <= end) {
+			// inclusive bounds, the next window starts right after this one
+			long windowEnd = end - start < streamWindowMillis ? end : start + streamWindowMillis - 1;
+			for (Series series : store.getAllSeries()) {
+				window.startRun(series);
+				series.scan(start, windowEnd, window);
+			}
+			window.replay(handler);
+			if (windowEnd == end) {
+				break;
+			}
+			start = windowEnd + 1;
+		}
+	}
+
+	/**
+	 * Deletes the segments whose values are all older than
+	 * <code>retentionMillis</code>.
+	 * 
+	 * @return number of deleted segments
+	 */
+	public int expire() {
+		if (retentionMillis <= 0) {
+			return 0;
+		}
+		try {
+			int expired = store.expire(System.currentTimeMillis() - retentionMillis);
+			if (expired > 0 && logger.isDebugEnabled()) {
+				logger.debug("Deleted " + expired + " expired segments");
+			}
+			return expired;
+		} catch (IOException e) {
+			throw new TimeSeriesStoreException("Cannot delete expired segments", e);
+		}
+	}
+
+	/**
+	 * @return number of values in all series
+	 */
+	public long getValueCount() {
+		long count = 0;
+		for (Series series : store.getAllSeries()) {
+			count += series.getValueCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return size of the catalog and the segment files in bytes
+	 */
+	public long getSizeOnDisk() {
+		return store.getSizeOnDisk();
+	}
+
+	private static class MeasurementCollector implements ISeriesVisitor {
+
+		private final Series series;
+		private final List<MeasurementValue> values;
+
+		public MeasurementCollector(Series series, List<MeasurementValue> values) {
+			this.series = series;
+			this.values = values;
+		}
+
+		@Override
+		public void visit(long timestamp, double value) {
+			MeasurementValue measurement = new MeasurementValue();
+			measurement.setInstanceUri(series.getResourceUri());
+			measurement.setCapabilityUri(series.getUri());
+			measurement.setTimestamp(new Date(timestamp));
+			measurement.setValue(value);
+			values.add(measurement);
+		}
+	}
+
+	private static class Average implements ISeriesVisitor {
+
+		private double sum = 0.0;
+		private long count = 0;
+
+		@Override
+		public void visit(long timestamp, double value) {
+			sum += value;
+			count++;
+		}
+	}
+
+	/**
+	 * Values of all series from one window, kept as sorted runs - one per
+	 * series - and merged when replayed.
+	 */
+	private static class HistoryWindow implements ISeriesVisitor {
+
+		private long[] times = new long[1024];
+		private double[] values = new double[1024];
+		private int size = 0;
+		private final List<Series> runSeries = new ArrayList<Series>();
+		private final List<Integer> runStarts = new ArrayList<Integer>();
+
+		void startRun(Series series) {
+			runSeries.add(series);
+			runStarts.add(size);
+		}
+
+		@Override
+		public void visit(long timestamp, double value) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			times[size] = timestamp;
+			values[size] = value;
+			size++;
+		}
+
+		void replay(IHistoryRecordHandler handler) {
+			PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Math.max(1, runSeries.size()),
+					new Comparator<int[]>() {
+
+						@Override
+						public int compare(int[] first, int[] second) {
+							long a = times[first[1]];
+							long b = times[second[1]];
+							if (a != b) {
+								return a < b ? -1 : 1;
+							}
+							return first[0] - second[0];
+						}
+					});
+			// run index, position and end of every non-empty run
+			for (int run = 0; run < runStarts.size(); run++) {
+				int start = runStarts.get(run);
+				int end = run + 1 < runStarts.size() ? runStarts.get(run + 1) : size;
+				if (start < end) {
+					heads.add(new int[] { run, start, end });
+				}
+			}
+			while (!heads.isEmpty()) {
+				int[] head = heads.poll();
+				Series series = runSeries.get(head[0]);
+				int i = head[1];
+				if (series.getKind() == Series.METRIC) {
+					handler.handleMetricValue(series.getUri(), series.getResourceUri(), times[i], values[i]);
+				} else {
+					handler.handleMeasurement(series.getResourceUri(), series.getUri(), times[i], values[i]);
+				}
+				if (++head[1] < head[2]) {
+					heads.add(head);
+				}
+			}
+			size = 0;
+			runSeries.clear();
+			runStarts.clear();
+		}
+	}
+
+}
@@ -0,0 +1,266 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Series of a store directory. The catalog file lists the series - their ids,
+ * kinds and URIs - and the <code>segments</code> subdirectory holds the
+ * {@link Segment} files, named after the id of their series and their sequence
+ * number. A series is written to the catalog, and synced, before its first
+ * segment is created. The last segment of every series is mapped and
+ * continued when the store is opened again.
+ * 
+ * @author Pawel Koperek <pkoperek@gmail.com>
+ * @author Mateusz Kupisz <mkupisz@gmail.com>
+ */
+final class TimeSeriesStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+	static final String CATALOG_FILE = "series.cat";
+	static final String SEGMENTS_DIRECTORY = "segments";
+
+	private final File directory;
+	private final File segmentsDirectory;
+	private final int segmentCapacity;
+	private final boolean compress;
+
+	private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<String, Series>();
+	private final List<Series> allSeries = new CopyOnWriteArrayList<Series>();
+	private final ConcurrentMap<String, List<Series>> resourceMeasurements = new ConcurrentHashMap<String, List<Series>>();
+
+	private RandomAccessFile catalog;
+	private int nextSeriesId = 0;
+
+	/**
+	 * @param compress
+	 *            Whether the closed segments are compressed or only compacted
+	 */
+	TimeSeriesStore(File directory, int segmentCapacity, boolean compress) {
+		this.directory = directory;
+		this.segmentsDirectory = new File(directory, SEGMENTS_DIRECTORY);
+		this.segmentCapacity = segmentCapacity;
+		this.compress = compress;
+	}
+
+	synchronized void open() throws IOException {
+		if (!segmentsDirectory.isDirectory() && !segmentsDirectory.mkdirs()) {
+			throw new IOException("Cannot create " + segmentsDirectory);
+		}
+		catalog = new RandomAccessFile(new File(directory, CATALOG_FILE), "rw");
+		readCatalog();
+
+		Map<Integer, TreeMap<Integer, File>> files = new TreeMap<Integer, TreeMap<Integer, File>>();
+		for (File file : segmentsDirectory.listFiles()) {
+			if (file.getName().endsWith(Segment.TMP_SUFFIX)) {
+				// an interrupted compaction, the original is still there
+				delete(file);
+				continue;
+			}
+			int[] name = Series.parseSegmentFileName(file.getName());
+			if (name == null) {
+				continue;
+			}
+			TreeMap<Integer, File> seriesFiles = files.get(name[0]);
+			if (seriesFiles == null) {
+				seriesFiles = new TreeMap<Integer, File>();
+				files.put(name[0], seriesFiles);
+			}
+			seriesFiles.put(name[1], file);
+		}
+		for (Series s : allSeries) {
+			TreeMap<Integer, File> seriesFiles = files.remove(s.getId());
+			if (seriesFiles != null) {
+				openSegments(s, seriesFiles);
+			}
+		}
+		if (!files.isEmpty()) {
+			logger.warn("Ignoring segments of series missing in the catalog: " + files.keySet());
+		}
+		logger.info("Opened time series store " + directory + " with " + allSeries.size() + " series");
+	}
+
+	private void readCatalog() throws IOException {
+		long position = 0;
+		try {
+			while (position < catalog.length()) {
+				byte kind = catalog.readByte();
+				int id = catalog.readInt();
+				String uri = catalog.readUTF();
+				String resourceUri = catalog.readUTF();
+				register(new Series(id, kind, uri, resourceUri, segmentsDirectory, segmentCapacity,
+						compress));
+				nextSeriesId = Math.max(nextSeriesId, id + 1);
+				position = catalog.getFilePointer();
+			}
+		} catch (EOFException e) {
+			logger.warn("Dropping the incomplete last record of the series catalog");
+			catalog.setLength(position);
+		}
+		catalog.seek(position);
+	}
+
+	private void openSegments(Series s, TreeMap<Integer, File> seriesFiles) throws IOException {
+		for (Map.Entry<Integer, File> entry : seriesFiles.entrySet()) {
+			File file = entry.getValue();
+			ISegment segment;
+			try {
+				segment = Segment.open(file, entry.getKey().equals(seriesFiles.lastKey()));
+			} catch (IOException e) {
+				logger.warn("Cannot open segment, moving it aside", e);
+				if (!file.renameTo(new File(file.getPath() + ".corrupt"))) {
+					throw new IOException("Cannot move " + file + " aside");
+				}
+				continue;
+			}
+			if (segment.getCount() == 0) {
+				// created just before a crash
+				delete(file);
+			} else {
+				s.openSegment(entry.getKey(), segment);
+			}
+		}
+	}
+
+	private static void delete(File file) throws IOException {
+		if (!file.delete()) {
+			throw new IOException("Cannot delete " + file);
+		}
+	}
+
+	private void register(Series s) {
+		series.put(getKey(s.getKind(), s.getUri(), s.getResourceUri()), s);
+		allSeries.add(s);
+		if (s.getKind() == Series.MEASUREMENT) {
+			List<Series> list = resourceMeasurements.get(s.getResourceUri());
+			if (list == null) {
+				list = new CopyOnWriteArrayList<Series>();
+				resourceMeasurements.put(s.getResourceUri(), list);
+			}
+			list.add(s);
+		}
+	}
+
+	private static String getKey(byte kind, String uri, String resourceUri) {
+		return kind + "\n" + uri + "\n" + resourceUri;
+	}
+
+	/**
+	 * @return the series or null if nothing was stored in it yet
+	 */
+	Series findSeries(byte kind, String uri, String resourceUri) {
+		return series.get(getKey(kind, uri, resourceUri));
+	}
+
+	/**
+	 * @return the series, added to the catalog if it's new
+	 */
+	Series getSeries(byte kind, String uri, String resourceUri) throws IOException {
+		Series s = findSeries(kind, uri, resourceUri);
+		if (s != null) {
+			return s;
+		}
+		synchronized (this) {
+			s = findSeries(kind, uri, resourceUri);
+			if (s == null) {
+				s = new Series(nextSeriesId, kind, uri, resourceUri, segmentsDirectory, segmentCapacity,
+						compress);
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream record = new DataOutputStream(bytes);
+				record.writeByte(kind);
+				record.writeInt(s.getId());
+				record.writeUTF(uri);
+				record.writeUTF(resourceUri);
+				catalog.write(bytes.toByteArray());
+				catalog.getFD().sync();
+				nextSeriesId++;
+				register(s);
+			}
+			return s;
+		}
+	}
+
+	List<Series> getAllSeries() {
+		return allSeries;
+	}
+
+	/**
+	 * @return the measurement series of the resource
+	 */
+	List<Series> getResourceMeasurements(String resourceUri) {
+		List<Series> list = resourceMeasurements.get(resourceUri);
+		return list == null ? Collections.<Series> emptyList() : list;
+	}
+
+	Iterable<String> getMeasuredResources() {
+		return new ArrayList<String>(resourceMeasurements.keySet());
+	}
+
+	void force() {
+		for (Series s : allSeries) {
+			s.force();
+		}
+	}
+
+	synchronized void close() throws IOException {
+		for (Series s : allSeries) {
+			s.close();
+		}
+		catalog.close();
+	}
+
+	/**
+	 * Deletes the closed segments with values older than the given time only.
+	 * 
+	 * @return number of deleted segments
+	 */
+	int expire(long time) throws IOException {
+		int expired = 0;
+		for (Series s : allSeries) {
+			expired += s.expire(time);
+		}
+		return expired;
+	}
+
+	long getSizeOnDisk() {
+		long size = new File(directory, CATALOG_FILE).length();
+		for (Series s : allSeries) {
+			size += s.getSizeOnDisk();
+		}
+		return size;
+	}
+
+}
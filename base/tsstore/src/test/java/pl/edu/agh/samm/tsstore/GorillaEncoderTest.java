@@ -0,0 +1,104 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GorillaEncoderTest {
+
+	@Test
+	public void testRoundTrip() {
+		Random random = new Random(0);
+		long[] times = new long[5000];
+		double[] values = new double[times.length];
+		long time = 1300000000000L;
+		for (int i = 0; i < times.length; i++) {
+			// regular intervals, jitter, gaps, clock going back
+			switch (i % 50) {
+			case 10:
+				time += 1L << 40;
+				break;
+			case 20:
+				time -= 5000;
+				break;
+			case 30:
+				time += random.nextInt(100000);
+				break;
+			default:
+				time += 1000 + random.nextInt(5);
+			}
+			times[i] = time;
+			switch (i % 10) {
+			case 0:
+				values[i] = random.nextDouble() * 1e6;
+				break;
+			case 1:
+				values[i] = Double.NaN;
+				break;
+			case 2:
+				values[i] = -0.0;
+				break;
+			case 3:
+				values[i] = Double.NEGATIVE_INFINITY;
+				break;
+			default:
+				values[i] = i / 10;
+			}
+		}
+
+		GorillaEncoder encoder = new GorillaEncoder();
+		int[] offsets = new int[times.length / 1000];
+		for (int block = 0; block < offsets.length; block++) {
+			offsets[block] = encoder.getSize();
+			for (int i = block * 1000; i < (block + 1) * 1000; i++) {
+				encoder.add(times[i], values[i]);
+			}
+			encoder.finishBlock();
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(encoder.toByteArray());
+
+		// blocks are decoded independently, in any order
+		for (int block = offsets.length - 1; block >= 0; block--) {
+			GorillaDecoder decoder = new GorillaDecoder(buffer, offsets[block]);
+			for (int i = block * 1000; i < (block + 1) * 1000; i++) {
+				decoder.next();
+				assertEquals(times[i], decoder.getTime());
+				assertEquals(Double.doubleToRawLongBits(values[i]),
+						Double.doubleToRawLongBits(decoder.getValue()));
+			}
+		}
+	}
+
+	@Test
+	public void testConstantSeries() {
+		GorillaEncoder encoder = new GorillaEncoder();
+		for (int i = 0; i < 1000; i++) {
+			encoder.add(i * 60000L, 3.0);
+		}
+		encoder.finishBlock();
+		// the first pair in full, 38 bits for the first delta, then a bit for
+		// the delta-of-delta and one for the value
+		assertEquals((128 + 38 + 998 * 2 + 7) / 8, encoder.getSize());
+	}
+
+}
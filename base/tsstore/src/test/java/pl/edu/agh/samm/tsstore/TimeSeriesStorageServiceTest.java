@@ -0,0 +1,245 @@
+/**
+ * This file is part of SAMM.
+ *
+ * SAMM is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SAMM is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SAMM.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.agh.samm.tsstore;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.edu.agh.samm.api.db.IHistoryRecordHandler;
+import pl.edu.agh.samm.api.metrics.MeasurementValue;
+import pl.edu.agh.samm.api.metrics.Metric;
+
+public class TimeSeriesStorageServiceTest {
+
+	private static final String RESOURCE = "/JVM_1";
+	private static final String CAPABILITY = "http://www.icsr.agh.edu.pl/samm_1.owl#HeapMemoryUsedCapability";
+	private static final long START = 1300000000000L;
+
+	private File directory;
+	private TimeSeriesStorageService storageService;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("tsstore", "");
+		directory.delete();
+		storageService = createStorageService(true);
+	}
+
+	private TimeSeriesStorageService createStorageService(boolean compress) throws Exception {
+		TimeSeriesStorageService service = new TimeSeriesStorageService();
+		service.setDataDirectory(directory.getPath());
+		service.setSegmentCapacity(100);
+		service.setSyncIntervalMillis(0);
+		service.setCompressClosedSegments(compress);
+		service.init();
+		return service;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		storageService.destroy();
+		delete(directory);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testRangeScanAcrossSegments() {
+		for (int i = 0; i < 1000; i++) {
+			storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + i * 1000L), i);
+		}
+		List<MeasurementValue> values = storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY,
+				new Date(START + 150500L), new Date(START + 350000L));
+		assertEquals(200, values.size());
+		assertEquals(151.0, values.get(0).getValue());
+		assertEquals(350.0, values.get(199).getValue());
+		assertEquals(1000, storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY).size());
+		assertEquals(1.0, storageService.getAverageMeasurementValue(RESOURCE, new Date(START),
+				new Date(START + 2000L)).get(CAPABILITY));
+	}
+
+	@Test
+	public void testRangeScanOfClosedSegments() throws Exception {
+		storageService.destroy();
+		storageService = createStorageService(false);
+		for (int i = 0; i < 301; i++) {
+			// the second segment is unsorted
+			int time = i == 150 ? 199 : i == 199 ? 150 : i;
+			storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + time * 1000L), time);
+		}
+		List<MeasurementValue> values = storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY,
+				new Date(START + 50500L), new Date(START + 250000L));
+		assertEquals(200, values.size());
+		for (int i = 0; i < 200; i++) {
+			assertEquals(START + (51 + i) * 1000L, values.get(i).getTimestamp().getTime());
+			assertEquals(51.0 + i, values.get(i).getValue());
+		}
+		values = storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY, new Date(START + 20000L),
+				new Date(START + 20000L));
+		assertEquals(1, values.size());
+		assertEquals(20.0, values.get(0).getValue());
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		storageService.destroy();
+		storageService = createStorageService(false);
+		for (int i = 0; i < 150; i++) {
+			storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + i * 1000L), i);
+		}
+		storageService.storeMetricValue(new Metric("metric", RESOURCE), 7);
+		storageService.destroy();
+		File segmentsDirectory = new File(directory, TimeSeriesStore.SEGMENTS_DIRECTORY);
+		assertEquals(3, segmentsDirectory.listFiles().length);
+
+		storageService = createStorageService(false);
+		storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + 150000L), 150);
+		List<MeasurementValue> values = storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY);
+		assertEquals(151, values.size());
+		assertEquals(150.0, values.get(150).getValue());
+		assertEquals(7.0, storageService.getHistoricalMetricValues("metric", RESOURCE).get(0));
+		assertEquals(1, storageService.getAllKnownMetrics().size());
+		storageService.destroy();
+		// the partially filled segments are continued, not closed
+		File[] segments = segmentsDirectory.listFiles();
+		assertEquals(3, segments.length);
+		for (File segment : segments) {
+			assertEquals(Segment.getFileSize(100), segment.length());
+		}
+
+		storageService = createStorageService(false);
+		assertEquals(151, storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY).size());
+	}
+
+	@Test
+	public void testRetention() throws Exception {
+		storageService.destroy();
+		storageService = createStorageService(true);
+		for (int i = 0; i < 250; i++) {
+			storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + i * 1000L), i);
+		}
+		assertEquals(0, storageService.expire());
+
+		storageService.setRetentionMillis(System.currentTimeMillis() - START - 150000L);
+		// the first segment holds only values older than the retention time
+		assertEquals(1, storageService.expire());
+		assertEquals(3 - 1, new File(directory, TimeSeriesStore.SEGMENTS_DIRECTORY).listFiles().length);
+		assertEquals(150, storageService.getValueCount());
+		assertEquals(100.0, storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY).get(0)
+				.getValue());
+
+		storageService.setRetentionMillis(1L);
+		// the last segment still takes new values
+		assertEquals(1, storageService.expire());
+		storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + 250000L), 250);
+		assertEquals(51, storageService.getValueCount());
+	}
+
+	@Test
+	public void testReopenWithoutDestroy() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + i * 1000L), i);
+		}
+		// the same files opened as after a crash of the process
+		TimeSeriesStorageService recovered = createStorageService(true);
+		assertEquals(50, recovered.getHistoricalMeasurementValues(RESOURCE, CAPABILITY).size());
+		recovered.destroy();
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		double value = 10.0;
+		for (int i = 0; i < 1000; i++) {
+			// a gauge polled with some jitter
+			value += i % 7 == 0 ? 0.5 : 0.0;
+			storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + i * 1000L + i % 3), value);
+		}
+		storageService.destroy();
+		storageService = createStorageService(true);
+		assertTrue(storageService.getSizeOnDisk() < 1000 * 12 / 4);
+
+		List<MeasurementValue> values = storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY);
+		assertEquals(1000, values.size());
+		value = 10.0;
+		for (int i = 0; i < 1000; i++) {
+			value += i % 7 == 0 ? 0.5 : 0.0;
+			assertEquals(START + i * 1000L + i % 3, values.get(i).getTimestamp().getTime());
+			assertEquals(value, values.get(i).getValue());
+		}
+		values = storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY, new Date(START + 150000L),
+				new Date(START + 350002L));
+		assertEquals(201, values.size());
+		assertEquals(START + 150000L, values.get(0).getTimestamp().getTime());
+	}
+
+	@Test
+	public void testOutOfOrderValues() {
+		storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + 2000L), 2);
+		storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START), 0);
+		storageService.storeMeasurement(RESOURCE, CAPABILITY, new Date(START + 1000L), 1);
+		List<MeasurementValue> values = storageService.getHistoricalMeasurementValues(RESOURCE, CAPABILITY);
+		assertEquals(3, values.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(START + i * 1000L, values.get(i).getTimestamp().getTime());
+		}
+	}
+
+	@Test
+	public void testStreamHistory() {
+		storageService.setStreamWindowMillis(1500L);
+		for (int i = 0; i < 10; i++) {
+			storageService.storeMeasurement("/JVM_" + (i % 2), CAPABILITY, new Date(START + i * 1000L), i);
+		}
+		final List<Long> timestamps = new ArrayList<Long>();
+		storageService.streamHistory(new Date(START), new Date(START + 9000L), new IHistoryRecordHandler() {
+
+			@Override
+			public void handleMetricValue(String metricURI, String resourceURI, long timestamp, double value) {
+				fail();
+			}
+
+			@Override
+			public void handleMeasurement(String instanceURI, String capabilityURI, long timestamp,
+					double value) {
+				assertEquals("/JVM_" + ((int) value % 2), instanceURI);
+				timestamps.add(timestamp);
+			}
+		});
+		assertEquals(10, timestamps.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(START + i * 1000L, (long) timestamps.get(i));
+		}
+	}
+
+}